@@ -0,0 +1,78 @@
+package com.demopayment.benchmarks;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.FraudStateStore.EntityType;
+
+// BlacklistIndexBenchmark measures blacklist lookups against a bulk-loaded index
+// Setup prints the load time, the index footprint and the heap retained by the loaded index
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BlacklistIndexBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+
+    private BlacklistIndex index;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Path file = Files.createTempFile("blacklist", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < entries; i++) {
+                writer.write(switch (i % 3) {
+                    case 0 -> "user:blocked-" + i;
+                    case 1 -> "ip:10." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+                    default -> "device:dev-" + Integer.toHexString(i);
+                });
+                writer.newLine();
+            }
+        }
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        index = new BlacklistIndex("", 0.01);
+        index.load(file);
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+        long heapAfter = usedHeap();
+        Files.delete(file);
+
+        System.out.printf("%nBlacklist of %,d entries: loaded in %,d ms, index arrays %,d KB, retained heap ~%,d KB%n",
+            index.size(), loadMillis, index.footprintBytes() / 1024, (heapAfter - heapBefore) / 1024);
+    }
+
+    @Benchmark
+    public boolean lookupHit(Cursor cursor) {
+        int i = Math.floorMod(cursor.next, entries) / 3 * 3;
+        cursor.next += 3;
+        return index.isBlacklisted(EntityType.USER, "blocked-" + i);
+    }
+
+    @Benchmark
+    public boolean lookupMiss(Cursor cursor) {
+        return index.isBlacklisted(Fixtures.userId(cursor.next++), "192.168.0.1", "device-x");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
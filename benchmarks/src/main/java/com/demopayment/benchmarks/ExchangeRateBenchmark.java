@@ -0,0 +1,75 @@
+package com.demopayment.benchmarks;
+
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.ExchangeRates;
+
+// ExchangeRateBenchmark converts between random pairs of the bundled currencies
+// snapshot is ExchangeRates as served by ExchangeRateService; hashMap is the Map<String, Double>
+// lookup PaymentService used to keep, converting through the base currency in floating point.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExchangeRateBenchmark {
+
+    private static final int PAIRS = 4096;
+
+    private ExchangeRates snapshot;
+    private Map<String, Double> rateMap;
+    private Currency[] from;
+    private Currency[] to;
+    private String[] fromCodes;
+    private String[] toCodes;
+    private long[] amounts;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snapshot = Fixtures.exchangeRates().current();
+        Currency[] supported = Currency.getAvailableCurrencies().stream()
+            .filter(snapshot::supports).sorted((a, b) -> a.getCurrencyCode().compareTo(b.getCurrencyCode()))
+            .toArray(Currency[]::new);
+        rateMap = new HashMap<>();
+        Currency usd = Currency.getInstance("USD");
+        for (Currency currency : supported) {
+            double unit = Math.pow(10, currency.getDefaultFractionDigits());
+            rateMap.put(currency.getCurrencyCode(), snapshot.convertMinor(1_000_000_000L, usd, currency) / unit / 10_000_000.0);
+        }
+        from = new Currency[PAIRS];
+        to = new Currency[PAIRS];
+        fromCodes = new String[PAIRS];
+        toCodes = new String[PAIRS];
+        amounts = new long[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            from[i] = supported[(int) (i * 7919L % supported.length)];
+            to[i] = supported[(int) (i * 104_729L % supported.length)];
+            fromCodes[i] = from[i].getCurrencyCode();
+            toCodes[i] = to[i].getCurrencyCode();
+            amounts[i] = 100 + i * 31L;
+        }
+    }
+
+    @Benchmark
+    public long snapshot(Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return snapshot.convertMinor(amounts[i], from[i], to[i]);
+    }
+
+    @Benchmark
+    public double hashMap(Cursor cursor) {
+        int i = cursor.next++ & (PAIRS - 1);
+        return amounts[i] / rateMap.get(fromCodes[i]) * rateMap.get(toCodes[i]);
+    }
+}
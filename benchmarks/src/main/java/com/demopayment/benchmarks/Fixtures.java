@@ -0,0 +1,157 @@
+package com.demopayment.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.ReflectionUtils;
+
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.FraudRuleEngine;
+import com.demopayment.fraud.FraudStateStore;
+import com.demopayment.fraud.UserFeatureStore;
+import com.demopayment.fraud.VelocityWindows;
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.pipeline.PostPaymentPipeline;
+import com.demopayment.repository.JpaTransactionRepository;
+import com.demopayment.repository.TransactionCache;
+import com.demopayment.repository.TransactionIndex;
+import com.demopayment.repository.TransactionRepository;
+import com.demopayment.repository.TransactionWriteBuffer;
+import com.demopayment.service.ComplianceService;
+import com.demopayment.service.FraudPreventionService;
+import com.demopayment.service.PaymentProviderRouter;
+import com.demopayment.service.PaymentService;
+import com.demopayment.service.UserCache;
+import com.demopayment.service.UserService;
+
+// Fixtures wires the real services against the in-process stand-ins
+// Mirrors what Spring does through field injection, without starting a context
+
+final class Fixtures {
+
+    static final int USER_POOL_SIZE = 10_000;
+
+    private static final String[] USER_IDS = new String[USER_POOL_SIZE];
+
+    static {
+        for (int i = 0; i < USER_POOL_SIZE; i++) {
+            USER_IDS[i] = "bench-" + i;
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    static String userId(int index) {
+        return USER_IDS[Math.floorMod(index, USER_POOL_SIZE)];
+    }
+
+    static UserService userService(RedisTemplate<String, byte[]> redisTemplate) {
+        return userService(redisTemplate, 50_000);
+    }
+
+    static UserService userService(RedisTemplate<String, byte[]> redisTemplate, int localEntries) {
+        UserService userService = new UserService(new StubUserClient());
+        inject(userService, "userCache", userCache(redisTemplate, localEntries));
+        return userService;
+    }
+
+    static UserCache userCache(RedisTemplate<String, byte[]> redisTemplate, int localEntries) {
+        return new UserCache(redisTemplate, new SimpleMeterRegistry(), localEntries, 16,
+            Duration.ofSeconds(60), 0, Duration.ofHours(1));
+    }
+
+    static BlacklistIndex blacklist() {
+        return new BlacklistIndex("", 0.01);
+    }
+
+    static FraudPreventionService fraudService(BlacklistIndex blacklist) {
+        return new FraudPreventionService(new FraudStateStore(1_000_000, 64, VelocityWindows.DEFAULT_SPEC), blacklist,
+            new FraudRuleEngine("", new SimpleMeterRegistry()), userFeatureStore(16), exchangeRates());
+    }
+
+    static UserFeatureStore userFeatureStore(int memoryMb) {
+        return new UserFeatureStore(memoryMb, 0.1, 64, new SimpleMeterRegistry());
+    }
+
+    static PostPaymentPipeline postPaymentPipeline() {
+        return new PostPaymentPipeline(new SimpleMeterRegistry(), 2, 10_000, 3, 200, false);
+    }
+
+    static ComplianceService complianceService() {
+        return new ComplianceService(new SimpleMeterRegistry(), 2_000);
+    }
+
+    static TransactionWriteBuffer transactionWriteBuffer(JpaTransactionRepository jpaRepository, boolean writeBehind) {
+        try {
+            Path journalDir = Files.createTempDirectory("transaction-journal");
+            TransactionWriteBuffer buffer = new TransactionWriteBuffer(jpaRepository, new SimpleMeterRegistry(), writeBehind,
+                10_000, 100, 50, 100, journalDir.toString(), 5, 1_000);
+            buffer.start();
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static TransactionCache transactionCache(int maxEntries) {
+        return new TransactionCache(new SimpleMeterRegistry(), maxEntries, 64, Duration.ofMinutes(30));
+    }
+
+    static TransactionRepository transactionRepository(JpaTransactionRepository jpaRepository, TransactionWriteBuffer writeBuffer) {
+        TransactionRepository repository = new TransactionRepository();
+        inject(repository, "cache", transactionCache(100_000));
+        inject(repository, "index", new TransactionIndex(exchangeRates()));
+        inject(repository, "jpaRepository", jpaRepository);
+        inject(repository, "writeBuffer", writeBuffer);
+        return repository;
+    }
+
+    static PaymentService paymentService(UserService userService,
+                                         FraudPreventionService fraudService,
+                                         PaymentProviderRouter providerRouter,
+                                         PaymentGatewayService gatewayService,
+                                         PostPaymentPipeline postPaymentPipeline,
+                                         ComplianceService complianceService) {
+        PaymentService paymentService = new PaymentService();
+        inject(paymentService, "userService", userService);
+        inject(paymentService, "fraudService", fraudService);
+        inject(paymentService, "providerRouter", providerRouter);
+        inject(paymentService, "gatewayService", gatewayService);
+        inject(paymentService, "postPaymentPipeline", postPaymentPipeline);
+        inject(paymentService, "complianceService", complianceService);
+        inject(paymentService, "exchangeRates", exchangeRates());
+        return paymentService;
+    }
+
+    // The bundled rates for every currency the application ships with
+    static ExchangeRateService exchangeRates() {
+        ExchangeRateService exchangeRates = new ExchangeRateService("", "USD");
+        exchangeRates.loadOnStartup();
+        return exchangeRates;
+    }
+
+    /*
+     * Some code paths still print with System.out; keep the formatting cost but drop the console I/O
+     */
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if (field == null) {
+            throw new IllegalStateException("No field " + fieldName + " on " + target.getClass().getName());
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
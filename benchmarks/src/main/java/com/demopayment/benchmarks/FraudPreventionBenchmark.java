@@ -0,0 +1,39 @@
+package com.demopayment.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.Money;
+import com.demopayment.service.FraudPreventionService;
+
+// FraudPreventionBenchmark measures FraudPreventionService.checkFraud across a pool of users
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudPreventionBenchmark {
+
+    private FraudPreventionService fraudService;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    private static final Money AMOUNT = Money.of("250.00", "USD");
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fraudService = Fixtures.fraudService(Fixtures.blacklist());
+    }
+
+    @Benchmark
+    public boolean checkFraud(Cursor cursor) {
+        int index = cursor.next++;
+        String userId = Fixtures.userId(index);
+        return fraudService.checkFraud(userId, "10.0.0." + (index & 0xff), "device-" + userId, AMOUNT);
+    }
+}
@@ -0,0 +1,102 @@
+package com.demopayment.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.fraud.FraudFeature;
+import com.demopayment.fraud.FraudRuleEngine;
+
+// FraudRuleEngineBenchmark screens precomputed feature sets with the bundled fraud rules
+// engine runs them through FraudRuleEngine; hardCoded is the same decision written out the way
+// FraudPreventionService used to, so the difference is the cost of keeping the rules in a file.
+// Features are table lookups here, so both sides measure rule evaluation only. Like
+// FraudPreventionService, the engine side reuses one evaluation per thread.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudRuleEngineBenchmark {
+
+    private static final int PAYMENTS = 4096;
+    private static final int FEATURES = FraudFeature.values().length;
+
+    private FraudRuleEngine engine;
+    private double[] features;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        final Payment payment = new Payment();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new FraudRuleEngine("", new SimpleMeterRegistry());
+        SplittableRandom random = new SplittableRandom(42);
+        features = new double[PAYMENTS * FEATURES];
+        for (int i = 0; i < PAYMENTS; i++) {
+            int base = i * FEATURES;
+            features[base + FraudFeature.AMOUNT.ordinal()] = random.nextInt(1, 2_000);
+            features[base + FraudFeature.AMOUNT_RISK.ordinal()] = features[base + FraudFeature.AMOUNT.ordinal()] / 100;
+            features[base + FraudFeature.CURRENCY_RISK.ordinal()] = random.nextInt(4) == 0 ? 50 : 10;
+            features[base + FraudFeature.USER_RISK.ordinal()] = random.nextInt(100);
+            features[base + FraudFeature.IP_RISK.ordinal()] = random.nextInt(100);
+            features[base + FraudFeature.DEVICE_RISK.ordinal()] = random.nextInt(100);
+            features[base + FraudFeature.BLACKLISTED.ordinal()] = random.nextInt(100) == 0 ? 1 : 0;
+            features[base + FraudFeature.TRANSACTIONS_LAST_HOUR.ordinal()] = random.nextInt(12);
+            features[base + FraudFeature.AMOUNT_LAST_DAY.ordinal()] = random.nextInt(20_000);
+        }
+    }
+
+    @Benchmark
+    public boolean engine(Cursor cursor) {
+        int base = (cursor.next++ & (PAYMENTS - 1)) * FEATURES;
+        return engine.evaluate(cursor.payment.of(features, base)).isBlocked();
+    }
+
+    @Benchmark
+    public boolean hardCoded(Cursor cursor) {
+        int base = (cursor.next++ & (PAYMENTS - 1)) * FEATURES;
+        if (features[base + FraudFeature.BLACKLISTED.ordinal()] >= 1) {
+            return true;
+        }
+        double transactionsLastHour = features[base + FraudFeature.TRANSACTIONS_LAST_HOUR.ordinal()];
+        if (transactionsLastHour >= 10) {
+            return true;
+        }
+        int totalRisk = (int) (features[base + FraudFeature.USER_RISK.ordinal()] * 3
+            + features[base + FraudFeature.IP_RISK.ordinal()] * 2
+            + features[base + FraudFeature.DEVICE_RISK.ordinal()] * 2
+            + features[base + FraudFeature.AMOUNT_RISK.ordinal()] * 4
+            + features[base + FraudFeature.CURRENCY_RISK.ordinal()]) / 12;
+        if (totalRisk > 80) {
+            return true;
+        } else if (totalRisk > 50) {
+            return features[base + FraudFeature.AMOUNT_LAST_DAY.ordinal()] > 10_000;
+        } else if (totalRisk > 20) {
+            return transactionsLastHour > 5;
+        }
+        return false;
+    }
+
+    static final class Payment extends FraudRuleEngine.Evaluation {
+        private double[] features;
+        private int base;
+
+        Payment of(double[] features, int base) {
+            this.features = features;
+            this.base = base;
+            return this;
+        }
+
+        @Override
+        protected double value(FraudFeature feature) {
+            return features[base + feature.ordinal()];
+        }
+    }
+}
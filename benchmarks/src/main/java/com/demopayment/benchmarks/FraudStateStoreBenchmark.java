@@ -0,0 +1,62 @@
+package com.demopayment.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.fraud.EntityStateTable;
+import com.demopayment.fraud.FraudStateStore;
+import com.demopayment.fraud.VelocityWindows;
+
+// FraudStateStoreBenchmark measures the shared fraud state under contention
+// Compare the single-threaded and all-cores results (ops/us) to check that throughput scales with threads
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudStateStoreBenchmark {
+
+    @Param({"64"})
+    public int stripes;
+
+    private EntityStateTable users;
+    private int hourWindow;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int) Thread.currentThread().threadId() * 7919;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FraudStateStore store = new FraudStateStore(1_000_000, stripes, VelocityWindows.DEFAULT_SPEC);
+        users = store.users();
+        hourWindow = store.windows().indexOf(Duration.ofHours(1));
+        for (int i = 0; i < Fixtures.USER_POOL_SIZE; i++) {
+            users.updateRiskScore(Fixtures.userId(i), i % 100);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long recordTransactionSingleThread(Cursor cursor) {
+        return recordAndRead(cursor);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long recordTransactionAllCores(Cursor cursor) {
+        return recordAndRead(cursor);
+    }
+
+    private long recordAndRead(Cursor cursor) {
+        String userId = Fixtures.userId(cursor.next++);
+        long now = System.currentTimeMillis();
+        users.updateRiskScore(userId, cursor.next & 0x3f);
+        users.recordTransaction(userId, 10_000, now);
+        return users.transactionCount(userId, hourWindow, now) + users.riskScore(userId);
+    }
+}
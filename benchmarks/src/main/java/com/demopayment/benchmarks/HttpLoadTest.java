@@ -0,0 +1,136 @@
+package com.demopayment.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// HttpLoadTest is a closed-loop load generator for a running instance of the application
+// Runs one step per concurrency level, reports RPS and latency percentiles per step and the
+// highest RPS that kept p99 under the SLO with less than 1% errors (max sustainable RPS).
+// Run it once against the application started with spring.threads.virtual.enabled=false and
+// once with true to compare the two execution modes.
+//
+// Usage: java -cp benchmarks.jar com.demopayment.benchmarks.HttpLoadTest
+//            [--url http://localhost:8080/api/transactions] [--method POST]
+//            [--body '{"userId":"2001","amount":25.0,"currency":"USD"}']
+//            [--concurrency 16,32,64,128,256,512] [--duration 20] [--warmup 5] [--p99-slo-ms 500]
+
+public class HttpLoadTest {
+
+    private record Step(int concurrency, long requests, long errors, double rps, double p50, double p99, double p999) {
+        boolean sustainable(double sloMs) {
+            return p99 <= sloMs && errors <= requests / 100;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = option(args, "--url", "http://localhost:8080/api/transactions");
+        String method = option(args, "--method", "POST");
+        String body = option(args, "--body", "{\"userId\":\"2001\",\"amount\":25.0,\"currency\":\"USD\"}");
+        int[] levels = Arrays.stream(option(args, "--concurrency", "16,32,64,128,256,512").split(","))
+            .mapToInt(level -> Integer.parseInt(level.trim()))
+            .toArray();
+        Duration duration = Duration.ofSeconds(Long.parseLong(option(args, "--duration", "20")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(option(args, "--warmup", "5")));
+        double sloMs = Double.parseDouble(option(args, "--p99-slo-ms", "500"));
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Type", "application/json")
+            .method(method, "GET".equals(method) ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .build();
+
+        System.out.printf("Load test %s %s, %d s per step, p99 SLO %.0f ms%n", method, url, duration.toSeconds(), sloMs);
+        run(client, request, levels[0], warmup);
+
+        List<Step> steps = new ArrayList<>();
+        System.out.printf("%12s %10s %8s %10s %10s %10s %10s%n", "concurrency", "requests", "errors", "rps", "p50 ms", "p99 ms", "p99.9 ms");
+        for (int concurrency : levels) {
+            Step step = run(client, request, concurrency, duration);
+            steps.add(step);
+            System.out.printf("%12d %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+                step.concurrency(), step.requests(), step.errors(), step.rps(), step.p50(), step.p99(), step.p999());
+        }
+
+        steps.stream()
+            .filter(step -> step.sustainable(sloMs))
+            .max((a, b) -> Double.compare(a.rps(), b.rps()))
+            .ifPresentOrElse(
+                best -> System.out.printf("Max sustainable RPS: %.1f at concurrency %d (p99 %.2f ms)%n", best.rps(), best.concurrency(), best.p99()),
+                () -> System.out.println("No step met the p99 SLO"));
+    }
+
+    private static Step run(HttpClient client, HttpRequest request, int concurrency, Duration duration) throws Exception {
+        long end = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> workers = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < end) {
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - sent;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = workers.stream().map(HttpLoadTest::join).flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Step(concurrency, all.length, errors.get(), all.length / elapsedSeconds,
+            percentileMs(all, 0.50), percentileMs(all, 0.99), percentileMs(all, 0.999));
+    }
+
+    private static long[] join(Future<long[]> worker) {
+        try {
+            return worker.get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
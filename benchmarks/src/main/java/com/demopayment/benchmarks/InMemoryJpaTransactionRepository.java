@@ -0,0 +1,65 @@
+package com.demopayment.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.demopayment.model.Transaction;
+import com.demopayment.repository.JpaTransactionRepository;
+
+// InMemoryJpaTransactionRepository stands in for Postgres inside the benchmark JVM
+// Implements the subset of JpaRepository that TransactionRepository calls
+
+public final class InMemoryJpaTransactionRepository {
+
+    private InMemoryJpaTransactionRepository() {
+    }
+
+    public static JpaTransactionRepository create() {
+        Map<String, Transaction> rows = new ConcurrentHashMap<>();
+        return (JpaTransactionRepository) Proxy.newProxyInstance(
+            JpaTransactionRepository.class.getClassLoader(),
+            new Class<?>[] { JpaTransactionRepository.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "save" -> {
+                    Transaction transaction = (Transaction) args[0];
+                    rows.put(transaction.getId(), transaction);
+                    yield transaction;
+                }
+                case "saveAll" -> {
+                    List<Transaction> saved = new ArrayList<>();
+                    for (Object entity : (Iterable<?>) args[0]) {
+                        Transaction transaction = (Transaction) entity;
+                        rows.put(transaction.getId(), transaction);
+                        saved.add(transaction);
+                    }
+                    yield saved;
+                }
+                case "findById" -> Optional.ofNullable(rows.get((String) args[0]));
+                case "findAllById" -> {
+                    List<Transaction> found = new ArrayList<>();
+                    for (Object id : (Iterable<?>) args[0]) {
+                        Transaction transaction = rows.get((String) id);
+                        if (transaction != null) {
+                            found.add(transaction);
+                        }
+                    }
+                    yield found;
+                }
+                case "existsById" -> rows.containsKey((String) args[0]);
+                case "deleteById" -> {
+                    rows.remove((String) args[0]);
+                    yield null;
+                }
+                case "findAll" -> new ArrayList<>(rows.values());
+                case "count" -> (long) rows.size();
+                case "toString" -> "InMemoryJpaTransactionRepository";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+}
@@ -0,0 +1,119 @@
+package com.demopayment.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+// InMemoryRedisTemplate stands in for Redis inside the benchmark JVM
+// Only the value operations used by the services are supported; TTLs are ignored. Pipelines may
+// only SET and PUBLISH, other callbacks (such as single invalidation publishes) are skipped
+
+public class InMemoryRedisTemplate extends RedisTemplate<String, byte[]> {
+
+    private final Map<String, byte[]> store = new ConcurrentHashMap<>();
+    private final boolean discardWrites;
+    private final ValueOperations<String, byte[]> valueOperations;
+    private final RedisConnection pipelineConnection;
+
+    public InMemoryRedisTemplate() {
+        this(false);
+    }
+
+    private InMemoryRedisTemplate(boolean discardWrites) {
+        this.discardWrites = discardWrites;
+        this.valueOperations = createValueOperations();
+        this.pipelineConnection = createPipelineConnection();
+    }
+
+    /*
+     * A template that never keeps anything, so every read is a cache miss
+     */
+    public static InMemoryRedisTemplate discardingWrites() {
+        return new InMemoryRedisTemplate(true);
+    }
+
+    @Override
+    public ValueOperations<String, byte[]> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public <T> T execute(RedisCallback<T> action) {
+        return null;
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action) {
+        action.doInRedis(pipelineConnection);
+        return List.of();
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return store.remove(key) != null;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    private RedisConnection createPipelineConnection() {
+        RedisStringCommands stringCommands = (RedisStringCommands) Proxy.newProxyInstance(
+            RedisStringCommands.class.getClassLoader(),
+            new Class<?>[] { RedisStringCommands.class },
+            (proxy, method, args) -> {
+                if (!method.getName().equals("set")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                if (!discardWrites) {
+                    store.put(new String((byte[]) args[0], StandardCharsets.UTF_8), (byte[]) args[1]);
+                }
+                return null;
+            });
+        return (RedisConnection) Proxy.newProxyInstance(
+            RedisConnection.class.getClassLoader(),
+            new Class<?>[] { RedisConnection.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "stringCommands" -> stringCommands;
+                case "publish" -> 0L;
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueOperations<String, byte[]> createValueOperations() {
+        return (ValueOperations<String, byte[]>) Proxy.newProxyInstance(
+            ValueOperations.class.getClassLoader(),
+            new Class<?>[] { ValueOperations.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "get" -> store.get((String) args[0]);
+                case "multiGet" -> {
+                    List<byte[]> values = new ArrayList<>();
+                    for (Object key : (Collection<?>) args[0]) {
+                        values.add(store.get((String) key));
+                    }
+                    yield values;
+                }
+                case "set" -> {
+                    if (!discardWrites) {
+                        store.put((String) args[0], (byte[]) args[1]);
+                    }
+                    yield null;
+                }
+                case "getOperations" -> this;
+                case "toString" -> "InMemoryValueOperations";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+}
@@ -0,0 +1,97 @@
+package com.demopayment.benchmarks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
+
+// MoneyBenchmark compares Money with the BigDecimal arithmetic it avoids, per amount
+// Each amount is converted from USD to EUR, added to a running total and checked against a limit,
+// the work PaymentService and the fraud checks do per payment.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    private static final int COUNT = 1024;
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private Money[] amounts;
+    private BigDecimal[] decimals;
+    private ExchangeRates rates;
+    private Money limit;
+    private BigDecimal eurPerUsd;
+    private BigDecimal decimalLimit;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        amounts = new Money[COUNT];
+        decimals = new BigDecimal[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            long cents = 100 + (i * 7919L % 500_000);
+            amounts[i] = Money.ofMinor(cents, "USD");
+            decimals[i] = BigDecimal.valueOf(cents, 2);
+        }
+        eurPerUsd = new BigDecimal("0.85");
+        rates = ExchangeRates.of("USD", Map.of("EUR", eurPerUsd, "GBP", new BigDecimal("0.73")));
+        limit = Money.ofMajor(1000, EUR);
+        decimalLimit = new BigDecimal("1000.00");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long money() {
+        Money total = new Money(0, EUR);
+        int overLimit = 0;
+        for (Money amount : amounts) {
+            Money converted = rates.convert(amount, EUR);
+            total = total.plus(converted);
+            if (converted.isGreaterThan(limit)) {
+                overLimit++;
+            }
+        }
+        return total.minorUnits() + overLimit;
+    }
+
+    /*
+     * The same with the running total kept in minor units, as a loop-carried Money is not scalar-replaced
+     */
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long moneyMinorUnits() {
+        long total = 0;
+        int overLimit = 0;
+        for (Money amount : amounts) {
+            long converted = rates.convertMinor(amount.minorUnits(), amount.currency(), EUR);
+            total = Math.addExact(total, converted);
+            if (converted > limit.minorUnits()) {
+                overLimit++;
+            }
+        }
+        return total + overLimit;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public BigDecimal bigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        int overLimit = 0;
+        for (BigDecimal amount : decimals) {
+            BigDecimal converted = amount.multiply(eurPerUsd).setScale(2, RoundingMode.HALF_EVEN);
+            total = total.add(converted);
+            if (converted.compareTo(decimalLimit) > 0) {
+                overLimit++;
+            }
+        }
+        return total.add(BigDecimal.valueOf(overLimit));
+    }
+}
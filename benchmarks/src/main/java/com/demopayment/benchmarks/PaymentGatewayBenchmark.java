@@ -0,0 +1,46 @@
+package com.demopayment.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.resilience.CircuitBreaker;
+
+// PaymentGatewayBenchmark measures PaymentGatewayService.processPayment across the configured gateways
+// Includes blacklist screening, rate limiting and amount validation in front of the gateway call
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentGatewayBenchmark {
+
+    private static final String[] GATEWAYS = {"stripe", "paypal", "braintree"};
+
+    private PaymentGatewayService gatewayService;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.silenceStdout();
+        gatewayService = new PaymentGatewayService(Fixtures.blacklist(), new SimpleMeterRegistry(),
+            CircuitBreaker.Settings.defaults(), 50, 20, Duration.ZERO);
+        for (String gateway : GATEWAYS) {
+            gatewayService.setRateLimit(gateway, Integer.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public boolean processPayment(Cursor cursor) {
+        int index = cursor.next++;
+        return gatewayService.processPayment(Fixtures.userId(index), 250.0, "USD", GATEWAYS[Math.floorMod(index, GATEWAYS.length)]);
+    }
+}
@@ -0,0 +1,123 @@
+package com.demopayment.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.model.Money;
+import com.demopayment.pipeline.PostPaymentPipeline;
+import com.demopayment.resilience.CircuitBreaker;
+import com.demopayment.service.BatchPaymentItem;
+import com.demopayment.service.ComplianceService;
+import com.demopayment.service.FraudPreventionService;
+import com.demopayment.service.PaymentProviderRouter;
+import com.demopayment.service.PaymentService;
+import com.demopayment.service.UserService;
+
+// PaymentServiceBenchmark measures the full PaymentService.process pipeline end to end
+// User lookup, fraud and compliance screening, routing, gateway call, recording and hand-off of the side effects.
+// gatewayLatencyMicros adds a network round trip to every gateway call, which is the per-request
+// overhead that batching amortizes; at 0 the in-process stand-ins answer instantly.
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentServiceBenchmark {
+
+    private static final int CREDIT_TYPE = 1;
+    private static final int BATCH_SIZE = 500;
+    private static final Money AMOUNT = Money.of("1200.00", "USD");
+    private static final String[] GATEWAYS = {"stripe", "paypal", "braintree"};
+
+    @Param({"0", "1000"})
+    public long gatewayLatencyMicros;
+
+    private PaymentService paymentService;
+    private PostPaymentPipeline postPaymentPipeline;
+    private ComplianceService complianceService;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.silenceStdout();
+        UserService userService = Fixtures.userService(new InMemoryRedisTemplate());
+        BlacklistIndex blacklist = Fixtures.blacklist();
+        PaymentGatewayService gatewayService = new PaymentGatewayService(blacklist, new SimpleMeterRegistry(),
+            CircuitBreaker.Settings.defaults(), 50, 20, Duration.ZERO);
+        PaymentProviderRouter providerRouter = new PaymentProviderRouter(gatewayService, new SimpleMeterRegistry(),
+            String.join(",", GATEWAYS), "", 0.5);
+        providerRouter.registerCallListener();
+        for (String gateway : GATEWAYS) {
+            gatewayService.setRateLimit(gateway, Integer.MAX_VALUE);
+        }
+        if (gatewayLatencyMicros > 0) {
+            long latencyNanos = TimeUnit.MICROSECONDS.toNanos(gatewayLatencyMicros);
+            // Listeners run on the calling thread just before the call, so this delays it like the network would
+            gatewayService.addCallListener(new PaymentGatewayService.CallListener() {
+                @Override
+                public void onCallStarted(String gateway) {
+                    LockSupport.parkNanos(latencyNanos);
+                }
+
+                @Override
+                public void onCallCompleted(String gateway, long durationNanos, boolean success) {
+                }
+
+                @Override
+                public void onCallRejected(String gateway) {
+                }
+            });
+        }
+        postPaymentPipeline = Fixtures.postPaymentPipeline();
+        complianceService = Fixtures.complianceService();
+        paymentService = Fixtures.paymentService(userService, Fixtures.fraudService(blacklist), providerRouter,
+            gatewayService, postPaymentPipeline, complianceService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        postPaymentPipeline.shutdown();
+        complianceService.shutdown();
+    }
+
+    /*
+     * Rejected payments (fraud veto, gateway refusal) are part of the production mix,
+     * so they are consumed rather than failing the run
+     */
+    @Benchmark
+    public void process(Cursor cursor, Blackhole blackhole) {
+        String userId = Fixtures.userId(cursor.next++);
+        try {
+            paymentService.process(CREDIT_TYPE, AMOUNT, userId, false, true, true, true);
+        } catch (RuntimeException rejected) {
+            blackhole.consume(rejected);
+        }
+    }
+
+    /*
+     * Same payment mix as process, submitted BATCH_SIZE at a time; scores are per item
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void processBatch(Cursor cursor, Blackhole blackhole) {
+        List<BatchPaymentItem> items = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            items.add(new BatchPaymentItem(Fixtures.userId(cursor.next++), AMOUNT));
+        }
+        blackhole.consume(paymentService.processBatch(items));
+    }
+}
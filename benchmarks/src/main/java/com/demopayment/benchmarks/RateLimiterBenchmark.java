@@ -0,0 +1,40 @@
+package com.demopayment.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.demopayment.resilience.RateLimiter;
+
+// RateLimiterBenchmark measures RateLimiter.tryAcquire from all available threads on one limiter
+// admitted runs at a rate the threads cannot exhaust, so every call wins a CAS on the shared slot;
+// throttled runs at 1000/s, so nearly every call is a read-only rejection.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    private RateLimiter admitting;
+    private RateLimiter throttling;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        admitting = new RateLimiter("admitted", 1e9, 1_000_000, new SimpleMeterRegistry());
+        throttling = new RateLimiter("throttled", 1_000, 10, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public boolean admitted() {
+        return admitting.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean throttled() {
+        return throttling.tryAcquire();
+    }
+}
@@ -0,0 +1,115 @@
+package com.demopayment.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.resilience.CircuitBreaker;
+import com.demopayment.service.PaymentProviderRouter;
+
+// RoutingSimulation compares gateway selection policies while one gateway degrades
+// Concurrent clients send payments to three simulated gateways answering in ~20 ms; a third of the
+// way into each run paypal slows to ~250 ms and fails 20% of calls. The same load is run with a
+// uniformly random choice (the controller's old behaviour) and with PaymentProviderRouter, and the
+// latency percentiles, error rate and traffic share after the degradation are printed per policy.
+//
+// Usage: java -cp benchmarks.jar com.demopayment.benchmarks.RoutingSimulation
+//            [--concurrency 48] [--duration 15]
+
+public class RoutingSimulation {
+
+    private static final String[] GATEWAYS = {"stripe", "paypal", "braintree"};
+    private static final String DEGRADED = "paypal";
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.parseInt(HttpLoadTest.option(args, "--concurrency", "48"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(HttpLoadTest.option(args, "--duration", "15")));
+
+        System.out.printf("Routing simulation, %d clients, %d s per policy, %s degrades after %d s%n",
+            concurrency, duration.toSeconds(), DEGRADED, duration.toSeconds() / 3);
+        System.out.printf("%-8s %10s %8s %10s %10s %10s  %s%n", "policy", "payments", "errors", "p50 ms", "p99 ms", "p99.9 ms", "share");
+
+        run("random", () -> GATEWAYS[ThreadLocalRandom.current().nextInt(GATEWAYS.length)], null, concurrency, duration);
+
+        PaymentGatewayService gatewayService = new PaymentGatewayService(Fixtures.blacklist(), new SimpleMeterRegistry(),
+            CircuitBreaker.Settings.defaults(), 50, 20, Duration.ZERO);
+        PaymentProviderRouter router = new PaymentProviderRouter(gatewayService, new SimpleMeterRegistry(),
+            String.join(",", GATEWAYS), "", 0.5);
+        run("router", () -> router.selectProvider("user", 100.0, "USD", false), router, concurrency, duration);
+    }
+
+    private static void run(String policy, Supplier<String> selector, PaymentGatewayService.CallListener listener,
+                            int concurrency, Duration duration) throws Exception {
+        long start = System.nanoTime();
+        long degradeAt = start + duration.toNanos() / 3;
+        long end = start + duration.toNanos();
+        LongAdder errors = new LongAdder();
+        Map<String, LongAdder> share = new ConcurrentHashMap<>();
+        List<Future<long[]>> clients = new ArrayList<>(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                clients.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < end) {
+                        long sent = System.nanoTime();
+                        boolean degraded = sent >= degradeAt;
+                        String gateway = selector.get();
+                        if (listener != null) {
+                            listener.onCallStarted(gateway);
+                        }
+                        boolean success = call(gateway, degraded);
+                        long latency = System.nanoTime() - sent;
+                        if (listener != null) {
+                            listener.onCallCompleted(gateway, latency, success);
+                        }
+                        if (!degraded) {
+                            continue;
+                        }
+                        if (!success) {
+                            errors.increment();
+                        }
+                        share.computeIfAbsent(gateway, key -> new LongAdder()).increment();
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = latency;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+
+        List<long[]> results = new ArrayList<>();
+        for (Future<long[]> client : clients) {
+            results.add(client.get());
+        }
+        long[] all = results.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        Map<String, String> percentages = new TreeMap<>();
+        share.forEach((gateway, routed) -> percentages.put(gateway, String.format("%.1f%%", 100.0 * routed.sum() / all.length)));
+        System.out.printf("%-8s %10d %8d %10.2f %10.2f %10.2f  %s%n", policy, all.length, errors.sum(),
+            HttpLoadTest.percentileMs(all, 0.50), HttpLoadTest.percentileMs(all, 0.99),
+            HttpLoadTest.percentileMs(all, 0.999), percentages);
+    }
+
+    // Simulated gateway round trip; the degraded gateway is ten times slower and fails 20% of calls
+    private static boolean call(String gateway, boolean degraded) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean slow = degraded && gateway.equals(DEGRADED);
+        long millis = (slow ? 200 : 15) + random.nextLong(slow ? 100 : 10);
+        Thread.sleep(millis);
+        return !(slow && random.nextInt(100) < 20);
+    }
+}
@@ -0,0 +1,36 @@
+package com.demopayment.benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.demopayment.client.UserClient;
+import com.demopayment.model.UserProfile;
+
+// StubUserClient stands in for the UserApiServer mock inside the benchmark JVM
+// Returns a profile shaped like the mock's users, without network latency or injected errors
+
+public class StubUserClient extends UserClient {
+
+    @Override
+    public UserProfile getUserData(String userId) {
+        return profile(userId);
+    }
+
+    @Override
+    public Map<String, UserProfile> getUsers(Collection<String> userIds) {
+        Map<String, UserProfile> users = new HashMap<>();
+        for (String userId : userIds) {
+            users.put(userId, profile(userId));
+        }
+        return users;
+    }
+
+    static UserProfile profile(String userId) {
+        return new UserProfile(userId, "Benchmark User " + userId, "user" + userId + "@example.com",
+            "+1-555-0124", "payer", true, true, userId.hashCode() % 4 == 0, 1500.00, "USD",
+            "2023-02-20T14:30:00Z", "10.0." + (userId.hashCode() & 0xff) + ".1", "device-" + userId,
+            new UserProfile.Address("789 Home St", "New York", "NY", "10001", "USA"),
+            Map.of("language", "en", "timezone", "UTC", "notifications", "true", "currency", "USD"));
+    }
+}
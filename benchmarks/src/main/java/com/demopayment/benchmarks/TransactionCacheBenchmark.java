@@ -0,0 +1,99 @@
+package com.demopayment.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.Transaction;
+import com.demopayment.repository.TransactionCache;
+
+// TransactionCacheBenchmark measures read-through lookups against a Zipfian (s=0.99) stream over
+// 10M transaction ids, the skew of a payment history where recent and active accounts dominate.
+// Hits and misses are reported as auxiliary counters (hit ratio = hits / (hits + misses)); the heap
+// retained by the full cache is printed at the end of the trial.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TransactionCacheBenchmark {
+
+    private static final double ZIPF_THETA = 0.99;
+
+    @Param({"10000000"})
+    public long transactionCount;
+
+    @Param({"100000", "1000000"})
+    public int cacheSize;
+
+    private TransactionCache cache;
+    private ZipfianGenerator distribution;
+    private long baselineHeap;
+
+    @State(Scope.Thread)
+    public static class Stream {
+        ZipfianGenerator ids;
+
+        @Setup(Level.Trial)
+        public void setup(TransactionCacheBenchmark benchmark) {
+            ids = benchmark.distribution.withSeed(Thread.currentThread().threadId());
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        distribution = new ZipfianGenerator(transactionCount, ZIPF_THETA, 42);
+        baselineHeap = usedHeapAfterGc();
+        cache = Fixtures.transactionCache(cacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long retained = usedHeapAfterGc() - baselineHeap;
+        System.err.printf("cacheSize=%d entries=%d retained=%.1f MB (%.0f bytes/entry) hits=%d misses=%d%n",
+            cacheSize, cache.size(), retained / 1048576.0, (double) retained / Math.max(1, cache.size()),
+            cache.hitCount(), cache.missCount());
+    }
+
+    /*
+     * A miss builds the transaction the way a database load would and caches it
+     */
+    @Benchmark
+    public Transaction lookup(Stream stream, Outcomes outcomes) {
+        String id = "TXN" + stream.ids.next();
+        Transaction cached = cache.get(id);
+        if (cached != null) {
+            outcomes.hits++;
+            return cached;
+        }
+        outcomes.misses++;
+        Transaction loaded = new Transaction();
+        loaded.setId(id);
+        cache.put(loaded);
+        return loaded;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,44 @@
+package com.demopayment.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.TransactionIdGenerator;
+
+// TransactionIdBenchmark measures id generation from all available threads on one generator
+// counter is the AtomicInteger + string concatenation Transaction used before, for comparison.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class TransactionIdBenchmark {
+
+    private TransactionIdGenerator generator;
+    private AtomicInteger counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        generator = new TransactionIdGenerator(1);
+        counter = new AtomicInteger();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public String nextIdString() {
+        return generator.nextIdString();
+    }
+
+    @Benchmark
+    public String counter() {
+        return "TXN" + counter.incrementAndGet();
+    }
+}
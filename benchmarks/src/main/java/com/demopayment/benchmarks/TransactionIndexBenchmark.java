@@ -0,0 +1,88 @@
+package com.demopayment.benchmarks;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import com.demopayment.repository.TransactionIndex;
+import com.demopayment.repository.TransactionIndex.Flag;
+
+// TransactionIndexBenchmark measures the findTransactions filters on the secondary index at 1M and
+// 10M transactions, against scanning every transaction the way the repository used to.
+// Amounts spread over 10..20,000 with about a quarter premium and two thirds processed; the
+// selective query (amount > 19,000, premium, processed) matches about 0.8% of the rows.
+
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class TransactionIndexBenchmark {
+
+    private static final Set<Flag> PREMIUM_PROCESSED = EnumSet.of(Flag.PREMIUM, Flag.PROCESSED);
+
+    @Param({"1000000", "10000000"})
+    public int transactionCount;
+
+    private TransactionIndex index;
+    private Transaction[] transactions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.silenceStdout();
+        index = new TransactionIndex(Fixtures.exchangeRates());
+        transactions = new Transaction[transactionCount];
+        for (int i = 0; i < transactionCount; i++) {
+            Transaction transaction = new Transaction(Fixtures.userId(i), Money.ofMinor((10 + i * 7919L % 20_000) * 100, "USD"));
+            transaction.isPremiumUser = i % 4 == 0;
+            transaction.setProcessed(i % 3 != 0);
+            transactions[i] = transaction;
+            index.put(transaction);
+        }
+    }
+
+    @Benchmark
+    public List<String> highValuePremiumProcessed() {
+        return index.findIds(1000.0, PREMIUM_PROCESSED);
+    }
+
+    @Benchmark
+    public List<String> selectiveAmountPremiumProcessed() {
+        return index.findIds(19_000.0, PREMIUM_PROCESSED);
+    }
+
+    /*
+     * What findTransactions(true, true, true) cost before the index: a predicate over every transaction
+     */
+    @Benchmark
+    public List<String> scanBaseline() {
+        List<String> matches = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            if (transaction.getAmount().doubleValue() > 1000.0 && transaction.isPremiumUser() && transaction.isProcessed()) {
+                matches.add(transaction.getId());
+            }
+        }
+        return matches;
+    }
+
+    /*
+     * A refund: flags change, the amount does not
+     */
+    @Benchmark
+    public void updateFlags(Cursor cursor) {
+        Transaction transaction = transactions[Math.floorMod(cursor.next++, transactionCount)];
+        transaction.isRefunded = !transaction.isRefunded;
+        index.put(transaction);
+    }
+}
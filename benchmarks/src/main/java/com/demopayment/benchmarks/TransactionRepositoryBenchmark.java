@@ -0,0 +1,78 @@
+package com.demopayment.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import com.demopayment.repository.JpaTransactionRepository;
+import com.demopayment.repository.TransactionRepository;
+import com.demopayment.repository.TransactionWriteBuffer;
+
+// TransactionRepositoryBenchmark measures save, findById and findTransactions
+// The repository is preloaded so lookups and filters run against a realistic working set
+// writeBehind=false writes each save on the calling thread, true hands it to the write buffer
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionRepositoryBenchmark {
+
+    @Param({"10000"})
+    public int transactionCount;
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private TransactionWriteBuffer writeBuffer;
+    private TransactionRepository repository;
+    private Transaction[] transactions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.silenceStdout();
+        JpaTransactionRepository jpaRepository = InMemoryJpaTransactionRepository.create();
+        writeBuffer = Fixtures.transactionWriteBuffer(jpaRepository, writeBehind);
+        repository = Fixtures.transactionRepository(jpaRepository, writeBuffer);
+        transactions = new Transaction[transactionCount];
+        for (int i = 0; i < transactionCount; i++) {
+            Transaction transaction = new Transaction(Fixtures.userId(i), Money.ofMinor(((i % 50) * 50 + 10) * 100L, "USD"));
+            transaction.isPremiumUser = i % 4 == 0;
+            transaction.setProcessed(i % 3 != 0);
+            transactions[i] = transaction;
+            repository.save(transaction);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writeBuffer.shutdown();
+    }
+
+    /*
+     * Re-saves existing transactions so the working set stays the same size across iterations
+     */
+    @Benchmark
+    public void save(Cursor cursor) {
+        repository.save(transactions[Math.floorMod(cursor.next++, transactionCount)]);
+    }
+
+    @Benchmark
+    public Transaction findById(Cursor cursor) {
+        return repository.findById(transactions[Math.floorMod(cursor.next++, transactionCount)].getId());
+    }
+
+    @Benchmark
+    public List<Transaction> findTransactions() {
+        return repository.findTransactions(true, true, true);
+    }
+}
@@ -0,0 +1,108 @@
+package com.demopayment.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.demopayment.client.UserClient;
+import com.demopayment.external.UserApiServer;
+import com.demopayment.resilience.CircuitBreaker;
+
+// UserClientLoadTest drives UserClient against the UserApiServer mock and reports tail latency
+// Runs the same closed-loop load through the blocking client, the async client and the async
+// client with hedging, and prints RPS, errors, p50/p95/p99/p99.9 and the hedged attempts per mode.
+// The mock is started in process on port 8081 unless --url points at a running one.
+//
+// Usage: java -cp benchmarks.jar com.demopayment.benchmarks.UserClientLoadTest
+//            [--url http://localhost:8081] [--concurrency 64] [--duration 20] [--warmup 5]
+//            [--request-timeout-ms 2000]
+
+public class UserClientLoadTest {
+
+    private static final String[] USER_IDS = {"1001", "1002", "2001"};
+
+    private record Mode(String name, boolean async, boolean hedging) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = HttpLoadTest.option(args, "--url", null);
+        int concurrency = Integer.parseInt(HttpLoadTest.option(args, "--concurrency", "64"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(HttpLoadTest.option(args, "--duration", "20")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(HttpLoadTest.option(args, "--warmup", "5")));
+        Duration requestTimeout = Duration.ofMillis(Long.parseLong(HttpLoadTest.option(args, "--request-timeout-ms", "2000")));
+        if (url == null) {
+            UserApiServer.start();
+            url = "http://localhost:8081";
+        }
+
+        System.out.printf("UserClient load test against %s, concurrency %d, %d s per mode%n",
+            url, concurrency, duration.toSeconds());
+        System.out.printf("%-14s %10s %8s %10s %10s %10s %10s %10s %8s%n",
+            "mode", "requests", "errors", "rps", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "hedges");
+        try {
+            for (Mode mode : List.of(new Mode("blocking", false, false), new Mode("async", true, false),
+                                     new Mode("async-hedged", true, true))) {
+                UserClient client = new UserClient(url, mode.async(), Duration.ofSeconds(1), requestTimeout,
+                    3, Duration.ofMillis(100), mode.hedging(),
+                    new CircuitBreaker("user-service", CircuitBreaker.Settings.defaults(), new SimpleMeterRegistry()));
+                run(client, concurrency, warmup);
+                long hedgesBefore = client.hedgeCount();
+                AtomicLong errors = new AtomicLong();
+                long start = System.nanoTime();
+                long[] latencies = run(client, concurrency, duration, errors);
+                double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-14s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                    mode.name(), latencies.length, errors.get(), latencies.length / elapsedSeconds,
+                    HttpLoadTest.percentileMs(latencies, 0.50), HttpLoadTest.percentileMs(latencies, 0.95),
+                    HttpLoadTest.percentileMs(latencies, 0.99), HttpLoadTest.percentileMs(latencies, 0.999),
+                    client.hedgeCount() - hedgesBefore);
+            }
+        } finally {
+            UserApiServer.stop();
+        }
+    }
+
+    private static void run(UserClient client, int concurrency, Duration duration) throws Exception {
+        run(client, concurrency, duration, new AtomicLong());
+    }
+
+    private static long[] run(UserClient client, int concurrency, Duration duration, AtomicLong errors) throws Exception {
+        long end = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> workers = new ArrayList<>(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < end) {
+                        String userId = USER_IDS[ThreadLocalRandom.current().nextInt(USER_IDS.length)];
+                        long sent = System.nanoTime();
+                        try {
+                            client.getUserData(userId);
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - sent;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        List<long[]> results = new ArrayList<>();
+        for (Future<long[]> worker : workers) {
+            results.add(worker.get());
+        }
+        return results.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+    }
+}
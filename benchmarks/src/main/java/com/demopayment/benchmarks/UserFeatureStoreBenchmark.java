@@ -0,0 +1,76 @@
+package com.demopayment.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.fraud.UserFeatureStore;
+import com.demopayment.fraud.UserFeatures;
+
+// UserFeatureStoreBenchmark measures streaming feature updates and reads with 1M active users
+// The store is filled with every user before measuring; ops/us x 1e6 is updates (or reads) per second.
+// Each user pays from one of 4 devices and 4 IPs, drawn from pools shared by all users.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UserFeatureStoreBenchmark {
+
+    private static final int USERS = 1_000_000;
+    private static final int POOL_MASK = (1 << 18) - 1;
+
+    @Param({"64"})
+    public int memoryMb;
+
+    private UserFeatureStore store;
+    private final String[] userIds = new String[USERS];
+    private final String[] deviceIds = new String[POOL_MASK + 1];
+    private final String[] ipAddresses = new String[POOL_MASK + 1];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int) Thread.currentThread().threadId() * 7919;
+        long now = System.currentTimeMillis();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = Integer.toString(1_000_000 + i);
+        }
+        for (int i = 0; i <= POOL_MASK; i++) {
+            deviceIds[i] = "device-" + i;
+            ipAddresses[i] = "10." + (i >>> 16) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+        store = Fixtures.userFeatureStore(memoryMb);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < USERS; i++) {
+            store.record(userIds[i], ip(i, i), device(i, i), 10 + i % 500, now);
+        }
+    }
+
+    @Benchmark
+    public long record(Cursor cursor) {
+        int i = cursor.next++;
+        int user = Math.floorMod(i * 0x9E3779B1, USERS);
+        store.record(userIds[user], ip(user, i), device(user, i), 10 + (i & 0x1ff), cursor.now++);
+        return store.size();
+    }
+
+    @Benchmark
+    public UserFeatures read(Cursor cursor) {
+        int i = cursor.next++;
+        int user = Math.floorMod(i * 0x9E3779B1, USERS);
+        return store.read(userIds[user], ip(user, i), device(user, i));
+    }
+
+    private String device(int user, int i) {
+        return deviceIds[(user * 4 + (i & 3)) & POOL_MASK];
+    }
+
+    private String ip(int user, int i) {
+        return ipAddresses[(user * 4 + ((i >>> 2) & 3)) & POOL_MASK];
+    }
+}
@@ -0,0 +1,66 @@
+package com.demopayment.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.UserProfile;
+import com.demopayment.service.UserProfileCodec;
+
+// UserProfileCodecBenchmark compares the binary Redis encoding of a profile with the JSON string
+// it replaces (ObjectMapper into a Map, as UserService used to cache it) and with JSON bound to the
+// record. Encoded sizes are printed at the start of the trial.
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserProfileCodecBenchmark {
+
+    private static final ObjectMapper jacksonMapper = new ObjectMapper();
+
+    private UserProfile profile;
+    private Map<?, ?> profileMap;
+    private byte[] binary;
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setup() throws JsonProcessingException {
+        profile = StubUserClient.profile(Fixtures.userId(7));
+        json = jacksonMapper.writeValueAsString(profile);
+        profileMap = jacksonMapper.readValue(json, Map.class);
+        binary = UserProfileCodec.encode(profile);
+        System.err.printf("encoded profile: binary=%d bytes json=%d bytes%n",
+            binary.length, json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return UserProfileCodec.encode(profile);
+    }
+
+    @Benchmark
+    public String encodeJsonMap() throws JsonProcessingException {
+        return jacksonMapper.writeValueAsString(profileMap);
+    }
+
+    @Benchmark
+    public UserProfile decodeBinary() {
+        return UserProfileCodec.decode(binary);
+    }
+
+    @Benchmark
+    public Map<?, ?> decodeJsonMap() throws JsonProcessingException {
+        return jacksonMapper.readValue(json, Map.class);
+    }
+
+    @Benchmark
+    public UserProfile decodeJsonRecord() throws JsonProcessingException {
+        return jacksonMapper.readValue(json, UserProfile.class);
+    }
+}
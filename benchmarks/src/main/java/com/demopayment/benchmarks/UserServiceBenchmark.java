@@ -0,0 +1,55 @@
+package com.demopayment.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+import com.demopayment.model.UserProfile;
+import com.demopayment.service.UserService;
+
+// UserServiceBenchmark measures UserService.getUserData served by the in-process tier, by Redis
+// (an L1 too small to hold the pool) and by neither. A miss goes through the UserClient stand-in
+// and writes the profile back to both tiers
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+    private UserService warmUserService;
+    private UserService redisUserService;
+    private UserService coldUserService;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryRedisTemplate redis = new InMemoryRedisTemplate();
+        warmUserService = Fixtures.userService(redis);
+        for (int i = 0; i < Fixtures.USER_POOL_SIZE; i++) {
+            warmUserService.getUserData(Fixtures.userId(i));
+        }
+        redisUserService = Fixtures.userService(redis, 16);
+        coldUserService = Fixtures.userService(InMemoryRedisTemplate.discardingWrites(), 16);
+    }
+
+    @Benchmark
+    public UserProfile getUserDataCacheHit(Cursor cursor) {
+        return warmUserService.getUserData(Fixtures.userId(cursor.next++));
+    }
+
+    @Benchmark
+    public UserProfile getUserDataRedisHit(Cursor cursor) {
+        return redisUserService.getUserData(Fixtures.userId(cursor.next++));
+    }
+
+    @Benchmark
+    public UserProfile getUserDataCacheMiss(Cursor cursor) {
+        return coldUserService.getUserData(Fixtures.userId(cursor.next++));
+    }
+}
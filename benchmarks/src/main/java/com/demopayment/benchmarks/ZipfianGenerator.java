@@ -0,0 +1,63 @@
+package com.demopayment.benchmarks;
+
+import java.util.SplittableRandom;
+
+// ZipfianGenerator draws ranks in [0, items) where rank k has probability proportional to 1/(k+1)^s
+// Uses the rejection-free method of Gray et al. ("Quickly Generating Billion-Record Synthetic
+// Databases"), the same one YCSB uses; zeta(items) is computed once, which is O(items).
+
+final class ZipfianGenerator {
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+    private final SplittableRandom random;
+
+    ZipfianGenerator(long items, double theta, long seed) {
+        this.items = items;
+        this.theta = theta;
+        this.random = new SplittableRandom(seed);
+        double zeta2 = zeta(2, theta);
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+    }
+
+    /*
+     * A generator with the same distribution and its own random stream, without recomputing zeta
+     */
+    private ZipfianGenerator(ZipfianGenerator shared, long seed) {
+        this.items = shared.items;
+        this.theta = shared.theta;
+        this.alpha = shared.alpha;
+        this.zetan = shared.zetan;
+        this.eta = shared.eta;
+        this.random = new SplittableRandom(seed);
+    }
+
+    ZipfianGenerator withSeed(long seed) {
+        return new ZipfianGenerator(this, seed);
+    }
+
+    long next() {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,336 @@
+package com.demopayment.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+// LocalCache is an in-process cache bounded by entry count and age, keyed by string ids
+// Keys are spread over independently locked stripes, each a segmented LRU: new entries start in a
+// probation segment and move to a protected segment (80% of the stripe) on their second hit, so a
+// burst of one-off lookups evicts other one-off entries instead of the hot working set.
+// Entries expire ttl after they were last written. Size, hits, misses and evictions are published
+// as <name>.size, <name>.requests{result} and <name>.evictions{cause}.
+
+public final class LocalCache<V> {
+
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int capacity;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public LocalCache(MeterRegistry meterRegistry, String name, Tags tags,
+                      int maxEntries, int stripeCount, Duration ttl, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, Math.min(stripeCount, maxEntries)));
+        int perStripe = (maxEntries + size - 1) / size;
+        this.stripes = (Stripe[]) new LocalCache<?>.Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.mask = size - 1;
+        this.capacity = perStripe * size;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+
+        Gauge.builder(name + ".size", this, LocalCache::size).tags(tags).register(meterRegistry);
+        FunctionCounter.builder(name + ".requests", hits, LongAdder::sum)
+            .tags(tags).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder(name + ".requests", misses, LongAdder::sum)
+            .tags(tags).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder(name + ".evictions", evictions, LongAdder::sum)
+            .tags(tags).tag("cause", "size").register(meterRegistry);
+        FunctionCounter.builder(name + ".evictions", expirations, LongAdder::sum)
+            .tags(tags).tag("cause", "expired").register(meterRegistry);
+    }
+
+    /*
+     * The cached value, or null when it is absent or expired
+     */
+    public V get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Stripe stripe = stripeFor(key);
+        long now = clock.millis();
+        stripe.lock.lock();
+        try {
+            V value = stripe.get(key, now);
+            if (value == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /*
+     * Read-through lookup: on a miss the loader runs outside the stripe lock and a non-null
+     * result is cached
+     */
+    public V get(String key, Function<String, V> loader) {
+        V value = get(key);
+        if (value != null || key == null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /*
+     * The cached value, or null when it is absent or expired, without counting a request or
+     * promoting the entry
+     */
+    public V peek(String key) {
+        Stripe stripe = stripeFor(key);
+        long now = clock.millis();
+        stripe.lock.lock();
+        try {
+            CacheEntry<V> entry = stripe.entry(key);
+            return entry == null || expired(entry, now) ? null : entry.value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /*
+     * Milliseconds since the entry was last written, or -1 when it is absent
+     */
+    public long ageMillis(String key) {
+        Stripe stripe = stripeFor(key);
+        long now = clock.millis();
+        stripe.lock.lock();
+        try {
+            CacheEntry<V> entry = stripe.entry(key);
+            return entry == null ? -1 : now - entry.writtenAt;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void put(String key, V value) {
+        Stripe stripe = stripeFor(key);
+        long now = clock.millis();
+        stripe.lock.lock();
+        try {
+            stripe.put(key, value, now);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        if (key == null) {
+            return;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            if (stripe.probation.remove(key) == null) {
+                stripe.protectedSegment.remove(key);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.probation.clear();
+                stripe.protectedSegment.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Snapshot of the live entries; does not count as access
+     */
+    public List<V> values() {
+        long now = clock.millis();
+        List<V> values = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.collect(stripe.probation, now, values);
+                stripe.collect(stripe.protectedSegment, now, values);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return values;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.probation.size() + stripe.protectedSegment.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private boolean expired(CacheEntry<V> entry, long now) {
+        return now - entry.writtenAt >= ttlMillis;
+    }
+
+    private final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Both segments are access-ordered, eldest first
+        private final LinkedHashMap<String, CacheEntry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, CacheEntry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        private final int protectedCapacity;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+        }
+
+        // Caller must hold the lock
+        CacheEntry<V> entry(String id) {
+            CacheEntry<V> entry = protectedSegment.get(id);
+            return entry != null ? entry : probation.get(id);
+        }
+
+        // Caller must hold the lock
+        V get(String id, long now) {
+            CacheEntry<V> entry = protectedSegment.get(id);
+            if (entry == null) {
+                entry = probation.get(id);
+                if (entry == null) {
+                    return null;
+                }
+                if (expired(entry, now)) {
+                    probation.remove(id);
+                    expirations.increment();
+                    return null;
+                }
+                probation.remove(id);
+                promote(id, entry);
+                return entry.value;
+            }
+            if (expired(entry, now)) {
+                protectedSegment.remove(id);
+                expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        // Caller must hold the lock
+        void put(String id, V value, long now) {
+            CacheEntry<V> entry = protectedSegment.get(id);
+            if (entry == null) {
+                entry = probation.get(id);
+            }
+            if (entry != null) {
+                entry.value = value;
+                entry.writtenAt = now;
+                return;
+            }
+            probation.put(id, new CacheEntry<>(value, now));
+            evictIfFull();
+        }
+
+        // Caller must hold the lock
+        void collect(Map<String, CacheEntry<V>> segment, long now, List<V> into) {
+            for (CacheEntry<V> entry : segment.values()) {
+                if (!expired(entry, now)) {
+                    into.add(entry.value);
+                }
+            }
+        }
+
+        private void promote(String id, CacheEntry<V> entry) {
+            protectedSegment.put(id, entry);
+            if (protectedSegment.size() > protectedCapacity) {
+                // Demoted entries get another chance at the young end of probation
+                Iterator<Map.Entry<String, CacheEntry<V>>> eldest = protectedSegment.entrySet().iterator();
+                Map.Entry<String, CacheEntry<V>> demoted = eldest.next();
+                eldest.remove();
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+            evictIfFull();
+        }
+
+        private void evictIfFull() {
+            while (probation.size() + protectedSegment.size() > capacity) {
+                Iterator<Map.Entry<String, CacheEntry<V>>> eldest = (probation.isEmpty() ? protectedSegment : probation)
+                    .entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    // Only read or written while holding the owning stripe's lock
+    private static final class CacheEntry<V> {
+        V value;
+        long writtenAt;
+
+        CacheEntry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
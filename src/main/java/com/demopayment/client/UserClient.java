@@ -1,108 +1,425 @@
 package com.demopayment.client;
 
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.demopayment.exception.CallNotPermittedException;
+import com.demopayment.model.UserProfile;
+import com.demopayment.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// UserClient calls the external user service (UserApiServer in development)
+// Both modes share one java.net.http.HttpClient, which keeps HTTP/1.1 connections alive and reuses
+// them across requests, with a connect timeout and a timeout per attempt. In blocking mode the
+// calling thread sleeps between retries; in async mode attempts are chained on CompletableFutures,
+// backoff runs on a delayed executor and a slow attempt is hedged with a second one once it has
+// been outstanding for the recent p95 latency. The first successful response wins.
+// Every attempt goes through the circuit breaker, so an unhealthy or slow user service is shed
+// straight away with CallNotPermittedException instead of tying up callers in retries.
 
 public class UserClient {
+    private static final Logger logger = LoggerFactory.getLogger(UserClient.class);
     private static final String BASE_URL = "http://localhost:8081";
-    private static final RestTemplate restTemplate = new RestTemplate();
+    private static final TypeReference<Map<String, UserProfile>> USERS_BY_ID = new TypeReference<>() {};
     public static final ObjectMapper mapper = new ObjectMapper();
     
-    private static final AtomicInteger failureCount = new AtomicInteger(0);
-    private static final AtomicLong lastFailureTime = new AtomicLong(0);
-    private static final AtomicInteger circuitState = new AtomicInteger(0); // 0: CLOSED, 1: OPEN, 2: HALF_OPEN
-    
     private static final int MAX_RETRIES = 3;
-    private static final int RETRY_DELAY_MS = 1000;
-    private static final int CIRCUIT_OPEN_THRESHOLD = 5;
-    private static final int CIRCUIT_RESET_TIMEOUT_MS = 30000;
-    private static final int CIRCUIT_HALF_OPEN_TIMEOUT_MS = 5000;
+    private static final int MAX_BACKOFF_MS = 2000;
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_CONCURRENT_BATCHES = 16;
+    // At most one hedged attempt per HEDGE_BUDGET requests, so hedging cannot double the load
+    private static final int HEDGE_BUDGET = 10;
     
-    private static final Map<String, Map<String, Object>> userCache = new HashMap<>();
+    private final String baseUrl;
+    private final boolean async;
+    private final Duration requestTimeout;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final boolean hedging;
+    private final HttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyWindow latencies = new LatencyWindow();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
     
-    public Map<String, Object> getUserData(String userId) {
-        if (userCache.containsKey(userId)) {
-            return userCache.get(userId);
+    public UserClient() {
+        this(BASE_URL, false, Duration.ofSeconds(1), Duration.ofSeconds(2), MAX_RETRIES, Duration.ofMillis(100), false,
+            new CircuitBreaker("user-service", CircuitBreaker.Settings.defaults(), new SimpleMeterRegistry()));
+    }
+    
+    public UserClient(String baseUrl, boolean async, Duration connectTimeout, Duration requestTimeout,
+                      int maxAttempts, Duration backoff, boolean hedging, CircuitBreaker circuitBreaker) {
+        this.baseUrl = baseUrl;
+        this.async = async;
+        this.requestTimeout = requestTimeout;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoff.toMillis();
+        this.hedging = hedging;
+        this.circuitBreaker = circuitBreaker;
+        // The pool keeps idle connections for jdk.httpclient.keepalive.timeout (default 30s)
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(requestTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+    
+    public UserProfile getUserData(String userId) {
+        if (async) {
+            return await(getUserDataAsync(userId));
         }
-        
-        if (isCircuitOpen()) {
-            throw new RuntimeException("Circuit breaker is open");
+        return callBlocking(() -> restTemplate.getForEntity(baseUrl + "/users/" + userId, String.class),
+            body -> mapper.readValue(body, UserProfile.class), "user data");
+    }
+    
+    /*
+     * Non-blocking lookup: no thread waits on the response or during backoff. A 4xx answer fails
+     * the lookup without a retry; other failures are retried up to the configured attempts.
+     */
+    public CompletableFuture<UserProfile> getUserDataAsync(String userId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/users/" + userId))
+            .timeout(requestTimeout)
+            .GET()
+            .build();
+        return callAsync(request, body -> mapper.readValue(body, UserProfile.class), "user data");
+    }
+    
+    /*
+     * Fetches many users through POST /users/batch, BATCH_SIZE ids per request with up to
+     * MAX_CONCURRENT_BATCHES requests in flight. A batch that still fails after its retries is
+     * logged and skipped, so the result holds every user that could be fetched; unknown ids are
+     * left out too.
+     */
+    public Map<String, UserProfile> getUsers(Collection<String> userIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        if (ids.size() <= BATCH_SIZE) {
+            return ids.isEmpty() ? Map.of() : fetchBatch(ids);
         }
         
+        Map<String, UserProfile> users = new ConcurrentHashMap<>();
+        AtomicInteger failedBatches = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(MAX_CONCURRENT_BATCHES);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                List<String> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+                executor.submit(() -> {
+                    inFlight.acquire();
+                    try {
+                        users.putAll(fetchBatch(batch));
+                    } catch (RuntimeException e) {
+                        failedBatches.incrementAndGet();
+                        logger.warn("Failed to fetch a batch of {} users: {}", batch.size(), e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                });
+            }
+        }
+        if (failedBatches.get() > 0) {
+            logger.warn("Fetched {} of {} users, {} batches failed", users.size(), ids.size(), failedBatches.get());
+        }
+        return users;
+    }
+    
+    private Map<String, UserProfile> fetchBatch(List<String> userIds) {
+        if (async) {
+            return await(fetchBatchAsync(userIds));
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<String> request;
+        try {
+            request = new HttpEntity<>(mapper.writeValueAsString(userIds), headers);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode user ids", e);
+        }
+        return callBlocking(() -> restTemplate.postForEntity(baseUrl + "/users/batch", request, String.class),
+            body -> mapper.readValue(body, USERS_BY_ID), userIds.size() + " users");
+    }
+    
+    /*
+     * Blocking retry loop: each attempt needs a circuit breaker permit and the calling thread
+     * sleeps through the backoff. A 4xx answer fails without a retry.
+     */
+    private <T> T callBlocking(Supplier<ResponseEntity<String>> call, BodyParser<T> parser, String what) {
         int retryCount = 0;
-        while (retryCount < MAX_RETRIES) {
+        while (retryCount < maxAttempts) {
+            long permit = circuitBreaker.tryAcquirePermit();
+            if (permit == CircuitBreaker.NOT_PERMITTED) {
+                throw new CallNotPermittedException(circuitBreaker.getName());
+            }
+            long start = System.nanoTime();
             try {
-                ResponseEntity<String> response = restTemplate.getForEntity(
-                    BASE_URL + "/users/" + userId,
-                    String.class
-                );
-                
+                ResponseEntity<String> response = call.get();
                 if (response.getStatusCode() == HttpStatus.OK) {
-                    Map<String, Object> userData = mapper.readValue(response.getBody(), Map.class);
-                    userCache.put(userId, userData);
-                    resetCircuitBreaker();
-                    return userData;
-                } else {
-                    handleFailure();
-                    retryCount++;
-                    Thread.sleep(RETRY_DELAY_MS);
+                    T value = parser.parse(response.getBody());
+                    circuitBreaker.onSuccess(permit, System.nanoTime() - start);
+                    return value;
                 }
+                circuitBreaker.onError(permit, System.nanoTime() - start);
+            } catch (HttpClientErrorException e) {
+                circuitBreaker.onSuccess(permit, System.nanoTime() - start);
+                throw new ClientErrorException("User service returned " + e.getStatusCode().value() + " for " + what);
             } catch (Exception e) {
-                handleFailure();
-                retryCount++;
-                
-                if (retryCount < MAX_RETRIES) {
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
+                circuitBreaker.onError(permit, System.nanoTime() - start);
+            }
+            retryCount++;
+            
+            if (retryCount < maxAttempts) {
+                try {
+                    Thread.sleep(backoffMillis(retryCount));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while getting " + what, e);
                 }
             }
         }
         
-        throw new RuntimeException("Failed to get user data after " + MAX_RETRIES + " retries");
+        throw new RuntimeException("Failed to get " + what + " after " + maxAttempts + " retries");
     }
     
-    private boolean isCircuitOpen() {
-        long currentTime = System.currentTimeMillis();
-        
-        if (circuitState.get() == 1) {
-            if (currentTime - lastFailureTime.get() > CIRCUIT_RESET_TIMEOUT_MS) {
-                circuitState.set(2);
-                return false;
+    private CompletableFuture<Map<String, UserProfile>> fetchBatchAsync(List<String> userIds) {
+        String body;
+        try {
+            body = mapper.writeValueAsString(userIds);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to encode user ids", e));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/users/batch"))
+            .timeout(requestTimeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return callAsync(request, response -> mapper.readValue(response, USERS_BY_ID), userIds.size() + " users");
+    }
+    
+    /*
+     * Milliseconds an attempt runs before it is hedged: the p95 of recent successful attempts,
+     * or -1 while hedging is off or there are too few samples
+     */
+    public long hedgeDelayMillis() {
+        return hedging ? latencies.p95Millis() : -1;
+    }
+    
+    public long hedgeCount() {
+        return hedges.sum();
+    }
+    
+    private <T> CompletableFuture<T> callAsync(HttpRequest request, BodyParser<T> parser, String what) {
+        requests.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(request, parser, what, 1, result);
+        return result;
+    }
+    
+    private <T> void attemptAsync(HttpRequest request, BodyParser<T> parser, String what, int attempt,
+                                  CompletableFuture<T> result) {
+        long permit = circuitBreaker.tryAcquirePermit();
+        if (permit == CircuitBreaker.NOT_PERMITTED) {
+            result.completeExceptionally(new CallNotPermittedException(circuitBreaker.getName()));
+            return;
+        }
+        hedged(request, parser, permit).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof ClientErrorException) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                result.completeExceptionally(new RuntimeException(
+                    "Failed to get " + what + " after " + attempt + " retries", cause));
+                return;
             }
-            return true;
+            CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                .execute(() -> attemptAsync(request, parser, what, attempt + 1, result));
+        });
+    }
+    
+    /*
+     * Sends the request and, if it is still outstanding after the hedge delay, the same request
+     * again. Completes with the first success, or with the last failure once both have failed;
+     * the losing attempt is cancelled.
+     */
+    private <T> CompletableFuture<T> hedged(HttpRequest request, BodyParser<T> parser, long permit) {
+        CompletableFuture<T> primary = send(request, parser, permit);
+        long delay = hedgeDelayMillis();
+        if (delay < 0) {
+            return primary;
         }
-        
-        if (circuitState.get() == 2) {
-            if (currentTime - lastFailureTime.get() > CIRCUIT_HALF_OPEN_TIMEOUT_MS) {
-                circuitState.set(0);
-                return false;
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>(List.of(primary));
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<T, Throwable> relay = (value, error) -> {
+            if (error == null) {
+                winner.complete(value);
+            } else if (outstanding.decrementAndGet() == 0) {
+                winner.completeExceptionally(error);
+            }
+        };
+        primary.whenComplete(relay);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            // Only a closed breaker hedges: trial calls of a half-open one are not duplicated
+            if (winner.isDone() || hedges.sum() * HEDGE_BUDGET >= requests.sum()
+                    || circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                return;
+            }
+            long hedgePermit = circuitBreaker.tryAcquirePermit();
+            if (hedgePermit == CircuitBreaker.NOT_PERMITTED) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            hedges.increment();
+            CompletableFuture<T> hedge = send(request, parser, hedgePermit);
+            attempts.add(hedge);
+            hedge.whenComplete(relay);
+        });
+        winner.whenComplete((value, error) -> attempts.forEach(attempt -> attempt.cancel(true)));
+        return winner;
+    }
+    
+    /*
+     * One attempt, holding a circuit breaker permit; its outcome is recorded unless it is cancelled
+     */
+    private <T> CompletableFuture<T> send(HttpRequest request, BodyParser<T> parser, long permit) {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        exchange.whenComplete((response, error) -> {
+            if (error != null && !exchange.isCancelled()) {
+                circuitBreaker.onError(permit, System.nanoTime() - start);
+            }
+        });
+        CompletableFuture<T> result = exchange.thenApply(response -> {
+            long elapsed = System.nanoTime() - start;
+            int status = response.statusCode();
+            if (status >= 400 && status < 500) {
+                circuitBreaker.onSuccess(permit, elapsed);
+                throw new ClientErrorException("User service returned " + status + " for " + request.uri().getPath());
+            }
+            if (status != 200) {
+                circuitBreaker.onError(permit, elapsed);
+                throw new RuntimeException("User service returned " + status);
+            }
+            try {
+                T value = parser.parse(response.body());
+                circuitBreaker.onSuccess(permit, elapsed);
+                latencies.record(elapsed);
+                return value;
+            } catch (IOException e) {
+                circuitBreaker.onError(permit, elapsed);
+                throw new RuntimeException("Malformed response from user service", e);
             }
-            return true;
+        });
+        // Cancelling the dependent stage does not reach the exchange, so abort it explicitly
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    /*
+     * Full jitter: a random delay up to backoff * 2^(attempt - 1), capped at MAX_BACKOFF_MS, so
+     * callers that failed together do not retry together
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, backoffMillis << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+    
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
-        
-        return false;
     }
     
-    private void handleFailure() {
-        int failures = failureCount.incrementAndGet();
-        lastFailureTime.set(System.currentTimeMillis());
-        
-        if (failures >= CIRCUIT_OPEN_THRESHOLD) {
-            circuitState.set(1);
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(String body) throws IOException;
+    }
+    
+    // Not worth retrying: the same request would get the same answer
+    private static class ClientErrorException extends RuntimeException {
+        ClientErrorException(String message) {
+            super(message);
         }
     }
     
-    private void resetCircuitBreaker() {
-        failureCount.set(0);
-        circuitState.set(0);
+    // Ring of the latest successful attempt latencies; the p95 is recomputed every RECOMPUTE_EVERY samples
+    private static final class LatencyWindow {
+        private static final int SIZE = 512;
+        private static final int RECOMPUTE_EVERY = 64;
+        
+        private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private volatile long p95Millis = -1;
+        
+        void record(long nanos) {
+            long n = count.getAndIncrement();
+            samples.set((int) (n % SIZE), nanos);
+            if ((n + 1) % RECOMPUTE_EVERY == 0) {
+                int filled = (int) Math.min(n + 1, SIZE);
+                long[] sorted = new long[filled];
+                for (int i = 0; i < filled; i++) {
+                    sorted[i] = samples.get(i);
+                }
+                Arrays.sort(sorted);
+                p95Millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(filled * 0.95) - 1]));
+            }
+        }
+        
+        long p95Millis() {
+            return p95Millis;
+        }
     }
-} 
\ No newline at end of file
+}
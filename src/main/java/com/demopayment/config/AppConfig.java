@@ -1,13 +1,27 @@
 package com.demopayment.config;
 
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.demopayment.client.UserClient;
+import com.demopayment.model.TransactionIdGenerator;
+import com.demopayment.repository.NodeIdLease;
+import com.demopayment.resilience.CircuitBreaker;
+import com.demopayment.service.UserCache;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
     
     @Bean
@@ -22,6 +36,85 @@ public class AppConfig {
         return template;
     }
     
+    /*
+     * Raw byte values under plain string keys, for values that carry their own encoding
+     * (user profiles are stored as UserProfileCodec bytes)
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+    
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       UserCache userCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(userCache, new ChannelTopic(UserCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+    
+    @Bean
+    public UserClient userClient(@Value("${payment.user-client.base-url:http://localhost:8081}") String baseUrl,
+                                 @Value("${payment.user-client.mode:blocking}") String mode,
+                                 @Value("${payment.user-client.connect-timeout:1s}") Duration connectTimeout,
+                                 @Value("${payment.user-client.request-timeout:2s}") Duration requestTimeout,
+                                 @Value("${payment.user-client.max-attempts:3}") int maxAttempts,
+                                 @Value("${payment.user-client.backoff:100ms}") Duration backoff,
+                                 @Value("${payment.user-client.hedging.enabled:false}") boolean hedging,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("user-service",
+            circuitBreakerSettings(environment, "payment.user-client.circuit-breaker"), meterRegistry);
+        return new UserClient(baseUrl, "async".equalsIgnoreCase(mode), connectTimeout, requestTimeout,
+            maxAttempts, backoff, hedging, circuitBreaker);
+    }
+    
+    /*
+     * Shared by the per-gateway circuit breakers of PaymentGatewayService
+     */
+    @Bean
+    public CircuitBreaker.Settings gatewayCircuitBreakerSettings(Environment environment) {
+        return circuitBreakerSettings(environment, "payment.gateway.circuit-breaker");
+    }
+    
+    // Reads <prefix>.window-size, .minimum-calls, .failure-rate-threshold, .slow-call-duration,
+    // .slow-call-rate-threshold, .open-duration, .half-open-permits and .half-open-timeout, each defaulting
+    // to Settings.defaults()
+    private static CircuitBreaker.Settings circuitBreakerSettings(Environment environment, String prefix) {
+        CircuitBreaker.Settings defaults = CircuitBreaker.Settings.defaults();
+        return new CircuitBreaker.Settings(
+            environment.getProperty(prefix + ".window-size", Integer.class, defaults.windowSize()),
+            environment.getProperty(prefix + ".minimum-calls", Integer.class, defaults.minimumCalls()),
+            environment.getProperty(prefix + ".failure-rate-threshold", Float.class, defaults.failureRateThreshold()),
+            environment.getProperty(prefix + ".slow-call-duration", Duration.class, defaults.slowCallDuration()),
+            environment.getProperty(prefix + ".slow-call-rate-threshold", Float.class, defaults.slowCallRateThreshold()),
+            environment.getProperty(prefix + ".open-duration", Duration.class, defaults.openDuration()),
+            environment.getProperty(prefix + ".half-open-permits", Integer.class, defaults.halfOpenPermits()),
+            environment.getProperty(prefix + ".half-open-timeout", Duration.class, defaults.halfOpenTimeout()));
+    }
+    
+    /*
+     * Every node needs its own node id (0-1023) for transaction ids to stay unique across nodes:
+     * payment.node-id when set, otherwise one leased from the database. Startup fails if neither works
+     */
+    @Bean
+    public TransactionIdGenerator transactionIdGenerator(@Value("${payment.node-id:-1}") int nodeId,
+                                                         NodeIdLease nodeIdLease) {
+        if (nodeId < 0) {
+            int leased = nodeIdLease.acquire(
+                reassigned -> TransactionIdGenerator.install(new TransactionIdGenerator(reassigned, nodeIdLease::isHeld)));
+            TransactionIdGenerator.install(new TransactionIdGenerator(leased, nodeIdLease::isHeld));
+        } else {
+            TransactionIdGenerator.install(new TransactionIdGenerator(nodeId));
+        }
+        return TransactionIdGenerator.shared();
+    }
+    
     @Bean
     public ObjectMapper objectMapper() {
         return new ObjectMapper();
@@ -0,0 +1,78 @@
+package com.demopayment.config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ReloadableFile is an optional configured file that its owner loads again whenever it changes
+// The owner compiles the file into an immutable snapshot and swaps it in only once the load
+// succeeded, so a broken edit leaves the last good contents in place. Loads through one instance
+// never overlap, whether started by reloadIfModified or by the owner directly.
+
+public final class ReloadableFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReloadableFile.class);
+
+    @FunctionalInterface
+    public interface Load {
+        // Returns the number of entries loaded
+        int load() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface PathLoad {
+        int load(Path path) throws IOException;
+    }
+
+    private final Path path;
+    private final String contents;
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private volatile long loadedModifiedTime = Long.MIN_VALUE;
+
+    /*
+     * file may be null or blank when none is configured; contents names what it holds in log messages
+     */
+    public ReloadableFile(String file, String contents) {
+        this.path = file == null || file.isBlank() ? null : Path.of(file);
+        this.contents = contents;
+    }
+
+    /*
+     * The configured file, or null
+     */
+    public Path path() {
+        return path;
+    }
+
+    /*
+     * Loads the file if its modification time changed since the last successful load. A failure is
+     * logged and tried again on the next call.
+     */
+    public void reloadIfModified(PathLoad load) {
+        if (path == null) {
+            return;
+        }
+        try {
+            long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+            if (modifiedTime != loadedModifiedTime) {
+                locked(() -> load.load(path));
+                loadedModifiedTime = modifiedTime;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to load {} from {}, keeping the current ones", contents, path, e);
+        }
+    }
+
+    public int locked(Load load) throws IOException {
+        loadLock.lock();
+        try {
+            return load.load();
+        } finally {
+            loadLock.unlock();
+        }
+    }
+}
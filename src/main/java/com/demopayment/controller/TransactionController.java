@@ -1,32 +1,63 @@
 package com.demopayment.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.model.Money;
 import com.demopayment.model.Transaction;
+import com.demopayment.model.TransactionStatus;
+import com.demopayment.repository.TransactionCursor;
+import com.demopayment.repository.TransactionFilter;
 import com.demopayment.repository.TransactionRepository;
+import com.demopayment.service.BatchPaymentItem;
+import com.demopayment.service.BatchPaymentResult;
+import com.demopayment.service.PaymentProviderRouter;
 import com.demopayment.service.PaymentService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 
-import java.util.Random;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final PaymentService paymentService;
     private final TransactionRepository repository;
     private final PaymentGatewayService gatewayService;
-    private final Random random = new Random();
+    private final PaymentProviderRouter providerRouter;
+    private final ObjectMapper objectMapper;
+    private final int batchChunkSize;
 
     @Autowired
     public TransactionController(PaymentService paymentService,
                                TransactionRepository repository,
-                               PaymentGatewayService gatewayService) {
+                               PaymentGatewayService gatewayService,
+                               PaymentProviderRouter providerRouter,
+                               ObjectMapper objectMapper,
+                               @Value("${payment.batch.chunk-size:500}") int batchChunkSize) {
         this.paymentService = paymentService;
         this.repository = repository;
         this.gatewayService = gatewayService;
+        this.providerRouter = providerRouter;
+        this.objectMapper = objectMapper;
+        this.batchChunkSize = batchChunkSize;
     }
 
     @PostMapping
@@ -34,10 +65,10 @@ public class TransactionController {
         try {
             boolean isPremiumUser = paymentService.getUserService().isPremiumUser(request.getUserId());
 
+            Money amount = request.toMoney();
             paymentService.process(
                 1, // Credit payment
-                request.getAmount(),
-                request.getCurrency(),
+                amount,
                 request.getUserId(),
                 isPremiumUser,
                 true, // Send email
@@ -46,12 +77,12 @@ public class TransactionController {
             );
 
             // Simulate external payment gateway call
-            String[] gateways = {"stripe", "paypal", "braintree"};
-            String gateway = gateways[random.nextInt(gateways.length)];
+            String gateway = providerRouter.selectProvider(
+                request.getUserId(), amount.doubleValue(), amount.currencyCode(), isPremiumUser);
             boolean success = gatewayService.processPayment(
                 request.getUserId(),
-                request.getAmount(),
-                request.getCurrency(),
+                amount.doubleValue(),
+                amount.currencyCode(),
                 gateway
             );
 
@@ -60,8 +91,7 @@ public class TransactionController {
             }
 
             // Save transaction
-            Transaction transaction = new Transaction(request.getUserId(), request.getAmount());
-            transaction.currency = request.getCurrency();
+            Transaction transaction = new Transaction(request.getUserId(), amount);
             transaction.isPremiumUser = isPremiumUser;
             repository.save(transaction);
 
@@ -71,6 +101,79 @@ public class TransactionController {
         }
     }
 
+    /*
+     * Accepts a JSON array or NDJSON stream of payments and streams one NDJSON result line per item.
+     * Items are read and processed in chunks, so memory use does not grow with the batch size.
+     */
+    @PostMapping(value = "/batch",
+                 consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+                 produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> processBatch(HttpServletRequest request) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                int processed = 0;
+                try (MappingIterator<BatchPaymentItem> items = objectMapper.readerFor(BatchPaymentItem.class)
+                        .readValues(request.getInputStream())) {
+                    List<BatchPaymentItem> chunk = new ArrayList<>(batchChunkSize);
+                    while (items.hasNextValue()) {
+                        chunk.add(items.nextValue());
+                        if (chunk.size() == batchChunkSize) {
+                            processed = processChunk(chunk, processed, generator);
+                            chunk.clear();
+                        }
+                    }
+                    processChunk(chunk, processed, generator);
+                } catch (JsonProcessingException e) {
+                    generator.writeObject(new BatchItemResponse(-1, null, "ERROR", null, "Malformed batch input: " + e.getOriginalMessage()));
+                }
+                generator.writeRaw('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private int processChunk(List<BatchPaymentItem> chunk, int offset, JsonGenerator generator) throws IOException {
+        if (chunk.isEmpty()) {
+            return offset;
+        }
+        List<BatchPaymentResult> results = paymentService.processBatch(chunk);
+
+        List<Transaction> transactions = new ArrayList<>(chunk.size());
+        String[] transactionIds = new String[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            if (results.get(i).approved()) {
+                BatchPaymentItem item = chunk.get(i);
+                Transaction transaction = new Transaction(item.userId(), item.amount());
+                transaction.isPremiumUser = results.get(i).premiumUser();
+                transactions.add(transaction);
+                transactionIds[i] = transaction.getId();
+            }
+        }
+        // Approved payments that could not be recorded are reported as errors, without a transaction id
+        String saveError = null;
+        try {
+            repository.saveAll(transactions);
+        } catch (RuntimeException e) {
+            saveError = "Failed to record payment: " + e.getMessage();
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            BatchPaymentResult result = results.get(i);
+            BatchItemResponse response;
+            if (!result.approved()) {
+                response = new BatchItemResponse(offset + i, chunk.get(i).userId(), "REJECTED", null, result.error());
+            } else if (saveError != null) {
+                response = new BatchItemResponse(offset + i, chunk.get(i).userId(), "ERROR", null, saveError);
+            } else {
+                response = new BatchItemResponse(offset + i, chunk.get(i).userId(), "OK", transactionIds[i], null);
+            }
+            generator.writeObject(response);
+        }
+        generator.flush();
+        return offset + chunk.size();
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getTransaction(@PathVariable String id) {
         try {
@@ -96,19 +199,57 @@ public class TransactionController {
         }
     }
 
+    /*
+     * One keyset page of transactions; pass the returned nextCursor to get the following page
+     */
     @GetMapping("")
-    public ResponseEntity<?> listTransactions() {
+    public ResponseEntity<?> listTransactions(@RequestParam(required = false) String userId,
+                                              @RequestParam(required = false) Instant from,
+                                              @RequestParam(required = false) Instant to,
+                                              @RequestParam(required = false) TransactionStatus status,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(defaultValue = "100") int limit) {
         try {
-            return ResponseEntity.ok(repository.findAll());
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            TransactionCursor after = cursor == null ? null : TransactionCursor.decode(cursor);
+            return ResponseEntity.ok(repository.findPage(new TransactionFilter(userId, from, to, status), after, limit));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error listing transactions: " + e.getMessage());
         }
     }
 
+    /*
+     * Every matching transaction as NDJSON, written straight from a database cursor
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTransactions(@RequestParam(required = false) String userId,
+                                                                    @RequestParam(required = false) Instant from,
+                                                                    @RequestParam(required = false) Instant to,
+                                                                    @RequestParam(required = false) TransactionStatus status) {
+        TransactionFilter filter = new TransactionFilter(userId, from, to, status);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                repository.streamTransactions(filter, transaction -> {
+                    try {
+                        generator.writeObject(transaction);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeRaw('\n');
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PostMapping("/delete/{id}")
     public ResponseEntity<?> deleteTransaction(@PathVariable String id) {
         try {
-            repository.deleteById(id);
             paymentService.deleteTransaction(id);
             return ResponseEntity.ok("Transaction deleted");
         } catch (Exception e) {
@@ -117,9 +258,13 @@ public class TransactionController {
     }
 }
 
+record BatchItemResponse(int index, String userId, String status, String transactionId, String error) {
+}
+
 class TransactionRequest {
     private String userId;
-    private double amount;
+    // Kept as written in the request; a double would already have rounded it
+    private BigDecimal amount;
     private String currency;
 
     // Getters and setters
@@ -131,11 +276,11 @@ class TransactionRequest {
         this.userId = userId;
     }
 
-    public double getAmount() {
+    public BigDecimal getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(BigDecimal amount) {
         this.amount = amount;
     }
 
@@ -146,4 +291,8 @@ class TransactionRequest {
     public void setCurrency(String currency) {
         this.currency = currency;
     }
-} 
\ No newline at end of file
+
+    public Money toMoney() {
+        return Money.of(amount, currency);
+    }
+}
@@ -0,0 +1,7 @@
+package com.demopayment.exception;
+
+public class CallNotPermittedException extends RuntimeException {
+    public CallNotPermittedException(String circuitBreaker) {
+        super("Circuit breaker " + circuitBreaker + " is open");
+    }
+}
@@ -0,0 +1,11 @@
+package com.demopayment.exception;
+
+public class ComplianceRejectedException extends RuntimeException {
+    public ComplianceRejectedException(String message) {
+        super(message);
+    }
+
+    public ComplianceRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,21 +1,68 @@
 package com.demopayment.external;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import com.demopayment.exception.CallNotPermittedException;
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.FraudStateStore.EntityType;
+import com.demopayment.resilience.CircuitBreaker;
+import com.demopayment.resilience.RateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 // PaymentGatewayService manages integration with external payment gateways
-// Handles payment processing, rate limiting, and transaction validation
+// Handles payment processing, rate limiting, circuit breaking, and transaction validation
 
 @Service
 public class PaymentGatewayService {
     private static final Logger logger = LoggerFactory.getLogger(PaymentGatewayService.class);
     
-    private static final Map<String, Integer> rateLimits = new HashMap<>();
-    private static final Map<String, Long> lastCallTimes = new HashMap<>();
-    private static final List<String> failedTransactions = new ArrayList<>();
-    private static final Set<String> blacklistedUsers = new HashSet<>();
+    private final BlacklistIndex blacklist;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker.Settings circuitBreakerSettings;
+    // One breaker per gateway, so a failing gateway does not shed traffic meant for the others
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final double defaultRateLimit;
+    private final int rateLimitBurst;
+    private final Duration rateLimitMaxWait;
+    private final List<CallListener> callListeners = new CopyOnWriteArrayList<>();
+    
+    public PaymentGatewayService(BlacklistIndex blacklist,
+                                 MeterRegistry meterRegistry,
+                                 CircuitBreaker.Settings gatewayCircuitBreakerSettings,
+                                 @Value("${payment.gateway.rate-limit.default-tps:50}") double defaultRateLimit,
+                                 @Value("${payment.gateway.rate-limit.burst:20}") int rateLimitBurst,
+                                 @Value("${payment.gateway.rate-limit.max-wait:0ms}") Duration rateLimitMaxWait) {
+        this.blacklist = blacklist;
+        this.meterRegistry = meterRegistry;
+        this.circuitBreakerSettings = gatewayCircuitBreakerSettings;
+        this.defaultRateLimit = defaultRateLimit;
+        this.rateLimitBurst = rateLimitBurst;
+        this.rateLimitMaxWait = rateLimitMaxWait;
+    }
+    
+    /*
+     * Told about every gateway call: when it starts and how long it took, or that the gateway's
+     * circuit breaker rejected it without calling the gateway, so it has no duration.
+     */
+    public interface CallListener {
+        void onCallStarted(String gateway);
+        
+        void onCallCompleted(String gateway, long durationNanos, boolean success);
+        
+        void onCallRejected(String gateway);
+    }
+    
+    public void addCallListener(CallListener listener) {
+        callListeners.add(listener);
+    }
     
     public boolean processPayment(String gatewayId, double amount, String currency) {
         logger.info("Processing payment through gateway: {}", gatewayId);
@@ -26,7 +73,7 @@ public class PaymentGatewayService {
     
     public boolean processPayment(String userId, double amount, String currency, String gateway) {
         // Check blacklist
-        if (blacklistedUsers.contains(userId)) {
+        if (blacklist.isBlacklisted(EntityType.USER, userId)) {
             logFailedTransaction(userId, "User blacklisted");
             return false;
         }
@@ -45,8 +92,8 @@ public class PaymentGatewayService {
         
         // Process payment
         try {
-            // Call external service
-            String response = callPaymentGateway(gateway, amount, currency);
+            // Call external service; rejected straight away while the gateway's breaker is open
+            String response = callGateway(gateway, () -> callPaymentGateway(gateway, amount, currency));
             
             // Parse response
             boolean success = parseResponse(response);
@@ -64,24 +111,119 @@ public class PaymentGatewayService {
         }
     }
     
-    private void logFailedTransaction(String userId, String reason) {
-        failedTransactions.add(userId + ":" + reason);
-        System.out.println("Failed transaction for user " + userId + ": " + reason);
+    public record GatewayPayment(String userId, double amount, String currency) {
     }
     
-    private boolean checkRateLimit(String gateway) {
-        long currentTime = System.currentTimeMillis();
-        Long lastCallTime = lastCallTimes.get(gateway);
+    /*
+     * Submits several payments to one gateway in a single call. The rate limit counts payments, not
+     * calls: each valid payment takes a permit, and the valid payments beyond the permits available
+     * are rejected. Returns, in order, whether each payment was accepted.
+     */
+    public boolean[] processBatch(String gateway, List<GatewayPayment> payments) {
+        boolean[] accepted = new boolean[payments.size()];
         
-        if (lastCallTime != null) {
-            long timeDiff = currentTime - lastCallTime;
-            if (timeDiff < 5000) { // 5 second
-                return false;
+        // Payments that are refused anyway must not use up permits
+        int validCount = 0;
+        for (int i = 0; i < payments.size(); i++) {
+            GatewayPayment payment = payments.get(i);
+            if (blacklist.isBlacklisted(EntityType.USER, payment.userId())) {
+                logFailedTransaction(payment.userId(), "User blacklisted");
+            } else if (payment.amount() <= 0) {
+                logFailedTransaction(payment.userId(), "Invalid amount");
+            } else {
+                accepted[i] = true;
+                validCount++;
             }
         }
+        int admitted = rateLimiter(gateway).tryAcquireUpTo(validCount, rateLimitMaxWait);
         
-        lastCallTimes.put(gateway, currentTime);
-        return true;
+        List<GatewayPayment> valid = new ArrayList<>(admitted);
+        for (int i = 0; i < payments.size(); i++) {
+            if (!accepted[i]) {
+                continue;
+            }
+            GatewayPayment payment = payments.get(i);
+            if (valid.size() < admitted) {
+                valid.add(payment);
+            } else {
+                logFailedTransaction(payment.userId(), "Rate limit exceeded");
+                accepted[i] = false;
+            }
+        }
+        
+        if (valid.isEmpty()) {
+            return accepted;
+        }
+        
+        try {
+            String response = callGateway(gateway, () -> callPaymentGatewayBatch(gateway, valid));
+            boolean success = parseResponse(response);
+            for (int i = 0; i < payments.size(); i++) {
+                if (accepted[i]) {
+                    GatewayPayment payment = payments.get(i);
+                    accepted[i] = success;
+                    updateStatistics(payment.userId(), payment.amount(), success);
+                    sendNotification(payment.userId(), payment.amount(), success);
+                }
+            }
+        } catch (Exception e) {
+            for (int i = 0; i < payments.size(); i++) {
+                if (accepted[i]) {
+                    logFailedTransaction(payments.get(i).userId(), e.getMessage());
+                    accepted[i] = false;
+                }
+            }
+        }
+        return accepted;
+    }
+    
+    public CircuitBreaker.State getCircuitState(String gateway) {
+        return circuitBreaker(gateway).getState();
+    }
+    
+    private String callGateway(String gateway, Supplier<String> call) {
+        for (CallListener listener : callListeners) {
+            listener.onCallStarted(gateway);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean rejected = false;
+        try {
+            String response = circuitBreaker(gateway).execute(call);
+            success = true;
+            return response;
+        } catch (CallNotPermittedException e) {
+            rejected = true;
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            for (CallListener listener : callListeners) {
+                if (rejected) {
+                    listener.onCallRejected(gateway);
+                } else {
+                    listener.onCallCompleted(gateway, duration, success);
+                }
+            }
+        }
+    }
+    
+    private CircuitBreaker circuitBreaker(String gateway) {
+        return circuitBreakers.computeIfAbsent(gateway,
+            id -> new CircuitBreaker("gateway-" + id, circuitBreakerSettings, meterRegistry));
+    }
+    
+    private void logFailedTransaction(String userId, String reason) {
+        logger.warn("Failed transaction for user {}: {}", userId, reason);
+    }
+    
+    // Waits up to rateLimitMaxWait for a permit before giving up
+    private boolean checkRateLimit(String gateway) {
+        return rateLimiter(gateway).tryAcquire(rateLimitMaxWait);
+    }
+    
+    private RateLimiter rateLimiter(String gateway) {
+        return rateLimiters.computeIfAbsent(gateway,
+            id -> new RateLimiter("gateway-" + id, defaultRateLimit, rateLimitBurst, meterRegistry));
     }
     
     private String callPaymentGateway(String gateway, double amount, String currency) {
@@ -89,6 +231,11 @@ public class PaymentGatewayService {
         return "success";
     }
     
+    private String callPaymentGatewayBatch(String gateway, List<GatewayPayment> payments) {
+        // Implementation
+        return "success";
+    }
+    
     private boolean parseResponse(String response) {
         // Implementation
         return true;
@@ -114,8 +261,11 @@ public class PaymentGatewayService {
         // Implementation
     }
     
+    /*
+     * Limits the gateway to limit calls per second, with the configured burst on top
+     */
     public void setRateLimit(String gateway, int limit) {
-        rateLimits.put(gateway, limit);
+        rateLimiter(gateway).setRate(limit, rateLimitBurst);
     }
     
     public void validateAmount(double amount) {
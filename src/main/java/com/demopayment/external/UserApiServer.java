@@ -1,20 +1,26 @@
 package com.demopayment.external;
 
 import com.sun.net.httpserver.HttpServer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Executors;
 
 // UserApiServer provides a mock HTTP server for user data
 // Simulates user service behavior with random delays and errors for testing
 
 public class UserApiServer {
     private static final int PORT = 8081;
+    private static final int MAX_BATCH_SIZE = 1000;
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final Random random = new Random();
     private static HttpServer server;
@@ -98,6 +104,33 @@ public class UserApiServer {
             return null;
         }
         
+        // One simulated round trip for the whole batch; unknown ids are left out
+        public static Map<String, Map<String, Object>> getUsersByIds(List<String> userIds) throws ServiceException {
+            int retries = 0;
+            while (retries < MAX_RETRIES) {
+                try {
+                    simulateNetworkLatency();
+                    if (shouldSimulateError()) {
+                        throw new ServiceException("Internal service error");
+                    }
+                    Map<String, Map<String, Object>> users = new LinkedHashMap<>();
+                    for (String userId : userIds) {
+                        Map<String, Object> userData = initializedUsers.get(userId);
+                        if (userData != null) {
+                            users.put(userId, userData);
+                        }
+                    }
+                    return users;
+                } catch (ServiceException e) {
+                    retries++;
+                    if (retries == MAX_RETRIES) {
+                        throw e;
+                    }
+                }
+            }
+            return Map.of();
+        }
+        
         public static Map<String, Object> getUserByUuid(UUID uuid) throws ServiceException {
             int retries = 0;
             while (retries < MAX_RETRIES) {
@@ -171,6 +204,37 @@ public class UserApiServer {
             }
         });
 
+        // Create context for POST /users/batch: a JSON array of ids in, an object of id -> user out
+        server.createContext("/users/batch", exchange -> {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, 0); // Method Not Allowed
+                exchange.close();
+                return;
+            }
+            
+            try {
+                List<String> userIds = mapper.readValue(exchange.getRequestBody(), new TypeReference<List<String>>() {});
+                if (userIds.size() > MAX_BATCH_SIZE) {
+                    exchange.sendResponseHeaders(413, 0); // Payload Too Large
+                    exchange.close();
+                    return;
+                }
+                
+                byte[] response = mapper.writeValueAsBytes(InternalUserService.getUsersByIds(userIds));
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response);
+                }
+            } catch (JsonProcessingException e) {
+                exchange.sendResponseHeaders(400, 0); // Bad Request - not a JSON array of ids
+                exchange.close();
+            } catch (ServiceException e) {
+                exchange.sendResponseHeaders(500, 0);
+                exchange.close();
+            }
+        });
+
         // Create context for GET /v2/users/{uuid}
         server.createContext("/v2/users/", exchange -> {
             if (!exchange.getRequestMethod().equals("GET")) {
@@ -201,7 +265,8 @@ public class UserApiServer {
             }
         });
         
-        server.setExecutor(null); // Use default executor
+        // One virtual thread per request, so simulated latency does not serialize callers
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
         server.start();
         System.out.println("User API Server started on port " + PORT);
     }
@@ -0,0 +1,140 @@
+package com.demopayment.fraud;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.config.ReloadableFile;
+import com.demopayment.fraud.FraudStateStore.EntityType;
+
+// BlacklistIndex is the single blacklist shared by fraud screening and the payment gateways
+// Bulk entries are streamed from a file into an immutable BlacklistSnapshot that is swapped in
+// atomically, so a reload never blocks lookups. Entries blacklisted at runtime are kept apart
+// and survive reloads.
+//
+// File format: one entry per line as type:key, where type is user, ip or device.
+// Blank lines and lines starting with # are ignored.
+
+@Component
+public class BlacklistIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlacklistIndex.class);
+
+    private final ReloadableFile file;
+    private final double falsePositiveRate;
+    private final Map<EntityType, Set<String>> runtimeEntries = new EnumMap<>(EntityType.class);
+
+    private volatile BlacklistSnapshot snapshot = BlacklistSnapshot.EMPTY;
+
+    public BlacklistIndex(@Value("${fraud.blacklist.file:}") String file,
+                          @Value("${fraud.blacklist.false-positive-rate:0.01}") double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.file = new ReloadableFile(file, "blacklist");
+        this.falsePositiveRate = falsePositiveRate;
+        for (EntityType type : EntityType.values()) {
+            runtimeEntries.put(type, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    @PostConstruct
+    public void loadOnStartup() {
+        if (file.path() == null) {
+            logger.info("No blacklist file configured");
+            return;
+        }
+        reloadIfModified();
+    }
+
+    @Scheduled(fixedDelayString = "${fraud.blacklist.reload-interval-ms:60000}",
+               initialDelayString = "${fraud.blacklist.reload-interval-ms:60000}")
+    public void reloadIfModified() {
+        file.reloadIfModified(this::load);
+    }
+
+    /*
+     * Streams the file into a new snapshot and swaps it in; returns the number of distinct entries
+     */
+    public int load(Path path) throws IOException {
+        return file.locked(() -> {
+            long start = System.nanoTime();
+            BlacklistSnapshot.Builder builder = new BlacklistSnapshot.Builder();
+            int skipped = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!addLine(builder, line)) {
+                        skipped++;
+                    }
+                }
+            }
+            BlacklistSnapshot loaded = builder.build(falsePositiveRate);
+            snapshot = loaded;
+            logger.info("Loaded {} blacklist entries ({} KB) from {} in {} ms, skipped {} lines",
+                loaded.size(), loaded.footprintBytes() / 1024, path, (System.nanoTime() - start) / 1_000_000, skipped);
+            return loaded.size();
+        });
+    }
+
+    public boolean isBlacklisted(String userId, String ipAddress, String deviceId) {
+        return isBlacklisted(EntityType.USER, userId)
+            || isBlacklisted(EntityType.IP, ipAddress)
+            || isBlacklisted(EntityType.DEVICE, deviceId);
+    }
+
+    public boolean isBlacklisted(EntityType type, String key) {
+        if (key == null) {
+            return false;
+        }
+        return snapshot.contains(type, key) || runtimeEntries.get(type).contains(key);
+    }
+
+    public void blacklist(EntityType type, String key) {
+        if (key != null) {
+            runtimeEntries.get(type).add(key);
+        }
+    }
+
+    public int size() {
+        int size = snapshot.size();
+        for (Set<String> entries : runtimeEntries.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    public long footprintBytes() {
+        return snapshot.footprintBytes();
+    }
+
+    private static boolean addLine(BlacklistSnapshot.Builder builder, String line) {
+        String entry = line.trim();
+        if (entry.isEmpty() || entry.startsWith("#")) {
+            return true;
+        }
+        int separator = entry.indexOf(':');
+        if (separator <= 0 || separator == entry.length() - 1) {
+            return false;
+        }
+        EntityType type = switch (entry.substring(0, separator)) {
+            case "user" -> EntityType.USER;
+            case "ip" -> EntityType.IP;
+            case "device" -> EntityType.DEVICE;
+            default -> null;
+        };
+        return type != null && builder.add(type, entry.substring(separator + 1));
+    }
+}
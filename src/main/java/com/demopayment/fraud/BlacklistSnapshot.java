@@ -0,0 +1,185 @@
+package com.demopayment.fraud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.demopayment.fraud.FraudStateStore.EntityType;
+
+// BlacklistSnapshot is an immutable, compact set of blacklisted users, IPs and devices
+// A Bloom filter answers most lookups (every key that is not blacklisted) without allocating;
+// only Bloom positives go on to the exact check against an open-addressing table of
+// UTF-8 encoded keys packed into a single byte array.
+
+final class BlacklistSnapshot {
+
+    static final BlacklistSnapshot EMPTY = new Builder().build(0.01);
+
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    private final long[] bloom;
+    private final long bloomBits;
+    private final int hashCount;
+    private final byte[] data;
+    private final int[] offsets;
+    private final int[] table;
+    private final int tableMask;
+    private final int size;
+
+    private BlacklistSnapshot(long[] bloom, long bloomBits, int hashCount,
+                              byte[] data, int[] offsets, int[] table, int size) {
+        this.bloom = bloom;
+        this.bloomBits = bloomBits;
+        this.hashCount = hashCount;
+        this.data = data;
+        this.offsets = offsets;
+        this.table = table;
+        this.tableMask = table.length - 1;
+        this.size = size;
+    }
+
+    boolean contains(EntityType type, String key) {
+        long hash = hash(type, key);
+        if (!mightContain(hash)) {
+            return false;
+        }
+        byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+        int slot = (int) hash & tableMask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return false;
+            }
+            if (matches(offsets[entry - 1], type, encoded)) {
+                return true;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * Bytes held by the snapshot's arrays, excluding object headers
+     */
+    long footprintBytes() {
+        return (long) bloom.length * Long.BYTES + data.length
+            + (long) offsets.length * Integer.BYTES + (long) table.length * Integer.BYTES;
+    }
+
+    private boolean mightContain(long hash) {
+        long h2 = Long.rotateLeft(hash, 32) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((hash + i * h2) & Long.MAX_VALUE) % bloomBits;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int offset, EntityType type, byte[] encoded) {
+        if (data[offset] != (byte) type.ordinal()) {
+            return false;
+        }
+        int length = ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+        return length == encoded.length
+            && Arrays.equals(data, offset + 3, offset + 3 + length, encoded, 0, length);
+    }
+
+    /*
+     * FNV-1a over the UTF-16 chars, seeded by entity type, then the MurmurHash3 finalizer
+     */
+    static long hash(EntityType type, String key) {
+        long h = 0xcbf29ce484222325L ^ ((type.ordinal() + 1) * 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Accumulates entries while a blacklist file is streamed in; not thread-safe
+    static final class Builder {
+        private byte[] data = new byte[1024];
+        private int dataLength;
+        private int[] offsets = new int[64];
+        private long[] hashes = new long[64];
+        private int size;
+
+        boolean add(EntityType type, String key) {
+            byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+            if (encoded.length > MAX_KEY_BYTES) {
+                return false;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            int needed = dataLength + 3 + encoded.length;
+            if (needed > data.length) {
+                data = Arrays.copyOf(data, Math.max(needed, (int) Math.min(Integer.MAX_VALUE - 8, data.length * 2L)));
+            }
+            offsets[size] = dataLength;
+            hashes[size] = hash(type, key);
+            size++;
+            data[dataLength] = (byte) type.ordinal();
+            data[dataLength + 1] = (byte) (encoded.length >>> 8);
+            data[dataLength + 2] = (byte) encoded.length;
+            System.arraycopy(encoded, 0, data, dataLength + 3, encoded.length);
+            dataLength = needed;
+            return true;
+        }
+
+        BlacklistSnapshot build(double falsePositiveRate) {
+            int n = Math.max(1, size);
+            long bloomBits = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+            int hashCount = Math.max(1, (int) Math.round((double) bloomBits / n * Math.log(2)));
+            long[] bloom = new long[(int) ((bloomBits + 63) >>> 6)];
+
+            int tableSize = Integer.highestOneBit(Math.max(2, n + n / 3) - 1) << 1;
+            int[] table = new int[tableSize];
+            int tableMask = tableSize - 1;
+
+            BlacklistSnapshot snapshot = new BlacklistSnapshot(bloom, bloomBits, hashCount,
+                Arrays.copyOf(data, dataLength), Arrays.copyOf(offsets, size), table, 0);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                long hash = hashes[i];
+                long h2 = Long.rotateLeft(hash, 32) | 1L;
+                for (int k = 0; k < hashCount; k++) {
+                    long bit = ((hash + k * h2) & Long.MAX_VALUE) % bloomBits;
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+                if (snapshot.insert(hash, i)) {
+                    unique++;
+                }
+            }
+            return new BlacklistSnapshot(bloom, bloomBits, hashCount, snapshot.data, snapshot.offsets, table, unique);
+        }
+    }
+
+    // Only used while building; skips duplicate keys
+    private boolean insert(long hash, int entry) {
+        int offset = offsets[entry];
+        int length = ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+        int slot = (int) hash & tableMask;
+        while (table[slot] != 0) {
+            int existing = offsets[table[slot] - 1];
+            int existingLength = ((data[existing + 1] & 0xFF) << 8) | (data[existing + 2] & 0xFF);
+            if (existingLength == length
+                    && Arrays.equals(data, existing, existing + 3 + length, data, offset, offset + 3 + length)) {
+                return false;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        table[slot] = entry + 1;
+        return true;
+    }
+}
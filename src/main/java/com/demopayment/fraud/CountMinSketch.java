@@ -0,0 +1,91 @@
+package com.demopayment.fraud;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// CountMinSketch estimates how often each 64-bit key has been added, in fixed memory
+// depth rows of width int counters; a key's estimate is the smallest of its counters, which can
+// only over-count, by colliding keys. Adds use conservative update (only counters below the new
+// estimate are raised), which keeps frequent keys from inflating the rare keys they collide with.
+// Counters are raised with CAS and saturate at Integer.MAX_VALUE; two concurrent adds of the same
+// key may be counted once.
+
+final class CountMinSketch {
+
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int depth;
+    private final int width;
+    private final int[] counters;
+
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Count-min sketch of " + depth + " x " + width + " is not supported");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+    }
+
+    /*
+     * The widest sketch of the given depth that fits in the given number of bytes
+     */
+    static CountMinSketch withMemory(long bytes, int depth) {
+        long width = bytes / (Integer.BYTES * (long) depth);
+        return new CountMinSketch(depth, (int) Math.max(1, Math.min(width, (Integer.MAX_VALUE - 8) / depth)));
+    }
+
+    int estimate(long key) {
+        long h1 = mix(key);
+        long h2 = Long.rotateLeft(h1, 32) | 1L;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, (int) COUNTERS.getOpaque(counters, index(row, h1 + row * h2)));
+        }
+        return min;
+    }
+
+    /*
+     * Counts one occurrence of the key; returns its new estimate
+     */
+    int add(long key) {
+        long h1 = mix(key);
+        long h2 = Long.rotateLeft(h1, 32) | 1L;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, (int) COUNTERS.getOpaque(counters, index(row, h1 + row * h2)));
+        }
+        int target = min == Integer.MAX_VALUE ? min : min + 1;
+        for (int row = 0; row < depth; row++) {
+            int index = index(row, h1 + row * h2);
+            int current;
+            do {
+                current = (int) COUNTERS.getOpaque(counters, index);
+            } while (current < target && !COUNTERS.compareAndSet(counters, index, current, target));
+        }
+        return target;
+    }
+
+    int width() {
+        return width;
+    }
+
+    long footprintBytes() {
+        return (long) counters.length * Integer.BYTES;
+    }
+
+    // Maps the high 32 bits of the hash onto the row without a modulo
+    private int index(int row, long hash) {
+        return row * width + (int) (((hash >>> 32) * width) >>> 32);
+    }
+
+    // MurmurHash3 finalizer, so keys that are already hashes and keys that are not spread alike
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
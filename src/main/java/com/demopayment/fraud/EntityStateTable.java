@@ -0,0 +1,163 @@
+package com.demopayment.fraud;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// EntityStateTable holds the fraud state of one kind of entity (users, IPs or devices)
+// Keys are spread over independently locked stripes, each an LRU map with a fixed capacity,
+// so concurrent updates only contend when they hash to the same stripe and memory stays bounded.
+// Transaction velocity is tracked per key over the configured VelocityWindows.
+
+public final class EntityStateTable {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int capacity;
+    private final VelocityWindows windows;
+
+    EntityStateTable(int maxEntries, int stripeCount, VelocityWindows windows) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, Math.min(stripeCount, maxEntries)));
+        int perStripe = (maxEntries + size - 1) / size;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.mask = size - 1;
+        this.capacity = perStripe * size;
+        this.windows = windows;
+    }
+
+    public int riskScore(String key) {
+        if (key == null) {
+            return 0;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            EntityState state = stripe.entries.get(key);
+            return state == null ? 0 : state.riskScore;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void updateRiskScore(String key, int riskScore) {
+        if (key == null) {
+            return;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.stateFor(key).riskScore = riskScore;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /*
+     * Number of transactions recorded for the key within the given velocity window
+     */
+    public long transactionCount(String key, int window, long nowMillis) {
+        if (key == null) {
+            return 0;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            EntityState state = stripe.entries.get(key);
+            return state == null || state.velocity == null ? 0 : windows.count(state.velocity, window, nowMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /*
+     * Sum of the amounts (in minor units) recorded for the key within the given velocity window
+     */
+    public long amountSum(String key, int window, long nowMillis) {
+        if (key == null) {
+            return 0;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            EntityState state = stripe.entries.get(key);
+            return state == null || state.velocity == null ? 0 : windows.amount(state.velocity, window, nowMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void recordTransaction(String key, long amountMinor, long nowMillis) {
+        if (key == null) {
+            return;
+        }
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            EntityState state = stripe.stateFor(key);
+            if (state.velocity == null) {
+                state.velocity = windows.newState();
+            }
+            windows.record(state.velocity, nowMillis, amountMinor);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, EntityState> entries;
+
+        Stripe(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, EntityState> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        // Caller must hold the lock
+        EntityState stateFor(String key) {
+            EntityState state = entries.get(key);
+            if (state == null) {
+                state = new EntityState();
+                entries.put(key, state);
+            }
+            return state;
+        }
+    }
+
+    // Only read or written while holding the owning stripe's lock
+    private static final class EntityState {
+        int riskScore;
+        long[] velocity;
+    }
+}
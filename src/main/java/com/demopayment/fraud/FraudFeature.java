@@ -0,0 +1,55 @@
+package com.demopayment.fraud;
+
+// FraudFeature lists the base risk features fraud rules can test, with a relative evaluation cost
+// The cost orders rules and conditions so cheap checks run first: 0 is plain arithmetic on the
+// payment, 1 an O(1) read of the UserFeatureStore or a score derived from it, 2 a blacklist lookup,
+// 3 a velocity window scan.
+
+public enum FraudFeature {
+    AMOUNT("amount", 0),
+    AMOUNT_RISK("amountRisk", 0),
+    CURRENCY_RISK("currencyRisk", 0),
+    USER_RISK("userRisk", 1),
+    IP_RISK("ipRisk", 1),
+    DEVICE_RISK("deviceRisk", 1),
+    AMOUNT_TO_AVERAGE("amountToAverage", 1),
+    SECONDS_SINCE_LAST_TRANSACTION("secondsSinceLastTransaction", 1),
+    DISTINCT_DEVICES("distinctDevices", 1),
+    DISTINCT_IPS("distinctIps", 1),
+    DEVICE_FREQUENCY("deviceFrequency", 1),
+    IP_FREQUENCY("ipFrequency", 1),
+    BLACKLISTED("blacklisted", 2),
+    TRANSACTIONS_LAST_HOUR("transactionsLastHour", 3),
+    AMOUNT_LAST_DAY("amountLastDay", 3);
+
+    private static final FraudFeature[] VALUES = values();
+
+    private final String featureName;
+    private final int cost;
+
+    FraudFeature(String featureName, int cost) {
+        this.featureName = featureName;
+        this.cost = cost;
+    }
+
+    public String featureName() {
+        return featureName;
+    }
+
+    public int cost() {
+        return cost;
+    }
+
+    static FraudFeature byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    static FraudFeature byName(String name) {
+        for (FraudFeature feature : VALUES) {
+            if (feature.featureName.equals(name)) {
+                return feature;
+            }
+        }
+        return null;
+    }
+}
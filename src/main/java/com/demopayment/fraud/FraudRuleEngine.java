@@ -0,0 +1,187 @@
+package com.demopayment.fraud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.config.ReloadableFile;
+
+// FraudRuleEngine decides which payments fraud screening blocks, from rules kept outside the code
+// Rules and derived risk features come from the bundled fraud-rules.txt, or from the configured
+// ReloadableFile. Each load is compiled into an immutable FraudRules plan that is swapped in
+// atomically, so screenings in flight finish on the plan they started with.
+// Per rule, hits are counted and 1 in 64 screenings is timed, published by rule name as
+// payment.fraud.rule.hits and payment.fraud.rule.time; the timer's count times 64 estimates how
+// often a rule is reached. Counting every evaluation of every rule, or timing every screening,
+// would cost as much as the rules themselves.
+
+@Component
+public class FraudRuleEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(FraudRuleEngine.class);
+
+    static final String BUNDLED_RULES = "fraud-rules.txt";
+
+    private static final int TIMING_SAMPLE_MASK = 63;
+
+    private final ReloadableFile file;
+    private final MeterRegistry meterRegistry;
+    // Kept across reloads, so counters of a rule continue when its file is edited
+    private final Map<String, RuleStats> stats = new ConcurrentHashMap<>();
+
+    private volatile FraudRules rules;
+
+    public FraudRuleEngine(@Value("${fraud.rules.file:}") String file, MeterRegistry meterRegistry) {
+        this.file = new ReloadableFile(file, "fraud rules");
+        this.meterRegistry = meterRegistry;
+        this.rules = loadBundled();
+    }
+
+    @PostConstruct
+    public void loadOnStartup() {
+        if (file.path() == null) {
+            logger.info("No fraud rules file configured, using the {} bundled rules", rules.size());
+            return;
+        }
+        reloadIfModified();
+    }
+
+    @Scheduled(fixedDelayString = "${fraud.rules.reload-interval-ms:30000}",
+               initialDelayString = "${fraud.rules.reload-interval-ms:30000}")
+    public void reloadIfModified() {
+        file.reloadIfModified(this::load);
+    }
+
+    /*
+     * Compiles the file and swaps the rules in; returns the number of rules
+     */
+    public int load(Path path) throws IOException {
+        return file.locked(() -> {
+            FraudRules loaded = compile(Files.readString(path, StandardCharsets.UTF_8), path.toString());
+            rules = loaded;
+            return loaded.size();
+        });
+    }
+
+    /*
+     * Runs the current rules against one payment. The evaluation is reset first, so callers can
+     * keep one per thread and screen payment after payment with it without allocating
+     */
+    public <T extends Evaluation> T evaluate(T evaluation) {
+        FraudRules current = rules;
+        evaluation.reset(current);
+        boolean timed = (ThreadLocalRandom.current().nextInt() & TIMING_SAMPLE_MASK) == 0;
+        current.evaluate(evaluation, timed);
+        return evaluation;
+    }
+
+    /*
+     * Rule names in the order they are evaluated
+     */
+    public List<String> ruleNames() {
+        return rules.ruleNames();
+    }
+
+    private FraudRules loadBundled() {
+        try (InputStream in = FraudRuleEngine.class.getClassLoader().getResourceAsStream(BUNDLED_RULES)) {
+            if (in == null) {
+                throw new IllegalStateException(BUNDLED_RULES + " not found on the classpath");
+            }
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return compile(text, BUNDLED_RULES);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + BUNDLED_RULES, e);
+        }
+    }
+
+    private FraudRules compile(String text, String source) {
+        long start = System.nanoTime();
+        FraudRules compiled = FraudRules.compile(text, name -> stats.computeIfAbsent(name, this::register));
+        logger.info("Compiled {} fraud rules from {} in {} us, evaluation order {}",
+            compiled.size(), source, (System.nanoTime() - start) / 1_000, compiled.ruleNames());
+        return compiled;
+    }
+
+    private RuleStats register(String rule) {
+        RuleStats ruleStats = new RuleStats();
+        FunctionCounter.builder("payment.fraud.rule.hits", ruleStats.hits, LongAdder::sum)
+            .tag("rule", rule).register(meterRegistry);
+        FunctionTimer.builder("payment.fraud.rule.time", ruleStats,
+                value -> value.timed.sum(), value -> value.timedNanos.sum(), TimeUnit.NANOSECONDS)
+            .tag("rule", rule).register(meterRegistry);
+        return ruleStats;
+    }
+
+    // Screening of one payment: subclasses supply its base feature values, the engine asks only for
+    // those its rules need and leaves the outcome and every feature value it computed
+    public abstract static class Evaluation {
+        FraudRules rules;
+        double[] values;
+        long computed;
+        FraudRules.Rule fired;
+
+        protected abstract double value(FraudFeature feature);
+
+        // Values left from an earlier payment stay in the array; computed says which are current
+        void reset(FraudRules rules) {
+            this.rules = rules;
+            if (values == null || values.length < rules.featureCount()) {
+                values = new double[rules.featureCount()];
+            }
+            computed = 0;
+            fired = null;
+        }
+
+        public boolean isBlocked() {
+            return fired != null;
+        }
+
+        public boolean isBlacklisting() {
+            return fired != null && fired.blacklist();
+        }
+
+        /*
+         * Name of the rule that blocked the payment, or null
+         */
+        public String getRule() {
+            return fired == null ? null : fired.name();
+        }
+
+        /*
+         * Value of the feature if an evaluated rule needed it, NaN otherwise
+         */
+        public double valueIfComputed(String feature) {
+            int number = rules.featureNumber(feature);
+            return number >= 0 && (computed & (1L << number)) != 0 ? values[number] : Double.NaN;
+        }
+    }
+
+    // Counters of one rule
+    static final class RuleStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder timed = new LongAdder();
+        final LongAdder timedNanos = new LongAdder();
+
+        void recordTime(long nanos) {
+            timed.increment();
+            timedNanos.add(nanos);
+        }
+    }
+}
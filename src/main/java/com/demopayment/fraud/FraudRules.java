@@ -0,0 +1,369 @@
+package com.demopayment.fraud;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// FraudRules is an immutable set of fraud rules compiled into a flat evaluation plan
+// Features are numbered (the base FraudFeatures first, then derived features in declaration
+// order) and every condition is compiled to a feature number, a closed range [min, max] and a
+// negation flag in parallel arrays, so a test is two comparisons without an operator switch, and
+// conditions of a rule on the same feature are merged into one range. Each condition also carries
+// the bit set of derived features it needs; as a derived feature only uses features declared
+// before it, computing the missing ones lowest first needs no recursion.
+// Rules run cheapest first (the summed cost of the distinct base features they need, declaration
+// order breaking ties), but only move among adjacent rules with the same action: when two rules
+// fire, the first decides whether the user is blacklisted, so a rule never passes one with the
+// other action. Conditions run cheapest first, and evaluation stops at the first false condition
+// and at the first rule that fires. Feature values are computed on first use and kept
+// for the rest of the evaluation, so a feature shared by several rules is computed once.
+//
+// Syntax: one statement per line (or separated by ;), # starts a comment.
+//   feature <name> = weighted(<feature>:<weight>, ...)   weighted mean, rounded down
+//   rule <name>: <feature> <op> <number> [and ...] -> block|blacklist
+// where op is one of > >= < <= == != and blacklist blocks the payment and blacklists the user.
+
+final class FraudRules {
+
+    static final int MAX_FEATURES = Long.SIZE;
+
+    private static final Pattern FEATURE = Pattern.compile("feature\\s+(\\w+)\\s*=\\s*weighted\\s*\\((.*)\\)");
+    private static final Pattern RULE = Pattern.compile("rule\\s+([\\w.-]+)\\s*:(.*)->\\s*(block|blacklist)");
+    private static final Pattern CONDITION = Pattern.compile("(\\w+)\\s*(>=|<=|==|!=|>|<)\\s*(-?\\d+(?:\\.\\d+)?)");
+    private static final Pattern COMPONENT = Pattern.compile("(\\w+)\\s*:\\s*(\\d+(?:\\.\\d+)?)");
+    private static final int BASE_FEATURES = FraudFeature.values().length;
+
+    private final Map<String, Integer> featureNumbers;
+    // Components of derived feature d (feature BASE_FEATURES + d) from derivedStart[d] to derivedStart[d + 1]
+    private final int[] derivedStart;
+    private final int[] components;
+    private final double[] weights;
+    private final double[] weightSums;
+    // Conditions of rules[r] from ruleStart[r] to ruleStart[r + 1]
+    private final Rule[] rules;
+    private final int[] ruleStart;
+    private final int[] conditionFeature;
+    private final double[] conditionMin;
+    private final double[] conditionMax;
+    private final boolean[] conditionNegated;
+    // Derived features a condition needs, itself included, as a bit set of feature numbers
+    private final long[] conditionDerived;
+
+    record Rule(String name, boolean blacklist, int cost, FraudRuleEngine.RuleStats stats) {
+    }
+
+    private FraudRules(Map<String, Integer> featureNumbers, int[] derivedStart, int[] components, double[] weights,
+                       double[] weightSums, Rule[] rules, int[] ruleStart, int[] conditionFeature,
+                       double[] conditionMin, double[] conditionMax, boolean[] conditionNegated,
+                       long[] conditionDerived) {
+        this.featureNumbers = featureNumbers;
+        this.derivedStart = derivedStart;
+        this.components = components;
+        this.weights = weights;
+        this.weightSums = weightSums;
+        this.rules = rules;
+        this.ruleStart = ruleStart;
+        this.conditionFeature = conditionFeature;
+        this.conditionMin = conditionMin;
+        this.conditionMax = conditionMax;
+        this.conditionNegated = conditionNegated;
+        this.conditionDerived = conditionDerived;
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    int featureCount() {
+        return BASE_FEATURES + weightSums.length;
+    }
+
+    int featureNumber(String name) {
+        Integer number = featureNumbers.get(name);
+        return number == null ? -1 : number;
+    }
+
+    List<String> ruleNames() {
+        List<String> names = new ArrayList<>(rules.length);
+        for (Rule rule : rules) {
+            names.add(rule.name());
+        }
+        return names;
+    }
+
+    /*
+     * Runs the rules against one payment; the first rule that fires is left in
+     * evaluation.fired. Rule timings are only taken when timed is set.
+     */
+    void evaluate(FraudRuleEngine.Evaluation evaluation, boolean timed) {
+        // Each rule's time ends where the next one's starts, so n rules take n + 1 clock reads
+        long start = timed ? System.nanoTime() : 0;
+        for (int r = 0; r < rules.length; r++) {
+            boolean fired = matches(r, evaluation);
+            if (timed) {
+                long end = System.nanoTime();
+                rules[r].stats().recordTime(end - start);
+                start = end;
+            }
+            if (fired) {
+                rules[r].stats().hits.increment();
+                evaluation.fired = rules[r];
+                return;
+            }
+        }
+    }
+
+    private boolean matches(int rule, FraudRuleEngine.Evaluation evaluation) {
+        for (int c = ruleStart[rule]; c < ruleStart[rule + 1]; c++) {
+            long missing = conditionDerived[c] & ~evaluation.computed;
+            while (missing != 0) {
+                computeDerived(Long.numberOfTrailingZeros(missing), evaluation);
+                missing &= missing - 1;
+            }
+            double value = value(conditionFeature[c], evaluation);
+            if ((value >= conditionMin[c] && value <= conditionMax[c]) == conditionNegated[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double value(int feature, FraudRuleEngine.Evaluation evaluation) {
+        long bit = 1L << feature;
+        if ((evaluation.computed & bit) != 0) {
+            return evaluation.values[feature];
+        }
+        // Not computed yet, so a base feature: derived ones are computed ahead by matches
+        double value = evaluation.value(FraudFeature.byOrdinal(feature));
+        evaluation.values[feature] = value;
+        evaluation.computed |= bit;
+        return value;
+    }
+
+    private void computeDerived(int feature, FraudRuleEngine.Evaluation evaluation) {
+        int derived = feature - BASE_FEATURES;
+        double sum = 0;
+        for (int i = derivedStart[derived]; i < derivedStart[derived + 1]; i++) {
+            sum += weights[i] * value(components[i], evaluation);
+        }
+        evaluation.values[feature] = Math.floor(sum / weightSums[derived]);
+        evaluation.computed |= 1L << feature;
+    }
+
+    /*
+     * Parses and compiles rules; statsFor supplies the counters of each rule by name.
+     * Throws IllegalArgumentException naming the offending statement.
+     */
+    static FraudRules compile(String text, Function<String, FraudRuleEngine.RuleStats> statsFor) {
+        Compiler compiler = new Compiler();
+        int line = 0;
+        for (String physicalLine : text.split("\n", -1)) {
+            line++;
+            int comment = physicalLine.indexOf('#');
+            String content = comment >= 0 ? physicalLine.substring(0, comment) : physicalLine;
+            for (String statement : content.split(";")) {
+                String trimmed = statement.trim();
+                if (!trimmed.isEmpty()) {
+                    try {
+                        compiler.add(trimmed);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return compiler.build(statsFor);
+    }
+
+    private static final class Compiler {
+        private final Map<String, Integer> featureNumbers = new HashMap<>();
+        // Base features each feature depends on, as a bit set of FraudFeature ordinals
+        private final List<Long> dependencies = new ArrayList<>();
+        // Derived features each feature depends on, itself included, as a bit set of feature numbers
+        private final List<Long> derivedDependencies = new ArrayList<>();
+        private final List<int[]> derivedComponents = new ArrayList<>();
+        private final List<double[]> derivedWeights = new ArrayList<>();
+        private final List<PendingRule> rules = new ArrayList<>();
+
+        private record PendingRule(String name, boolean blacklist, int cost, int order, List<Condition> conditions) {
+        }
+
+        // feature in [min, max], or outside it when negated
+        private record Condition(int feature, double min, double max, boolean negated) {
+        }
+
+        Compiler() {
+            for (FraudFeature feature : FraudFeature.values()) {
+                featureNumbers.put(feature.featureName(), feature.ordinal());
+                dependencies.add(1L << feature.ordinal());
+                derivedDependencies.add(0L);
+            }
+        }
+
+        void add(String statement) {
+            Matcher feature = FEATURE.matcher(statement);
+            if (feature.matches()) {
+                addFeature(feature.group(1), feature.group(2));
+                return;
+            }
+            Matcher rule = RULE.matcher(statement);
+            if (rule.matches()) {
+                addRule(rule.group(1), rule.group(2), rule.group(3).equals("blacklist"));
+                return;
+            }
+            throw new IllegalArgumentException("Invalid fraud rule statement: " + statement);
+        }
+
+        private void addFeature(String name, String spec) {
+            if (featureNumbers.containsKey(name)) {
+                throw new IllegalArgumentException("Feature " + name + " is already defined");
+            }
+            if (featureNumbers.size() == MAX_FEATURES) {
+                throw new IllegalArgumentException("At most " + MAX_FEATURES + " features are supported");
+            }
+            String[] parts = spec.split(",");
+            int[] components = new int[parts.length];
+            double[] weights = new double[parts.length];
+            long needs = 0;
+            long derivedNeeds = 1L << dependencies.size();
+            for (int i = 0; i < parts.length; i++) {
+                Matcher component = COMPONENT.matcher(parts[i].trim());
+                if (!component.matches()) {
+                    throw new IllegalArgumentException("Invalid weighted component: " + parts[i].trim());
+                }
+                components[i] = feature(component.group(1));
+                weights[i] = Double.parseDouble(component.group(2));
+                needs |= dependencies.get(components[i]);
+                derivedNeeds |= derivedDependencies.get(components[i]);
+            }
+            if (Arrays.stream(weights).sum() <= 0) {
+                throw new IllegalArgumentException("Feature " + name + " needs a positive total weight");
+            }
+            featureNumbers.put(name, dependencies.size());
+            dependencies.add(needs);
+            derivedDependencies.add(derivedNeeds);
+            derivedComponents.add(components);
+            derivedWeights.add(weights);
+        }
+
+        private void addRule(String name, String conditions, boolean blacklist) {
+            for (PendingRule rule : rules) {
+                if (rule.name().equals(name)) {
+                    throw new IllegalArgumentException("Rule " + name + " is already defined");
+                }
+            }
+            List<Condition> compiled = new ArrayList<>();
+            long needs = 0;
+            for (String part : conditions.trim().split("\\s+and\\s+")) {
+                Matcher condition = CONDITION.matcher(part.trim());
+                if (!condition.matches()) {
+                    throw new IllegalArgumentException("Invalid condition in rule " + name + ": " + part.trim());
+                }
+                int feature = feature(condition.group(1));
+                needs |= dependencies.get(feature);
+                add(compiled, condition(feature, condition.group(2), Double.parseDouble(condition.group(3))));
+            }
+            // Cheapest conditions first; the sort is stable so equal costs keep their written order
+            compiled.sort((a, b) -> Integer.compare(cost(dependencies.get(a.feature())), cost(dependencies.get(b.feature()))));
+            rules.add(new PendingRule(name, blacklist, cost(needs), rules.size(), compiled));
+        }
+
+        private static Condition condition(int feature, String operator, double threshold) {
+            return switch (operator) {
+                case ">" -> new Condition(feature, Math.nextUp(threshold), Double.POSITIVE_INFINITY, false);
+                case ">=" -> new Condition(feature, threshold, Double.POSITIVE_INFINITY, false);
+                case "<" -> new Condition(feature, Double.NEGATIVE_INFINITY, Math.nextDown(threshold), false);
+                case "<=" -> new Condition(feature, Double.NEGATIVE_INFINITY, threshold, false);
+                case "==" -> new Condition(feature, threshold, threshold, false);
+                default -> new Condition(feature, threshold, threshold, true);
+            };
+        }
+
+        // Ranges on the same feature intersect into one condition
+        private static void add(List<Condition> conditions, Condition condition) {
+            if (!condition.negated()) {
+                for (int i = 0; i < conditions.size(); i++) {
+                    Condition other = conditions.get(i);
+                    if (other.feature() == condition.feature() && !other.negated()) {
+                        conditions.set(i, new Condition(condition.feature(), Math.max(other.min(), condition.min()),
+                            Math.min(other.max(), condition.max()), false));
+                        return;
+                    }
+                }
+            }
+            conditions.add(condition);
+        }
+
+        private int feature(String name) {
+            Integer number = featureNumbers.get(name);
+            if (number == null) {
+                throw new IllegalArgumentException("Unknown feature " + name);
+            }
+            return number;
+        }
+
+        private static int cost(long baseFeatures) {
+            int cost = 0;
+            for (long bits = baseFeatures; bits != 0; bits &= bits - 1) {
+                cost += FraudFeature.byOrdinal(Long.numberOfTrailingZeros(bits)).cost();
+            }
+            return cost;
+        }
+
+        FraudRules build(Function<String, FraudRuleEngine.RuleStats> statsFor) {
+            int derivedCount = derivedComponents.size();
+            int[] derivedStart = new int[derivedCount + 1];
+            for (int d = 0; d < derivedCount; d++) {
+                derivedStart[d + 1] = derivedStart[d] + derivedComponents.get(d).length;
+            }
+            int[] components = new int[derivedStart[derivedCount]];
+            double[] weights = new double[derivedStart[derivedCount]];
+            double[] weightSums = new double[derivedCount];
+            for (int d = 0; d < derivedCount; d++) {
+                System.arraycopy(derivedComponents.get(d), 0, components, derivedStart[d], derivedComponents.get(d).length);
+                System.arraycopy(derivedWeights.get(d), 0, weights, derivedStart[d], derivedWeights.get(d).length);
+                weightSums[d] = Arrays.stream(derivedWeights.get(d)).sum();
+            }
+
+            List<PendingRule> ordered = new ArrayList<>(rules);
+            for (int from = 0, to; from < ordered.size(); from = to) {
+                to = from + 1;
+                while (to < ordered.size() && ordered.get(to).blacklist() == ordered.get(from).blacklist()) {
+                    to++;
+                }
+                ordered.subList(from, to).sort((a, b) -> a.cost() != b.cost()
+                    ? Integer.compare(a.cost(), b.cost()) : Integer.compare(a.order(), b.order()));
+            }
+            Rule[] compiled = new Rule[ordered.size()];
+            int[] ruleStart = new int[ordered.size() + 1];
+            for (int r = 0; r < ordered.size(); r++) {
+                ruleStart[r + 1] = ruleStart[r] + ordered.get(r).conditions().size();
+            }
+            int[] conditionFeature = new int[ruleStart[ordered.size()]];
+            double[] conditionMin = new double[conditionFeature.length];
+            double[] conditionMax = new double[conditionFeature.length];
+            boolean[] conditionNegated = new boolean[conditionFeature.length];
+            long[] conditionDerived = new long[conditionFeature.length];
+            for (int r = 0; r < ordered.size(); r++) {
+                PendingRule rule = ordered.get(r);
+                compiled[r] = new Rule(rule.name(), rule.blacklist(), rule.cost(), statsFor.apply(rule.name()));
+                for (int i = 0; i < rule.conditions().size(); i++) {
+                    Condition condition = rule.conditions().get(i);
+                    int c = ruleStart[r] + i;
+                    conditionFeature[c] = condition.feature();
+                    conditionMin[c] = condition.min();
+                    conditionMax[c] = condition.max();
+                    conditionNegated[c] = condition.negated();
+                    conditionDerived[c] = derivedDependencies.get(condition.feature());
+                }
+            }
+            return new FraudRules(Map.copyOf(featureNumbers), derivedStart, components, weights, weightSums,
+                compiled, ruleStart, conditionFeature, conditionMin, conditionMax, conditionNegated, conditionDerived);
+        }
+    }
+}
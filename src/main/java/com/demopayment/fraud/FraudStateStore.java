@@ -0,0 +1,48 @@
+package com.demopayment.fraud;
+
+import java.util.EnumMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// FraudStateStore holds the fraud state shared by all request threads
+// One bounded, lock-striped EntityStateTable per entity type (user, IP, device)
+// with sliding-window velocity counters over the configured windows
+
+@Component
+public class FraudStateStore {
+
+    public enum EntityType { USER, IP, DEVICE }
+
+    private final Map<EntityType, EntityStateTable> tables = new EnumMap<>(EntityType.class);
+    private final VelocityWindows windows;
+
+    public FraudStateStore(@Value("${fraud.state.max-entries-per-type:200000}") int maxEntriesPerType,
+                           @Value("${fraud.state.stripes:64}") int stripes,
+                           @Value("${fraud.velocity.windows:" + VelocityWindows.DEFAULT_SPEC + "}") String windows) {
+        this.windows = VelocityWindows.parse(windows);
+        for (EntityType type : EntityType.values()) {
+            tables.put(type, new EntityStateTable(maxEntriesPerType, stripes, this.windows));
+        }
+    }
+
+    public VelocityWindows windows() {
+        return windows;
+    }
+
+    public EntityStateTable table(EntityType type) {
+        return tables.get(type);
+    }
+
+    public EntityStateTable users() {
+        return tables.get(EntityType.USER);
+    }
+
+    public EntityStateTable ips() {
+        return tables.get(EntityType.IP);
+    }
+
+    public EntityStateTable devices() {
+        return tables.get(EntityType.DEVICE);
+    }
+}
@@ -0,0 +1,246 @@
+package com.demopayment.fraud;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.fraud.FraudStateStore.EntityType;
+
+// UserFeatureStore keeps streaming statistics of every user's payments in a fixed memory budget
+// Per user: the time of the last payment, an EWMA of the amount, and HyperLogLog counters of the
+// distinct devices and IPs used, each 16 four-bit registers packed into one long. How often a user
+// paid from a given device or IP is counted in a CountMinSketch of (user, device) and (user, IP)
+// pairs. All of it is primitive arrays sized from the budget once: three quarters go to the user
+// table, the rest to the sketch. Reads and updates are O(1).
+//
+// The table is open addressing over buckets of 8 slots, keyed by a 64-bit fingerprint of the user
+// id: the fingerprints of a bucket share one cache line and the slot's statistics sit side by side
+// in a second array. When a bucket is full, the user whose last payment is oldest is evicted.
+// Buckets are guarded by striped locks. Amounts are in major units of the one currency the caller
+// converts every payment to; NaN stands for an amount that could not be converted and leaves the
+// average as it is.
+
+@Component
+public class UserFeatureStore {
+
+    private static final int BUCKET_SLOTS = 8;
+    private static final int LAST_SEEN = 0;
+    private static final int AVERAGE_AMOUNT = 1;
+    private static final int DEVICES = 2;
+    private static final int IPS = 3;
+    private static final int FIELDS = 4;
+    private static final long BYTES_PER_USER = Long.BYTES * (1 + FIELDS);
+    private static final double TABLE_SHARE = 0.75;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int REGISTERS = 16;
+    // HyperLogLog bias correction for 16 registers
+    private static final double ALPHA = 0.673;
+
+    private final long[] fingerprints;
+    private final long[] slots;
+    private final int buckets;
+    private final ReentrantLock[] locks;
+    private final int lockMask;
+    private final CountMinSketch pairs;
+    private final double alpha;
+    private final LongAdder users = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public UserFeatureStore(@Value("${fraud.features.memory-mb:64}") int memoryMb,
+                            @Value("${fraud.features.amount-ewma-alpha:0.1}") double alpha,
+                            @Value("${fraud.state.stripes:64}") int stripes,
+                            MeterRegistry meterRegistry) {
+        if (memoryMb <= 0 || memoryMb > 16384) {
+            throw new IllegalArgumentException("fraud.features.memory-mb must be between 1 and 16384");
+        }
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("fraud.features.amount-ewma-alpha must be in (0, 1]");
+        }
+        long budget = (long) memoryMb << 20;
+        long tableBytes = (long) (budget * TABLE_SHARE);
+        this.buckets = (int) Math.max(1, tableBytes / BYTES_PER_USER / BUCKET_SLOTS);
+        this.fingerprints = new long[buckets * BUCKET_SLOTS];
+        this.slots = new long[buckets * BUCKET_SLOTS * FIELDS];
+        int lockCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, buckets)));
+        this.locks = new ReentrantLock[lockCount];
+        for (int i = 0; i < lockCount; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.lockMask = lockCount - 1;
+        this.pairs = CountMinSketch.withMemory(budget - tableBytes, SKETCH_DEPTH);
+        this.alpha = alpha;
+
+        Gauge.builder("payment.fraud.features.users", users, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("payment.fraud.features.evictions", evictions, LongAdder::sum).register(meterRegistry);
+    }
+
+    public UserFeatures read(String userId, String ipAddress, String deviceId) {
+        long fingerprint = fingerprint(userId);
+        long deviceHash = deviceId == null ? 0 : BlacklistSnapshot.hash(EntityType.DEVICE, deviceId);
+        long ipHash = ipAddress == null ? 0 : BlacklistSnapshot.hash(EntityType.IP, ipAddress);
+        int deviceFrequency = deviceId == null ? 0 : pairs.estimate(fingerprint ^ deviceHash);
+        int ipFrequency = ipAddress == null ? 0 : pairs.estimate(fingerprint ^ ipHash);
+
+        int bucket = bucket(fingerprint);
+        long lastSeen;
+        long averageAmount;
+        long devices;
+        long ips;
+        ReentrantLock lock = locks[bucket & lockMask];
+        lock.lock();
+        try {
+            int slot = find(bucket, fingerprint);
+            if (slot < 0) {
+                return new UserFeatures(false, 0, 0, deviceId == null ? 0 : 1, ipAddress == null ? 0 : 1,
+                    deviceFrequency, ipFrequency);
+            }
+            int base = slot * FIELDS;
+            lastSeen = slots[base + LAST_SEEN];
+            averageAmount = slots[base + AVERAGE_AMOUNT];
+            devices = slots[base + DEVICES];
+            ips = slots[base + IPS];
+        } finally {
+            lock.unlock();
+        }
+        return new UserFeatures(true, lastSeen, Double.longBitsToDouble(averageAmount),
+            estimateDistinct(deviceId == null ? devices : addToRegisters(devices, deviceHash)),
+            estimateDistinct(ipAddress == null ? ips : addToRegisters(ips, ipHash)),
+            deviceFrequency, ipFrequency);
+    }
+
+    public void record(String userId, String ipAddress, String deviceId, double amount, long nowMillis) {
+        long fingerprint = fingerprint(userId);
+        long deviceHash = deviceId == null ? 0 : BlacklistSnapshot.hash(EntityType.DEVICE, deviceId);
+        long ipHash = ipAddress == null ? 0 : BlacklistSnapshot.hash(EntityType.IP, ipAddress);
+
+        int bucket = bucket(fingerprint);
+        ReentrantLock lock = locks[bucket & lockMask];
+        lock.lock();
+        try {
+            int slot = find(bucket, fingerprint);
+            int base;
+            if (slot < 0) {
+                base = claim(bucket, fingerprint) * FIELDS;
+                slots[base + AVERAGE_AMOUNT] = Double.doubleToRawLongBits(Double.isNaN(amount) ? 0 : amount);
+                slots[base + DEVICES] = 0;
+                slots[base + IPS] = 0;
+            } else {
+                base = slot * FIELDS;
+                double average = Double.longBitsToDouble(slots[base + AVERAGE_AMOUNT]);
+                if (!Double.isNaN(amount)) {
+                    // 0 until the first amount that could be converted
+                    double updated = average == 0 ? amount : average + alpha * (amount - average);
+                    slots[base + AVERAGE_AMOUNT] = Double.doubleToRawLongBits(updated);
+                }
+            }
+            slots[base + LAST_SEEN] = nowMillis;
+            if (deviceId != null) {
+                slots[base + DEVICES] = addToRegisters(slots[base + DEVICES], deviceHash);
+            }
+            if (ipAddress != null) {
+                slots[base + IPS] = addToRegisters(slots[base + IPS], ipHash);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (deviceId != null) {
+            pairs.add(fingerprint ^ deviceHash);
+        }
+        if (ipAddress != null) {
+            pairs.add(fingerprint ^ ipHash);
+        }
+    }
+
+    public long size() {
+        return users.sum();
+    }
+
+    public int capacity() {
+        return fingerprints.length;
+    }
+
+    public long footprintBytes() {
+        return (long) fingerprints.length * Long.BYTES + (long) slots.length * Long.BYTES + pairs.footprintBytes();
+    }
+
+    // Caller must hold the bucket's lock
+    private int find(int bucket, long fingerprint) {
+        int start = bucket * BUCKET_SLOTS;
+        for (int slot = start; slot < start + BUCKET_SLOTS; slot++) {
+            long current = fingerprints[slot];
+            if (current == fingerprint) {
+                return slot;
+            }
+            if (current == 0) {
+                // Slots are never emptied, so the user is not further along either
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // Caller must hold the bucket's lock; takes the first empty slot or evicts the least recent user
+    private int claim(int bucket, long fingerprint) {
+        int start = bucket * BUCKET_SLOTS;
+        int oldest = start;
+        for (int slot = start; slot < start + BUCKET_SLOTS; slot++) {
+            if (fingerprints[slot] == 0) {
+                fingerprints[slot] = fingerprint;
+                users.increment();
+                return slot;
+            }
+            if (slots[slot * FIELDS + LAST_SEEN] < slots[oldest * FIELDS + LAST_SEEN]) {
+                oldest = slot;
+            }
+        }
+        fingerprints[oldest] = fingerprint;
+        evictions.increment();
+        return oldest;
+    }
+
+    private int bucket(long fingerprint) {
+        return (int) (((fingerprint >>> 32) * buckets) >>> 32);
+    }
+
+    // 0 marks an empty slot
+    private static long fingerprint(String userId) {
+        long hash = BlacklistSnapshot.hash(EntityType.USER, userId == null ? "" : userId);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /*
+     * Adds a hashed value to 16 packed HyperLogLog registers: the top 4 bits pick the register, which
+     * keeps the maximum rank (position of the first set bit) of the remaining 60, capped at 15
+     */
+    static long addToRegisters(long registers, long hash) {
+        int shift = (int) (hash >>> 60) * 4;
+        long rank = Math.min(15, Long.numberOfLeadingZeros(hash << 4) + 1);
+        long current = (registers >>> shift) & 0xF;
+        return rank > current ? (registers & ~(0xFL << shift)) | (rank << shift) : registers;
+    }
+
+    /*
+     * Distinct values added to the registers; linear counting while that is small, as 16
+     * registers alone would be off by a quarter
+     */
+    static double estimateDistinct(long registers) {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < REGISTERS; i++) {
+            int rank = (int) ((registers >>> (i * 4)) & 0xF);
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            return REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return estimate;
+    }
+}
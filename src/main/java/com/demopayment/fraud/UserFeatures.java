@@ -0,0 +1,28 @@
+package com.demopayment.fraud;
+
+// UserFeatures is what UserFeatureStore knows about a user's past payments, read for one new payment
+// Distinct counts include the payment's own device and IP; frequencies count only earlier payments
+// from them. A user without recorded payments (new, or evicted from the store) is not known.
+
+public record UserFeatures(boolean known,
+                           long lastTransactionMillis,
+                           double averageAmount,
+                           double distinctDevices,
+                           double distinctIps,
+                           int deviceFrequency,
+                           int ipFrequency) {
+
+    /*
+     * Seconds since the user's previous payment, or infinity for a user that has none
+     */
+    public double secondsSinceLastTransaction(long nowMillis) {
+        return known ? Math.max(0, nowMillis - lastTransactionMillis) / 1000.0 : Double.POSITIVE_INFINITY;
+    }
+
+    /*
+     * The amount as a multiple of the user's average; 1 while there is no average yet
+     */
+    public double amountToAverage(double amount) {
+        return known && averageAmount > 0 ? amount / averageAmount : 1;
+    }
+}
@@ -0,0 +1,129 @@
+package com.demopayment.fraud;
+
+import java.time.Duration;
+import java.util.Arrays;
+import org.springframework.boot.convert.DurationStyle;
+
+// VelocityWindows describes the sliding windows tracked for every entity (e.g. 1m, 1h, 24h)
+// and implements the time-bucketed ring buffers behind them.
+// The state of one entity is a single packed long[]; per window it holds
+// [head bucket, running count, running amount, (count, amount) x buckets].
+// Recording and reading are O(1): the running totals are kept up to date and
+// expired buckets are only cleared lazily, when the entity is next touched.
+
+public final class VelocityWindows {
+
+    public static final String DEFAULT_SPEC = "1m:6,1h:12,24h:24";
+
+    private static final int HEADER = 3;
+
+    private final Duration[] lengths;
+    private final long[] bucketMillis;
+    private final int[] buckets;
+    private final int[] offsets;
+    private final int stateLength;
+
+    private VelocityWindows(Duration[] lengths, int[] buckets) {
+        this.lengths = lengths;
+        this.buckets = buckets;
+        this.bucketMillis = new long[lengths.length];
+        this.offsets = new int[lengths.length];
+        int offset = 0;
+        for (int w = 0; w < lengths.length; w++) {
+            bucketMillis[w] = Math.max(1, lengths[w].toMillis() / buckets[w]);
+            offsets[w] = offset;
+            offset += HEADER + 2 * buckets[w];
+        }
+        this.stateLength = offset;
+    }
+
+    /*
+     * Parses a comma separated list of window:buckets pairs, e.g. "1m:6,1h:12,24h:24"
+     */
+    public static VelocityWindows parse(String spec) {
+        String[] parts = spec.split(",");
+        Duration[] lengths = new Duration[parts.length];
+        int[] buckets = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] window = parts[i].trim().split(":");
+            if (window.length != 2) {
+                throw new IllegalArgumentException("Invalid velocity window: " + parts[i]);
+            }
+            lengths[i] = DurationStyle.detectAndParse(window[0].trim());
+            buckets[i] = Integer.parseInt(window[1].trim());
+            if (lengths[i].isNegative() || lengths[i].isZero() || buckets[i] <= 0) {
+                throw new IllegalArgumentException("Invalid velocity window: " + parts[i]);
+            }
+        }
+        return new VelocityWindows(lengths, buckets);
+    }
+
+    public int size() {
+        return lengths.length;
+    }
+
+    public Duration length(int window) {
+        return lengths[window];
+    }
+
+    public int indexOf(Duration length) {
+        for (int w = 0; w < lengths.length; w++) {
+            if (lengths[w].equals(length)) {
+                return w;
+            }
+        }
+        throw new IllegalArgumentException("No velocity window of " + length + " configured in " + Arrays.toString(lengths));
+    }
+
+    long[] newState() {
+        return new long[stateLength];
+    }
+
+    void record(long[] state, long nowMillis, long amount) {
+        for (int w = 0; w < lengths.length; w++) {
+            advance(state, w, nowMillis);
+            int offset = offsets[w];
+            int slot = offset + HEADER + 2 * (int) Math.floorMod(state[offset], (long) buckets[w]);
+            state[slot]++;
+            state[slot + 1] += amount;
+            state[offset + 1]++;
+            state[offset + 2] += amount;
+        }
+    }
+
+    long count(long[] state, int window, long nowMillis) {
+        advance(state, window, nowMillis);
+        return state[offsets[window] + 1];
+    }
+
+    long amount(long[] state, int window, long nowMillis) {
+        advance(state, window, nowMillis);
+        return state[offsets[window] + 2];
+    }
+
+    /*
+     * Moves the head of the ring to the bucket of nowMillis, subtracting every bucket that slid out of the window
+     */
+    private void advance(long[] state, int window, long nowMillis) {
+        int offset = offsets[window];
+        long head = state[offset];
+        long bucket = Math.floorDiv(nowMillis, bucketMillis[window]);
+        if (bucket <= head) {
+            return;
+        }
+        int ringSize = buckets[window];
+        if (bucket - head >= ringSize) {
+            // Idle for longer than the whole window: nothing in it is still live
+            Arrays.fill(state, offset + 1, offset + HEADER + 2 * ringSize, 0L);
+        } else {
+            for (long b = head + 1; b <= bucket; b++) {
+                int slot = offset + HEADER + 2 * (int) Math.floorMod(b, (long) ringSize);
+                state[offset + 1] -= state[slot];
+                state[offset + 2] -= state[slot + 1];
+                state[slot] = 0L;
+                state[slot + 1] = 0L;
+            }
+        }
+        state[offset] = bucket;
+    }
+}
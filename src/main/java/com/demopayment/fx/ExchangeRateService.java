@@ -0,0 +1,142 @@
+package com.demopayment.fx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.config.ReloadableFile;
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
+
+// ExchangeRateService holds the exchange rates every conversion uses
+// Rates are loaded from the configured file (or the bundled fx-rates.txt feed stand-in) into an
+// immutable ExchangeRates snapshot that is swapped in atomically, so conversions read one volatile
+// field and index arrays by ISO numeric code without locks or map lookups. The configured file is
+// watched through ReloadableFile.
+//
+// File format: one CODE=rate entry per line, the units of that currency per one unit of the base
+// currency. Blank lines and lines starting with # are ignored.
+
+@Component
+public class ExchangeRateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExchangeRateService.class);
+
+    static final String BUNDLED_RATES = "fx-rates.txt";
+
+    private final ReloadableFile file;
+    private final String baseCurrency;
+
+    private volatile ExchangeRates snapshot;
+
+    public ExchangeRateService(@Value("${payment.fx.rates-file:}") String file,
+                               @Value("${payment.fx.base-currency:USD}") String baseCurrency) {
+        this.file = new ReloadableFile(file, "exchange rates");
+        this.baseCurrency = baseCurrency;
+        this.snapshot = ExchangeRates.of(baseCurrency, Map.of());
+    }
+
+    @PostConstruct
+    public void loadOnStartup() {
+        if (file.path() == null) {
+            loadBundled();
+            return;
+        }
+        reloadIfModified();
+    }
+
+    @Scheduled(fixedDelayString = "${payment.fx.reload-interval-ms:60000}",
+               initialDelayString = "${payment.fx.reload-interval-ms:60000}")
+    public void reloadIfModified() {
+        file.reloadIfModified(this::load);
+    }
+
+    /*
+     * Reads the file into a new snapshot and swaps it in; returns the number of currencies
+     */
+    public int load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return load(reader, path.toString());
+        }
+    }
+
+    public ExchangeRates current() {
+        return snapshot;
+    }
+
+    public Money convert(Money amount, Currency to) {
+        return snapshot.convert(amount, to);
+    }
+
+    public boolean supports(Currency currency) {
+        return snapshot.supports(currency);
+    }
+
+    void loadBundled() {
+        try (InputStream in = ExchangeRateService.class.getClassLoader().getResourceAsStream(BUNDLED_RATES)) {
+            if (in == null) {
+                logger.warn("No exchange rate file configured and {} not found, only {} is supported", BUNDLED_RATES, baseCurrency);
+                return;
+            }
+            load(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), BUNDLED_RATES);
+        } catch (IOException e) {
+            logger.error("Failed to load bundled exchange rates", e);
+        }
+    }
+
+    private int load(BufferedReader reader, String source) throws IOException {
+        return file.locked(() -> {
+            long start = System.nanoTime();
+            Map<String, BigDecimal> rates = new HashMap<>();
+            int skipped = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!addLine(rates, line)) {
+                    skipped++;
+                }
+            }
+            ExchangeRates loaded = ExchangeRates.of(baseCurrency, rates);
+            snapshot = loaded;
+            logger.info("Loaded exchange rates for {} currencies from {} in {} ms, skipped {} lines",
+                loaded.size(), source, (System.nanoTime() - start) / 1_000_000, skipped);
+            return loaded.size();
+        });
+    }
+
+    private static boolean addLine(Map<String, BigDecimal> rates, String line) {
+        String entry = line.trim();
+        if (entry.isEmpty() || entry.startsWith("#")) {
+            return true;
+        }
+        int separator = entry.indexOf('=');
+        if (separator <= 0 || separator == entry.length() - 1) {
+            return false;
+        }
+        try {
+            String code = entry.substring(0, separator).trim();
+            BigDecimal rate = new BigDecimal(entry.substring(separator + 1).trim());
+            Currency currency = Currency.getInstance(code);
+            if (rate.signum() <= 0 || currency.getNumericCode() <= 0 || currency.getDefaultFractionDigits() < 0) {
+                return false;
+            }
+            rates.put(code, rate);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
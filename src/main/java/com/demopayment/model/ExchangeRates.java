@@ -0,0 +1,126 @@
+package com.demopayment.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Map;
+import java.util.TreeMap;
+
+// ExchangeRates is an immutable table of conversion factors between every pair of its currencies
+// Rates are given as units of each currency per one unit of a base currency. At construction every
+// pair gets an exact fraction numerator / denominator (in lowest terms) that maps minor units of one
+// currency to minor units of the other, so a conversion is one multiply and one divide on longs,
+// rounded half-even once. Only products beyond 64 bits fall back to BigDecimal.
+
+public final class ExchangeRates {
+
+    private final Currency base;
+    private final Currency[] currencies;
+    // ISO 4217 numeric code -> position in currencies, or -1
+    private final int[] positions = new int[1000];
+    // Factor from currencies[i] to currencies[j] as numerator and denominator at 2 * (i * n + j),
+    // side by side so a conversion touches one cache line
+    private final long[] factors;
+
+    private ExchangeRates(Currency base, Currency[] currencies, BigDecimal[] rates) {
+        this.base = base;
+        this.currencies = currencies;
+        Arrays.fill(positions, -1);
+        int n = currencies.length;
+        this.factors = new long[2 * n * n];
+        for (int i = 0; i < n; i++) {
+            positions[currencies[i].getNumericCode()] = i;
+            for (int j = 0; j < n; j++) {
+                // minor(to) = minor(from) * rate(to) * 10^digits(to) / (rate(from) * 10^digits(from))
+                BigDecimal from = rates[i].movePointRight(currencies[i].getDefaultFractionDigits());
+                BigDecimal to = rates[j].movePointRight(currencies[j].getDefaultFractionDigits());
+                int scale = Math.max(from.scale(), to.scale());
+                BigInteger numerator = to.setScale(scale).unscaledValue();
+                BigInteger denominator = from.setScale(scale).unscaledValue();
+                BigInteger gcd = numerator.gcd(denominator);
+                factors[2 * (i * n + j)] = numerator.divide(gcd).longValueExact();
+                factors[2 * (i * n + j) + 1] = denominator.divide(gcd).longValueExact();
+            }
+        }
+    }
+
+    /*
+     * Table from units of each currency per one unit of base; the base itself may be omitted
+     */
+    public static ExchangeRates of(String baseCode, Map<String, BigDecimal> ratesPerBase) {
+        Currency base = Currency.getInstance(baseCode);
+        Map<String, BigDecimal> rates = new TreeMap<>(ratesPerBase);
+        rates.putIfAbsent(baseCode, BigDecimal.ONE);
+        Currency[] currencies = new Currency[rates.size()];
+        BigDecimal[] values = new BigDecimal[rates.size()];
+        int i = 0;
+        for (Map.Entry<String, BigDecimal> entry : rates.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().signum() <= 0) {
+                throw new IllegalArgumentException("Exchange rate of " + entry.getKey() + " must be positive");
+            }
+            Currency currency = Currency.getInstance(entry.getKey());
+            if (currency.getNumericCode() <= 0 || currency.getDefaultFractionDigits() < 0) {
+                throw new IllegalArgumentException("Currency " + currency + " has no numeric code or minor unit");
+            }
+            currencies[i] = currency;
+            values[i] = entry.getValue().stripTrailingZeros();
+            i++;
+        }
+        return new ExchangeRates(base, currencies, values);
+    }
+
+    public Currency getBase() {
+        return base;
+    }
+
+    public int size() {
+        return currencies.length;
+    }
+
+    public boolean supports(Currency currency) {
+        return position(currency) >= 0;
+    }
+
+    public Money convert(Money amount, Currency to) {
+        if (amount.currency() == to) {
+            return amount;
+        }
+        return new Money(convertMinor(amount.minorUnits(), amount.currency(), to), to);
+    }
+
+    /*
+     * Converts minor units of one currency to the other without allocating, except when the
+     * product does not fit in 64 bits
+     */
+    public long convertMinor(long minorUnits, Currency from, Currency to) {
+        int i = position(from);
+        int j = position(to);
+        if (i < 0 || j < 0) {
+            throw new IllegalArgumentException("No exchange rate from " + from + " to " + to);
+        }
+        int pair = 2 * (i * currencies.length + j);
+        long numerator = factors[pair];
+        long denominator = factors[pair + 1];
+        long high = Math.multiplyHigh(minorUnits, numerator);
+        long product = minorUnits * numerator;
+        if (high != (product >> 63)) {
+            return BigDecimal.valueOf(minorUnits).multiply(BigDecimal.valueOf(numerator))
+                .divide(BigDecimal.valueOf(denominator), 0, RoundingMode.HALF_EVEN).longValueExact();
+        }
+        long quotient = product / denominator;
+        long remainder = product % denominator;
+        // Round half-even, comparing the remainder with what is left of the denominator to avoid overflow
+        long rest = Math.abs(remainder);
+        if (rest > denominator - rest || (rest == denominator - rest && (quotient & 1) != 0)) {
+            quotient += Long.signum(product);
+        }
+        return quotient;
+    }
+
+    private int position(Currency currency) {
+        int code = currency.getNumericCode();
+        return code >= 0 && code < positions.length ? positions[code] : -1;
+    }
+}
@@ -0,0 +1,202 @@
+package com.demopayment.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import jakarta.persistence.Embeddable;
+import org.hibernate.annotations.EmbeddableInstantiator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.ValueAccess;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+
+// Money is an exact amount: a long count of minor units (cents, pence, yen) of a currency
+// Currencies are java.util.Currency instances, which the JDK interns, so they compare by identity.
+// Arithmetic is plain long math checked for overflow and never rounds; only conversion between
+// currencies does (see ExchangeRates). Money is small and immutable, so the JIT scalar-replaces
+// short-lived intermediates; a running total in a loop is not, so hot loops keep it in minor units.
+// JSON writes the amount as an exact decimal number; JPA embeds it as minor units and currency columns.
+
+@Embeddable
+@EmbeddableInstantiator(Money.JpaInstantiator.class)
+@JsonSerialize(using = Money.JsonWriter.class)
+public record Money(long minorUnits, Currency currency) implements Comparable<Money> {
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L
+    };
+
+    public Money {
+        if (currency == null) {
+            throw new IllegalArgumentException("Money needs a currency");
+        }
+        int digits = currency.getDefaultFractionDigits();
+        if (digits < 0 || digits >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Currency " + currency + " has no fixed minor unit");
+        }
+    }
+
+    public static Money ofMinor(long minorUnits, String currencyCode) {
+        return new Money(minorUnits, Currency.getInstance(currencyCode));
+    }
+
+    public static Money ofMajor(long majorUnits, Currency currency) {
+        return new Money(Math.multiplyExact(majorUnits, POWERS_OF_TEN[currency.getDefaultFractionDigits()]), currency);
+    }
+
+    /*
+     * Exact conversion of a decimal amount; more decimals than the currency has is an error, not a rounding
+     */
+    public static Money of(BigDecimal amount, String currencyCode) {
+        if (amount == null || currencyCode == null) {
+            throw new IllegalArgumentException("Amount and currency are required");
+        }
+        Currency currency = Currency.getInstance(currencyCode);
+        try {
+            long minorUnits = amount.movePointRight(currency.getDefaultFractionDigits()).longValueExact();
+            return new Money(minorUnits, currency);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount.toPlainString() + " is not a whole number of "
+                + currencyCode + " minor units", e);
+        }
+    }
+
+    public static Money of(String amount, String currencyCode) {
+        return of(new BigDecimal(amount), currencyCode);
+    }
+
+    public String currencyCode() {
+        return currency.getCurrencyCode();
+    }
+
+    public Money plus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money minus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money times(long factor) {
+        return new Money(Math.multiplyExact(minorUnits, factor), currency);
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return compareTo(other) > 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return compareTo(other) < 0;
+    }
+
+    /*
+     * Whole major units, truncated toward zero
+     */
+    public long majorUnits() {
+        return minorUnits / POWERS_OF_TEN[currency.getDefaultFractionDigits()];
+    }
+
+    /*
+     * Nearest double, for metrics and for callers that still take double amounts
+     */
+    public double doubleValue() {
+        return (double) minorUnits / POWERS_OF_TEN[currency.getDefaultFractionDigits()];
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getDefaultFractionDigits());
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        requireSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    /*
+     * The amount with exactly the currency's number of decimals, e.g. "-12.50"
+     */
+    public String toPlainString() {
+        int digits = currency.getDefaultFractionDigits();
+        // 19 digits of a long, sign, point and a leading zero
+        char[] text = new char[22];
+        int position = text.length;
+        long remaining = Math.abs(minorUnits);
+        for (int i = 0; i < digits; i++) {
+            text[--position] = (char) ('0' + Math.abs(remaining % 10));
+            remaining /= 10;
+        }
+        if (digits > 0) {
+            text[--position] = '.';
+        }
+        do {
+            text[--position] = (char) ('0' + Math.abs(remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        if (minorUnits < 0) {
+            text[--position] = '-';
+        }
+        return new String(text, position, text.length - position);
+    }
+
+    @Override
+    public String toString() {
+        return toPlainString() + " " + currency.getCurrencyCode();
+    }
+
+    private void requireSameCurrency(Money other) {
+        if (other.currency != currency) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+        }
+    }
+
+    // The amount as an exact JSON number; the currency is a separate property of the owner
+    static final class JsonWriter extends StdSerializer<Money> {
+        JsonWriter() {
+            super(Money.class);
+        }
+
+        @Override
+        public void serialize(Money value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(value.toPlainString());
+        }
+    }
+
+    // Builds Money from its columns. Hibernate passes them in attribute-name order (currency,
+    // minorUnits), not the record's component order, so its default record instantiation mixes
+    // them up. A row missing either column has no amount rather than failing to load.
+    public static final class JpaInstantiator implements org.hibernate.metamodel.spi.EmbeddableInstantiator {
+        @Override
+        public Object instantiate(ValueAccess valueAccess, SessionFactoryImplementor sessionFactory) {
+            Currency currency = valueAccess.getValue(0, Currency.class);
+            Long minorUnits = valueAccess.getValue(1, Long.class);
+            return currency == null || minorUnits == null ? null : new Money(minorUnits, currency);
+        }
+
+        @Override
+        public boolean isInstance(Object object, SessionFactoryImplementor sessionFactory) {
+            return object instanceof Money;
+        }
+
+        @Override
+        public boolean isSameClass(Object object, SessionFactoryImplementor sessionFactory) {
+            return object.getClass() == Money.class;
+        }
+    }
+}
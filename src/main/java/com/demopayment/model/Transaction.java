@@ -1,18 +1,39 @@
 package com.demopayment.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.AttributeOverride;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embedded;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
-import java.util.Map;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 // Transaction entity representing a payment transaction
 // Contains transaction details, status flags, and validation logic
 
 @Entity
-public class Transaction {
+@Table(indexes = {
+    // Keyset order of the transaction listing, and its per-user variant
+    @Index(name = "idx_transaction_created_at_id", columnList = "createdAt, id"),
+    @Index(name = "idx_transaction_user_created_at", columnList = "userId, createdAt, id")
+})
+public class Transaction implements Persistable<String> {
     @Id
     private String id;
-    private double amount;
-    public String currency;
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "amount_minor", nullable = false))
+    @AttributeOverride(name = "currency", column = @Column(name = "currency", length = 3, nullable = false))
+    private Money amount;
+    // Microsecond precision, as stored by Postgres, so keyset cursors round-trip exactly
+    @Column(nullable = false)
+    private Instant createdAt;
     public String userId;
     public boolean isPremiumUser;
     public boolean isProcessed;
@@ -24,47 +45,43 @@ public class Transaction {
     public boolean isLowRisk;
     public boolean isMediumRisk;
     
-    private static int transactionCounter = 0;
-    private static final Map<String, Transaction> transactionCache = new java.util.HashMap<>();
+    // IDs are assigned on creation, so new instances must be flagged for Spring Data to
+    // persist (and batch insert) them instead of merging with a SELECT first
+    @Transient
+    private boolean isNew = true;
     
     public Transaction() {
-        transactionCounter++;
-        this.id = "TXN" + transactionCounter;
-        transactionCache.put(this.id, this);
+        this.id = TransactionIdGenerator.shared().nextIdString();
+        this.createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
     }
     
-    public Transaction(String userId, double amount) {
+    public Transaction(String userId, Money amount) {
         this();
         this.userId = userId;
         this.amount = amount;
     }
     
-    public Transaction(double amount, String userId) {
+    public Transaction(Money amount, String userId) {
         this();
         this.amount = amount;
         this.userId = userId;
     }
     
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
-        // Side effect: Update cache
-        transactionCache.put(this.id, this);
         // Side effect: Log change
         System.out.println("Amount changed for transaction " + this.id);
     }
     
     public void process() {
         // Validate
-        if (amount <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new RuntimeException("Invalid amount");
         }
         
         // Process
         isProcessed = true;
         
-        // Update cache
-        transactionCache.put(id, this);
-        
         // Log
         System.out.println("Transaction processed: " + id);
         
@@ -83,14 +100,6 @@ public class Transaction {
         // Implementation
     }
     
-    public static Transaction getTransaction(String id) {
-        return transactionCache.get(id);
-    }
-    
-    public static void clearCache() {
-        transactionCache.clear();
-    }
-    
     public void setStatus(boolean isProcessed, boolean isFailed, boolean isRefunded, 
                          boolean isDisputed, boolean isFraudulent) {
         this.isProcessed = isProcessed;
@@ -107,27 +116,24 @@ public class Transaction {
     }
     
     public boolean isHighValue() {
-        return amount > 1000.0;
+        return amount.isGreaterThan(Money.ofMajor(1000, amount.currency()));
     }
     
     public boolean isLowValue() {
-        return amount < 100.0;
+        return amount.isLessThan(Money.ofMajor(100, amount.currency()));
     }
     
     public void validate() {
-        if (amount <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new RuntimeException("Invalid amount");
         }
         if (userId == null) {
             throw new RuntimeException("Invalid user");
         }
-        if (currency == null) {
-            throw new RuntimeException("Invalid currency");
-        }
     }
     
     public void validateAmount() {
-        if (amount <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new RuntimeException("Invalid amount");
         }
     }
@@ -139,24 +145,55 @@ public class Transaction {
     }
     
     public void validateCurrency() {
-        if (currency == null) {
+        if (amount == null) {
             throw new RuntimeException("Invalid currency");
         }
     }
 
     // Getters and setters
+    @Override
     public String getId() {
         return id;
     }
 
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
+    public String getCurrency() {
+        return amount == null ? null : amount.currencyCode();
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    // For instances rebuilt outside JPA that may already be stored (e.g. replayed from the write
+    // journal): false makes Spring Data merge them instead of inserting
+    public void setNew(boolean isNew) {
+        this.isNew = isNew;
+    }
+
     public boolean isPremiumUser() {
         return isPremiumUser;
     }
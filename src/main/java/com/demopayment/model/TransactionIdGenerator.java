@@ -0,0 +1,127 @@
+package com.demopayment.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+// TransactionIdGenerator hands out time-ordered 64-bit ids, unique across nodes and restarts
+// Layout (Snowflake): 41 bits of milliseconds since EPOCH, 10 bits of node id, 12 bits of sequence.
+// The last id is kept in one AtomicLong and the next one is max(last + 1, now with sequence 0),
+// so ids are strictly increasing on a node even when more than 4096 are taken in a millisecond (the
+// clock part runs ahead briefly) or the wall clock steps back. The string form is "TXN" followed by
+// 13 Crockford base32 digits: fixed width, so strings sort like the ids and new rows land at the
+// right edge of the primary key index. A generator for a leased node id asks the lease before every
+// id and refuses to hand one out while the lease is not confirmed, since another node may hold it.
+
+public final class TransactionIdGenerator {
+
+    public static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+    public static final int MAX_NODE_ID = (1 << 10) - 1;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + NODE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final byte[] PREFIX = "TXN".getBytes(StandardCharsets.US_ASCII);
+    private static final int DIGITS = 13;
+    private static final byte[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".getBytes(StandardCharsets.US_ASCII);
+
+    // Used by new Transaction instances; replaced at startup with one for the configured or leased node
+    // id, so the random id only serves code running outside the application (tests, benchmarks)
+    private static volatile TransactionIdGenerator shared =
+        new TransactionIdGenerator(ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1));
+
+    private final int nodeId;
+    private final long node;
+    private final IntPredicate leaseHeld;
+    private final long epochMillis = EPOCH.toEpochMilli();
+    private final Clock clock;
+    private final AtomicLong last = new AtomicLong();
+
+    public TransactionIdGenerator(int nodeId) {
+        this(nodeId, id -> true);
+    }
+
+    /*
+     * For a leased node id; leaseHeld tells whether the lease on the given node id is still confirmed
+     */
+    public TransactionIdGenerator(int nodeId, IntPredicate leaseHeld) {
+        this(nodeId, leaseHeld, Clock.systemUTC());
+    }
+
+    TransactionIdGenerator(int nodeId, Clock clock) {
+        this(nodeId, id -> true, clock);
+    }
+
+    TransactionIdGenerator(int nodeId, IntPredicate leaseHeld, Clock clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.node = (long) nodeId << SEQUENCE_BITS;
+        this.leaseHeld = leaseHeld;
+        this.clock = clock;
+    }
+
+    public static TransactionIdGenerator shared() {
+        return shared;
+    }
+
+    public static void install(TransactionIdGenerator generator) {
+        shared = generator;
+    }
+
+    /*
+     * Throws IllegalStateException while the lease on the node id is not confirmed
+     */
+    public long nextId() {
+        if (!leaseHeld.test(nodeId)) {
+            throw new IllegalStateException("Lease on node id " + nodeId
+                + " is not confirmed; not issuing transaction ids another node may also issue");
+        }
+        long earliest = ((clock.millis() - epochMillis) << TIMESTAMP_SHIFT) | node;
+        while (true) {
+            long previous = last.get();
+            long next;
+            if (previous < earliest) {
+                next = earliest;
+            } else if ((previous & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                // Sequence exhausted: borrow the next millisecond
+                next = (((previous >>> TIMESTAMP_SHIFT) + 1) << TIMESTAMP_SHIFT) | node;
+            } else {
+                next = previous + 1;
+            }
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    public String nextIdString() {
+        return format(nextId());
+    }
+
+    /*
+     * "TXN" and 13 base32 digits, built in one byte array without intermediate strings
+     */
+    public static String format(long id) {
+        byte[] text = new byte[PREFIX.length + DIGITS];
+        System.arraycopy(PREFIX, 0, text, 0, PREFIX.length);
+        for (int i = text.length - 1; i >= PREFIX.length; i--) {
+            text[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    public static Instant timestamp(long id) {
+        return EPOCH.plusMillis(id >>> TIMESTAMP_SHIFT);
+    }
+
+    public static int nodeId(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+}
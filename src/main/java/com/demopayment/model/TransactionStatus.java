@@ -0,0 +1,22 @@
+package com.demopayment.model;
+
+// TransactionStatus names the status flags of a Transaction that listings can filter on
+// Each status maps to the entity attribute holding its flag
+
+public enum TransactionStatus {
+    PROCESSED("isProcessed"),
+    FAILED("isFailed"),
+    REFUNDED("isRefunded"),
+    DISPUTED("isDisputed"),
+    FRAUDULENT("isFraudulent");
+
+    private final String attribute;
+
+    TransactionStatus(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String attribute() {
+        return attribute;
+    }
+}
@@ -0,0 +1,38 @@
+package com.demopayment.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// UserProfile is the user service's view of a user, as used by payments
+// Field names follow the user service's JSON; unknown fields are ignored.
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record UserProfile(String id,
+                          String name,
+                          String email,
+                          String phone,
+                          String type,
+                          @JsonProperty("isActive") boolean active,
+                          @JsonProperty("isVerified") boolean verified,
+                          @JsonProperty("isPremiumUser") boolean premiumUser,
+                          double balance,
+                          String currency,
+                          String createdAt,
+                          String ipAddress,
+                          String deviceId,
+                          Address address,
+                          Map<String, String> preferences) {
+
+    public UserProfile {
+        preferences = preferences == null || preferences.isEmpty()
+            ? Map.of()
+            : Collections.unmodifiableMap(new LinkedHashMap<>(preferences));
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Address(String street, String city, String state, String zip, String country) {
+    }
+}
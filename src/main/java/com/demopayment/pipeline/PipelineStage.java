@@ -0,0 +1,15 @@
+package com.demopayment.pipeline;
+
+// PipelineStage lists the post-payment side effects that run off the request thread
+// Each stage has its own bounded executor so a slow stage cannot starve the others
+
+public enum PipelineStage {
+    NOTIFICATIONS,
+    RECEIPTS,
+    CACHE,
+    REWARDS;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,188 @@
+package com.demopayment.pipeline;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// PostPaymentPipeline runs the side effects of a recorded payment (notifications, receipts,
+// cache writes, rewards) on one bounded executor per PipelineStage.
+// A full stage queue pushes back on the submitting thread, which then runs the task itself.
+// Failed tasks are retried with exponential backoff and dropped, with an error log, once
+// they run out of attempts. Queue depth, queue wait, task duration, failures, retries and
+// drops are published per stage. Stage workers are virtual threads when the application runs
+// in virtual-thread mode (spring.threads.virtual.enabled); the stage bounds still apply.
+
+@Component
+public class PostPaymentPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostPaymentPipeline.class);
+
+    private final Map<PipelineStage, StageExecutor> stages = new EnumMap<>(PipelineStage.class);
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final boolean virtualThreads;
+
+    public PostPaymentPipeline(MeterRegistry meterRegistry,
+                               @Value("${payment.pipeline.threads-per-stage:2}") int threadsPerStage,
+                               @Value("${payment.pipeline.queue-capacity:1000}") int queueCapacity,
+                               @Value("${payment.pipeline.max-attempts:3}") int maxAttempts,
+                               @Value("${payment.pipeline.retry-backoff-ms:200}") long retryBackoffMs,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+        this.virtualThreads = virtualThreads;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(namedThreads("post-payment-retry"));
+        for (PipelineStage stage : PipelineStage.values()) {
+            stages.put(stage, new StageExecutor(stage, threadsPerStage, queueCapacity, meterRegistry));
+        }
+    }
+
+    public void submit(PipelineStage stage, String taskName, Runnable task) {
+        stages.get(stage).enqueue(new StageTask(taskName, task, 1));
+    }
+
+    public int queueDepth(PipelineStage stage) {
+        return stages.get(stage).executor.getQueue().size();
+    }
+
+    /*
+     * Stops accepting work and lets queued side effects finish
+     */
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdown();
+        for (StageExecutor stage : stages.values()) {
+            stage.executor.shutdown();
+        }
+        try {
+            for (StageExecutor stage : stages.values()) {
+                if (!stage.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("Post-payment stage {} did not drain, {} tasks left", stage.stage.tag(), stage.executor.getQueue().size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record StageTask(String name, Runnable body, int attempt) {
+    }
+
+    private final class StageExecutor {
+        private final PipelineStage stage;
+        private final ThreadPoolExecutor executor;
+        private final Timer queueWait;
+        private final Timer duration;
+        private final Counter failures;
+        private final Counter retries;
+        private final Counter dropped;
+        private final Counter callerRuns;
+
+        StageExecutor(PipelineStage stage, int threads, int queueCapacity, MeterRegistry registry) {
+            this.stage = stage;
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), workerThreads("post-payment-" + stage.tag()),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Post-payment stage " + stage.tag() + " is shut down");
+                    }
+                    countCallerRun();
+                    task.run();
+                });
+            Gauge.builder("payment.pipeline.queue.depth", executor, pool -> pool.getQueue().size())
+                .tag("stage", stage.tag())
+                .register(registry);
+            this.queueWait = Timer.builder("payment.pipeline.queue.wait")
+                .tag("stage", stage.tag())
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+            this.duration = Timer.builder("payment.pipeline.task.duration")
+                .tag("stage", stage.tag())
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+            this.failures = Counter.builder("payment.pipeline.task.failures").tag("stage", stage.tag()).register(registry);
+            this.retries = Counter.builder("payment.pipeline.task.retries").tag("stage", stage.tag()).register(registry);
+            this.dropped = Counter.builder("payment.pipeline.task.dropped").tag("stage", stage.tag()).register(registry);
+            this.callerRuns = Counter.builder("payment.pipeline.caller.runs").tag("stage", stage.tag()).register(registry);
+        }
+
+        void enqueue(StageTask task) {
+            long enqueuedAt = System.nanoTime();
+            try {
+                executor.execute(() -> run(task, enqueuedAt));
+            } catch (RejectedExecutionException e) {
+                dropped.increment();
+                logger.error("Dropped post-payment task {} in stage {}: {}", task.name(), stage.tag(), e.getMessage());
+            }
+        }
+
+        private void countCallerRun() {
+            callerRuns.increment();
+        }
+
+        private void run(StageTask task, long enqueuedAt) {
+            long start = System.nanoTime();
+            queueWait.record(start - enqueuedAt, TimeUnit.NANOSECONDS);
+            try {
+                task.body().run();
+            } catch (RuntimeException e) {
+                failures.increment();
+                retryOrDrop(task, e);
+            } finally {
+                duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void retryOrDrop(StageTask task, RuntimeException failure) {
+            if (task.attempt() >= maxAttempts) {
+                dropped.increment();
+                logger.error("Post-payment task {} in stage {} failed after {} attempts", task.name(), stage.tag(), task.attempt(), failure);
+                return;
+            }
+            retries.increment();
+            long delay = retryBackoffMs << (task.attempt() - 1);
+            logger.warn("Post-payment task {} in stage {} failed (attempt {}), retrying in {} ms: {}",
+                task.name(), stage.tag(), task.attempt(), delay, failure.getMessage());
+            StageTask next = new StageTask(task.name(), task.body(), task.attempt() + 1);
+            try {
+                retryScheduler.schedule(() -> enqueue(next), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                dropped.increment();
+                logger.error("Dropped retry of post-payment task {} in stage {}: pipeline is shut down", task.name(), stage.tag());
+            }
+        }
+    }
+
+    private ThreadFactory workerThreads(String prefix) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(prefix + "-", 1).factory();
+        }
+        return namedThreads(prefix);
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,8 +1,19 @@
 package com.demopayment.repository;
 
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.demopayment.model.Transaction;
 
 public interface JpaTransactionRepository extends JpaRepository<Transaction, String> {
-} 
\ No newline at end of file
+
+    /*
+     * Users with a transaction since the given time, most recently active first
+     */
+    @Query("select t.userId from Transaction t where t.createdAt >= :since group by t.userId order by max(t.createdAt) desc")
+    List<String> findActiveUserIds(@Param("since") Instant since, Pageable pageable);
+}
@@ -0,0 +1,181 @@
+package com.demopayment.repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import com.demopayment.model.TransactionIdGenerator;
+
+// NodeIdLease hands each running node its own transaction id node id when payment.node-id is unset
+// The node_id_lease table holds one row per node id with its owner and an expiry; a node claims the
+// lowest id that was never used (the primary key settles races) or, once all are, one whose lease
+// expired, and renews it while it runs. Expiries are taken from the database clock, so nodes with
+// skewed clocks still agree on them. A node that fails to renew in time loses its id and claims a new one.
+// Locally the lease counts as held only until the monotonic time the last successful claim or renewal
+// started plus the duration minus a safety margin, so a node that cannot reach the database stops
+// issuing ids (see isHeld) before another node can take its id over.
+
+@Component
+public class NodeIdLease {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeIdLease.class);
+
+    private static final String TABLE = "node_id_lease";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration duration;
+    private final long heldNanos;
+    private final LongSupplier nanoTime;
+    private final String owner = UUID.randomUUID().toString();
+    private volatile int nodeId = -1;
+    private volatile Confirmed confirmed = new Confirmed(-1, 0);
+    private volatile IntConsumer onReassigned = id -> { };
+
+    @Autowired
+    public NodeIdLease(JdbcTemplate jdbcTemplate,
+                       @Value("${payment.node-lease.duration:60s}") Duration duration,
+                       @Value("${payment.node-lease.safety-margin:10s}") Duration safetyMargin) {
+        this(jdbcTemplate, duration, safetyMargin, System::nanoTime);
+    }
+
+    NodeIdLease(JdbcTemplate jdbcTemplate, Duration duration, Duration safetyMargin, LongSupplier nanoTime) {
+        if (safetyMargin.isNegative() || safetyMargin.compareTo(duration) >= 0) {
+            throw new IllegalArgumentException("Node lease safety margin must be at least zero and shorter than the lease duration");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.duration = duration;
+        this.heldNanos = duration.minus(safetyMargin).toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /*
+     * Claims a node id and keeps renewing it; onReassigned is told the new id if the lease is lost.
+     * Throws IllegalStateException when all ids are leased by live nodes
+     */
+    public int acquire(IntConsumer onReassigned) {
+        this.onReassigned = onReassigned;
+        jdbcTemplate.execute("create table if not exists " + TABLE + " (node_id integer primary key,"
+            + " owner varchar(36) not null, expires_at timestamp(6) with time zone not null)");
+        nodeId = claim();
+        logger.info("Leased node id {} for transaction ids", nodeId);
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.node-lease.renew-interval-ms:20000}",
+               initialDelayString = "${payment.node-lease.renew-interval-ms:20000}")
+    public void renew() {
+        int current = nodeId;
+        if (current < 0) {
+            return;
+        }
+        try {
+            long started = nanoTime.getAsLong();
+            int renewed = jdbcTemplate.update("update " + TABLE + " set expires_at = ? where node_id = ? and owner = ?",
+                expiry(), current, owner);
+            if (renewed == 1) {
+                confirmed = new Confirmed(current, started + heldNanos);
+                return;
+            }
+            // Not renewed within the lease duration and claimed by another node since
+            confirmed = new Confirmed(-1, 0);
+            nodeId = claim();
+            logger.warn("Lease on node id {} was lost; transaction ids now use node id {}", current, nodeId);
+            onReassigned.accept(nodeId);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to renew the lease on node id {}: {}", current, e.getMessage());
+            if (!isHeld(current)) {
+                logger.error("Lease on node id {} is no longer confirmed; transaction ids are refused until it is", current);
+            }
+        } catch (IllegalStateException e) {
+            logger.error("Lease on node id {} was lost and no other node id is free", current);
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        int current = nodeId;
+        if (current < 0) {
+            return;
+        }
+        nodeId = -1;
+        confirmed = new Confirmed(-1, 0);
+        try {
+            jdbcTemplate.update("delete from " + TABLE + " where node_id = ? and owner = ?", current, owner);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to release node id {}; it frees up when the lease expires", current);
+        }
+    }
+
+    /*
+     * Whether this node still holds the lease on the node id: its last claim or renewal succeeded
+     * recently enough that the lease cannot have expired for other nodes
+     */
+    public boolean isHeld(int id) {
+        Confirmed current = confirmed;
+        return current.nodeId == id && nanoTime.getAsLong() - current.deadlineNanos < 0;
+    }
+
+    int nodeId() {
+        return nodeId;
+    }
+
+    private int claim() {
+        long started = nanoTime.getAsLong();
+        int id = claimId();
+        confirmed = new Confirmed(id, started + heldNanos);
+        return id;
+    }
+
+    private int claimId() {
+        Set<Integer> used = new HashSet<>(jdbcTemplate.queryForList("select node_id from " + TABLE, Integer.class));
+        for (int id = 0; id <= TransactionIdGenerator.MAX_NODE_ID; id++) {
+            if (used.contains(id)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.update("insert into " + TABLE + " (node_id, owner, expires_at) values (?, ?, ?)", id, owner, expiry());
+                return id;
+            } catch (DuplicateKeyException e) {
+                // Claimed by another node in the meantime
+            }
+        }
+        Timestamp now = now();
+        List<Integer> expired = jdbcTemplate.queryForList(
+            "select node_id from " + TABLE + " where expires_at < ? order by expires_at", Integer.class, now);
+        for (int id : expired) {
+            // The expiry condition is checked again under the row lock, so only one node takes the row
+            if (jdbcTemplate.update("update " + TABLE + " set owner = ?, expires_at = ? where node_id = ? and expires_at < ?",
+                    owner, expiry(), id, now) == 1) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("All " + (TransactionIdGenerator.MAX_NODE_ID + 1)
+            + " node ids are leased; set payment.node-id explicitly or wait for a lease to expire");
+    }
+
+    private Timestamp expiry() {
+        return Timestamp.from(now().toInstant().plus(duration));
+    }
+
+    private Timestamp now() {
+        return jdbcTemplate.queryForObject("select current_timestamp", Timestamp.class);
+    }
+
+    // Node id and the monotonic time until which its lease is known to be held
+    private record Confirmed(int nodeId, long deadlineNanos) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.demopayment.repository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.cache.LocalCache;
+import com.demopayment.model.Transaction;
+
+// TransactionCache keeps the recently used transactions in memory, bounded by entry count and age
+// It is a LocalCache keyed by transaction id, published under payment.transaction.cache.*.
+
+@Component
+public class TransactionCache {
+
+    private final LocalCache<Transaction> cache;
+
+    @Autowired
+    public TransactionCache(MeterRegistry meterRegistry,
+                            @Value("${payment.transaction-cache.max-entries:100000}") int maxEntries,
+                            @Value("${payment.transaction-cache.stripes:64}") int stripeCount,
+                            @Value("${payment.transaction-cache.ttl:30m}") Duration ttl) {
+        this(meterRegistry, maxEntries, stripeCount, ttl, Clock.systemUTC());
+    }
+
+    TransactionCache(MeterRegistry meterRegistry, int maxEntries, int stripeCount, Duration ttl, Clock clock) {
+        this.cache = new LocalCache<>(meterRegistry, "payment.transaction.cache", Tags.empty(),
+            maxEntries, stripeCount, ttl, clock);
+    }
+
+    /*
+     * The cached transaction, or null when it is absent or expired
+     */
+    public Transaction get(String id) {
+        return cache.get(id);
+    }
+
+    /*
+     * Read-through lookup: on a miss the loader runs outside the stripe lock and a non-null
+     * result is cached
+     */
+    public Transaction get(String id, Function<String, Transaction> loader) {
+        return cache.get(id, loader);
+    }
+
+    public void put(Transaction transaction) {
+        cache.put(transaction.getId(), transaction);
+    }
+
+    public void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    /*
+     * Snapshot of the live entries; does not count as access
+     */
+    public List<Transaction> values() {
+        return cache.values();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int capacity() {
+        return cache.capacity();
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public long evictionCount() {
+        return cache.evictionCount();
+    }
+
+    public long expirationCount() {
+        return cache.expirationCount();
+    }
+}
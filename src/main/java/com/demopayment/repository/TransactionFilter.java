@@ -0,0 +1,11 @@
+package com.demopayment.repository;
+
+import java.time.Instant;
+
+import com.demopayment.model.TransactionStatus;
+
+// TransactionFilter holds the optional listing filters; null fields do not filter
+// from is inclusive and to exclusive, both against the transaction's creation time
+
+public record TransactionFilter(String userId, Instant from, Instant to, TransactionStatus status) {
+}
@@ -0,0 +1,446 @@
+package com.demopayment.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Currency;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+
+// TransactionIndex answers findTransactions-style filters without touching the transactions
+// Every indexed transaction gets a dense ordinal; status flags are bitmaps over the ordinals and
+// amounts are kept in a sorted run plus a small unsorted delta that is merged in once it fills up.
+// A query intersects the flag bitmaps, then applies the amount filter either by range-scanning the
+// amount run (when the range is the smaller side) or by checking the amounts of what is left.
+// Amounts are indexed in settlement-currency major units at the rate current when the transaction
+// is put, so one amount filter applies across currencies; a currency without a rate is indexed
+// below every amount, matching PaymentService, which never treats an unvalued amount as high value.
+// Deleted ids keep their ordinal (cleared from the live bitmap) and get it back if saved again,
+// until removed ordinals outnumber live ones: then the live transactions are renumbered densely
+// and the arrays shrink, so memory follows the live count. TransactionIndexLoader fills the index
+// from the database on startup; until it is done no compaction runs, so the ids deleted meanwhile
+// stay known and the load cannot bring them back.
+
+@Component
+public class TransactionIndex {
+
+    public enum Flag {
+        PREMIUM,
+        PROCESSED,
+        REFUNDED,
+        FRAUDULENT,
+        HIGH_RISK,
+        MEDIUM_RISK,
+        LOW_RISK
+    }
+
+    private static final Currency SETTLEMENT_CURRENCY = Currency.getInstance("USD");
+    private static final int DELTA_CAPACITY = 1 << 16;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final ExchangeRateService exchangeRates;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Flag, BitSet> flags = new EnumMap<>(Flag.class);
+    private final BitSet live = new BitSet();
+
+    // ordinal -> id and amount
+    private String[] ids = new String[MIN_CAPACITY];
+    private double[] amounts = new double[MIN_CAPACITY];
+    private int ordinals;
+    // Ordinals of removed transactions, still holding their id
+    private int removedOrdinals;
+
+    // id -> ordinal + 1, open addressing with linear probing
+    private int[] slots = new int[MIN_CAPACITY * 2];
+
+    // Amount index: a run sorted by (amount, ordinal) plus unsorted recent entries. Entries whose
+    // amount no longer matches amounts[ordinal], or whose ordinal is not live, are stale and skipped.
+    private double[] sortedAmounts = new double[0];
+    private int[] sortedOrdinals = new int[0];
+    private final double[] deltaAmounts = new double[DELTA_CAPACITY];
+    private final int[] deltaOrdinals = new int[DELTA_CAPACITY];
+    private int deltaSize;
+    // Amounts changed since the last merge; while zero no entry in the run can be stale
+    private int amountChanges;
+    // Set while the startup load runs; removed ordinals keep their id until it ends
+    private boolean loading;
+
+    public TransactionIndex(ExchangeRateService exchangeRates) {
+        this.exchangeRates = exchangeRates;
+        for (Flag flag : Flag.values()) {
+            flags.put(flag, new BitSet());
+        }
+    }
+
+    /*
+     * Indexes a new transaction or re-reads the amount and flags of an indexed one
+     */
+    public void put(Transaction transaction) {
+        double amount = settledAmount(transaction.getAmount());
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalFor(transaction.getId());
+            if (!live.get(ordinal) && !Double.isNaN(amounts[ordinal])) {
+                removedOrdinals--;
+            }
+            if (!live.get(ordinal) || amounts[ordinal] != amount) {
+                if (!Double.isNaN(amounts[ordinal])) {
+                    amountChanges++;
+                }
+                amounts[ordinal] = amount;
+                appendAmount(amount, ordinal);
+            }
+            live.set(ordinal);
+            flags.get(Flag.PREMIUM).set(ordinal, transaction.isPremiumUser());
+            flags.get(Flag.PROCESSED).set(ordinal, transaction.isProcessed());
+            flags.get(Flag.REFUNDED).set(ordinal, transaction.isRefunded);
+            flags.get(Flag.FRAUDULENT).set(ordinal, transaction.isFraudulent);
+            flags.get(Flag.HIGH_RISK).set(ordinal, transaction.isHighRisk);
+            flags.get(Flag.MEDIUM_RISK).set(ordinal, transaction.isMediumRisk);
+            flags.get(Flag.LOW_RISK).set(ordinal, transaction.isLowRisk);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(id);
+            if (slot >= 0 && live.get(slots[slot] - 1)) {
+                live.clear(slots[slot] - 1);
+                removedOrdinals++;
+                if (!loading && needsCompaction()) {
+                    compact();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Keeps removed ids until endLoad, so load can tell them from ids it has not seen
+     */
+    public void beginLoad() {
+        lock.writeLock().lock();
+        try {
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void endLoad() {
+        lock.writeLock().lock();
+        try {
+            loading = false;
+            if (needsCompaction()) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Indexes a transaction read back from the database unless the index already knows the id:
+     * a save or delete since startup is newer than what the startup load read
+     */
+    public void load(Transaction transaction) {
+        lock.writeLock().lock();
+        try {
+            if (find(transaction.getId()) < 0) {
+                put(transaction);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Ids of the live transactions with an amount strictly above amountAbove (pass
+     * Double.NEGATIVE_INFINITY for no amount filter) that have every one of the given flags
+     */
+    public List<String> findIds(double amountAbove, Set<Flag> required) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) live.clone();
+            for (Flag flag : required) {
+                matches.and(flags.get(flag));
+            }
+            if (amountAbove != Double.NEGATIVE_INFINITY) {
+                // Range-scan the amount index only when it yields fewer rows than the flags left
+                if (rangeSize(amountAbove) < matches.cardinality()) {
+                    matches.and(ordinalsAbove(amountAbove));
+                } else {
+                    for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                        if (!(amounts[ordinal] > amountAbove)) {
+                            matches.clear(ordinal);
+                        }
+                    }
+                }
+            }
+            List<String> result = new ArrayList<>(matches.cardinality());
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                result.add(ids[ordinal]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Length of the ordinal arrays
+    int capacity() {
+        lock.readLock().lock();
+        try {
+            return ids.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Amount in settlement-currency major units, or NEGATIVE_INFINITY when its currency has no rate
+    private double settledAmount(Money money) {
+        if (money == null) {
+            return 0;
+        }
+        if (money.currency() == SETTLEMENT_CURRENCY) {
+            return money.doubleValue();
+        }
+        ExchangeRates rates = exchangeRates.current();
+        if (!rates.supports(money.currency()) || !rates.supports(SETTLEMENT_CURRENCY)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        long settledMinor = rates.convertMinor(money.minorUnits(), money.currency(), SETTLEMENT_CURRENCY);
+        return new Money(settledMinor, SETTLEMENT_CURRENCY).doubleValue();
+    }
+
+    // Upper bound on the rows above the amount: the tail of the run plus the whole delta
+    private int rangeSize(double amountAbove) {
+        return sortedAmounts.length - upperBound(amountAbove) + deltaSize;
+    }
+
+    // Caller must hold the read lock
+    private BitSet ordinalsAbove(double amountAbove) {
+        BitSet matches = new BitSet(ordinals);
+        int from = upperBound(amountAbove);
+        if (amountChanges == 0) {
+            for (int i = from; i < sortedAmounts.length; i++) {
+                matches.set(sortedOrdinals[i]);
+            }
+        } else {
+            for (int i = from; i < sortedAmounts.length; i++) {
+                markIfCurrent(matches, sortedAmounts[i], sortedOrdinals[i]);
+            }
+        }
+        for (int i = 0; i < deltaSize; i++) {
+            if (deltaAmounts[i] > amountAbove) {
+                markIfCurrent(matches, deltaAmounts[i], deltaOrdinals[i]);
+            }
+        }
+        return matches;
+    }
+
+    private void markIfCurrent(BitSet matches, double amount, int ordinal) {
+        if (amounts[ordinal] == amount) {
+            matches.set(ordinal);
+        }
+    }
+
+    // First position in the sorted run whose amount is strictly greater than the given one
+    private int upperBound(double amount) {
+        int low = 0;
+        int high = sortedAmounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedAmounts[mid] <= amount) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Caller must hold the write lock
+    private void appendAmount(double amount, int ordinal) {
+        if (deltaSize == DELTA_CAPACITY) {
+            mergeDelta();
+        }
+        deltaAmounts[deltaSize] = amount;
+        deltaOrdinals[deltaSize] = ordinal;
+        deltaSize++;
+    }
+
+    /*
+     * Sorts the delta and merges it into the run, dropping stale and duplicate entries on the way
+     */
+    private void mergeDelta() {
+        Integer[] order = new Integer[deltaSize];
+        for (int i = 0; i < deltaSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(deltaAmounts[a], deltaOrdinals[a], deltaAmounts[b], deltaOrdinals[b]));
+
+        double[] mergedAmounts = new double[sortedAmounts.length + deltaSize];
+        int[] mergedOrdinals = new int[mergedAmounts.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sortedAmounts.length || j < deltaSize) {
+            double amount;
+            int ordinal;
+            if (j == deltaSize || (i < sortedAmounts.length
+                    && compare(sortedAmounts[i], sortedOrdinals[i], deltaAmounts[order[j]], deltaOrdinals[order[j]]) <= 0)) {
+                amount = sortedAmounts[i];
+                ordinal = sortedOrdinals[i++];
+            } else {
+                amount = deltaAmounts[order[j]];
+                ordinal = deltaOrdinals[order[j++]];
+            }
+            boolean current = amounts[ordinal] == amount && live.get(ordinal);
+            boolean duplicate = size > 0 && mergedAmounts[size - 1] == amount && mergedOrdinals[size - 1] == ordinal;
+            if (current && !duplicate) {
+                mergedAmounts[size] = amount;
+                mergedOrdinals[size] = ordinal;
+                size++;
+            }
+        }
+        sortedAmounts = Arrays.copyOf(mergedAmounts, size);
+        sortedOrdinals = Arrays.copyOf(mergedOrdinals, size);
+        deltaSize = 0;
+        amountChanges = 0;
+    }
+
+    private boolean needsCompaction() {
+        return removedOrdinals * 2 > ordinals && ordinals >= MIN_CAPACITY;
+    }
+
+    /*
+     * Renumbers the live transactions densely, forgetting the removed ones, and rebuilds the
+     * lookup table and amount run for the new ordinals. Caller must hold the write lock.
+     */
+    private void compact() {
+        int size = live.cardinality();
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 1);
+        String[] compactIds = new String[capacity];
+        double[] compactAmounts = new double[capacity];
+        Map<Flag, BitSet> compactFlags = new EnumMap<>(Flag.class);
+        for (Flag flag : Flag.values()) {
+            compactFlags.put(flag, new BitSet(size));
+        }
+        int next = 0;
+        for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+            compactIds[next] = ids[ordinal];
+            compactAmounts[next] = amounts[ordinal];
+            for (Flag flag : Flag.values()) {
+                if (flags.get(flag).get(ordinal)) {
+                    compactFlags.get(flag).set(next);
+                }
+            }
+            next++;
+        }
+        ids = compactIds;
+        amounts = compactAmounts;
+        ordinals = next;
+        removedOrdinals = 0;
+        flags.putAll(compactFlags);
+        live.clear();
+        live.set(0, next);
+        rehash(capacity * 2);
+
+        Integer[] order = new Integer[next];
+        for (int i = 0; i < next; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(amounts[a], a, amounts[b], b));
+        sortedAmounts = new double[next];
+        sortedOrdinals = new int[next];
+        for (int i = 0; i < next; i++) {
+            sortedAmounts[i] = amounts[order[i]];
+            sortedOrdinals[i] = order[i];
+        }
+        deltaSize = 0;
+        amountChanges = 0;
+    }
+
+    private static int compare(double amountA, int ordinalA, double amountB, int ordinalB) {
+        int byAmount = Double.compare(amountA, amountB);
+        return byAmount != 0 ? byAmount : Integer.compare(ordinalA, ordinalB);
+    }
+
+    // Caller must hold the write lock
+    private int ordinalFor(String id) {
+        int slot = find(id);
+        if (slot >= 0) {
+            return slots[slot] - 1;
+        }
+        if (ordinals == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            amounts = Arrays.copyOf(amounts, amounts.length * 2);
+        }
+        int ordinal = ordinals++;
+        ids[ordinal] = id;
+        amounts[ordinal] = Double.NaN;
+        if (ordinals * 2 > slots.length) {
+            // Rehashing places every ordinal, this one included
+            rehash(slots.length * 2);
+        } else {
+            slots[-slot - 1] = ordinal + 1;
+        }
+        return ordinal;
+    }
+
+    // Slot holding the id, or -(free slot) - 1 when absent
+    private int find(String id) {
+        int mask = slots.length - 1;
+        int slot = spread(id.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            if (ids[slots[slot] - 1].equals(id)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private void rehash(int length) {
+        int[] rehashed = new int[length];
+        int mask = length - 1;
+        for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+            if (ids[ordinal] == null) {
+                continue;
+            }
+            int slot = spread(ids[ordinal].hashCode()) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = ordinal + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
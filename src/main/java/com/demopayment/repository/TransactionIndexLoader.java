@@ -0,0 +1,65 @@
+package com.demopayment.repository;
+
+import java.util.concurrent.TimeUnit;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// TransactionIndexLoader fills the transaction index from the database once the application is up
+// The index lives in memory only, so without this findTransactions would miss every row saved
+// before the restart. Rows are streamed from a database cursor on a background thread; until it
+// finishes, index queries see only the transactions saved since startup. The index is told a load
+// is coming as soon as this bean exists, before requests can delete anything, and keeps the ids
+// deleted from then on until the load ends.
+
+@Component
+public class TransactionIndexLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionIndexLoader.class);
+
+    private static final TransactionFilter ALL = new TransactionFilter(null, null, null, null);
+
+    private final TransactionRepository repository;
+    private final TransactionIndex index;
+    private final boolean enabled;
+
+    public TransactionIndexLoader(TransactionRepository repository,
+                                  TransactionIndex index,
+                                  @Value("${payment.transaction-index.load-on-startup:true}") boolean enabled) {
+        this.repository = repository;
+        this.index = index;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void expectLoad() {
+        if (enabled) {
+            index.beginLoad();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            Thread.ofVirtual().name("transaction-index-load").start(this::load);
+        }
+    }
+
+    void load() {
+        long start = System.nanoTime();
+        index.beginLoad();
+        try {
+            long loaded = repository.streamTransactions(ALL, index::load);
+            logger.info("Loaded {} transactions into the transaction index in {} ms",
+                loaded, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            logger.warn("Transaction index load failed: {}", e.getMessage());
+        } finally {
+            index.endLoad();
+        }
+    }
+}
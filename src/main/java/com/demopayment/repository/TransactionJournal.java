@@ -0,0 +1,476 @@
+package com.demopayment.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+
+// TransactionJournal is the local write-ahead log behind TransactionWriteBuffer
+// Every accepted transaction is appended and fsynced before the caller is told it was saved, so a
+// crash before the database flush loses nothing: on startup the surviving rows are read back.
+// Appends go to numbered segment files; a batch of rows goes in with one write, and concurrent
+// appenders share one fsync (group commit).
+// A segment is deleted once every row in it and in all older segments has been written to the
+// database, so a delete's tombstone never outlives the row it hides. Rows that cannot be written
+// at all go to dead-letter.log, which is never replayed.
+//
+// Record layout: payload length (int), CRC32 of the payload (int), payload. A record with a bad
+// length or checksum is a torn write at the tail of a segment and ends that segment on replay.
+
+final class TransactionJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionJournal.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final byte ROW = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private static final int PREMIUM_USER = 1;
+    private static final int PROCESSED = 1 << 1;
+    private static final int FAILED = 1 << 2;
+    private static final int REFUNDED = 1 << 3;
+    private static final int DISPUTED = 1 << 4;
+    private static final int FRAUDULENT = 1 << 5;
+    private static final int HIGH_RISK = 1 << 6;
+    private static final int LOW_RISK = 1 << 7;
+    private static final int MEDIUM_RISK = 1 << 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Oldest first; the last one is being appended to. Guarded by appendLock
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Segment deadLetters;
+    private long nextSequence;
+
+    /*
+     * A segment file; rows appended to it are outstanding until released
+     */
+    static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final ReentrantLock syncLock = new ReentrantLock();
+        // Bytes appended, guarded by the journal's appendLock; bytes known to be on disk, by syncLock
+        private long written;
+        private volatile long synced;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.written = channel.size();
+            this.synced = written;
+        }
+
+        // Whoever takes the lock first forces everything appended so far, covering the appenders queued behind it
+        private void syncTo(long position) throws IOException {
+            if (synced >= position) {
+                return;
+            }
+            syncLock.lock();
+            try {
+                if (synced < position) {
+                    long target = channel.size();
+                    channel.force(false);
+                    synced = target;
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    TransactionJournal(Path directory, long segmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.deadLetters = new Segment(directory.resolve(DEAD_LETTER_FILE));
+    }
+
+    /*
+     * Reads back the rows of an earlier run that never reached the database, re-journals them in a
+     * fresh segment and deletes the old ones. Returns the rows with that segment, each outstanding once.
+     */
+    Map<Transaction, Segment> recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+
+        Map<String, Transaction> survivors = new LinkedHashMap<>();
+        for (Path file : files) {
+            readRecords(file, survivors);
+            nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+        }
+
+        Map<Transaction, Segment> recovered = new LinkedHashMap<>();
+        appendLock.lock();
+        try {
+            Segment segment = startSegment();
+            for (Transaction transaction : survivors.values()) {
+                transaction.setNew(false);
+                appendLocked(segment, encodeRow(transaction));
+                recovered.put(transaction, segment);
+            }
+            segment.outstanding.addAndGet(recovered.size());
+            segment.channel.force(false);
+            segment.synced = segment.written;
+        } finally {
+            appendLock.unlock();
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        if (!survivors.isEmpty()) {
+            logger.warn("Recovered {} journaled transactions that had not reached the database", survivors.size());
+        }
+        return recovered;
+    }
+
+    /*
+     * Durably records the transaction's current state; returns the segment that must be released
+     * once it has been written to the database
+     */
+    Segment append(Transaction transaction) throws IOException {
+        return appendAll(List.of(transaction));
+    }
+
+    /*
+     * Durably records the state of every transaction with one write and one fsync; returns the
+     * segment that must be released once for each of them. When the write fails none of them is
+     * recorded.
+     */
+    Segment appendAll(List<Transaction> transactions) throws IOException {
+        byte[] records = encodeRows(transactions);
+        Segment segment;
+        long position;
+        appendLock.lock();
+        try {
+            segment = currentSegment(records.length, transactions.size());
+            long start = segment.written;
+            try {
+                position = appendLocked(segment, records);
+            } catch (IOException e) {
+                // Cut off whatever part of the batch reached the file, so a replay cannot bring it back
+                truncateQuietly(segment, start);
+                segment.outstanding.addAndGet(-transactions.size());
+                throw e;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            segment.syncTo(position);
+        } catch (IOException e) {
+            release(segment, transactions.size());
+            throw e;
+        }
+        return segment;
+    }
+
+    /*
+     * Durably records that the transaction was deleted, so a replay does not bring it back
+     */
+    void appendTombstone(String id) throws IOException {
+        byte[] record = encode(out -> {
+            out.writeByte(TOMBSTONE);
+            out.writeUTF(id);
+        });
+        Segment segment;
+        long position;
+        appendLock.lock();
+        try {
+            segment = currentSegment(record.length, 1);
+            position = appendLocked(segment, record);
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            segment.syncTo(position);
+        } finally {
+            // Once on disk the tombstone has nothing to wait for; it goes when the rows before it do
+            release(segment);
+        }
+    }
+
+    /*
+     * Keeps a row that could not be written to the database, for an operator to deal with
+     */
+    void deadLetter(Transaction transaction) throws IOException {
+        byte[] record = encodeRow(transaction);
+        long position;
+        appendLock.lock();
+        try {
+            position = appendLocked(deadLetters, record);
+        } finally {
+            appendLock.unlock();
+        }
+        deadLetters.syncTo(position);
+    }
+
+    /*
+     * One row appended to the segment is in the database (or dead-lettered); deletes the segments
+     * at the head of the log that have nothing outstanding
+     */
+    void release(Segment segment) {
+        release(segment, 1);
+    }
+
+    private void release(Segment segment, int rows) {
+        if (segment.outstanding.addAndGet(-rows) > 0) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            deleteWrittenSegments();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    int segmentCount() {
+        appendLock.lock();
+        try {
+            return segments.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    Path deadLetterFile() {
+        return deadLetters.path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+            deadLetters.channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /*
+     * The rows in a journal file, last state per id, without the ones deleted later in it
+     */
+    static List<Transaction> read(Path file) throws IOException {
+        Map<String, Transaction> rows = new LinkedHashMap<>();
+        readRecords(file, rows);
+        return new ArrayList<>(rows.values());
+    }
+
+    // Caller holds appendLock; rolls over to a new segment when the records do not fit and counts
+    // the rows as outstanding in the segment returned
+    private Segment currentSegment(int recordBytes, int rows) throws IOException {
+        Segment segment = segments.peekLast();
+        if (segment == null || (segment.written > 0 && segment.written + recordBytes > segmentBytes)) {
+            segment = startSegment();
+            // The full segment may have nothing outstanding already
+            deleteWrittenSegments();
+        }
+        segment.outstanding.addAndGet(rows);
+        return segment;
+    }
+
+    // Caller holds appendLock
+    private Segment startSegment() throws IOException {
+        long sequence = nextSequence++;
+        Segment segment = new Segment(directory.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    // Caller holds appendLock; never deletes the segment being appended to
+    private void deleteWrittenSegments() {
+        try {
+            while (segments.size() > 1 && segments.peekFirst().outstanding.get() <= 0) {
+                Segment head = segments.pollFirst();
+                head.channel.close();
+                Files.deleteIfExists(head.path);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete written journal segment: {}", e.getMessage());
+        }
+    }
+
+    // Caller holds appendLock; returns the segment's length after the record
+    private static long appendLocked(Segment segment, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            segment.channel.write(buffer);
+        }
+        segment.written += record.length;
+        return segment.written;
+    }
+
+    // Caller holds appendLock
+    private static void truncateQuietly(Segment segment, long length) {
+        try {
+            segment.channel.truncate(length);
+        } catch (IOException e) {
+            logger.error("Failed to cut a partly written batch off {}: {}", segment.path.getFileName(), e.getMessage());
+        }
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        body.write(out);
+        out.flush();
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - 2 * Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, length);
+        record.putInt(0, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static byte[] encodeRows(List<Transaction> transactions) throws IOException {
+        if (transactions.size() == 1) {
+            return encodeRow(transactions.get(0));
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream(128 * transactions.size());
+        for (Transaction transaction : transactions) {
+            records.write(encodeRow(transaction));
+        }
+        return records.toByteArray();
+    }
+
+    private static byte[] encodeRow(Transaction transaction) throws IOException {
+        return encode(out -> {
+            out.writeByte(ROW);
+            out.writeUTF(transaction.getId());
+            Money amount = transaction.getAmount();
+            out.writeBoolean(amount != null);
+            if (amount != null) {
+                out.writeLong(amount.minorUnits());
+                out.writeUTF(amount.currencyCode());
+            }
+            Instant createdAt = transaction.getCreatedAt();
+            out.writeBoolean(createdAt != null);
+            if (createdAt != null) {
+                out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, createdAt));
+            }
+            out.writeBoolean(transaction.userId != null);
+            if (transaction.userId != null) {
+                out.writeUTF(transaction.userId);
+            }
+            out.writeShort((transaction.isPremiumUser ? PREMIUM_USER : 0)
+                | (transaction.isProcessed ? PROCESSED : 0)
+                | (transaction.isFailed ? FAILED : 0)
+                | (transaction.isRefunded ? REFUNDED : 0)
+                | (transaction.isDisputed ? DISPUTED : 0)
+                | (transaction.isFraudulent ? FRAUDULENT : 0)
+                | (transaction.isHighRisk ? HIGH_RISK : 0)
+                | (transaction.isLowRisk ? LOW_RISK : 0)
+                | (transaction.isMediumRisk ? MEDIUM_RISK : 0));
+        });
+    }
+
+    private static Transaction decodeRow(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        Money amount = in.readBoolean() ? Money.ofMinor(in.readLong(), in.readUTF()) : null;
+        Instant createdAt = in.readBoolean() ? Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS) : null;
+        String userId = in.readBoolean() ? in.readUTF() : null;
+        int flags = in.readShort();
+        Transaction transaction = new Transaction(userId, amount);
+        transaction.setId(id);
+        transaction.setCreatedAt(createdAt);
+        transaction.isPremiumUser = (flags & PREMIUM_USER) != 0;
+        transaction.setStatus((flags & PROCESSED) != 0, (flags & FAILED) != 0, (flags & REFUNDED) != 0,
+            (flags & DISPUTED) != 0, (flags & FRAUDULENT) != 0);
+        transaction.setRiskLevel((flags & HIGH_RISK) != 0, (flags & LOW_RISK) != 0, (flags & MEDIUM_RISK) != 0);
+        return transaction;
+    }
+
+    private static void readRecords(Path file, Map<String, Transaction> rows) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    return;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    logger.warn("Journal {} ends in a torn record", file.getFileName());
+                    return;
+                }
+                byte[] payload = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException torn) {
+                    logger.warn("Journal {} ends in a torn record", file.getFileName());
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Journal {} ends in a torn record", file.getFileName());
+                    return;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = record.readByte();
+                if (type == ROW) {
+                    Transaction transaction = decodeRow(record);
+                    rows.remove(transaction.getId());
+                    rows.put(transaction.getId(), transaction);
+                } else if (type == TOMBSTONE) {
+                    rows.remove(record.readUTF());
+                } else {
+                    throw new IOException("Unknown journal record type " + type + " in " + file.getFileName());
+                }
+            }
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
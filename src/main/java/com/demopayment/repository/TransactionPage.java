@@ -0,0 +1,10 @@
+package com.demopayment.repository;
+
+import java.util.List;
+
+import com.demopayment.model.Transaction;
+
+// TransactionPage is one keyset page of a listing; nextCursor is null on the last page
+
+public record TransactionPage(List<Transaction> items, String nextCursor) {
+}
@@ -1,7 +1,23 @@
 package com.demopayment.repository;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.demopayment.model.Transaction;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,30 +27,82 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 @Repository
 public class TransactionRepository {
-    private static final Map<String, Transaction> memoryCache = new HashMap<>();
-    private static final List<String> failedTransactions = new ArrayList<>();
+    private static final Logger logger = LoggerFactory.getLogger(TransactionRepository.class);
+    
+    // In settlement-currency (USD) major units, the unit TransactionIndex keeps amounts in
+    private static final double HIGH_VALUE_THRESHOLD = 1000.0;
+    
+    @Autowired
+    private TransactionCache cache;
+    
+    @Autowired
+    private TransactionIndex index;
     
     @Autowired
     private JpaTransactionRepository jpaRepository;
     
+    @Autowired
+    private TransactionWriteBuffer writeBuffer;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${payment.transactions.stream-fetch-size:500}")
+    private int streamFetchSize;
+    
     public TransactionRepository() {
         // No database connections in demo mode
     }
     
+    /*
+     * Throws when the transaction could not be saved, after taking it out of the cache and index again
+     */
     public void save(Transaction transaction) {
+        // Save to memory cache
+        cache.put(transaction);
+        index.put(transaction);
+        try {
+            // Save to database, batched behind the caller by the write buffer
+            writeBuffer.write(transaction);
+        } catch (RuntimeException e) {
+            logger.error("Failed to save transaction {}: {}", transaction.getId(), e.getMessage());
+            cache.invalidate(transaction.getId());
+            index.remove(transaction.getId());
+            throw e;
+        }
+        // Log
+        System.out.println("Transaction saved: " + transaction.getId());
+        
+        // Update statistics
+        updateStatistics(transaction);
+    }
+    
+    /*
+     * Hands several transactions to the write buffer at once, so the inserts go out as JDBC batches.
+     * Throws when they could not be accepted, after taking them out of the cache and index again.
+     */
+    public void saveAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        for (Transaction transaction : transactions) {
+            cache.put(transaction);
+            index.put(transaction);
+        }
         try {
-            // Save to memory cache
-            memoryCache.put(transaction.getId(), transaction);
-            // Save to database
-            jpaRepository.save(transaction);
-            // Log
-            System.out.println("Transaction saved: " + transaction.getId());
-            
-            // Update statistics
+            writeBuffer.writeAll(transactions);
+        } catch (RuntimeException e) {
+            logger.error("Failed to save batch of {} transactions: {}", transactions.size(), e.getMessage());
+            for (Transaction transaction : transactions) {
+                cache.invalidate(transaction.getId());
+                index.remove(transaction.getId());
+            }
+            throw e;
+        }
+        logger.info("Saved batch of {} transactions", transactions.size());
+        
+        for (Transaction transaction : transactions) {
             updateStatistics(transaction);
-            
-        } catch (Exception e) {
-            failedTransactions.add(transaction.getId() + ": " + e.getMessage());
         }
     }
     
@@ -43,31 +111,55 @@ public class TransactionRepository {
     }
     
     public Transaction findById(String id) {
-        // Try memory cache
-        Transaction transaction = memoryCache.get(id);
-        if (transaction != null) {
-            return transaction;
-        }
-        // Try database
-        return jpaRepository.findById(id).orElse(null);
+        // Try memory cache, then writes that have not reached the database yet, then the database
+        return cache.get(id, key -> {
+            Transaction pending = writeBuffer.pending(key);
+            return pending != null ? pending : jpaRepository.findById(key).orElse(null);
+        });
     }
     
     public List<Transaction> findHighValueTransactions() {
-        List<Transaction> result = new ArrayList<>();
-        for (Transaction transaction : memoryCache.values()) {
-            if (transaction.getAmount() > 1000.0) {
-                result.add(transaction);
-            }
-        }
-        return result;
+        return findAllById(index.findIds(HIGH_VALUE_THRESHOLD, Set.of()));
     }
     
     public List<Transaction> findTransactions(boolean isHighValue, boolean isPremium, boolean isProcessed) {
-        List<Transaction> result = new ArrayList<>();
-        for (Transaction transaction : memoryCache.values()) {
-            if ((!isHighValue || transaction.getAmount() > 1000.0) &&
-                (!isPremium || transaction.isPremiumUser()) &&
-                (!isProcessed || transaction.isProcessed())) {
+        return findAllById(findTransactionIds(isHighValue, isPremium, isProcessed));
+    }
+    
+    /*
+     * Same filter as findTransactions, answered from the index alone
+     */
+    public List<String> findTransactionIds(boolean isHighValue, boolean isPremium, boolean isProcessed) {
+        Set<TransactionIndex.Flag> flags = EnumSet.noneOf(TransactionIndex.Flag.class);
+        if (isPremium) {
+            flags.add(TransactionIndex.Flag.PREMIUM);
+        }
+        if (isProcessed) {
+            flags.add(TransactionIndex.Flag.PROCESSED);
+        }
+        return index.findIds(isHighValue ? HIGH_VALUE_THRESHOLD : Double.NEGATIVE_INFINITY, flags);
+    }
+    
+    /*
+     * Resolves ids through the cache and the write buffer, loading the rest from the database in one query
+     */
+    private List<Transaction> findAllById(List<String> ids) {
+        List<Transaction> result = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Transaction transaction = cache.get(id);
+            if (transaction == null) {
+                transaction = writeBuffer.pending(id);
+            }
+            if (transaction != null) {
+                result.add(transaction);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Transaction transaction : jpaRepository.findAllById(missing)) {
+                cache.put(transaction);
                 result.add(transaction);
             }
         }
@@ -75,12 +167,82 @@ public class TransactionRepository {
     }
 
     public void deleteById(String id) {
-        memoryCache.remove(id);
+        cache.invalidate(id);
+        index.remove(id);
+        // A buffered insert must not land after the delete, nor be replayed from the journal
+        writeBuffer.awaitWritten(id);
+        writeBuffer.markDeleted(id);
         jpaRepository.deleteById(id);
         System.out.println("Transaction deleted: " + id);
     }
 
-    public List<Transaction> findAll() {
-        return new ArrayList<>(memoryCache.values());
+    /*
+     * One page of the listing in (createdAt, id) order, starting after the cursor (null for the first page).
+     * Filters run in SQL against committed rows, so writes still in the write buffer show up once flushed.
+     */
+    @Transactional(readOnly = true)
+    public TransactionPage findPage(TransactionFilter filter, TransactionCursor after, int limit) {
+        List<Transaction> rows = listingQuery(filter, after)
+            .setMaxResults(limit + 1)
+            .getResultList();
+        if (rows.size() <= limit) {
+            return new TransactionPage(rows, null);
+        }
+        List<Transaction> items = rows.subList(0, limit);
+        Transaction last = items.get(limit - 1);
+        return new TransactionPage(new ArrayList<>(items), new TransactionCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+    
+    /*
+     * Feeds every matching row to the sink, in listing order, from a database cursor.
+     * Rows are fetched streamFetchSize at a time and detached once consumed, so memory stays flat.
+     */
+    @Transactional(readOnly = true)
+    public long streamTransactions(TransactionFilter filter, Consumer<Transaction> sink) {
+        long count = 0;
+        try (Stream<Transaction> rows = listingQuery(filter, null)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()) {
+            Iterator<Transaction> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Transaction transaction = iterator.next();
+                sink.accept(transaction);
+                entityManager.detach(transaction);
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private TypedQuery<Transaction> listingQuery(TransactionFilter filter, TransactionCursor after) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = builder.createQuery(Transaction.class);
+        Root<Transaction> root = query.from(Transaction.class);
+        Path<Instant> createdAt = root.get("createdAt");
+        Path<String> id = root.get("id");
+        
+        List<Predicate> where = new ArrayList<>();
+        if (filter.userId() != null) {
+            where.add(builder.equal(root.get("userId"), filter.userId()));
+        }
+        if (filter.from() != null) {
+            where.add(builder.greaterThanOrEqualTo(createdAt, filter.from()));
+        }
+        if (filter.to() != null) {
+            where.add(builder.lessThan(createdAt, filter.to()));
+        }
+        if (filter.status() != null) {
+            where.add(builder.isTrue(root.get(filter.status().attribute())));
+        }
+        if (after != null) {
+            where.add(builder.or(
+                builder.greaterThan(createdAt, after.createdAt()),
+                builder.and(builder.equal(createdAt, after.createdAt()), builder.greaterThan(id, after.id()))));
+        }
+        query.select(root)
+            .where(where.toArray(new Predicate[0]))
+            .orderBy(builder.asc(createdAt), builder.asc(id));
+        return entityManager.createQuery(query);
     }
 } 
\ No newline at end of file
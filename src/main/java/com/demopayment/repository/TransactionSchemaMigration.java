@@ -0,0 +1,154 @@
+package com.demopayment.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Currency;
+import java.util.List;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// TransactionSchemaMigration brings a transaction table created by an older version up to date
+// ddl-auto=update only adds columns, and adds them nullable, so the steps it cannot do run here:
+// once Hibernate has updated the schema and before requests are served. Every step inspects the
+// schema first and does nothing on a table that is already current, so it runs on every startup.
+
+@Component
+@DependsOn("entityManagerFactory")
+public class TransactionSchemaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionSchemaMigration.class);
+
+    private static final String TABLE = "transaction";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String defaultCurrency;
+
+    public TransactionSchemaMigration(JdbcTemplate jdbcTemplate,
+                                      @Value("${payment.fx.base-currency:USD}") String defaultCurrency) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.defaultCurrency = defaultCurrency;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        migrateAmount();
+        backfillCreatedAt();
+    }
+
+    /*
+     * Tables from before amounts were Money have a double amount column, NOT NULL, that inserts now
+     * leave out. Fills amount_minor from it as round(amount * 10^digits) of each row's currency
+     * (rows without one were taken as the base currency), then relaxes amount so inserts succeed.
+     * The old column is kept, unused, so its data survives a rollback.
+     */
+    void migrateAmount() {
+        Boolean amountNullable = isNullable("amount");
+        if (amountNullable == null) {
+            return;
+        }
+        if (isNullable("amount_minor") == null) {
+            jdbcTemplate.execute("alter table " + TABLE + " add column amount_minor bigint");
+        }
+        if (isNullable("currency") == null) {
+            jdbcTemplate.execute("alter table " + TABLE + " add column currency varchar(3)");
+        }
+        jdbcTemplate.update("update " + TABLE + " set currency = ? where currency is null and amount_minor is null", defaultCurrency);
+
+        int rows = 0;
+        List<String> codes = jdbcTemplate.queryForList(
+            "select distinct currency from " + TABLE + " where amount_minor is null and amount is not null", String.class);
+        for (String code : codes) {
+            Currency currency;
+            try {
+                currency = Currency.getInstance(code.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Transactions in unknown currency '{}' keep a NULL amount_minor and load without an amount", code);
+                continue;
+            }
+            int digits = currency.getDefaultFractionDigits();
+            if (digits < 0) {
+                logger.warn("Transactions in {} keep a NULL amount_minor: the currency has no fixed minor unit", code);
+                continue;
+            }
+            rows += jdbcTemplate.update("update " + TABLE + " set amount_minor = cast(round(amount * ?) as bigint), currency = ?"
+                + " where amount_minor is null and amount is not null and currency = ?",
+                Math.pow(10, digits), currency.getCurrencyCode(), code);
+        }
+        if (!amountNullable) {
+            jdbcTemplate.execute("alter table " + TABLE + " alter column amount drop not null");
+        }
+        requireNotNull("amount_minor");
+        requireNotNull("currency");
+        if (rows > 0) {
+            logger.info("Migrated {} transactions from the legacy amount column to amount_minor", rows);
+        }
+    }
+
+    /*
+     * Rows from before created_at existed have none, which put them outside every from/to filter of
+     * the listing and broke its cursors. They get the earliest creation time on record, so they
+     * still list before every newer row, and the column becomes NOT NULL.
+     */
+    void backfillCreatedAt() {
+        if (isNullable("id") == null) {
+            return;
+        }
+        if (isNullable("created_at") == null) {
+            jdbcTemplate.execute("alter table " + TABLE + " add column created_at timestamp(6) with time zone");
+        }
+        if (!Boolean.TRUE.equals(isNullable("created_at"))) {
+            return;
+        }
+        Timestamp earliest = jdbcTemplate.queryForObject("select min(created_at) from " + TABLE, Timestamp.class);
+        if (earliest == null) {
+            earliest = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        }
+        int rows = jdbcTemplate.update("update " + TABLE + " set created_at = ? where created_at is null", earliest);
+        requireNotNull("created_at");
+        if (rows > 0) {
+            logger.info("Backfilled created_at of {} transactions with {}", rows, earliest.toInstant());
+        }
+    }
+
+    // Adds the NOT NULL constraint the entity declares, once no row is missing the column
+    private void requireNotNull(String column) {
+        if (!Boolean.TRUE.equals(isNullable(column))) {
+            return;
+        }
+        Integer missing = jdbcTemplate.queryForObject("select count(*) from " + TABLE + " where " + column + " is null", Integer.class);
+        if (missing != null && missing > 0) {
+            logger.warn("{} transactions have a NULL {}; the column stays nullable", missing, column);
+            return;
+        }
+        jdbcTemplate.execute("alter table " + TABLE + " alter column " + column + " set not null");
+    }
+
+    // Whether the column accepts NULL, or null when the table or column does not exist
+    Boolean isNullable(String column) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // Postgres folds unquoted names to lower case, H2 to upper case
+            Boolean nullable = isNullable(metaData, TABLE, column);
+            return nullable != null ? nullable : isNullable(metaData, TABLE.toUpperCase(), column.toUpperCase());
+        });
+    }
+
+    private static Boolean isNullable(DatabaseMetaData metaData, String table, String column) throws SQLException {
+        try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+            if (!columns.next()) {
+                return null;
+            }
+            return columns.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls;
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.demopayment.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.model.Transaction;
+
+// TransactionWriteBuffer persists transactions behind the caller: saves land in a bounded queue
+// that one writer thread flushes with saveAll once batch-size rows are waiting or the oldest has
+// waited flush-interval-ms, so Hibernate sends them as JDBC batches.
+// A save is acknowledged once it is durable: it is appended to the local TransactionJournal and
+// fsynced first, and rows the journal still holds are replayed on startup. Without a journal
+// directory the caller instead waits for the database flush (leading it when nobody else is).
+// writeAll accepts a batch as a whole: one journal write and fsync, or one saveAll without a journal.
+// A failed batch is retried row by row; rows that still fail are retried with backoff and, after
+// max-attempts, moved to the journal's dead-letter file instead of being dropped. A full queue makes
+// the caller write the row itself. Shutdown rejects new writes, wakes the writer and drains the
+// queue before the JPA context closes. Rows stay visible through pending() until written.
+// Only ReentrantLocks are used, so virtual threads waiting on a flush do not pin their carrier.
+
+@Component
+public class TransactionWriteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionWriteBuffer.class);
+
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final long AWAIT_WRITTEN_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int PENDING = 0;
+    private static final int WRITTEN = 1;
+    private static final int FAILED = 2;
+    private static final int DEAD_LETTERED = 3;
+
+    // Queued to wake the writer: flush what it holds now, or stop once the queue is drained
+    private static final Entry FLUSH = new Entry(null, null);
+    private static final Entry STOP = new Entry(null, null);
+
+    private final JpaTransactionRepository jpaRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutMs;
+    private final int maxAttempts;
+    private final long retryBackoffNanos;
+    private final BlockingQueue<Entry> queue;
+    // The latest accepted write of each transaction that is not in the database yet
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> retries = new ConcurrentLinkedQueue<>();
+    private final TransactionJournal journal;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ReentrantLock writtenLock = new ReentrantLock();
+    private final Condition written = writtenLock.newCondition();
+    // Writers hold the read lock while they are admitted; shutdown takes the write lock to close admission
+    private final ReentrantReadWriteLock admission = new ReentrantReadWriteLock();
+    private final DistributionSummary flushSize;
+    private final Timer flushDuration;
+    private final Counter callerWrites;
+    private final Counter writeFailures;
+    private final Counter deadLetters;
+    private volatile Thread writer;
+    private volatile boolean running = true;
+
+    private static final class Entry {
+        final Transaction transaction;
+        final TransactionJournal.Segment segment;
+        // Only touched by the thread flushing the entry; the queues hand it over
+        int attempts;
+        long retryAt;
+        volatile int state = PENDING;
+
+        Entry(Transaction transaction, TransactionJournal.Segment segment) {
+            this.transaction = transaction;
+            this.segment = segment;
+        }
+    }
+
+    public TransactionWriteBuffer(JpaTransactionRepository jpaRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${payment.persistence.write-behind.enabled:true}") boolean enabled,
+                                  @Value("${payment.persistence.write-behind.capacity:10000}") int capacity,
+                                  @Value("${payment.persistence.write-behind.batch-size:100}") int batchSize,
+                                  @Value("${payment.persistence.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                  @Value("${payment.persistence.write-behind.enqueue-timeout-ms:100}") long enqueueTimeoutMs,
+                                  @Value("${payment.persistence.write-behind.journal-dir:data/transaction-journal}") String journalDir,
+                                  @Value("${payment.persistence.write-behind.max-attempts:5}") int maxAttempts,
+                                  @Value("${payment.persistence.write-behind.retry-backoff-ms:1000}") long retryBackoffMs) {
+        this.jpaRepository = jpaRepository;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(retryBackoffMs);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+
+        Gauge.builder("payment.persistence.buffer.depth", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("payment.persistence.retry.depth", retries, ConcurrentLinkedQueue::size).register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("payment.persistence.flush.size")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.flushDuration = Timer.builder("payment.persistence.flush.duration")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.callerWrites = Counter.builder("payment.persistence.caller.writes").register(meterRegistry);
+        this.writeFailures = Counter.builder("payment.persistence.write.failures").register(meterRegistry);
+        this.deadLetters = Counter.builder("payment.persistence.dead.letters").register(meterRegistry);
+
+        this.journal = enabled && journalDir != null && !journalDir.isBlank() ? openJournal(Path.of(journalDir)) : null;
+        if (enabled && journal == null) {
+            logger.info("No write-behind journal directory; saves wait for the database flush");
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        // Without a journal the callers flush themselves, so there is nothing for a writer to batch up
+        if (journal != null && writer == null) {
+            writer = Thread.ofPlatform().name("transaction-write-behind").daemon().start(this::runWriter);
+        }
+    }
+
+    // Opens the journal and hands what an earlier run left in it to the writer
+    private TransactionJournal openJournal(Path directory) {
+        try {
+            TransactionJournal opened = new TransactionJournal(directory, SEGMENT_BYTES);
+            long now = System.nanoTime();
+            opened.recover().forEach((transaction, segment) -> {
+                Entry entry = new Entry(transaction, segment);
+                entry.retryAt = now;
+                pending.put(transaction.getId(), entry);
+                retries.add(entry);
+            });
+            return opened;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open transaction journal in " + directory, e);
+        }
+    }
+
+    /*
+     * Returns once the transaction is durable: journaled, or in the database when there is no journal
+     * or write-behind is off. Throws when it could not be saved or the buffer has shut down.
+     */
+    public void write(Transaction transaction) {
+        if (!enabled) {
+            if (!saveRows(List.of(transaction)).isEmpty()) {
+                throw new RuntimeException("Failed to save transaction " + transaction.getId());
+            }
+            return;
+        }
+        Entry entry;
+        admission.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Write buffer is shut down; transaction " + transaction.getId() + " was not saved");
+            }
+            entry = new Entry(transaction, journal == null ? null : appendToJournal(transaction));
+            pending.put(transaction.getId(), entry);
+            if (!enqueue(entry)) {
+                callerWrites.increment();
+                flush(List.of(entry));
+            }
+        } finally {
+            admission.readLock().unlock();
+        }
+        if (journal == null) {
+            // The database is the only durable copy. Whoever gets the flush lock next writes everything
+            // queued while the previous flush ran, so concurrent callers share one saveAll
+            if (entry.state == PENDING) {
+                flushNow();
+            }
+            awaitCompletion(entry);
+            if (entry.state == FAILED) {
+                throw new RuntimeException("Failed to save transaction " + transaction.getId());
+            }
+        }
+    }
+
+    /*
+     * Returns once all the transactions are durable, or throws with none of them accepted: they are
+     * journaled with one write and fsync before any is handed to the writer, or without a journal
+     * saved to the database in one saveAll
+     */
+    public void writeAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        if (!enabled) {
+            saveBatch(transactions);
+            return;
+        }
+        admission.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Write buffer is shut down; " + transactions.size() + " transactions were not saved");
+            }
+            if (journal == null) {
+                // Rows already queued go first, so none of them can overwrite a newer state from this batch
+                flushNow();
+                saveBatch(transactions);
+                return;
+            }
+            TransactionJournal.Segment segment = appendAllToJournal(transactions);
+            List<Entry> overflow = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                Entry entry = new Entry(transaction, segment);
+                pending.put(transaction.getId(), entry);
+                // Once the queue stays full the rest of the batch is written here as well
+                if (!overflow.isEmpty() || !enqueue(entry)) {
+                    overflow.add(entry);
+                }
+            }
+            if (!overflow.isEmpty()) {
+                callerWrites.increment(overflow.size());
+                flush(overflow);
+            }
+        } finally {
+            admission.readLock().unlock();
+        }
+    }
+
+    /*
+     * A transaction that has been accepted but not yet written, or null
+     */
+    public Transaction pending(String id) {
+        Entry entry = pending.get(id);
+        return entry == null ? null : entry.transaction;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /*
+     * Blocks until the given transaction, if buffered, has reached the database, so a delete
+     * cannot be overtaken by its buffered insert
+     */
+    public void awaitWritten(String id) {
+        if (!pending.containsKey(id)) {
+            return;
+        }
+        flushNow();
+        // The writer may already hold the row while it waits for a fuller batch
+        queue.offer(FLUSH);
+        long deadline = System.nanoTime() + AWAIT_WRITTEN_NANOS;
+        writtenLock.lock();
+        try {
+            while (pending.containsKey(id)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    logger.warn("Gave up waiting for buffered transaction {} to be written", id);
+                    return;
+                }
+                written.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    /*
+     * Called before a transaction is deleted: drops any write of it still buffered or awaiting
+     * retry, and journals the delete so a replay does not bring the row back
+     */
+    public void markDeleted(String id) {
+        pending.remove(id);
+        if (journal != null) {
+            try {
+                journal.appendTombstone(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to journal delete of transaction " + id, e);
+            }
+        }
+    }
+
+    /*
+     * Writes everything queued so far on the calling thread
+     */
+    public void flushNow() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        boolean stopRequested = false;
+        // Held across the drain, so rows queued before this call are written when it returns
+        flushLock.lock();
+        try {
+            while (true) {
+                Entry next;
+                while (batch.size() < batchSize && (next = queue.poll()) != null) {
+                    if (next == STOP) {
+                        stopRequested = true;
+                    } else if (next != FLUSH) {
+                        batch.add(next);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        if (stopRequested) {
+            // Taken from the writer; hand it back so the writer still stops
+            queue.offer(STOP);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        admission.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            admission.writeLock().unlock();
+        }
+        if (writer != null) {
+            // If the queue is full the writer is busy draining it and stops once it finds it empty
+            queue.offer(STOP);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushNow();
+        if (!pending.isEmpty()) {
+            if (journal != null) {
+                logger.warn("Write buffer shut down with {} transactions unwritten; they stay journaled for the next startup", pending.size());
+            } else {
+                logger.warn("Write buffer shut down with {} transactions unwritten", pending.size());
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close transaction journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    private TransactionJournal.Segment appendToJournal(Transaction transaction) {
+        try {
+            return journal.append(transaction);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal transaction " + transaction.getId(), e);
+        }
+    }
+
+    private TransactionJournal.Segment appendAllToJournal(List<Transaction> transactions) {
+        try {
+            return journal.appendAll(transactions);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal batch of " + transactions.size() + " transactions", e);
+        }
+    }
+
+        private boolean enqueue(Entry entry) {
+        try {
+            return queue.offer(entry, enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void awaitCompletion(Entry entry) {
+        writtenLock.lock();
+        try {
+            while (entry.state == PENDING) {
+                written.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while saving transaction " + entry.transaction.getId(), e);
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                takeDueRetries(batch);
+                if (batch.isEmpty()) {
+                    // Rows waiting out a retry backoff must not also wait out a long flush interval
+                    long wait = retries.isEmpty() ? flushIntervalNanos : Math.min(flushIntervalNanos, retryBackoffNanos);
+                    Entry first = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        stop = !running;
+                    } else if (first == STOP) {
+                        stop = true;
+                    } else if (first != FLUSH) {
+                        batch.add(first);
+                        stop = collect(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop = true;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        flushNow();
+    }
+
+    // Adds queued rows until the batch is full, flush-interval has passed or a flush is asked for; true on STOP
+    private boolean collect(List<Entry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            Entry next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (next == null || next == FLUSH) {
+                return false;
+            }
+            if (next == STOP) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private void takeDueRetries(List<Entry> batch) {
+        if (retries.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Iterator<Entry> it = retries.iterator(); it.hasNext() && batch.size() < batchSize; ) {
+            Entry entry = it.next();
+            if (entry.retryAt - now <= 0) {
+                it.remove();
+                batch.add(entry);
+            }
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        // An entry that is no longer the latest write of its transaction was superseded by a newer
+        // write, which saves the latest state, or by a delete; it has nothing left to save
+        Map<String, Entry> current = new LinkedHashMap<>();
+        List<Entry> superseded = new ArrayList<>();
+        for (Entry entry : batch) {
+            String id = entry.transaction.getId();
+            if (pending.get(id) == entry) {
+                current.put(id, entry);
+            } else {
+                superseded.add(entry);
+            }
+        }
+        List<Transaction> rows = new ArrayList<>(current.size());
+        for (Entry entry : current.values()) {
+            rows.add(entry.transaction);
+        }
+        Set<String> failed = rows.isEmpty() ? Set.of() : saveRows(rows);
+
+        for (Entry entry : current.values()) {
+            if (failed.contains(entry.transaction.getId())) {
+                handleFailure(entry);
+            } else {
+                complete(entry, WRITTEN);
+            }
+        }
+        for (Entry entry : superseded) {
+            complete(entry, WRITTEN);
+        }
+        writtenLock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    // Saves the rows as one batch, falling back to one by one; returns the ids that could not be saved
+    private Set<String> saveRows(List<Transaction> rows) {
+        Set<String> failed = new HashSet<>();
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            try {
+                jpaRepository.saveAll(rows);
+            } catch (Exception batchFailure) {
+                logger.warn("Batch write of {} transactions failed, retrying one by one: {}", rows.size(), batchFailure.getMessage());
+                for (Transaction transaction : rows) {
+                    try {
+                        jpaRepository.save(transaction);
+                    } catch (Exception e) {
+                        writeFailures.increment();
+                        failed.add(transaction.getId());
+                        logger.error("Failed to save transaction {}: {}", transaction.getId(), e.getMessage());
+                    }
+                }
+            }
+            flushDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            flushSize.record(rows.size());
+        } finally {
+            flushLock.unlock();
+        }
+        return failed;
+    }
+
+    // Saves the rows in one saveAll, without the row by row fallback, so they are saved together or not at all
+    private void saveBatch(List<Transaction> rows) {
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            try {
+                jpaRepository.saveAll(rows);
+            } catch (Exception e) {
+                writeFailures.increment(rows.size());
+                throw new RuntimeException("Failed to save batch of " + rows.size() + " transactions", e);
+            } finally {
+                flushDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                flushSize.record(rows.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+        // Without a journal the waiting caller is told; otherwise the row is retried, then dead-lettered
+    private void handleFailure(Entry entry) {
+        if (entry.segment == null) {
+            complete(entry, FAILED);
+            return;
+        }
+        entry.attempts++;
+        if (entry.attempts < maxAttempts) {
+            entry.retryAt = System.nanoTime() + retryBackoffNanos * entry.attempts;
+            retries.add(entry);
+            return;
+        }
+        try {
+            journal.deadLetter(entry.transaction);
+        } catch (IOException e) {
+            logger.error("Failed to dead-letter transaction {}, will retry: {}", entry.transaction.getId(), e.getMessage());
+            entry.retryAt = System.nanoTime() + retryBackoffNanos * entry.attempts;
+            retries.add(entry);
+            return;
+        }
+        deadLetters.increment();
+        logger.error("Transaction {} could not be saved after {} attempts; moved to {}",
+            entry.transaction.getId(), entry.attempts, journal.deadLetterFile());
+        complete(entry, DEAD_LETTERED);
+    }
+
+    private void complete(Entry entry, int state) {
+        pending.remove(entry.transaction.getId(), entry);
+        entry.state = state;
+        if (entry.segment != null) {
+            journal.release(entry.segment);
+        }
+    }
+}
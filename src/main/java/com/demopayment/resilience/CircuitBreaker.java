@@ -0,0 +1,304 @@
+package com.demopayment.resilience;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.demopayment.exception.CallNotPermittedException;
+
+// CircuitBreaker stops calling a dependency that keeps failing or answering slowly
+// CLOSED records the outcome of the last windowSize calls and opens once at least minimumCalls are
+// recorded and the failure rate or the slow-call rate reaches its threshold. OPEN rejects calls for
+// openDuration, then HALF_OPEN lets exactly halfOpenPermits trial calls through and closes or reopens
+// on their outcome, or reopens if they have not all reported within halfOpenTimeout. A permit carries
+// the generation of the state that granted it, and an outcome only counts towards that state, so a
+// late answer to a call from an earlier state cannot close the breaker without a real trial.
+// The state lives in one AtomicReference and every window is a ring of atomics, so callers never
+// block on each other. Metrics are published as payment.circuit.breaker.* tagged with the breaker name.
+
+public final class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static final long NOT_PERMITTED = -1;
+
+    /*
+     * Rates are percentages; a call taking at least slowCallDuration counts as slow
+     */
+    public record Settings(int windowSize, int minimumCalls, float failureRateThreshold,
+                           Duration slowCallDuration, float slowCallRateThreshold,
+                           Duration openDuration, int halfOpenPermits, Duration halfOpenTimeout) {
+
+        public Settings {
+            if (windowSize <= 0 || minimumCalls <= 0 || halfOpenPermits <= 0) {
+                throw new IllegalArgumentException("Circuit breaker window, minimum calls and permits must be positive");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 100
+                    || slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+                throw new IllegalArgumentException("Circuit breaker rate thresholds must be in (0, 100]");
+            }
+            if (halfOpenTimeout.isNegative() || halfOpenTimeout.isZero()) {
+                throw new IllegalArgumentException("Circuit breaker half-open timeout must be positive");
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(100, 20, 50, Duration.ofSeconds(2), 80, Duration.ofSeconds(30), 5, Duration.ofSeconds(10));
+        }
+    }
+
+    private final String name;
+    private final Settings settings;
+    private final long slowCallNanos;
+    private final long openMillis;
+    private final long halfOpenTimeoutMillis;
+    private final Clock clock;
+    private final AtomicReference<Phase> phase;
+    private final List<BiConsumer<State, State>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder notPermitted = new LongAdder();
+    private final LongAdder[] transitions = new LongAdder[State.values().length];
+
+    public CircuitBreaker(String name, Settings settings, MeterRegistry meterRegistry) {
+        this(name, settings, meterRegistry, Clock.systemUTC());
+    }
+
+    public CircuitBreaker(String name, Settings settings, MeterRegistry meterRegistry, Clock clock) {
+        this.name = name;
+        this.settings = settings;
+        this.slowCallNanos = settings.slowCallDuration().toNanos();
+        this.openMillis = settings.openDuration().toMillis();
+        this.halfOpenTimeoutMillis = settings.halfOpenTimeout().toMillis();
+        this.clock = clock;
+        this.phase = new AtomicReference<>(new Phase(State.CLOSED, 0, settings.windowSize(), 0));
+
+        Gauge.builder("payment.circuit.breaker.state", this, breaker -> breaker.getState().ordinal())
+            .tag("name", name).register(meterRegistry);
+        Gauge.builder("payment.circuit.breaker.failure.rate", this, CircuitBreaker::getFailureRate)
+            .tag("name", name).register(meterRegistry);
+        FunctionCounter.builder("payment.circuit.breaker.calls", successes, LongAdder::sum)
+            .tag("name", name).tag("outcome", "success").register(meterRegistry);
+        FunctionCounter.builder("payment.circuit.breaker.calls", failures, LongAdder::sum)
+            .tag("name", name).tag("outcome", "failure").register(meterRegistry);
+        FunctionCounter.builder("payment.circuit.breaker.calls", notPermitted, LongAdder::sum)
+            .tag("name", name).tag("outcome", "not_permitted").register(meterRegistry);
+        FunctionCounter.builder("payment.circuit.breaker.slow.calls", slowCalls, LongAdder::sum)
+            .tag("name", name).register(meterRegistry);
+        for (State state : State.values()) {
+            transitions[state.ordinal()] = new LongAdder();
+            FunctionCounter.builder("payment.circuit.breaker.transitions", transitions[state.ordinal()], LongAdder::sum)
+                .tag("name", name).tag("to", state.name().toLowerCase()).register(meterRegistry);
+        }
+    }
+
+    /*
+     * Runs the call if the breaker permits it and records its outcome; a rejected call throws
+     * CallNotPermittedException without running
+     */
+    public <T> T execute(Supplier<T> call) {
+        long permit = tryAcquirePermit();
+        if (permit == NOT_PERMITTED) {
+            throw new CallNotPermittedException(name);
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            onSuccess(permit, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            onError(permit, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /*
+     * A permit for one call, or NOT_PERMITTED. Every permit should be handed back to onSuccess or
+     * onError; a HALF_OPEN breaker reopens when its trial permits are not all back in time.
+     */
+    public long tryAcquirePermit() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current.generation;
+                case OPEN:
+                    if (clock.millis() - current.since < openMillis) {
+                        notPermitted.increment();
+                        return NOT_PERMITTED;
+                    }
+                    transition(current, next(current, State.HALF_OPEN, settings.halfOpenPermits()));
+                    break;
+                default:
+                    if (clock.millis() - current.since >= halfOpenTimeoutMillis) {
+                        // Trial calls that never reported; the dependency has not shown it recovered
+                        transition(current, next(current, State.OPEN, 0));
+                        break;
+                    }
+                    if (current.permits.getAndDecrement() > 0) {
+                        return current.generation;
+                    }
+                    notPermitted.increment();
+                    return NOT_PERMITTED;
+            }
+        }
+    }
+
+    public void onSuccess(long permit, long durationNanos) {
+        successes.increment();
+        record(permit, false, durationNanos);
+    }
+
+    public void onError(long permit, long durationNanos) {
+        failures.increment();
+        record(permit, true, durationNanos);
+    }
+
+    public void onStateTransition(BiConsumer<State, State> listener) {
+        listeners.add(listener);
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /*
+     * Failure percentage over the current window, or -1 until minimumCalls have been recorded
+     */
+    public float getFailureRate() {
+        Window window = phase.get().window;
+        int calls = window.calls.get();
+        return calls < settings.minimumCalls() ? -1 : 100f * window.failures.get() / calls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(long permit, boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= slowCallNanos;
+        if (slow) {
+            slowCalls.increment();
+        }
+        Phase current = phase.get();
+        if (current.generation != permit || current.state == State.OPEN) {
+            // Permitted by an earlier state; the window it belonged to is gone
+            return;
+        }
+        int calls = current.window.record(failed, slow);
+        if (current.state == State.CLOSED) {
+            if (calls >= settings.minimumCalls() && exceedsThresholds(current.window, calls)) {
+                transition(current, next(current, State.OPEN, 0));
+            }
+        } else if (calls >= settings.halfOpenPermits()) {
+            boolean reopen = exceedsThresholds(current.window, calls);
+            transition(current, reopen
+                ? next(current, State.OPEN, 0)
+                : next(current, State.CLOSED, settings.windowSize()));
+        }
+    }
+
+    private Phase next(Phase from, State state, int permits) {
+        return new Phase(state, clock.millis(), permits, from.generation + 1);
+    }
+
+    private boolean exceedsThresholds(Window window, int calls) {
+        return 100f * window.failures.get() / calls >= settings.failureRateThreshold()
+            || 100f * window.slow.get() / calls >= settings.slowCallRateThreshold();
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (!phase.compareAndSet(from, to)) {
+            return;
+        }
+        transitions[to.state.ordinal()].increment();
+        if (to.state == State.OPEN && from.state == State.HALF_OPEN && from.window.calls.get() < settings.halfOpenPermits()) {
+            logger.warn("Circuit breaker {} reopened: only {} of {} trial calls reported within {} ms",
+                name, from.window.calls.get(), settings.halfOpenPermits(), halfOpenTimeoutMillis);
+        } else if (to.state == State.OPEN) {
+            logger.warn("Circuit breaker {} opened after {} calls ({}% failed, {}% slow), rejecting calls for {} ms",
+                name, from.window.calls.get(), percent(from.window.failures.get(), from.window.calls.get()),
+                percent(from.window.slow.get(), from.window.calls.get()), openMillis);
+        } else {
+            logger.info("Circuit breaker {} moved from {} to {}", name, from.state, to.state);
+        }
+        for (BiConsumer<State, State> listener : listeners) {
+            listener.accept(from.state, to.state);
+        }
+    }
+
+    private static long percent(int part, int whole) {
+        return whole == 0 ? 0 : Math.round(100.0 * part / whole);
+    }
+
+    // One state of the breaker; replaced as a whole on every transition, so a new window starts empty.
+    // The generation numbers the phases and is what a permit holds.
+    private static final class Phase {
+        final State state;
+        final long since;
+        final long generation;
+        final Window window;
+        final AtomicInteger permits;
+
+        Phase(State state, long since, int permits, long generation) {
+            this.state = state;
+            this.since = since;
+            this.generation = generation;
+            this.window = new Window(Math.max(1, permits));
+            this.permits = new AtomicInteger(permits);
+        }
+    }
+
+    // Ring of the last size call outcomes with running totals. Each slot is swapped atomically and
+    // the totals are adjusted by the difference, so they never drift from the ring contents for long.
+    private static final class Window {
+        private static final int RECORDED = 1;
+        private static final int FAILED = 1 << 1;
+        private static final int SLOW = 1 << 2;
+
+        final AtomicIntegerArray outcomes;
+        final AtomicLong cursor = new AtomicLong();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger slow = new AtomicInteger();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        // Returns the number of calls in the window after this one
+        int record(boolean failed, boolean slowCall) {
+            int outcome = RECORDED | (failed ? FAILED : 0) | (slowCall ? SLOW : 0);
+            int slot = (int) (cursor.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(slot, outcome);
+            adjust(failures, previous, outcome, FAILED);
+            adjust(slow, previous, outcome, SLOW);
+            return (previous & RECORDED) == 0 ? calls.incrementAndGet() : calls.get();
+        }
+
+        private static void adjust(AtomicInteger total, int previous, int outcome, int bit) {
+            int delta = ((outcome & bit) != 0 ? 1 : 0) - ((previous & bit) != 0 ? 1 : 0);
+            if (delta != 0) {
+                total.addAndGet(delta);
+            }
+        }
+    }
+}
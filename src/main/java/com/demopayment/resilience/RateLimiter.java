@@ -0,0 +1,166 @@
+package com.demopayment.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// RateLimiter admits up to permitsPerSecond calls with bursts of up to burst calls (GCRA)
+// The whole state is the theoretical arrival time of the next call in one AtomicLong: a call is
+// admitted when pushing that time one emission interval further keeps it within burst intervals of
+// now, which is a token bucket of burst tokens refilled at permitsPerSecond without a refill task.
+// A caller may instead wait up to a timeout: it reserves the slot with the same CAS and parks until
+// it comes up. Admitted, throttled and waited calls are published as payment.rate.limiter.permits.
+
+public final class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final LongSupplier nanoTime;
+    private final AtomicLong arrival;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private volatile Limits limits;
+
+    private record Limits(long intervalNanos, long burstNanos) {
+    }
+
+    public RateLimiter(String name, double permitsPerSecond, int burst, MeterRegistry meterRegistry) {
+        this(name, permitsPerSecond, burst, meterRegistry, System::nanoTime);
+    }
+
+    RateLimiter(String name, double permitsPerSecond, int burst, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.name = name;
+        this.nanoTime = nanoTime;
+        setRate(permitsPerSecond, burst);
+        this.arrival = new AtomicLong(nanoTime.getAsLong());
+
+        FunctionCounter.builder("payment.rate.limiter.permits", admitted, LongAdder::sum)
+            .tag("name", name).tag("result", "admitted").register(meterRegistry);
+        FunctionCounter.builder("payment.rate.limiter.permits", throttled, LongAdder::sum)
+            .tag("name", name).tag("result", "throttled").register(meterRegistry);
+        FunctionCounter.builder("payment.rate.limiter.permits", waited, LongAdder::sum)
+            .tag("name", name).tag("result", "waited").register(meterRegistry);
+    }
+
+    /*
+     * Changes the rate for calls from now on; slots already handed out are kept
+     */
+    public void setRate(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("Rate limit of " + name + " must allow at least one call");
+        }
+        long intervalNanos = (long) (NANOS_PER_SECOND / permitsPerSecond);
+        this.limits = new Limits(intervalNanos, Math.multiplyExact(intervalNanos, (long) burst));
+    }
+
+    /*
+     * Admits the call if a permit is available right now
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(0);
+    }
+
+    /*
+     * Admits the call, parking the caller until its slot when that is at most timeout away.
+     * Returns false without waiting when it is further away.
+     */
+    public boolean tryAcquire(Duration timeout) {
+        return tryAcquire(timeout.toNanos());
+    }
+
+    /*
+     * Admits as many of the given number of calls as fit within the burst, or within timeout of now,
+     * and returns how many that is; the rest are counted as throttled. Waits for the last admitted slot.
+     */
+    public int tryAcquireUpTo(int permits, Duration timeout) {
+        if (permits <= 0) {
+            return 0;
+        }
+        Limits current = limits;
+        if (current.intervalNanos() == 0) {
+            admitted.add(permits);
+            return permits;
+        }
+        long timeoutNanos = timeout.toNanos();
+        while (true) {
+            long now = nanoTime.getAsLong();
+            long next = arrival.get();
+            long start = Math.max(next, now);
+            long fitting = (now + current.burstNanos() + timeoutNanos - start) / current.intervalNanos();
+            int granted = (int) Math.max(0, Math.min(permits, fitting));
+            if (granted == 0) {
+                throttled.add(permits);
+                return 0;
+            }
+            long reserved = start + granted * current.intervalNanos();
+            if (arrival.compareAndSet(next, reserved)) {
+                admitted.add(granted);
+                throttled.add(permits - granted);
+                long waitNanos = reserved - now - current.burstNanos();
+                if (waitNanos > 0) {
+                    waited.increment();
+                    park(now + waitNanos);
+                }
+                return granted;
+            }
+        }
+    }
+
+    public double getPermitsPerSecond() {
+        long intervalNanos = limits.intervalNanos();
+        return intervalNanos == 0 ? Double.POSITIVE_INFINITY : (double) NANOS_PER_SECOND / intervalNanos;
+    }
+
+    public long admittedCount() {
+        return admitted.sum();
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    private boolean tryAcquire(long timeoutNanos) {
+        Limits current = limits;
+        if (current.intervalNanos() == 0) {
+            admitted.increment();
+            return true;
+        }
+        while (true) {
+            long now = nanoTime.getAsLong();
+            long next = arrival.get();
+            long reserved = Math.max(next, now) + current.intervalNanos();
+            long waitNanos = reserved - now - current.burstNanos();
+            if (waitNanos > timeoutNanos) {
+                throttled.increment();
+                return false;
+            }
+            if (arrival.compareAndSet(next, reserved)) {
+                admitted.increment();
+                if (waitNanos > 0) {
+                    waited.increment();
+                    park(now + waitNanos);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void park(long until) {
+        long remaining;
+        while ((remaining = until - nanoTime.getAsLong()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                // The slot stays taken; the caller goes ahead early and keeps its interrupt
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
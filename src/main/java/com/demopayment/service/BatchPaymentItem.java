@@ -0,0 +1,28 @@
+package com.demopayment.service;
+
+import java.math.BigDecimal;
+import com.demopayment.model.Money;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// BatchPaymentItem is one credit payment of a batch submission
+// Read from {"userId", "amount", "currency", "sendEmail", "printReceipt", "useCache"}; the amount is
+// taken exactly as written, and a side effect that is not mentioned runs, as for a single payment.
+
+public record BatchPaymentItem(String userId, Money amount, boolean sendEmail, boolean printReceipt, boolean useCache) {
+
+    public BatchPaymentItem(String userId, Money amount) {
+        this(userId, amount, true, true, true);
+    }
+
+    @JsonCreator
+    static BatchPaymentItem fromJson(@JsonProperty("userId") String userId,
+                                     @JsonProperty("amount") BigDecimal amount,
+                                     @JsonProperty("currency") String currency,
+                                     @JsonProperty("sendEmail") Boolean sendEmail,
+                                     @JsonProperty("printReceipt") Boolean printReceipt,
+                                     @JsonProperty("useCache") Boolean useCache) {
+        return new BatchPaymentItem(userId, Money.of(amount, currency),
+            sendEmail == null || sendEmail, printReceipt == null || printReceipt, useCache == null || useCache);
+    }
+}
@@ -0,0 +1,15 @@
+package com.demopayment.service;
+
+// BatchPaymentResult is the outcome of one item of a batch submission
+// error is null for approved payments
+
+public record BatchPaymentResult(boolean approved, boolean premiumUser, String error) {
+
+    public static BatchPaymentResult approved(boolean premiumUser) {
+        return new BatchPaymentResult(true, premiumUser, null);
+    }
+
+    public static BatchPaymentResult rejected(String error) {
+        return new BatchPaymentResult(false, false, error);
+    }
+}
@@ -0,0 +1,139 @@
+package com.demopayment.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.demopayment.exception.ComplianceRejectedException;
+
+// ComplianceService screens a payment with the external fraud-check, KYC and compliance services
+// The three calls run concurrently on virtual threads, so the phase costs the slowest call rather
+// than the sum of all three. The first veto, failure or the per-payment deadline cancels the
+// calls still in flight and rejects the payment.
+
+@Service
+public class ComplianceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComplianceService.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long deadlineNanos;
+    private final MeterRegistry meterRegistry;
+    private final Timer phaseTimer;
+    private final Timer fraudCheckTimer;
+    private final Timer kycTimer;
+    private final Timer complianceTimer;
+    private final Counter timeouts;
+
+    public ComplianceService(MeterRegistry meterRegistry,
+                             @Value("${payment.compliance.deadline-ms:2000}") long deadlineMs) {
+        this.meterRegistry = meterRegistry;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        this.phaseTimer = Timer.builder("payment.compliance.phase.duration")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.fraudCheckTimer = callTimer("fraud-check");
+        this.kycTimer = callTimer("kyc");
+        this.complianceTimer = callTimer("compliance");
+        this.timeouts = Counter.builder("payment.compliance.timeouts").register(meterRegistry);
+    }
+
+    /*
+     * Returns normally when every check approves the payment within the deadline
+     */
+    public void screen(String userId, double amount) {
+        long start = System.nanoTime();
+        long deadline = start + deadlineNanos;
+        CompletionService<CheckResult> completion = new ExecutorCompletionService<>(executor);
+        List<Future<CheckResult>> calls = new ArrayList<>(3);
+        calls.add(completion.submit(timed("fraud-check", fraudCheckTimer, () -> callFraudCheckService(userId, amount))));
+        calls.add(completion.submit(timed("kyc", kycTimer, () -> callKYCService(userId))));
+        calls.add(completion.submit(timed("compliance", complianceTimer, () -> callComplianceService(userId, amount))));
+        try {
+            for (int i = 0; i < calls.size(); i++) {
+                Future<CheckResult> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    timeouts.increment();
+                    throw new ComplianceRejectedException("Compliance checks timed out for user " + userId);
+                }
+                CheckResult result = done.get();
+                if (!result.approved()) {
+                    vetoCounter(result.check()).increment();
+                    throw new ComplianceRejectedException("Payment vetoed by " + result.check() + " for user " + userId);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new ComplianceRejectedException("Compliance check failed for user " + userId, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ComplianceRejectedException("Interrupted during compliance checks for user " + userId, e);
+        } finally {
+            for (Future<CheckResult> call : calls) {
+                call.cancel(true);
+            }
+            phaseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Timer callTimer(String check) {
+        return Timer.builder("payment.compliance.call.duration")
+            .tag("call", check)
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+
+    private static Callable<CheckResult> timed(String check, Timer timer, Callable<Boolean> call) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return new CheckResult(check, call.call());
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private Counter vetoCounter(String check) {
+        return Counter.builder("payment.compliance.vetoes").tag("call", check).register(meterRegistry);
+    }
+
+    private record CheckResult(String check, boolean approved) {
+    }
+
+    // The calls below stand in for the external services
+
+    boolean callFraudCheckService(String userId, double amount) {
+        logger.info("Called callFraudCheckService with userId={}, amount={}", userId, amount);
+        return true;
+    }
+
+    boolean callKYCService(String userId) {
+        logger.info("Called callKYCService with userId={}", userId);
+        return true;
+    }
+
+    boolean callComplianceService(String userId, double amount) {
+        logger.info("Called callComplianceService with userId={}, amount={}", userId, amount);
+        return true;
+    }
+}
@@ -1,99 +1,185 @@
 package com.demopayment.service;
 
-import java.util.*;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Currency;
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.EntityStateTable;
+import com.demopayment.fraud.FraudFeature;
+import com.demopayment.fraud.FraudRuleEngine;
+import com.demopayment.fraud.FraudStateStore;
+import com.demopayment.fraud.FraudStateStore.EntityType;
+import com.demopayment.fraud.UserFeatureStore;
+import com.demopayment.fraud.UserFeatures;
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 // FraudPreventionService implements fraud detection and prevention mechanisms
-// Uses risk scoring and blacklisting to protect against fraudulent transactions
+// Uses risk scoring and blacklisting to protect against fraudulent transactions.
+// Which payments are blocked is decided by the FraudRuleEngine; this service supplies the base
+// features of a payment on demand, records the risk score in the fraud state and, when a payment
+// passes, its velocity and the user's streaming statistics. The user, IP and device risk scores
+// are derived from those statistics: amounts far above the user's average, bursts of payments,
+// and devices or IPs the user has not paid from before. The user's average and the velocity
+// windows' amount sums are kept in the settlement currency, so amounts are converted before they
+// update them or are compared with them.
 
 @Service
 public class FraudPreventionService {
 
     private static final Logger logger = LoggerFactory.getLogger(FraudPreventionService.class);
     
-    private static final Map<String, Integer> userRiskScores = new HashMap<>();
-    private static final Map<String, List<String>> userTransactionHistory = new HashMap<>();
-    private static final Map<String, Integer> ipRiskScores = new HashMap<>();
-    private static final Map<String, Integer> deviceRiskScores = new HashMap<>();
-    private static final Set<String> blacklistedUsers = new HashSet<>();
-    private static final Set<String> blacklistedIPs = new HashSet<>();
-    private static final Set<String> blacklistedDevices = new HashSet<>();
-    
-    private static final int HIGH_RISK_THRESHOLD = 80;
-    private static final int MEDIUM_RISK_THRESHOLD = 50;
-    private static final int LOW_RISK_THRESHOLD = 20;
-    private static final int MAX_TRANSACTIONS_PER_HOUR = 10;
-    private static final double MAX_AMOUNT_PER_DAY = 10000.0;
-    
-    public boolean checkFraud(String userId, String ipAddress, String deviceId, double amount, String currency) {
+    // Derived feature stored as the risk score of the user, IP and device
+    private static final String RISK_SCORE = "riskScore";
+    
+    // The currency PaymentService settles in
+    private static final Currency SETTLEMENT_CURRENCY = Currency.getInstance("USD");
+    // Settled amount of a payment whose currency has no rate
+    private static final long NO_RATE = Long.MIN_VALUE;
+    
+    private static final int MAX_RISK = 100;
+    // Risk of a user, IP or device we know nothing about
+    private static final int UNKNOWN_RISK = 50;
+    // Added for every doubling of the amount over the user's average
+    private static final int AMOUNT_SPIKE_RISK = 25;
+    private static final double BURST_SECONDS = 60;
+    private static final int BURST_RISK = 25;
+    private static final int NEW_IP_RISK = 40;
+    private static final int NEW_DEVICE_RISK = 60;
+    // Added for every distinct IP or device beyond the first two
+    private static final int SPREAD_RISK = 10;
+    
+    private final EntityStateTable users;
+    private final EntityStateTable ips;
+    private final EntityStateTable devices;
+    private final BlacklistIndex blacklist;
+    private final FraudRuleEngine ruleEngine;
+    private final UserFeatureStore featureStore;
+    private final ExchangeRateService exchangeRates;
+    private final int hourWindow;
+    private final int dayWindow;
+    private final Clock clock;
+    // Reused for every payment a thread screens, so a check allocates no evaluation state
+    private final ThreadLocal<Payment> evaluations = ThreadLocal.withInitial(Payment::new);
+    
+    public FraudPreventionService(FraudStateStore stateStore, BlacklistIndex blacklist, FraudRuleEngine ruleEngine,
+                                  UserFeatureStore featureStore, ExchangeRateService exchangeRates) {
+        this(stateStore, blacklist, ruleEngine, featureStore, exchangeRates, Clock.systemUTC());
+    }
+    
+    FraudPreventionService(FraudStateStore stateStore, BlacklistIndex blacklist, FraudRuleEngine ruleEngine,
+                           UserFeatureStore featureStore, ExchangeRateService exchangeRates, Clock clock) {
+        this.blacklist = blacklist;
+        this.ruleEngine = ruleEngine;
+        this.featureStore = featureStore;
+        this.exchangeRates = exchangeRates;
+        this.users = stateStore.users();
+        this.ips = stateStore.ips();
+        this.devices = stateStore.devices();
+        this.hourWindow = stateStore.windows().indexOf(Duration.ofHours(1));
+        this.dayWindow = stateStore.windows().indexOf(Duration.ofDays(1));
+        this.clock = clock;
+    }
+    
+    public boolean checkFraud(String userId, String ipAddress, String deviceId, Money amount) {
 
         logger.info("Checking fraud for user: {}", userId);
         
-        // Check blacklists
-        if (blacklistedUsers.contains(userId) || blacklistedIPs.contains(ipAddress) || blacklistedDevices.contains(deviceId)) {
-            return true; // Fraud detected
-        }
+        long now = clock.millis();
+        Payment evaluation = ruleEngine.evaluate(evaluations.get().of(userId, ipAddress, deviceId, amount, now));
         
-        // Check transaction history
-        List<String> history = userTransactionHistory.getOrDefault(userId, new ArrayList<>());
-        if (history.size() > MAX_TRANSACTIONS_PER_HOUR) {
-            return true; // Too many transactions
+        // Update risk scores, when a rule got as far as computing one
+        double riskScore = evaluation.valueIfComputed(RISK_SCORE);
+        if (!Double.isNaN(riskScore)) {
+            int totalRisk = (int) riskScore;
+            users.updateRiskScore(userId, totalRisk);
+            ips.updateRiskScore(ipAddress, totalRisk);
+            devices.updateRiskScore(deviceId, totalRisk);
         }
         
-        // Calculate risk scores
-        int userRisk = calculateUserRiskScore(userId);
-        int ipRisk = calculateIPRiskScore(ipAddress);
-        int deviceRisk = calculateDeviceRiskScore(deviceId);
-        int amountRisk = calculateAmountRiskScore(amount);
-        int currencyRisk = calculateCurrencyRiskScore(currency);
-        
-        int totalRisk = (userRisk * 3 + ipRisk * 2 + deviceRisk * 2 + amountRisk * 4 + currencyRisk) / 12;
-        
-        // Update risk scores
-        userRiskScores.put(userId, totalRisk);
-        ipRiskScores.put(ipAddress, totalRisk);
-        deviceRiskScores.put(deviceId, totalRisk);
-        
-        if (totalRisk > HIGH_RISK_THRESHOLD) {
-            blacklistUser(userId);
-            return true;
-        } else if (totalRisk > MEDIUM_RISK_THRESHOLD) {
-            if (amount > MAX_AMOUNT_PER_DAY) {
-                return true;
-            }
-        } else if (totalRisk > LOW_RISK_THRESHOLD) {
-            if (history.size() > 5) {
-                return true;
+        if (evaluation.isBlocked()) {
+            logger.debug("Payment of user {} blocked by fraud rule {}", userId, evaluation.getRule());
+            if (evaluation.isBlacklisting()) {
+                blacklistUser(userId);
             }
+            return true;
         }
         
-        // Update transaction history
-        history.add(new java.util.Date().toString());
-        userTransactionHistory.put(userId, history);
+        // Update transaction velocity; a payment that cannot be valued counts, but adds nothing to the sums
+        long settledMinor = evaluation.settledMinor();
+        long amountMinor = settledMinor == NO_RATE ? 0 : settledMinor;
+        users.recordTransaction(userId, amountMinor, now);
+        ips.recordTransaction(ipAddress, amountMinor, now);
+        devices.recordTransaction(deviceId, amountMinor, now);
+        
+        // Update the user's streaming statistics
+        featureStore.record(userId, ipAddress, deviceId, evaluation.settledAmount(), now);
         
         return false; // No fraud detected
     }
     
-    private int calculateUserRiskScore(String userId) {
-        // Implementation with magic numbers
-        return new Random().nextInt(100);
+    private int calculateUserRiskScore(UserFeatures user, double settledAmount, long now) {
+        if (!user.known()) {
+            return UNKNOWN_RISK;
+        }
+        double ratio = amountToAverage(user, settledAmount);
+        int risk = ratio > 1 ? (int) (AMOUNT_SPIKE_RISK * Math.log(ratio) / Math.log(2)) : 0;
+        if (user.secondsSinceLastTransaction(now) < BURST_SECONDS) {
+            risk += BURST_RISK;
+        }
+        return Math.min(MAX_RISK, risk);
     }
     
-    private int calculateIPRiskScore(String ipAddress) {
-        // Implementation with magic numbers
-        return new Random().nextInt(100);
+    private int calculateIPRiskScore(UserFeatures user, String ipAddress) {
+        if (!user.known() || ipAddress == null) {
+            return UNKNOWN_RISK;
+        }
+        int risk = (user.ipFrequency() == 0 ? NEW_IP_RISK : 0) + spreadRisk(user.distinctIps());
+        return Math.min(MAX_RISK, risk);
     }
     
-    private int calculateDeviceRiskScore(String deviceId) {
-        // Implementation with magic numbers
-        return new Random().nextInt(100);
+    private int calculateDeviceRiskScore(UserFeatures user, String deviceId) {
+        if (!user.known() || deviceId == null) {
+            return UNKNOWN_RISK;
+        }
+        int risk = (user.deviceFrequency() == 0 ? NEW_DEVICE_RISK : 0) + spreadRisk(user.distinctDevices());
+        return Math.min(MAX_RISK, risk);
     }
     
-    private int calculateAmountRiskScore(double amount) {
+    // An amount that could not be converted is not compared with the average
+    private static double amountToAverage(UserFeatures user, double settledAmount) {
+        return Double.isNaN(settledAmount) ? 1 : user.amountToAverage(settledAmount);
+    }
+    
+    /*
+     * The amount in minor units of the settlement currency, or NO_RATE when its currency has no rate
+     */
+    private long settle(Money amount) {
+        if (amount.currency() == SETTLEMENT_CURRENCY) {
+            return amount.minorUnits();
+        }
+        ExchangeRates rates = exchangeRates.current();
+        if (!rates.supports(amount.currency()) || !rates.supports(SETTLEMENT_CURRENCY)) {
+            return NO_RATE;
+        }
+        return rates.convertMinor(amount.minorUnits(), amount.currency(), SETTLEMENT_CURRENCY);
+    }
+    
+    private static double majorUnits(long settledMinor) {
+        return new Money(settledMinor, SETTLEMENT_CURRENCY).doubleValue();
+    }
+    
+    private static int spreadRisk(double distinct) {
+        return SPREAD_RISK * Math.max(0, (int) Math.round(distinct) - 2);
+    }
+    
+    private int calculateAmountRiskScore(Money amount) {
         // Implementation with magic numbers
-        return (int) (amount / 100);
+        return (int) (amount.majorUnits() / 100);
     }
     
     private int calculateCurrencyRiskScore(String currency) {
@@ -102,6 +188,73 @@ public class FraudPreventionService {
     }
     
     private void blacklistUser(String userId) {
-        blacklistedUsers.add(userId);
+        blacklist.blacklist(EntityType.USER, userId);
+    }
+    
+    // Base features of the payment being screened, looked up only when a rule asks for them
+    private final class Payment extends FraudRuleEngine.Evaluation {
+        private String userId;
+        private String ipAddress;
+        private String deviceId;
+        private Money amount;
+        private long now;
+        private UserFeatures user;
+        private boolean settled;
+        private long settledMinor;
+        
+        Payment of(String userId, String ipAddress, String deviceId, Money amount, long now) {
+            this.userId = userId;
+            this.ipAddress = ipAddress;
+            this.deviceId = deviceId;
+            this.amount = amount;
+            this.now = now;
+            this.user = null;
+            this.settled = false;
+            return this;
+        }
+        
+        @Override
+        protected double value(FraudFeature feature) {
+            return switch (feature) {
+                case AMOUNT -> amount.doubleValue();
+                case AMOUNT_RISK -> calculateAmountRiskScore(amount);
+                case CURRENCY_RISK -> calculateCurrencyRiskScore(amount.currencyCode());
+                case USER_RISK -> calculateUserRiskScore(user(), settledAmount(), now);
+                case IP_RISK -> calculateIPRiskScore(user(), ipAddress);
+                case DEVICE_RISK -> calculateDeviceRiskScore(user(), deviceId);
+                case AMOUNT_TO_AVERAGE -> amountToAverage(user(), settledAmount());
+                case SECONDS_SINCE_LAST_TRANSACTION -> user().secondsSinceLastTransaction(now);
+                case DISTINCT_DEVICES -> user().distinctDevices();
+                case DISTINCT_IPS -> user().distinctIps();
+                case DEVICE_FREQUENCY -> user().deviceFrequency();
+                case IP_FREQUENCY -> user().ipFrequency();
+                case BLACKLISTED -> blacklist.isBlacklisted(userId, ipAddress, deviceId) ? 1 : 0;
+                case TRANSACTIONS_LAST_HOUR -> users.transactionCount(userId, hourWindow, now);
+                case AMOUNT_LAST_DAY -> majorUnits(users.amountSum(userId, dayWindow, now)
+                    + (settledMinor() == NO_RATE ? 0 : settledMinor()));
+            };
+        }
+        
+        // Converted once per payment
+        long settledMinor() {
+            if (!settled) {
+                settledMinor = settle(amount);
+                settled = true;
+            }
+            return settledMinor;
+        }
+        
+        // Major units of the settlement currency, NaN when the currency has no rate
+        double settledAmount() {
+            return settledMinor() == NO_RATE ? Double.NaN : majorUnits(settledMinor());
+        }
+        
+        // One read of the feature store serves every feature derived from it
+        private UserFeatures user() {
+            if (user == null) {
+                user = featureStore.read(userId, ipAddress, deviceId);
+            }
+            return user;
+        }
     }
-} 
\ No newline at end of file
+}
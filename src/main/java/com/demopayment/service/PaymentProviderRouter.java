@@ -1,21 +1,268 @@
 package com.demopayment.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.resilience.CircuitBreaker;
+
 // PaymentProviderRouter manages the selection and routing of payment providers
-// Handles provider selection based on transaction amount, user status, and provider availability
+// Handles provider selection based on transaction amount, user status, and provider availability.
+// Routing rules narrow the configured gateways by currency, amount and premium status; among the
+// remaining healthy gateways two are sampled at random and the one with the lower expected wait
+// (EWMA latency x (in-flight + 1), inflated by its EWMA error rate) wins. A gateway whose error rate
+// passes the drain threshold or whose circuit breaker is not closed only gets a trickle of probe
+// traffic until it recovers. Latency and outcomes come from PaymentGatewayService's call listener;
+// a call the circuit breaker rejected counts as an error but not as a latency sample.
 
 @Service
-public class PaymentProviderRouter {
+public class PaymentProviderRouter implements PaymentGatewayService.CallListener {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentProviderRouter.class);
-    
+
+    // Weight of the newest sample in the latency and error rate averages
+    private static final double ALPHA = 0.1;
+    // Share of routable payments sent to a drained gateway so its averages can recover
+    private static final double PROBE_RATIO = 0.01;
+    private static final double MIN_SUCCESS_RATE = 0.05;
+
+    private final PaymentGatewayService gatewayService;
+    private final Map<String, GatewayStats> gateways = new LinkedHashMap<>();
+    private final List<Rule> rules;
+    private final double drainErrorRate;
+
+    public PaymentProviderRouter(PaymentGatewayService gatewayService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${payment.routing.gateways:stripe,paypal,braintree}") String gateways,
+                                 @Value("${payment.routing.rules:}") String rules,
+                                 @Value("${payment.routing.drain.error-rate:0.5}") double drainErrorRate) {
+        this.gatewayService = gatewayService;
+        for (String gateway : gateways.split(",")) {
+            String name = gateway.trim();
+            if (!name.isEmpty()) {
+                GatewayStats stats = new GatewayStats(name);
+                this.gateways.put(name, stats);
+                Gauge.builder("payment.routing.latency", stats, GatewayStats::latencyMillis)
+                    .tag("gateway", name).baseUnit("milliseconds").register(meterRegistry);
+                Gauge.builder("payment.routing.error.rate", stats, GatewayStats::errorRate)
+                    .tag("gateway", name).register(meterRegistry);
+                Gauge.builder("payment.routing.in.flight", stats, value -> value.inFlight.get())
+                    .tag("gateway", name).register(meterRegistry);
+            }
+        }
+        if (this.gateways.isEmpty()) {
+            throw new IllegalArgumentException("payment.routing.gateways must name at least one gateway");
+        }
+        this.rules = parseRules(rules, this.gateways.keySet());
+        this.drainErrorRate = drainErrorRate;
+    }
+
+    @PostConstruct
+    public void registerCallListener() {
+        gatewayService.addCallListener(this);
+    }
+
     public String selectProvider(String userId, double amount, String currency, boolean isPremiumUser) {
-        logger.info("Selecting provider for user: {}", userId);
-        
-        // Implementation
-        return "default_provider";
+        List<GatewayStats> candidates = candidates(amount, currency, isPremiumUser);
+        List<GatewayStats> healthy = new ArrayList<>(candidates.size());
+        List<GatewayStats> drained = new ArrayList<>(0);
+        for (GatewayStats stats : candidates) {
+            (isDrained(stats) ? drained : healthy).add(stats);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        GatewayStats selected;
+        if (healthy.isEmpty()) {
+            // Everything is unhealthy: spread the load rather than fail every payment
+            selected = pickTwo(candidates, random);
+        } else if (!drained.isEmpty() && random.nextDouble() < PROBE_RATIO) {
+            selected = drained.get(random.nextInt(drained.size()));
+        } else {
+            selected = pickTwo(healthy, random);
+        }
+        logger.debug("Routing payment of user {} to {}", userId, selected.gateway);
+        return selected.gateway;
+    }
+
+    @Override
+    public void onCallStarted(String gateway) {
+        GatewayStats stats = gateways.get(gateway);
+        if (stats != null) {
+            stats.inFlight.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onCallCompleted(String gateway, long durationNanos, boolean success) {
+        GatewayStats stats = gateways.get(gateway);
+        if (stats != null) {
+            stats.inFlight.decrementAndGet();
+            stats.record(durationNanos, success);
+        }
+    }
+
+    @Override
+    public void onCallRejected(String gateway) {
+        GatewayStats stats = gateways.get(gateway);
+        if (stats != null) {
+            stats.inFlight.decrementAndGet();
+            stats.recordRejection();
+        }
+    }
+
+    public boolean isDrained(String gateway) {
+        GatewayStats stats = gateways.get(gateway);
+        return stats != null && isDrained(stats);
+    }
+
+    private boolean isDrained(GatewayStats stats) {
+        return stats.errorRate() >= drainErrorRate
+            || gatewayService.getCircuitState(stats.gateway) != CircuitBreaker.State.CLOSED;
+    }
+
+    // Each matching rule narrows the candidates; a rule that would leave none is skipped
+    private List<GatewayStats> candidates(double amount, String currency, boolean isPremiumUser) {
+        Set<String> allowed = gateways.keySet();
+        for (Rule rule : rules) {
+            if (rule.matches(amount, currency, isPremiumUser)) {
+                Set<String> narrowed = new LinkedHashSet<>(allowed);
+                narrowed.retainAll(rule.gateways());
+                if (!narrowed.isEmpty()) {
+                    allowed = narrowed;
+                }
+            }
+        }
+        List<GatewayStats> candidates = new ArrayList<>(allowed.size());
+        for (String gateway : allowed) {
+            candidates.add(gateways.get(gateway));
+        }
+        return candidates;
+    }
+
+    // Power of two choices: the better of two random candidates
+    private static GatewayStats pickTwo(List<GatewayStats> candidates, ThreadLocalRandom random) {
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        GatewayStats a = candidates.get(first);
+        GatewayStats b = candidates.get(second);
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    /*
+     * Parses a comma separated list of condition:gateway|gateway rules, where the condition is
+     * currency=XXX, amount>=N or premium, e.g. "currency=JPY:stripe,amount>=10000:stripe|braintree"
+     */
+    static List<Rule> parseRules(String spec, Set<String> known) {
+        List<Rule> rules = new ArrayList<>();
+        if (spec == null || spec.isBlank()) {
+            return rules;
+        }
+        for (String part : spec.split(",")) {
+            String[] rule = part.trim().split(":");
+            if (rule.length != 2) {
+                throw new IllegalArgumentException("Invalid routing rule: " + part);
+            }
+            Set<String> targets = new LinkedHashSet<>();
+            for (String gateway : rule[1].split("\\|")) {
+                if (!known.contains(gateway.trim())) {
+                    throw new IllegalArgumentException("Routing rule " + part + " names unknown gateway " + gateway);
+                }
+                targets.add(gateway.trim());
+            }
+            String condition = rule[0].trim();
+            if (condition.equals("premium")) {
+                rules.add(new Rule(null, Double.NaN, true, targets));
+            } else if (condition.startsWith("currency=")) {
+                rules.add(new Rule(condition.substring("currency=".length()).trim(), Double.NaN, false, targets));
+            } else if (condition.startsWith("amount>=")) {
+                rules.add(new Rule(null, Double.parseDouble(condition.substring("amount>=".length()).trim()), false, targets));
+            } else {
+                throw new IllegalArgumentException("Invalid routing rule: " + part);
+            }
+        }
+        return rules;
+    }
+
+    record Rule(String currency, double minAmount, boolean premium, Set<String> gateways) {
+        boolean matches(double amount, String paymentCurrency, boolean isPremiumUser) {
+            if (currency != null) {
+                return currency.equalsIgnoreCase(paymentCurrency);
+            }
+            if (!Double.isNaN(minAmount)) {
+                return amount >= minAmount;
+            }
+            return premium && isPremiumUser;
+        }
+    }
+
+    // Running averages of one gateway; updated with a CAS loop so concurrent completions are not lost
+    private static final class GatewayStats {
+        final String gateway;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong latencyNanos = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+        final AtomicLong errors = new AtomicLong(Double.doubleToLongBits(0));
+
+        GatewayStats(String gateway) {
+            this.gateway = gateway;
+        }
+
+        void record(long durationNanos, boolean success) {
+            update(latencyNanos, durationNanos);
+            update(errors, success ? 0 : 1);
+        }
+
+        // Counts as an error but says nothing about latency: the gateway was never called
+        void recordRejection() {
+            update(errors, 1);
+        }
+
+        double errorRate() {
+            return Double.longBitsToDouble(errors.get());
+        }
+
+        double latencyMillis() {
+            double latency = Double.longBitsToDouble(latencyNanos.get());
+            return Double.isNaN(latency) ? 0 : latency / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        // Expected wait: a gateway without samples looks instant, so it gets tried
+        double cost() {
+            double latency = Double.longBitsToDouble(latencyNanos.get());
+            double base = Double.isNaN(latency) ? 1 : Math.max(1, latency);
+            return base * (inFlight.get() + 1) / Math.max(MIN_SUCCESS_RATE, 1 - errorRate());
+        }
+
+        private static void update(AtomicLong average, double sample) {
+            while (true) {
+                long bits = average.get();
+                double current = Double.longBitsToDouble(bits);
+                double next = Double.isNaN(current) ? sample : current + ALPHA * (sample - current);
+                if (average.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                    return;
+                }
+            }
+        }
     }
-} 
\ No newline at end of file
+}
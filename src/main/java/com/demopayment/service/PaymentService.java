@@ -1,13 +1,25 @@
 package com.demopayment.service;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.sql.*;
+import com.demopayment.exception.DatabaseUnavailableException;
 import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.pipeline.PipelineStage;
+import com.demopayment.pipeline.PostPaymentPipeline;
+import com.demopayment.repository.TransactionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
 import com.demopayment.model.Transaction;
+import com.demopayment.model.UserProfile;
 
 // PaymentProcessor handles the core payment processing logic
 // Manages transaction processing, fraud checks, notifications, and reward systems
@@ -16,12 +28,13 @@ import com.demopayment.model.Transaction;
 public class PaymentService {
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
     
-    private static final Map<String, Double> exchangeRates = new HashMap<>();
-    private static final List<String> availableGateways = new ArrayList<>();
+    // Credits in any currency with an exchange rate are settled in this one
+    private static final Currency SETTLEMENT_CURRENCY = Currency.getInstance("USD");
+    private static final List<String> availableGateways = List.of("stripe", "paypal", "braintree");
     
     private static final int CREDIT_TYPE = 1;
     private static final int DEBIT_TYPE = 2;
-    private static final double HIGH_VALUE_THRESHOLD = 1000.0;
+    private static final Money HIGH_VALUE_THRESHOLD = Money.ofMajor(1000, SETTLEMENT_CURRENCY);
     private static final int REWARD_POINTS = 50;
     
     @Autowired
@@ -36,121 +49,232 @@ public class PaymentService {
     @Autowired
     private PaymentGatewayService gatewayService;
     
-    public PaymentService() {
-        try {
-            // Initialize exchange rates
-            exchangeRates.put("USD", 1.0);
-            exchangeRates.put("EUR", 0.85);
-            exchangeRates.put("GBP", 0.73);
-            
-            // Initialize available gateways
-            availableGateways.add("stripe");
-            availableGateways.add("paypal");
-            availableGateways.add("braintree");
-            
-        } catch (Exception e) {
-        }
-    }
+    @Autowired
+    private PostPaymentPipeline postPaymentPipeline;
+    
+    @Autowired
+    private ComplianceService complianceService;
     
-    public void process(int type, double amount, String currency,
+    @Autowired
+    private TransactionRepository transactionRepository;
+    
+    @Autowired
+    private ExchangeRateService exchangeRates;
+    
+    public void process(int type, Money amount,
                        String userId, boolean isPremiumUser, boolean sendEmail,
                        boolean printReceipt, boolean useCache) {
         logger.info("Processing payment");
         
-        Map<String, Object> userData = userService.getUserData(userId);
-        
-        boolean isFraudulent = fraudService.checkFraud(
-            userId,
-            (String) userData.get("ipAddress"),
-            (String) userData.get("deviceId"),
-            amount,
-            currency
-        );
+        UserProfile userData = userService.getUserData(userId);
         
-        if (isFraudulent) {
-            throw new RuntimeException("Fraudulent transaction detected");
-        }
+        screen(userId, userData, amount);
         
-        String provider = providerRouter.selectProvider(userId, amount, currency, isPremiumUser);
+        String provider = providerRouter.selectProvider(userId, amount.doubleValue(), amount.currencyCode(), isPremiumUser);
         
         // Process payment through gateway
-        boolean paymentSuccess = gatewayService.processPayment(userId, amount, currency, provider);
+        boolean paymentSuccess = gatewayService.processPayment(userId, amount.doubleValue(), amount.currencyCode(), provider);
         
         if (!paymentSuccess) {
             throw new RuntimeException("Payment processing failed");
         }
         
+        settle(type, amount, userId, isPremiumUser, sendEmail, printReceipt, useCache);
+    }
+    
+    /*
+     * Processes a chunk of credit payments together: one bulk user lookup, screening of all
+     * items in parallel, then one gateway call per provider, the providers in parallel. Results
+     * are in the order of the items; a rejected item does not affect the others.
+     */
+    public List<BatchPaymentResult> processBatch(List<BatchPaymentItem> items) {
+        logger.info("Processing batch of {} payments", items.size());
+        
+        Set<String> userIds = new HashSet<>();
+        for (BatchPaymentItem item : items) {
+            userIds.add(item.userId());
+        }
+        Map<String, UserProfile> users = userService.getUserData(userIds);
+        
+        BatchPaymentResult[] results = new BatchPaymentResult[items.size()];
+        boolean[] premium = new boolean[items.size()];
+        
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Fraud and compliance screening of every item, concurrently
+            List<Future<?>> screenings = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                int index = i;
+                BatchPaymentItem item = items.get(i);
+                UserProfile userData = users.get(item.userId());
+                if (userData == null) {
+                    results[index] = BatchPaymentResult.rejected("User not found");
+                    continue;
+                }
+                premium[index] = userData.premiumUser();
+                screenings.add(executor.submit(() -> {
+                    try {
+                        screen(item.userId(), userData, item.amount());
+                    } catch (RuntimeException e) {
+                        results[index] = BatchPaymentResult.rejected(e.getMessage());
+                    }
+                }));
+            }
+            awaitAll(screenings);
+            
+            // One gateway call per provider for the items that passed screening, the providers concurrently
+            Map<String, List<Integer>> byProvider = new HashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (results[i] == null) {
+                    BatchPaymentItem item = items.get(i);
+                    String provider = providerRouter.selectProvider(item.userId(), item.amount().doubleValue(),
+                        item.amount().currencyCode(), premium[i]);
+                    byProvider.computeIfAbsent(provider, key -> new ArrayList<>()).add(i);
+                }
+            }
+            List<Future<?>> submissions = new ArrayList<>(byProvider.size());
+            for (Map.Entry<String, List<Integer>> entry : byProvider.entrySet()) {
+                submissions.add(executor.submit(() -> submitToProvider(entry.getKey(), entry.getValue(), items, premium, results)));
+            }
+            awaitAll(submissions);
+        }
+        return Arrays.asList(results);
+    }
+    
+    // Sends the provider's share of the batch in one gateway call and settles the accepted payments
+    private void submitToProvider(String provider, List<Integer> indexes, List<BatchPaymentItem> items,
+                                  boolean[] premium, BatchPaymentResult[] results) {
+        List<PaymentGatewayService.GatewayPayment> payments = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            BatchPaymentItem item = items.get(index);
+            payments.add(new PaymentGatewayService.GatewayPayment(item.userId(),
+                item.amount().doubleValue(), item.amount().currencyCode()));
+        }
+        boolean[] accepted = gatewayService.processBatch(provider, payments);
+        for (int j = 0; j < accepted.length; j++) {
+            int index = indexes.get(j);
+            if (!accepted[j]) {
+                results[index] = BatchPaymentResult.rejected("Payment processing failed");
+                continue;
+            }
+            BatchPaymentItem item = items.get(index);
+            try {
+                settle(CREDIT_TYPE, item.amount(), item.userId(), premium[index],
+                    item.sendEmail(), item.printReceipt(), item.useCache());
+                results[index] = BatchPaymentResult.approved(premium[index]);
+            } catch (RuntimeException e) {
+                results[index] = BatchPaymentResult.rejected(e.getMessage());
+            }
+        }
+    }
+    
+    private static void awaitAll(List<Future<?>> tasks) {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing batch", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Batch processing failed", e.getCause());
+        }
+    }
+    
+    private void screen(String userId, UserProfile userData, Money amount) {
+        boolean isFraudulent = fraudService.checkFraud(
+            userId,
+            userData.ipAddress(),
+            userData.deviceId(),
+            amount
+        );
+        
+        if (isFraudulent) {
+            throw new RuntimeException("Fraudulent transaction detected");
+        }
+        
+        // Fraud-check, KYC and compliance services screen the payment in parallel before any money moves
+        complianceService.screen(userId, amount.doubleValue());
+    }
+    
+    private void settle(int type, Money amount,
+                        String userId, boolean isPremiumUser, boolean sendEmail,
+                        boolean printReceipt, boolean useCache) {
+        // One snapshot for the whole settlement, so a reload cannot change the rate halfway
+        ExchangeRates rates = exchangeRates.current();
         if (type == CREDIT_TYPE) {
-            if (currency.equals("USD")) {
-                if (amount > HIGH_VALUE_THRESHOLD) {
+            if (rates.supports(amount.currency())) {
+                Money settled = rates.convert(amount, SETTLEMENT_CURRENCY);
+                if (settled.isGreaterThan(HIGH_VALUE_THRESHOLD)) {
                     if (isPremiumUser) {
-                        processHighValuePremiumPayment(userId, amount);
+                        processHighValuePremiumPayment(userId, settled);
                     } else {
-                        processHighValueRegularPayment(userId, amount);
+                        processHighValueRegularPayment(userId, settled);
                     }
                 } else {
-                    processLowValuePayment(userId, amount);
+                    processLowValuePayment(userId, settled);
                 }
             } else {
-                processUnsupportedCurrency(currency);
+                processUnsupportedCurrency(amount.currencyCode());
             }
         } else if (type == DEBIT_TYPE) {
-            if (amount < 0) {
+            if (amount.signum() < 0) {
                 handleInvalidAmount();
             } else {
                 processDebitPayment(userId, amount);
             }
         }
         
+        // The payment is complete once it is durably recorded
         try {
-            saveToPostgres(userId, amount, currency);
-            saveToRedis(userId, amount);
-        } catch (Exception e) {
+            saveToPostgres(userId, amount);
+        } catch (SQLException e) {
+            throw new DatabaseUnavailableException("Failed to record payment for user " + userId, e);
         }
         
-        try {
-            callFraudCheckService(userId, amount);
-            callKYCService(userId);
-            callComplianceService(userId, amount);
-        } catch (Exception e) {
-        }
+        // Side effects run asynchronously on the post-payment pipeline
+        postPaymentPipeline.submit(PipelineStage.CACHE, "saveToRedis", () -> saveToRedis(userId, amount));
         
         if (sendEmail) {
-            sendEmailNotification(userId, amount);
-            sendSMSNotification(userId, amount);
-            sendPushNotification(userId, amount);
+            postPaymentPipeline.submit(PipelineStage.NOTIFICATIONS, "sendEmailNotification", () -> sendEmailNotification(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.NOTIFICATIONS, "sendSMSNotification", () -> sendSMSNotification(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.NOTIFICATIONS, "sendPushNotification", () -> sendPushNotification(userId, amount));
         }
         
         if (printReceipt) {
-            printPDFReceipt(userId, amount);
-            printHTMLReceipt(userId, amount);
-            printTextReceipt(userId, amount);
+            postPaymentPipeline.submit(PipelineStage.RECEIPTS, "printPDFReceipt", () -> printPDFReceipt(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.RECEIPTS, "printHTMLReceipt", () -> printHTMLReceipt(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.RECEIPTS, "printTextReceipt", () -> printTextReceipt(userId, amount));
         }
         
         if (useCache) {
-            cacheTransaction(userId, amount);
-            cacheUserData(userId);
-            cacheExchangeRates();
+            postPaymentPipeline.submit(PipelineStage.CACHE, "cacheTransaction", () -> cacheTransaction(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.CACHE, "cacheUserData", () -> cacheUserData(userId));
         }
         
-        if (amount > HIGH_VALUE_THRESHOLD) {
-            applyRewardPoints(userId, REWARD_POINTS);
-            applyCashback(userId, amount);
-            applyLoyaltyPoints(userId, amount);
+        if (isHighValue(rates, amount)) {
+            postPaymentPipeline.submit(PipelineStage.REWARDS, "applyRewardPoints", () -> applyRewardPoints(userId, REWARD_POINTS));
+            postPaymentPipeline.submit(PipelineStage.REWARDS, "applyCashback", () -> applyCashback(userId, amount));
+            postPaymentPipeline.submit(PipelineStage.REWARDS, "applyLoyaltyPoints", () -> applyLoyaltyPoints(userId, amount));
         }
         
         logTransaction(userId, amount, new java.util.Date());
     }
     
-    private void processHighValuePremiumPayment(String userId, double amount) {
+    // The threshold is in the settlement currency; an amount without a rate cannot be valued and is not high value
+    private static boolean isHighValue(ExchangeRates rates, Money amount) {
+        return rates.supports(amount.currency())
+            && rates.convertMinor(amount.minorUnits(), amount.currency(), SETTLEMENT_CURRENCY) > HIGH_VALUE_THRESHOLD.minorUnits();
+    }
+    
+    private void processHighValuePremiumPayment(String userId, Money amount) {
         logger.info("Called processHighValuePremiumPayment with userId={}, amount={}", userId, amount);
     }
     
-    private void processHighValueRegularPayment(String userId, double amount) {
+    private void processHighValueRegularPayment(String userId, Money amount) {
         logger.info("Called processHighValueRegularPayment with userId={}, amount={}", userId, amount);
     }
     
-    private void processLowValuePayment(String userId, double amount) {
+    private void processLowValuePayment(String userId, Money amount) {
         logger.info("Called processLowValuePayment with userId={}, amount={}", userId, amount);
     }
     
@@ -162,55 +286,43 @@ public class PaymentService {
         logger.error("Called handleInvalidAmount");
     }
     
-    private void processDebitPayment(String userId, double amount) {
+    private void processDebitPayment(String userId, Money amount) {
         logger.info("Called processDebitPayment with userId={}, amount={}", userId, amount);
     }
     
-    private void saveToPostgres(String userId, double amount, String currency) throws SQLException {
-        logger.info("Called saveToPostgres with userId={}, amount={}, currency={}", userId, amount, currency);
+    private void saveToPostgres(String userId, Money amount) throws SQLException {
+        logger.info("Called saveToPostgres with userId={}, amount={}", userId, amount);
     }
     
-    private void saveToRedis(String userId, double amount) {
+    private void saveToRedis(String userId, Money amount) {
         logger.info("Called saveToRedis with userId={}, amount={}", userId, amount);
     }
     
-    private void callFraudCheckService(String userId, double amount) {
-        logger.info("Called callFraudCheckService with userId={}, amount={}", userId, amount);
-    }
-    
-    private void callKYCService(String userId) {
-        logger.info("Called callKYCService with userId={}", userId);
-    }
-    
-    private void callComplianceService(String userId, double amount) {
-        logger.info("Called callComplianceService with userId={}, amount={}", userId, amount);
-    }
-    
-    private void sendEmailNotification(String userId, double amount) {
+    private void sendEmailNotification(String userId, Money amount) {
         logger.info("Called sendEmailNotification with userId={}, amount={}", userId, amount);
     }
     
-    private void sendSMSNotification(String userId, double amount) {
+    private void sendSMSNotification(String userId, Money amount) {
         logger.info("Called sendSMSNotification with userId={}, amount={}", userId, amount);
     }
     
-    private void sendPushNotification(String userId, double amount) {
+    private void sendPushNotification(String userId, Money amount) {
         logger.info("Called sendPushNotification with userId={}, amount={}", userId, amount);
     }
     
-    private void printPDFReceipt(String userId, double amount) {
+    private void printPDFReceipt(String userId, Money amount) {
         logger.info("Called printPDFReceipt with userId={}, amount={}", userId, amount);
     }
     
-    private void printHTMLReceipt(String userId, double amount) {
+    private void printHTMLReceipt(String userId, Money amount) {
         logger.info("Called printHTMLReceipt with userId={}, amount={}", userId, amount);
     }
     
-    private void printTextReceipt(String userId, double amount) {
+    private void printTextReceipt(String userId, Money amount) {
         logger.info("Called printTextReceipt with userId={}, amount={}", userId, amount);
     }
     
-    private void cacheTransaction(String userId, double amount) {
+    private void cacheTransaction(String userId, Money amount) {
         logger.info("Called cacheTransaction with userId={}, amount={}", userId, amount);
     }
     
@@ -218,23 +330,19 @@ public class PaymentService {
         logger.info("Called cacheUserData with userId={}", userId);
     }
     
-    private void cacheExchangeRates() {
-        logger.info("Called cacheExchangeRates");
-    }
-    
     private void applyRewardPoints(String userId, int points) {
         logger.info("Called applyRewardPoints with userId={}, points={}", userId, points);
     }
     
-    private void applyCashback(String userId, double amount) {
+    private void applyCashback(String userId, Money amount) {
         logger.info("Called applyCashback with userId={}, amount={}", userId, amount);
     }
     
-    private void applyLoyaltyPoints(String userId, double amount) {
+    private void applyLoyaltyPoints(String userId, Money amount) {
         logger.info("Called applyLoyaltyPoints with userId={}, amount={}", userId, amount);
     }
     
-    private void logTransaction(String userId, double amount, java.util.Date date) {
+    private void logTransaction(String userId, Money amount, java.util.Date date) {
         logger.info("Called logTransaction with userId={}, amount={}, date={}", userId, amount, date);
     }
     
@@ -243,7 +351,7 @@ public class PaymentService {
     }
 
     public void refundTransaction(String id) {
-        Transaction transaction = com.demopayment.model.Transaction.getTransaction(id);
+        Transaction transaction = transactionRepository.findById(id);
         if (transaction == null) {
             throw new RuntimeException("Transaction not found");
         }
@@ -257,12 +365,12 @@ public class PaymentService {
     }
 
     public void deleteTransaction(String id) {
-        Transaction transaction = com.demopayment.model.Transaction.getTransaction(id);
+        Transaction transaction = transactionRepository.findById(id);
         if (transaction == null) {
             throw new RuntimeException("Transaction not found");
         }
         // Remove from cache and repository
-        com.demopayment.model.Transaction.clearCache(); // Simulate bad practice: clears all
+        transactionRepository.deleteById(transaction.getId());
         logger.info("Transaction deleted: {}", id);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,457 @@
+package com.demopayment.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.demopayment.cache.LocalCache;
+import com.demopayment.model.UserProfile;
+
+// UserCache keeps user profiles in three tiers: the current HTTP request, a bounded in-process L1
+// with a short TTL, and Redis (L2). Every node publishes the ids it rewrites on a Redis channel and
+// drops its L1 copy of ids published by other nodes; the L1 TTL bounds how long a node that missed
+// an invalidation can serve a stale profile.
+// Concurrent misses for one user are coalesced into a single Redis read and user service call. With
+// refresh-ahead (a fraction of the L1 TTL) a hit on an older entry reloads it in the background.
+// Redis values are UserProfileCodec bytes. Requests and lookup latency are published per tier
+// under payment.user.cache.*{tier}.
+
+@Component
+public class UserCache implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    public static final String INVALIDATION_CHANNEL = "user-cache:invalidate";
+
+    private static final String KEY_PREFIX = "user:";
+    private static final int PIPELINE_SIZE = 1000;
+    private static final String REQUEST_ATTRIBUTE = UserCache.class.getName() + ".profiles";
+    private static final byte[] CHANNEL_BYTES = INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final LocalCache<UserProfile> local;
+    private final long redisTtlSeconds;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LongAdder requestHits = new LongAdder();
+    private final LongAdder requestMisses = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final Map<String, CompletableFuture<UserProfile>> inFlight = new ConcurrentHashMap<>();
+    private final long refreshAfterMillis;
+    private final Timer localLatency;
+    private final Timer redisLatency;
+    private final Timer originLatency;
+
+    @Autowired
+    public UserCache(RedisTemplate<String, byte[]> redisTemplate,
+                     MeterRegistry meterRegistry,
+                     @Value("${payment.user-cache.local.max-entries:50000}") int maxEntries,
+                     @Value("${payment.user-cache.local.stripes:16}") int stripeCount,
+                     @Value("${payment.user-cache.local.ttl:60s}") Duration localTtl,
+                     @Value("${payment.user-cache.local.refresh-ahead:0}") double refreshAhead,
+                     @Value("${payment.user-cache.redis.ttl:1h}") Duration redisTtl) {
+        this(redisTemplate, meterRegistry, maxEntries, stripeCount, localTtl, refreshAhead, redisTtl, Clock.systemUTC());
+    }
+
+    UserCache(RedisTemplate<String, byte[]> redisTemplate, MeterRegistry meterRegistry, int maxEntries,
+              int stripeCount, Duration localTtl, double refreshAhead, Duration redisTtl, Clock clock) {
+        this.redisTemplate = redisTemplate;
+        this.local = new LocalCache<>(meterRegistry, "payment.user.cache", Tags.of("tier", "l1"),
+            maxEntries, stripeCount, localTtl, clock);
+        this.redisTtlSeconds = redisTtl.toSeconds();
+        this.refreshAfterMillis = refreshAhead > 0 && refreshAhead < 1 ? (long) (localTtl.toMillis() * refreshAhead) : 0;
+
+        FunctionCounter.builder("payment.user.cache.requests", requestHits, LongAdder::sum)
+            .tags("tier", "request", "result", "hit").register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.requests", requestMisses, LongAdder::sum)
+            .tags("tier", "request", "result", "miss").register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.requests", redisHits, LongAdder::sum)
+            .tags("tier", "l2", "result", "hit").register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.requests", redisMisses, LongAdder::sum)
+            .tags("tier", "l2", "result", "miss").register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.invalidations.received", invalidationsReceived, LongAdder::sum)
+            .register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.coalesced", coalesced, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("payment.user.cache.refreshes", refreshes, LongAdder::sum).register(meterRegistry);
+        this.localLatency = latencyTimer(meterRegistry, "l1");
+        this.redisLatency = latencyTimer(meterRegistry, "l2");
+        this.originLatency = latencyTimer(meterRegistry, "origin");
+    }
+
+    /*
+     * The cached profile from the nearest tier that has it, or null when no tier does
+     */
+    public UserProfile get(String userId) {
+        return get(userId, null);
+    }
+
+    /*
+     * Read-through lookup: on a miss in every tier the loader fetches the profile and it is cached.
+     * Concurrent misses for the same user share one Redis read and one load, and an L1 entry older
+     * than the refresh-ahead point is reloaded in the background while it keeps being served.
+     */
+    public UserProfile get(String userId, Function<String, UserProfile> loader) {
+        Map<String, UserProfile> requestProfiles = requestProfiles();
+        if (requestProfiles != null) {
+            UserProfile userData = requestProfiles.get(userId);
+            if (userData != null) {
+                requestHits.increment();
+                return userData;
+            }
+            requestMisses.increment();
+        }
+
+        UserProfile userData = getLocal(userId);
+        if (userData != null) {
+            if (loader != null) {
+                refreshIfAging(userId, loader);
+            }
+        } else {
+            userData = singleFlight(userId, () -> {
+                // The flight that just finished may already have filled L1
+                UserProfile loaded = local.peek(userId);
+                if (loaded == null) {
+                    loaded = getRemote(userId);
+                }
+                if (loaded == null && loader != null) {
+                    loaded = fetch(userId, loader);
+                }
+                return loaded;
+            });
+            if (userData == null) {
+                return null;
+            }
+        }
+        if (requestProfiles != null) {
+            requestProfiles.put(userId, userData);
+        }
+        return userData;
+    }
+
+    /*
+     * Profiles of the given users found in any tier, with one Redis round trip for all L1 misses.
+     * Users missing from every tier are left out of the result.
+     */
+    public Map<String, UserProfile> getAll(Collection<String> userIds) {
+        Map<String, UserProfile> requestProfiles = requestProfiles();
+        Map<String, UserProfile> result = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            UserProfile userData = requestProfiles == null ? null : requestProfiles.get(userId);
+            if (userData == null) {
+                userData = getLocal(userId);
+            } else {
+                requestHits.increment();
+            }
+            if (userData != null) {
+                result.put(userId, userData);
+            } else {
+                misses.add(userId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            List<String> remote = new ArrayList<>(misses);
+            List<String> keys = new ArrayList<>(remote.size());
+            for (String userId : remote) {
+                keys.add(KEY_PREFIX + userId);
+            }
+            long start = System.nanoTime();
+            List<byte[]> cached;
+            try {
+                cached = redisTemplate.opsForValue().multiGet(keys);
+            } catch (RuntimeException e) {
+                logger.warn("Redis lookup of {} users failed: {}", keys.size(), e.getMessage());
+                cached = null;
+            }
+            redisLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < remote.size(); i++) {
+                UserProfile userData = decode(cached == null || i >= cached.size() ? null : cached.get(i));
+                if (userData == null) {
+                    redisMisses.increment();
+                    continue;
+                }
+                redisHits.increment();
+                local.put(remote.get(i), userData);
+                result.put(remote.get(i), userData);
+            }
+        }
+        if (requestProfiles != null) {
+            requestProfiles.putAll(result);
+        }
+        return result;
+    }
+
+    /*
+     * Stores the profile in every tier and tells the other nodes to drop their L1 copy
+     */
+    public UserProfile put(String userId, UserProfile userData) {
+        local.put(userId, userData);
+        Map<String, UserProfile> requestProfiles = requestProfiles();
+        if (requestProfiles != null) {
+            requestProfiles.put(userId, userData);
+        }
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + userId, UserProfileCodec.encode(userData),
+                redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (RuntimeException e) {
+            logger.error("Failed to cache user data", e);
+        }
+        publishInvalidation(userId);
+        return userData;
+    }
+
+    /*
+     * Stores many profiles in every tier, writing them to Redis in pipelines of PIPELINE_SIZE
+     * with one invalidation message per pipeline
+     */
+    public void putAll(Map<String, UserProfile> users) {
+        Map<String, UserProfile> requestProfiles = requestProfiles();
+        for (Map.Entry<String, UserProfile> user : users.entrySet()) {
+            local.put(user.getKey(), user.getValue());
+        }
+        if (requestProfiles != null) {
+            requestProfiles.putAll(users);
+        }
+
+        List<Map.Entry<String, UserProfile>> entries = new ArrayList<>(users.entrySet());
+        Expiration expiration = Expiration.seconds(redisTtlSeconds);
+        for (int from = 0; from < entries.size(); from += PIPELINE_SIZE) {
+            List<Map.Entry<String, UserProfile>> pipeline = entries.subList(from, Math.min(from + PIPELINE_SIZE, entries.size()));
+            StringBuilder invalidation = new StringBuilder(nodeId).append('|');
+            for (Map.Entry<String, UserProfile> user : pipeline) {
+                invalidation.append(user.getKey()).append('\n');
+            }
+            byte[] payload = invalidation.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Map.Entry<String, UserProfile> user : pipeline) {
+                        connection.stringCommands().set((KEY_PREFIX + user.getKey()).getBytes(StandardCharsets.UTF_8),
+                            UserProfileCodec.encode(user.getValue()), expiration, SetOption.upsert());
+                    }
+                    connection.publish(CHANNEL_BYTES, payload);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                logger.error("Failed to cache {} users", pipeline.size(), e);
+            }
+        }
+    }
+
+    /*
+     * Removes the profile from every tier on every node
+     */
+    public void invalidate(String userId) {
+        local.invalidate(userId);
+        Map<String, UserProfile> requestProfiles = requestProfiles();
+        if (requestProfiles != null) {
+            requestProfiles.remove(userId);
+        }
+        try {
+            redisTemplate.delete(KEY_PREFIX + userId);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to remove user {} from Redis: {}", userId, e.getMessage());
+        }
+        publishInvalidation(userId);
+    }
+
+    /*
+     * Invalidation published by a node: "<node id>|<user id>[\n<user id>...]". Our own messages
+     * are ignored.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        invalidationsReceived.increment();
+        for (String userId : body.substring(separator + 1).split("\n")) {
+            if (!userId.isEmpty()) {
+                local.invalidate(userId);
+            }
+        }
+    }
+
+    public int localSize() {
+        return local.size();
+    }
+
+    private UserProfile getLocal(String userId) {
+        long start = System.nanoTime();
+        UserProfile userData = local.get(userId);
+        localLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return userData;
+    }
+
+    // Redis lookup; a hit is copied into L1
+    private UserProfile getRemote(String userId) {
+        long start = System.nanoTime();
+        byte[] cached;
+        try {
+            cached = redisTemplate.opsForValue().get(KEY_PREFIX + userId);
+        } catch (RuntimeException e) {
+            logger.warn("Redis lookup of user {} failed: {}", userId, e.getMessage());
+            cached = null;
+        }
+        redisLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        UserProfile userData = decode(cached);
+        if (userData == null) {
+            redisMisses.increment();
+            return null;
+        }
+        redisHits.increment();
+        local.put(userId, userData);
+        return userData;
+    }
+
+    private UserProfile fetch(String userId, Function<String, UserProfile> loader) {
+        long start = System.nanoTime();
+        UserProfile userData;
+        try {
+            userData = loader.apply(userId);
+        } finally {
+            originLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return userData == null ? null : put(userId, userData);
+    }
+
+    /*
+     * Runs the lookup unless one for the same user is already in flight, in which case its
+     * result (or failure) is shared
+     */
+    private UserProfile singleFlight(String userId, Supplier<UserProfile> lookup) {
+        CompletableFuture<UserProfile> flight = new CompletableFuture<>();
+        CompletableFuture<UserProfile> inProgress = inFlight.putIfAbsent(userId, flight);
+        if (inProgress != null) {
+            coalesced.increment();
+            try {
+                return inProgress.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new RuntimeException("Failed to get user data", e.getCause());
+            }
+        }
+        return fly(userId, flight, lookup);
+    }
+
+    private UserProfile fly(String userId, CompletableFuture<UserProfile> flight, Supplier<UserProfile> lookup) {
+        try {
+            UserProfile userData = lookup.get();
+            flight.complete(userData);
+            return userData;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(userId, flight);
+        }
+    }
+
+    // Starts a background reload of an L1 entry past the refresh-ahead point, unless one is running
+    private void refreshIfAging(String userId, Function<String, UserProfile> loader) {
+        if (refreshAfterMillis <= 0 || inFlight.containsKey(userId) || local.ageMillis(userId) < refreshAfterMillis) {
+            return;
+        }
+        CompletableFuture<UserProfile> flight = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(userId, flight) != null) {
+            return;
+        }
+        refreshes.increment();
+        Thread.ofVirtual().name("user-cache-refresh").start(() -> {
+            try {
+                fly(userId, flight, () -> {
+                    UserProfile refreshed = getRemote(userId);
+                    return refreshed != null ? refreshed : fetch(userId, loader);
+                });
+            } catch (RuntimeException e) {
+                logger.warn("Refresh-ahead of user {} failed: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    // Values in another encoding version count as misses and are overwritten by the reload
+    private UserProfile decode(byte[] cached) {
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return UserProfileCodec.decode(cached);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Discarding cached user data: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void publishInvalidation(String userId) {
+        byte[] payload = (nodeId + "|" + userId).getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(CHANNEL_BYTES, payload));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish invalidation for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /*
+     * Profiles already looked up while serving the current HTTP request, or null outside of one,
+     * so a request that asks for the same user twice goes past L1 and Redis only once
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, UserProfile> requestProfiles() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Object profiles = attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (profiles == null) {
+            profiles = new ConcurrentHashMap<String, UserProfile>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, profiles, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (Map<String, UserProfile>) profiles;
+    }
+
+    private static Timer latencyTimer(MeterRegistry meterRegistry, String tier) {
+        return Timer.builder("payment.user.cache.latency")
+            .tag("tier", tier)
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+}
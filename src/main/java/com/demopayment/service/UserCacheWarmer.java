@@ -0,0 +1,62 @@
+package com.demopayment.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.demopayment.repository.JpaTransactionRepository;
+
+// UserCacheWarmer fills the user cache with the recently active users once the application is up
+// The users with a transaction in the last lookback period (most recent first, at most max-users)
+// are fetched with bulk lookups on a background thread, so startup is not held up by it.
+
+@Component
+public class UserCacheWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCacheWarmer.class);
+
+    private final UserService userService;
+    private final JpaTransactionRepository jpaRepository;
+    private final boolean enabled;
+    private final Duration lookback;
+    private final int maxUsers;
+
+    public UserCacheWarmer(UserService userService,
+                           JpaTransactionRepository jpaRepository,
+                           @Value("${payment.user-cache.warm-up.enabled:false}") boolean enabled,
+                           @Value("${payment.user-cache.warm-up.lookback:24h}") Duration lookback,
+                           @Value("${payment.user-cache.warm-up.max-users:100000}") int maxUsers) {
+        this.userService = userService;
+        this.jpaRepository = jpaRepository;
+        this.enabled = enabled;
+        this.lookback = lookback;
+        this.maxUsers = maxUsers;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (enabled) {
+            Thread.ofVirtual().name("user-cache-warm-up").start(this::warmUp);
+        }
+    }
+
+    void warmUp() {
+        long start = System.nanoTime();
+        try {
+            List<String> userIds = jpaRepository.findActiveUserIds(Instant.now().minus(lookback), PageRequest.of(0, maxUsers));
+            int found = userService.warmUp(userIds);
+            logger.info("Warmed the user cache with {} of {} active users in {} ms",
+                found, userIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            logger.warn("User cache warm-up failed: {}", e.getMessage());
+        }
+    }
+}
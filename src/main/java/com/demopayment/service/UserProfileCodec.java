@@ -0,0 +1,194 @@
+package com.demopayment.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.demopayment.model.UserProfile;
+
+// UserProfileCodec is the binary form of a UserProfile kept in Redis
+// Layout: a version byte, a flags byte (active, verified, premium, has address), the string fields
+// as varint (length + 1) then UTF-8 bytes (0 = null), the balance as 8 bytes, the address strings
+// when present and a varint-counted list of preference pairs.
+// Bump VERSION when the layout changes; values written with another version fail to decode and
+// are re-fetched by the cache.
+
+public final class UserProfileCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int ACTIVE = 1;
+    private static final int VERIFIED = 1 << 1;
+    private static final int PREMIUM = 1 << 2;
+    private static final int HAS_ADDRESS = 1 << 3;
+
+    private UserProfileCodec() {
+    }
+
+    public static byte[] encode(UserProfile profile) {
+        Writer out = new Writer();
+        out.writeByte(VERSION);
+        int flags = (profile.active() ? ACTIVE : 0)
+            | (profile.verified() ? VERIFIED : 0)
+            | (profile.premiumUser() ? PREMIUM : 0)
+            | (profile.address() != null ? HAS_ADDRESS : 0);
+        out.writeByte(flags);
+        out.writeString(profile.id());
+        out.writeString(profile.name());
+        out.writeString(profile.email());
+        out.writeString(profile.phone());
+        out.writeString(profile.type());
+        out.writeString(profile.currency());
+        out.writeString(profile.createdAt());
+        out.writeString(profile.ipAddress());
+        out.writeString(profile.deviceId());
+        out.writeLong(Double.doubleToRawLongBits(profile.balance()));
+        UserProfile.Address address = profile.address();
+        if (address != null) {
+            out.writeString(address.street());
+            out.writeString(address.city());
+            out.writeString(address.state());
+            out.writeString(address.zip());
+            out.writeString(address.country());
+        }
+        out.writeVarint(profile.preferences().size());
+        for (Map.Entry<String, String> preference : profile.preferences().entrySet()) {
+            out.writeString(preference.getKey());
+            out.writeString(preference.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /*
+     * Throws IllegalArgumentException for another version or a truncated value
+     */
+    public static UserProfile decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported user profile version " + version);
+        }
+        int flags = in.readByte();
+        String id = in.readString();
+        String name = in.readString();
+        String email = in.readString();
+        String phone = in.readString();
+        String type = in.readString();
+        String currency = in.readString();
+        String createdAt = in.readString();
+        String ipAddress = in.readString();
+        String deviceId = in.readString();
+        double balance = Double.longBitsToDouble(in.readLong());
+        UserProfile.Address address = (flags & HAS_ADDRESS) == 0 ? null : new UserProfile.Address(
+            in.readString(), in.readString(), in.readString(), in.readString(), in.readString());
+        int preferenceCount = in.readVarint();
+        Map<String, String> preferences = new LinkedHashMap<>();
+        for (int i = 0; i < preferenceCount; i++) {
+            preferences.put(in.readString(), in.readString());
+        }
+        return new UserProfile(id, name, email, phone, type,
+            (flags & ACTIVE) != 0, (flags & VERIFIED) != 0, (flags & PREMIUM) != 0,
+            balance, currency, createdAt, ipAddress, deviceId, address, preferences);
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buffer, position, utf8.length);
+            position += utf8.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in user profile");
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private void require(int bytes) {
+            if (bytes < 0 || position + bytes > buffer.length) {
+                throw new IllegalArgumentException("Truncated user profile");
+            }
+        }
+    }
+}
@@ -1,10 +1,8 @@
 package com.demopayment.service;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import org.springframework.data.redis.core.RedisTemplate;
 import com.demopayment.client.UserClient;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.demopayment.model.UserProfile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,50 +16,75 @@ public class UserService {
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private UserCache userCache;
     
     private final UserClient userClient;
     
-    private static final ObjectMapper jacksonMapper = new ObjectMapper();
-    
-    private static final int CACHE_TTL = 3600;
+    private static final int WARM_UP_CHUNK = 10_000;
     
     public UserService() {
         this.userClient = new UserClient();
     }
     
-    public Map<String, Object> getUserData(String userId) {
-        logger.info("Getting user data for: {}", userId);
+    @Autowired
+    public UserService(UserClient userClient) {
+        this.userClient = userClient;
+    }
+    
+    public UserProfile getUserData(String userId) {
+        logger.debug("Getting user data for: {}", userId);
         
-        // Check Redis cache first
-        String cachedData = (String) redisTemplate.opsForValue().get("user:" + userId);
-        if (cachedData != null) {
+        // Request, in-process and Redis tiers first, then the external service
+        return userCache.get(userId, userClient::getUserData);
+    }
+    
+    /*
+     * Looks up several users with a single Redis round trip for everything not cached in process
+     * and bulk requests to the user service for the rest. Users that cannot be fetched are left
+     * out of the result.
+     */
+    public Map<String, UserProfile> getUserData(Collection<String> userIds) {
+        logger.debug("Getting user data for {} users", userIds.size());
+        
+        Map<String, UserProfile> result = userCache.getAll(userIds);
+        Set<String> misses = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            if (!result.containsKey(userId)) {
+                misses.add(userId);
+            }
+        }
+        if (!misses.isEmpty()) {
             try {
-                return jacksonMapper.readValue(cachedData, Map.class);
-            } catch (Exception e) {
-                logger.error("Failed to deserialize cached user data", e);
+                Map<String, UserProfile> fetched = userClient.getUsers(misses);
+                userCache.putAll(fetched);
+                result.putAll(fetched);
+            } catch (RuntimeException e) {
+                logger.error("Failed to get user data for {} users: {}", misses.size(), e.getMessage());
             }
         }
-        
-        // Get user data from external service
-        Map<String, Object> userData = userClient.getUserData(userId);
-        
-        // Update Redis cache
-        try {
-            redisTemplate.opsForValue().set("user:" + userId, jacksonMapper.writeValueAsString(userData), CACHE_TTL, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            logger.error("Failed to cache user data", e);
+        return result;
+    }
+    
+    /*
+     * Loads the given users into every cache tier, WARM_UP_CHUNK at a time so the lookup maps
+     * stay small. Returns how many users were found.
+     */
+    public int warmUp(List<String> userIds) {
+        int found = 0;
+        for (int from = 0; from < userIds.size(); from += WARM_UP_CHUNK) {
+            found += getUserData(userIds.subList(from, Math.min(from + WARM_UP_CHUNK, userIds.size()))).size();
         }
-        
-        return userData;
+        return found;
+    }
+    
+    /*
+     * Drops the user's cached profile everywhere, so the next lookup goes to the user service
+     */
+    public void evictUserData(String userId) {
+        userCache.invalidate(userId);
     }
     
     public boolean isPremiumUser(String userId) {
-        Map<String, Object> userData = getUserData(userId);
-        Object premium = userData.get("isPremiumUser");
-        if (premium instanceof Boolean) {
-            return (Boolean) premium;
-        }
-        return false;
+        return getUserData(userId).premiumUser();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.demopayment.client;
+
+import com.demopayment.exception.CallNotPermittedException;
+import com.demopayment.model.UserProfile;
+import com.demopayment.resilience.CircuitBreaker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserClientTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failFirst = new AtomicInteger();
+    private volatile long firstDelayMillis;
+    private final CircuitBreaker breaker = new CircuitBreaker("user-service", new CircuitBreaker.Settings(
+        10, 10, 50, Duration.ofSeconds(5), 100, Duration.ofSeconds(30), 1, Duration.ofSeconds(10)), new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/users/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGetUserDataAsync_ServerError_RetriedAfterBackoff() {
+        failFirst.set(1);
+
+        UserProfile profile = client(false).getUserDataAsync("2001").join();
+
+        assertEquals("2001", profile.id());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testGetUserDataAsync_NotFound_NotRetried() {
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> client(false).getUserDataAsync("missing").join());
+
+        assertTrue(e.getCause().getMessage().contains("404"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testGetUserDataAsync_SlowAttempt_HedgedAfterP95() {
+        UserClient client = client(true);
+        for (int i = 0; i < 64; i++) {
+            client.getUserData("2001");
+        }
+        assertTrue(client.hedgeDelayMillis() >= 1);
+        requests.set(0);
+        firstDelayMillis = 5_000;
+
+        long start = System.nanoTime();
+        UserProfile profile = client.getUserDataAsync("2001").join();
+
+        assertEquals("2001", profile.id());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        assertEquals(1, client.hedgeCount());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testGetUserData_BreakerOpen_RejectedWithoutRequest() {
+        failFirst.set(Integer.MAX_VALUE);
+        UserClient client = client(false);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RuntimeException.class, () -> client.getUserData("2001"));
+        }
+
+        assertThrows(CallNotPermittedException.class, () -> client.getUserData("2001"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(10, requests.get());
+    }
+
+    private UserClient client(boolean hedging) {
+        return new UserClient("http://localhost:" + server.getAddress().getPort(), true,
+            Duration.ofSeconds(1), Duration.ofSeconds(10), 3, Duration.ofMillis(10), hedging, breaker);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String userId = exchange.getRequestURI().getPath().substring("/users/".length());
+        int request = requests.incrementAndGet();
+        if (request == 1 && firstDelayMillis > 0) {
+            try {
+                Thread.sleep(firstDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failFirst.getAndDecrement() > 0) {
+            exchange.sendResponseHeaders(500, -1);
+        } else if (userId.equals("missing")) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            byte[] body = ("{\"id\":\"" + userId + "\",\"isActive\":true}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,32 @@
+package com.demopayment.external;
+
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.FraudStateStore.EntityType;
+import com.demopayment.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentGatewayServiceTest {
+
+    @Test
+    void testProcessBatch_InvalidPaymentsTakeNoPermits() {
+        BlacklistIndex blacklist = new BlacklistIndex("", 0.01);
+        blacklist.blacklist(EntityType.USER, "blocked");
+        // A burst of two permits and no refill to speak of within the test
+        PaymentGatewayService gatewayService = new PaymentGatewayService(blacklist, new SimpleMeterRegistry(),
+            CircuitBreaker.Settings.defaults(), 0.001, 2, Duration.ZERO);
+
+        boolean[] accepted = gatewayService.processBatch("stripe", List.of(
+            new PaymentGatewayService.GatewayPayment("blocked", 10.0, "USD"),
+            new PaymentGatewayService.GatewayPayment("user1", 0, "USD"),
+            new PaymentGatewayService.GatewayPayment("user2", 10.0, "USD"),
+            new PaymentGatewayService.GatewayPayment("user3", 10.0, "USD"),
+            new PaymentGatewayService.GatewayPayment("user4", 10.0, "USD")));
+
+        assertArrayEquals(new boolean[] { false, false, true, true, false }, accepted);
+    }
+}
@@ -0,0 +1,96 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.demopayment.fraud.FraudStateStore.EntityType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlacklistIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BlacklistIndex index = new BlacklistIndex("", 0.01);
+
+    @Test
+    void testLoad_EntriesMatchedPerType() throws Exception {
+        Path file = write("blacklist.txt", List.of(
+            "# blocked entities",
+            "user:1001",
+            "",
+            "ip:10.0.0.1",
+            "ip:2001:db8::1",
+            "device:abc-123",
+            "user:1001",
+            "merchant:42",
+            "user:"));
+
+        assertEquals(4, index.load(file));
+        assertTrue(index.isBlacklisted(EntityType.USER, "1001"));
+        assertTrue(index.isBlacklisted(EntityType.IP, "2001:db8::1"));
+        assertTrue(index.isBlacklisted("2001", "10.0.0.1", null));
+        assertTrue(index.isBlacklisted("2001", null, "abc-123"));
+        assertFalse(index.isBlacklisted(EntityType.DEVICE, "1001"));
+        assertFalse(index.isBlacklisted("2001", "10.0.0.2", "abc-124"));
+    }
+
+    @Test
+    void testLoad_LargeFile_NoFalseNegatives() throws Exception {
+        int entries = 200_000;
+        Path file = tempDir.resolve("large.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < entries; i++) {
+                writer.write("user:blocked-" + i);
+                writer.newLine();
+            }
+        }
+
+        assertEquals(entries, index.load(file));
+        for (int i = 0; i < entries; i++) {
+            assertTrue(index.isBlacklisted(EntityType.USER, "blocked-" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(index.isBlacklisted(EntityType.USER, "allowed-" + i));
+        }
+    }
+
+    @Test
+    void testReload_SwapsSnapshotAndKeepsRuntimeEntries() throws Exception {
+        index.load(write("first.txt", List.of("user:old")));
+        index.blacklist(EntityType.USER, "flagged");
+
+        index.load(write("second.txt", List.of("user:new")));
+
+        assertFalse(index.isBlacklisted(EntityType.USER, "old"));
+        assertTrue(index.isBlacklisted(EntityType.USER, "new"));
+        assertTrue(index.isBlacklisted(EntityType.USER, "flagged"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testReloadIfModified_ConfiguredFileLoaded() throws Exception {
+        Path file = write("configured.txt", List.of("device:d1"));
+        BlacklistIndex configured = new BlacklistIndex(file.toString(), 0.01);
+
+        configured.loadOnStartup();
+
+        assertTrue(configured.isBlacklisted(EntityType.DEVICE, "d1"));
+    }
+
+    @Test
+    void testNullKeys_NeverBlacklisted() {
+        index.blacklist(EntityType.IP, null);
+        assertFalse(index.isBlacklisted(null, null, null));
+        assertEquals(0, index.size());
+    }
+
+    private Path write(String name, List<String> lines) throws Exception {
+        return Files.write(tempDir.resolve(name), lines);
+    }
+}
@@ -0,0 +1,47 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountMinSketchTest {
+
+    @Test
+    void testAdd_ExactWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(4, 1 << 16);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, sketch.add(42));
+        }
+        sketch.add(43);
+
+        assertEquals(5, sketch.estimate(42));
+        assertEquals(1, sketch.estimate(43));
+        assertEquals(0, sketch.estimate(44));
+    }
+
+    @Test
+    void testEstimate_NeverUnderCountsAndOverCountsLittle() {
+        CountMinSketch sketch = CountMinSketch.withMemory(64 * 1024, 4);
+        int keys = 50_000;
+        int total = 0;
+        for (int key = 0; key < keys; key++) {
+            // Key k is added 1 + k % 10 times
+            for (int i = 0; i <= key % 10; i++) {
+                sketch.add(key);
+                total++;
+            }
+        }
+
+        long overCount = 0;
+        for (int key = 0; key < keys; key++) {
+            int estimate = sketch.estimate(key);
+            assertTrue(estimate >= 1 + key % 10, "key " + key);
+            overCount += estimate - (1 + key % 10);
+        }
+        // The classic bound is total / width per key; conservative update does much better on average
+        assertTrue((double) overCount / keys < (double) total / sketch.width(),
+            "average over-count " + (double) overCount / keys);
+        assertEquals(64 * 1024, sketch.footprintBytes());
+    }
+}
@@ -0,0 +1,150 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FraudRuleEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FraudRuleEngine engine = new FraudRuleEngine("", meterRegistry);
+
+    @Test
+    void testBundledRules_EvaluatedCheapestFirst() {
+        assertEquals(List.of("blacklisted", "velocity", "high-risk", "medium-risk-daily-amount", "low-risk-velocity"),
+            engine.ruleNames());
+    }
+
+    @Test
+    void testEvaluate_StopsAtFirstFiringRuleWithoutComputingLaterFeatures() {
+        RecordingFeatures features = new RecordingFeatures(Map.of(FraudFeature.BLACKLISTED, 1.0));
+
+        FraudRuleEngine.Evaluation evaluation = engine.evaluate(features);
+
+        assertTrue(evaluation.isBlocked());
+        assertFalse(evaluation.isBlacklisting());
+        assertEquals("blacklisted", evaluation.getRule());
+        assertEquals(EnumSet.of(FraudFeature.BLACKLISTED), features.requested);
+        assertTrue(Double.isNaN(evaluation.valueIfComputed("riskScore")));
+    }
+
+    @Test
+    void testEvaluate_DerivedFeatureComputedOnceAndRoundedDown() {
+        // (3 * 90 + 2 * 90 + 2 * 90 + 4 * 90 + 100) / 12 = 90.83
+        RecordingFeatures features = new RecordingFeatures(Map.of(
+            FraudFeature.USER_RISK, 90.0, FraudFeature.IP_RISK, 90.0, FraudFeature.DEVICE_RISK, 90.0,
+            FraudFeature.AMOUNT_RISK, 90.0, FraudFeature.CURRENCY_RISK, 100.0));
+
+        FraudRuleEngine.Evaluation evaluation = engine.evaluate(features);
+
+        assertEquals("high-risk", evaluation.getRule());
+        assertTrue(evaluation.isBlacklisting());
+        assertEquals(90.0, evaluation.valueIfComputed("riskScore"));
+        assertFalse(features.requested.contains(FraudFeature.AMOUNT_LAST_DAY));
+        assertEquals(1, features.calls.get(FraudFeature.USER_RISK));
+    }
+
+    @Test
+    void testEvaluate_CountsHitsPerRule() {
+        FraudRuleEngine.Evaluation evaluation = engine.evaluate(new RecordingFeatures(Map.of()));
+
+        assertFalse(evaluation.isBlocked());
+        assertNull(evaluation.getRule());
+        assertEquals(0.0, evaluation.valueIfComputed("riskScore"));
+        assertEquals(0.0, meterRegistry.get("payment.fraud.rule.hits").tag("rule", "velocity").functionCounter().count());
+
+        engine.evaluate(new RecordingFeatures(Map.of(FraudFeature.TRANSACTIONS_LAST_HOUR, 12.0)));
+        assertEquals(1.0, meterRegistry.get("payment.fraud.rule.hits").tag("rule", "velocity").functionCounter().count());
+        assertEquals(0.0, meterRegistry.get("payment.fraud.rule.hits").tag("rule", "blacklisted").functionCounter().count());
+        assertNotNull(meterRegistry.get("payment.fraud.rule.time").tag("rule", "low-risk-velocity").functionTimer());
+    }
+
+    @Test
+    void testEvaluate_ReusedEvaluation_StartsFromScratch() {
+        RecordingFeatures features = new RecordingFeatures(new EnumMap<>(Map.of(FraudFeature.BLACKLISTED, 1.0)));
+        assertEquals("blacklisted", engine.evaluate(features).getRule());
+
+        features.values.put(FraudFeature.BLACKLISTED, 0.0);
+        features.values.put(FraudFeature.TRANSACTIONS_LAST_HOUR, 12.0);
+        assertEquals("velocity", engine.evaluate(features).getRule());
+        assertEquals(2, features.calls.get(FraudFeature.BLACKLISTED));
+
+        features.values.put(FraudFeature.TRANSACTIONS_LAST_HOUR, 0.0);
+        FraudRuleEngine.Evaluation passed = engine.evaluate(features);
+        assertFalse(passed.isBlocked());
+        assertNull(passed.getRule());
+        assertEquals(0.0, passed.valueIfComputed("riskScore"));
+    }
+
+    @Test
+    void testCompile_ReordersOnlyAmongRulesWithTheSameAction() {
+        FraudRules rules = FraudRules.compile("""
+            rule velocity: transactionsLastHour >= 10 -> block
+            rule listed: blacklisted >= 1 -> block
+            rule risky-device: deviceRisk > 90 -> blacklist
+            rule huge: amount > 100000 -> block
+            rule big: amount > 10000 and amountLastDay > 20000 -> block
+            """, name -> new FraudRuleEngine.RuleStats());
+
+        // A cheap block rule must not shadow the blacklist rule declared before it
+        assertEquals(List.of("listed", "velocity", "risky-device", "huge", "big"), rules.ruleNames());
+    }
+
+    @Test
+    void testReload_ReplacesRulesAndKeepsThemWhenFileIsInvalid() throws Exception {
+        Path file = tempDir.resolve("rules.txt");
+        Files.writeString(file, """
+            # large payments from new devices
+            feature exposure = weighted(amountRisk:1, deviceRisk:1)
+            rule daily-limit: amountLastDay > 500 -> block
+            rule exposure: exposure >= 50 and amount > 100 -> blacklist; rule big: amount >= 1000 -> block
+            """);
+        FraudRuleEngine fileEngine = new FraudRuleEngine(file.toString(), meterRegistry);
+        fileEngine.loadOnStartup();
+
+        assertEquals(List.of("daily-limit", "exposure", "big"), fileEngine.ruleNames());
+        FraudRuleEngine.Evaluation evaluation = fileEngine.evaluate(new RecordingFeatures(Map.of(
+            FraudFeature.AMOUNT, 200.0, FraudFeature.AMOUNT_RISK, 2.0, FraudFeature.DEVICE_RISK, 99.0)));
+        assertEquals("exposure", evaluation.getRule());
+        assertTrue(evaluation.isBlacklisting());
+
+        Files.writeString(file, "rule broken: unknownFeature > 1 -> block\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        fileEngine.reloadIfModified();
+
+        assertEquals(List.of("daily-limit", "exposure", "big"), fileEngine.ruleNames());
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> fileEngine.load(file));
+        assertTrue(error.getMessage().contains("Line 1"));
+    }
+
+    // Returns the given values (0 for the rest) and records which features were asked for
+    private static final class RecordingFeatures extends FraudRuleEngine.Evaluation {
+        private final Map<FraudFeature, Double> values;
+        final Set<FraudFeature> requested = EnumSet.noneOf(FraudFeature.class);
+        final Map<FraudFeature, Integer> calls = new EnumMap<>(FraudFeature.class);
+
+        RecordingFeatures(Map<FraudFeature, Double> values) {
+            this.values = values;
+        }
+
+        @Override
+        protected double value(FraudFeature feature) {
+            requested.add(feature);
+            calls.merge(feature, 1, Integer::sum);
+            return values.getOrDefault(feature, 0.0);
+        }
+    }
+}
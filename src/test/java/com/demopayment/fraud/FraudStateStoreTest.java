@@ -0,0 +1,107 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FraudStateStoreTest {
+
+    private static final int THREADS = 16;
+    private static final int MINUTE = 0;
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void testRecordTransaction_ConcurrentUpdates_NoLostIncrements() throws Exception {
+        FraudStateStore store = newStore(10_000, 8);
+        EntityStateTable users = store.users();
+        int keys = 32;
+        int incrementsPerThread = 20_000;
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < incrementsPerThread; i++) {
+                users.recordTransaction("user" + (i % keys), 100, NOW);
+            }
+        });
+
+        long total = 0;
+        for (int k = 0; k < keys; k++) {
+            total += users.transactionCount("user" + k, MINUTE, NOW);
+        }
+        assertEquals(THREADS * incrementsPerThread, total);
+    }
+
+    @Test
+    void testUpdateRiskScore_ConcurrentDistinctKeys_StaysBounded() throws Exception {
+        FraudStateStore store = newStore(1_000, 16);
+        EntityStateTable ips = store.ips();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < 50_000; i++) {
+                ips.updateRiskScore("ip-" + thread + "-" + i, i % 100);
+            }
+        });
+
+        assertTrue(ips.size() <= ips.capacity());
+        assertTrue(ips.size() > 0);
+    }
+
+    @Test
+    void testNullKeys_Ignored() {
+        EntityStateTable users = newStore(100, 4).users();
+        users.updateRiskScore(null, 50);
+        users.recordTransaction(null, 100, NOW);
+        assertEquals(0, users.transactionCount(null, MINUTE, NOW));
+        assertEquals(0, users.riskScore(null));
+        assertEquals(0, users.size());
+    }
+
+    @Test
+    void testEviction_LeastRecentlyUsedDropped() {
+        EntityStateTable users = newStore(2, 1).users();
+        users.updateRiskScore("a", 10);
+        users.updateRiskScore("b", 20);
+        users.riskScore("a");
+        users.updateRiskScore("c", 30);
+
+        assertEquals(10, users.riskScore("a"));
+        assertEquals(0, users.riskScore("b"));
+        assertEquals(30, users.riskScore("c"));
+    }
+
+    private static FraudStateStore newStore(int maxEntries, int stripes) {
+        return new FraudStateStore(maxEntries, stripes, VelocityWindows.DEFAULT_SPEC);
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    worker.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserFeatureStoreTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserFeatureStore store = new UserFeatureStore(4, 0.5, 8, meterRegistry);
+
+    @Test
+    void testRead_UnknownUser() {
+        UserFeatures features = store.read("1001", "10.0.0.1", "device-1");
+
+        assertFalse(features.known());
+        assertEquals(1.0, features.distinctDevices());
+        assertEquals(0, features.deviceFrequency());
+        assertEquals(1.0, features.amountToAverage(250));
+        assertEquals(Double.POSITIVE_INFINITY, features.secondsSinceLastTransaction(NOW));
+    }
+
+    @Test
+    void testRecord_AverageAndTimeSinceLastTransaction() {
+        store.record("1001", "10.0.0.1", "device-1", 100, NOW);
+        store.record("1001", "10.0.0.1", "device-1", 300, NOW + 30_000);
+
+        UserFeatures features = store.read("1001", "10.0.0.1", "device-1");
+
+        assertTrue(features.known());
+        assertEquals(200.0, features.averageAmount(), 1e-9);
+        assertEquals(5.0, features.amountToAverage(1000), 1e-9);
+        assertEquals(90.0, features.secondsSinceLastTransaction(NOW + 120_000));
+        assertEquals(2, features.deviceFrequency());
+        assertEquals(2, features.ipFrequency());
+    }
+
+    @Test
+    void testRecord_NaNAmountKeepsAverage() {
+        store.record("1001", "10.0.0.1", "device-1", Double.NaN, NOW);
+        store.record("1001", "10.0.0.1", "device-1", 100, NOW + 1_000);
+        store.record("1001", "10.0.0.1", "device-1", Double.NaN, NOW + 2_000);
+
+        UserFeatures features = store.read("1001", "10.0.0.1", "device-1");
+
+        assertEquals(100.0, features.averageAmount(), 1e-9);
+        assertEquals(3, features.deviceFrequency());
+    }
+
+    @Test
+    void testRead_DistinctDevicesIncludeTheCurrentOne() {
+        for (int i = 0; i < 3; i++) {
+            store.record("1001", "10.0.0.1", "device-" + i, 100, NOW + i);
+        }
+
+        UserFeatures known = store.read("1001", "10.0.0.1", "device-0");
+        UserFeatures newDevice = store.read("1001", "10.0.0.1", "device-new");
+
+        assertEquals(3, Math.round(known.distinctDevices()));
+        assertEquals(1, known.deviceFrequency());
+        // An unseen device can only raise the estimate; it may share a register with a known one
+        assertTrue(newDevice.distinctDevices() >= known.distinctDevices());
+        assertEquals(0, newDevice.deviceFrequency());
+        assertEquals(1, Math.round(known.distinctIps()));
+    }
+
+    @Test
+    void testEstimateDistinct_WithinHyperLogLogError() {
+        for (int distinct : new int[] {1, 2, 5, 20, 200, 5_000}) {
+            long registers = 0;
+            for (int i = 0; i < distinct; i++) {
+                long hash = BlacklistSnapshot.hash(FraudStateStore.EntityType.DEVICE, "device-" + distinct + "-" + i);
+                registers = UserFeatureStore.addToRegisters(registers, hash);
+                // Adding a value twice changes nothing
+                assertEquals(registers, UserFeatureStore.addToRegisters(registers, hash));
+            }
+            double estimate = UserFeatureStore.estimateDistinct(registers);
+            // Linear counting is close for a handful of values; 16 registers give about 26% beyond that
+            double tolerance = distinct <= 5 ? 1 : distinct * 0.6;
+            assertEquals(distinct, estimate, tolerance, "distinct " + distinct);
+        }
+        assertEquals(0.0, UserFeatureStore.estimateDistinct(0));
+    }
+
+    @Test
+    void testRecord_MoreUsersThanCapacity_EvictsLeastRecentAndStaysBounded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserFeatureStore small = new UserFeatureStore(1, 0.1, 8, registry);
+        int users = small.capacity() * 2;
+        long footprint = small.footprintBytes();
+        for (int i = 0; i < users; i++) {
+            small.record("user-" + i, "10.0.0.1", "device-" + i, ThreadLocalRandom.current().nextInt(1, 500), NOW + i);
+        }
+
+        assertEquals(footprint, small.footprintBytes());
+        assertTrue(small.footprintBytes() <= 1 << 20);
+        // A few buckets are hashed fewer than 8 users and keep empty slots
+        assertTrue(small.size() <= small.capacity() && small.size() > small.capacity() * 0.95);
+        assertEquals(users - small.size(), registry.get("payment.fraud.features.evictions").functionCounter().count());
+        assertTrue(small.read("user-" + (users - 1), null, null).known());
+    }
+}
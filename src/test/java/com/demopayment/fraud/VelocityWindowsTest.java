@@ -0,0 +1,59 @@
+package com.demopayment.fraud;
+
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VelocityWindowsTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    private final FraudStateStore store = new FraudStateStore(1_000, 4, "1m:6,1h:12,24h:24");
+    private final EntityStateTable users = store.users();
+    private final int minuteWindow = store.windows().indexOf(Duration.ofMinutes(1));
+    private final int hourWindow = store.windows().indexOf(Duration.ofHours(1));
+    private final int dayWindow = store.windows().indexOf(Duration.ofDays(1));
+
+    @Test
+    void testRecordTransaction_CountsAndAmountsPerWindow() {
+        users.recordTransaction("u1", 1_000, NOW);
+        users.recordTransaction("u1", 2_500, NOW + 1_000);
+
+        assertEquals(2, users.transactionCount("u1", minuteWindow, NOW + 1_000));
+        assertEquals(3_500, users.amountSum("u1", hourWindow, NOW + 1_000));
+        assertEquals(0, users.transactionCount("u2", hourWindow, NOW));
+    }
+
+    @Test
+    void testWindowSlides_OldBucketsExpire() {
+        users.recordTransaction("u1", 1_000, NOW);
+        users.recordTransaction("u1", 1_000, NOW + 30 * MINUTE);
+
+        assertEquals(0, users.transactionCount("u1", minuteWindow, NOW + 31 * MINUTE));
+        assertEquals(2, users.transactionCount("u1", hourWindow, NOW + 31 * MINUTE));
+        assertEquals(1, users.transactionCount("u1", hourWindow, NOW + 65 * MINUTE));
+        assertEquals(2_000, users.amountSum("u1", dayWindow, NOW + 65 * MINUTE));
+    }
+
+    @Test
+    void testIdleKey_ExpiresLazily() {
+        users.recordTransaction("u1", 1_000, NOW);
+
+        long twoDaysLater = NOW + 48 * 60 * MINUTE;
+        assertEquals(0, users.transactionCount("u1", dayWindow, twoDaysLater));
+        assertEquals(0, users.amountSum("u1", dayWindow, twoDaysLater));
+
+        users.recordTransaction("u1", 700, twoDaysLater);
+        assertEquals(1, users.transactionCount("u1", dayWindow, twoDaysLater));
+        assertEquals(700, users.amountSum("u1", dayWindow, twoDaysLater));
+    }
+
+    @Test
+    void testParse_InvalidSpec_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> VelocityWindows.parse("1h"));
+        assertThrows(IllegalArgumentException.class, () -> VelocityWindows.parse("1h:0"));
+        assertThrows(IllegalArgumentException.class, () -> store.windows().indexOf(Duration.ofHours(2)));
+    }
+}
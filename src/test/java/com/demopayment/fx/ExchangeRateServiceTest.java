@@ -0,0 +1,81 @@
+package com.demopayment.fx;
+
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExchangeRateServiceTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLoadOnStartup_BundledRatesCoverMostCurrencies() {
+        ExchangeRateService service = new ExchangeRateService("", "USD");
+
+        service.loadOnStartup();
+
+        assertTrue(service.current().size() >= 150);
+        assertTrue(service.supports(JPY));
+        assertTrue(service.convert(Money.ofMajor(100, USD), Currency.getInstance("KWD")).isPositive());
+    }
+
+    @Test
+    void testLoad_InvalidLinesSkipped() throws Exception {
+        ExchangeRateService service = new ExchangeRateService("", "USD");
+
+        int loaded = service.load(write("rates.txt", List.of(
+            "# rates per USD",
+            "EUR=0.8",
+            "JPY = 150",
+            "",
+            "XYZ=2",
+            "GBP=-1",
+            "CHF=abc",
+            "CAD")));
+
+        assertEquals(3, loaded);
+        assertEquals(Money.of("0.80", "EUR"), service.convert(Money.ofMajor(1, USD), EUR));
+        assertEquals(Money.of("1.25", "USD"), service.convert(Money.ofMajor(1, EUR), USD));
+        assertEquals(Money.of("150", "JPY"), service.convert(Money.ofMajor(1, USD), JPY));
+        assertFalse(service.supports(Currency.getInstance("GBP")));
+    }
+
+    @Test
+    void testReloadIfModified_SwapsSnapshotAndKeepsItOnFailure() throws Exception {
+        Path file = write("configured.txt", List.of("EUR=0.8"));
+        ExchangeRateService service = new ExchangeRateService(file.toString(), "USD");
+        service.loadOnStartup();
+        ExchangeRates first = service.current();
+
+        Files.write(file, List.of("EUR=0.9"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        service.reloadIfModified();
+
+        assertNotSame(first, service.current());
+        assertEquals(Money.of("0.90", "EUR"), service.convert(Money.ofMajor(1, USD), EUR));
+        // Converting with a snapshot taken before the reload keeps using its rates
+        assertEquals(Money.of("0.80", "EUR"), first.convert(Money.ofMajor(1, USD), EUR));
+
+        Files.delete(file);
+        service.reloadIfModified();
+
+        assertEquals(Money.of("0.90", "EUR"), service.convert(Money.ofMajor(1, USD), EUR));
+    }
+
+    private Path write(String name, List<String> lines) throws Exception {
+        return Files.write(tempDir.resolve(name), lines);
+    }
+}
@@ -0,0 +1,65 @@
+package com.demopayment.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    @Test
+    void testOf_ExactDecimals() {
+        assertEquals(new Money(1010, USD), Money.of("10.10", "USD"));
+        assertEquals(new Money(30, USD), Money.of("0.1", "USD").plus(Money.of("0.2", "USD")));
+        assertEquals(new Money(1500, JPY), Money.of("1500", "JPY"));
+
+        assertThrows(IllegalArgumentException.class, () -> Money.of("10.001", "USD"));
+        assertThrows(IllegalArgumentException.class, () -> Money.of("1.5", "JPY"));
+        assertThrows(IllegalArgumentException.class, () -> Money.of("10", "XYZ"));
+    }
+
+    @Test
+    void testArithmetic_SameCurrencyOnlyAndOverflowChecked() {
+        Money ten = Money.ofMajor(10, USD);
+
+        assertEquals(new Money(2500, USD), ten.times(3).minus(Money.of("5", "USD")));
+        assertTrue(ten.isGreaterThan(Money.of("9.99", "USD")));
+        assertThrows(IllegalArgumentException.class, () -> ten.plus(Money.ofMajor(10, EUR)));
+        assertThrows(ArithmeticException.class, () -> new Money(Long.MAX_VALUE, USD).plus(new Money(1, USD)));
+    }
+
+    @Test
+    void testToPlainString_FixedDecimals() throws Exception {
+        assertEquals("-12.05", new Money(-1205, USD).toPlainString());
+        assertEquals("0.07", new Money(7, USD).toPlainString());
+        assertEquals("1500", new Money(1500, JPY).toPlainString());
+        assertEquals("-92233720368547758.08", new Money(Long.MIN_VALUE, USD).toPlainString());
+
+        assertEquals("{\"total\":1200.50}",
+            new ObjectMapper().writeValueAsString(Map.of("total", Money.of("1200.5", "USD"))));
+    }
+
+    @Test
+    void testExchangeRates_ExactCrossRatesRoundedHalfEven() {
+        ExchangeRates rates = ExchangeRates.of("USD",
+            Map.of("EUR", new BigDecimal("0.85"), "JPY", new BigDecimal("150.5")));
+
+        assertEquals(new Money(85, EUR), rates.convert(Money.ofMajor(1, USD), EUR));
+        // 1.00 USD = 150.5 JPY: half-even rounds to 150; 3.00 USD = 451.5 JPY rounds to 452
+        assertEquals(new Money(150, JPY), rates.convert(Money.ofMajor(1, USD), JPY));
+        assertEquals(new Money(452, JPY), rates.convert(Money.ofMajor(3, USD), JPY));
+        // EUR -> USD is 20/17, not a rounded 1.1764...
+        assertEquals(new Money(1_000_000_000_000L, USD), rates.convert(new Money(850_000_000_000L, EUR), USD));
+        assertEquals(new Money(-118, USD), rates.convert(new Money(-100, EUR), USD));
+        // Beyond 64-bit products
+        assertEquals(3_400_000_000_000_000_000L, rates.convertMinor(4_000_000_000_000_000_000L, USD, EUR));
+        assertThrows(IllegalArgumentException.class, () -> rates.convert(Money.ofMajor(1, USD), Currency.getInstance("GBP")));
+    }
+}
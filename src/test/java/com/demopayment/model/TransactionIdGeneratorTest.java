@@ -0,0 +1,122 @@
+package com.demopayment.model;
+
+import org.junit.jupiter.api.Test;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionIdGeneratorTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final TransactionIdGenerator generator = new TransactionIdGenerator(42, clock);
+
+    @Test
+    void testNextId_ConcurrentThreads_NoDuplicates() throws Exception {
+        TransactionIdGenerator shared = new TransactionIdGenerator(7);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<long[]>> batches = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            batches.add(executor.submit(() -> {
+                long[] ids = new long[50_000];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = shared.nextId();
+                }
+                return ids;
+            }));
+        }
+
+        Set<Long> seen = new HashSet<>();
+        for (Future<long[]> batch : batches) {
+            for (long id : batch.get()) {
+                assertTrue(seen.add(id), "Duplicate id " + id);
+            }
+        }
+        executor.shutdown();
+        assertEquals(400_000, seen.size());
+    }
+
+    @Test
+    void testNextId_SequenceExhausted_BorrowsNextMillisecond() {
+        long first = generator.nextId();
+        long last = first;
+        for (int i = 1; i < 5_000; i++) {
+            long next = generator.nextId();
+            assertTrue(next > last);
+            last = next;
+        }
+
+        assertEquals(clock.instant(), TransactionIdGenerator.timestamp(first));
+        assertEquals(clock.instant().plusMillis(1), TransactionIdGenerator.timestamp(last));
+        assertEquals(42, TransactionIdGenerator.nodeId(last));
+    }
+
+    @Test
+    void testNextId_ClockStepsBack_StillIncreasing() {
+        clock.advance(Duration.ofSeconds(5));
+        long before = generator.nextId();
+
+        clock.advance(Duration.ofSeconds(-2));
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+        assertEquals(TransactionIdGenerator.timestamp(before), TransactionIdGenerator.timestamp(after));
+    }
+
+    @Test
+    void testFormat_FixedWidthAndSortsLikeIds() {
+        String previous = generator.nextIdString();
+        assertEquals(16, previous.length());
+        assertTrue(previous.startsWith("TXN"));
+        for (int i = 0; i < 1_000; i++) {
+            clock.advance(Duration.ofMillis(i % 3));
+            String next = generator.nextIdString();
+            assertEquals(16, next.length());
+            assertTrue(next.compareTo(previous) > 0, next + " should sort after " + previous);
+            previous = next;
+        }
+
+        assertEquals("TXN0000000000000", TransactionIdGenerator.format(0));
+        assertEquals("TXN7ZZZZZZZZZZZZ", TransactionIdGenerator.format(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testConstructor_NodeIdOutOfRange_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TransactionIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class,
+            () -> new TransactionIdGenerator(TransactionIdGenerator.MAX_NODE_ID + 1));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-06-01T12:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
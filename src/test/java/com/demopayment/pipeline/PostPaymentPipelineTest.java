@@ -0,0 +1,124 @@
+package com.demopayment.pipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostPaymentPipelineTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PostPaymentPipeline pipeline = new PostPaymentPipeline(registry, 1, 2, 3, 10, false);
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testSubmit_RunsOffCallerThread() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread caller = Thread.currentThread();
+        AtomicInteger ranOnCaller = new AtomicInteger();
+
+        pipeline.submit(PipelineStage.NOTIFICATIONS, "email", () -> {
+            if (Thread.currentThread() == caller) {
+                ranOnCaller.incrementAndGet();
+            }
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, ranOnCaller.get());
+    }
+
+    @Test
+    void testSubmit_FailingTask_RetriedUntilSuccess() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch succeeded = new CountDownLatch(1);
+
+        pipeline.submit(PipelineStage.REWARDS, "cashback", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("rewards service unavailable");
+            }
+            succeeded.countDown();
+        });
+
+        assertTrue(succeeded.await(5, TimeUnit.SECONDS));
+        assertEquals(2.0, registry.get("payment.pipeline.task.retries").tag("stage", "rewards").counter().count());
+        assertEquals(0.0, registry.get("payment.pipeline.task.dropped").tag("stage", "rewards").counter().count());
+    }
+
+    @Test
+    void testSubmit_AlwaysFailing_DroppedAfterMaxAttempts() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        pipeline.submit(PipelineStage.RECEIPTS, "pdf", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("renderer down");
+        });
+
+        waitFor(() -> registry.get("payment.pipeline.task.dropped").tag("stage", "receipts").counter().count() == 1.0);
+        assertEquals(3, attempts.get());
+        assertEquals(3.0, registry.get("payment.pipeline.task.failures").tag("stage", "receipts").counter().count());
+    }
+
+    @Test
+    void testSubmit_QueueFull_CallerRunsTask() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ranOnCaller = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+
+        // One worker busy plus a queue of two
+        pipeline.submit(PipelineStage.CACHE, "blocked", () -> awaitQuietly(release));
+        waitFor(() -> pipeline.queueDepth(PipelineStage.CACHE) == 0);
+        pipeline.submit(PipelineStage.CACHE, "queued", () -> { });
+        pipeline.submit(PipelineStage.CACHE, "queued", () -> { });
+        pipeline.submit(PipelineStage.CACHE, "overflow", () -> {
+            if (Thread.currentThread() == caller) {
+                ranOnCaller.incrementAndGet();
+            }
+        });
+        release.countDown();
+
+        assertEquals(1, ranOnCaller.get());
+        assertEquals(1.0, registry.get("payment.pipeline.caller.runs").tag("stage", "cache").counter().count());
+    }
+
+    @Test
+    void testQueueDepth_Published() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit(PipelineStage.NOTIFICATIONS, "blocked", () -> awaitQuietly(release));
+        waitFor(() -> pipeline.queueDepth(PipelineStage.NOTIFICATIONS) == 0);
+        pipeline.submit(PipelineStage.NOTIFICATIONS, "queued", () -> { });
+
+        assertEquals(1.0, registry.get("payment.pipeline.queue.depth").tag("stage", "notifications").gauge().value());
+        release.countDown();
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.demopayment.repository;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+
+// Boot configuration for the database slice tests in this package: the entities and Spring Data
+// repositories only, without Main's beans (Main starts the mock user API server)
+
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan("com.demopayment.model")
+class JpaTestApplication {
+}
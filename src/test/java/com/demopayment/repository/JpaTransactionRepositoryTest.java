@@ -0,0 +1,33 @@
+package com.demopayment.repository;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+public class JpaTransactionRepositoryTest {
+
+    @Autowired
+    private JpaTransactionRepository jpaRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void testSaveAndLoad_RoundTripsMoney() {
+        Transaction euros = new Transaction("user1", Money.of("12.34", "EUR"));
+        Transaction yen = new Transaction("user2", Money.of("1500", "JPY"));
+        jpaRepository.saveAll(List.of(euros, yen));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(Money.of("12.34", "EUR"), jpaRepository.findById(euros.getId()).orElseThrow().getAmount());
+        assertEquals(Money.of("1500", "JPY"), jpaRepository.findById(yen.getId()).orElseThrow().getAmount());
+    }
+}
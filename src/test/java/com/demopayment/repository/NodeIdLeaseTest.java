@@ -0,0 +1,126 @@
+package com.demopayment.repository;
+
+import com.demopayment.model.TransactionIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class NodeIdLeaseTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @AfterEach
+    void dropTable() {
+        jdbcTemplate.execute("drop table if exists node_id_lease");
+    }
+
+    @Test
+    void testAcquire_NodesGetDistinctIds() {
+        NodeIdLease first = lease();
+        NodeIdLease second = lease();
+
+        assertEquals(0, first.acquire(id -> { }));
+        assertEquals(1, second.acquire(id -> { }));
+    }
+
+    @Test
+    void testRelease_FreesIdForNextNode() {
+        NodeIdLease first = lease();
+        first.acquire(id -> { });
+
+        first.release();
+
+        assertEquals(0, lease().acquire(id -> { }));
+    }
+
+    @Test
+    void testAcquire_AllIdsLive_FailsFast() {
+        lease().acquire(id -> { });
+        for (int id = 1; id <= TransactionIdGenerator.MAX_NODE_ID; id++) {
+            jdbcTemplate.update("insert into node_id_lease (node_id, owner, expires_at)"
+                + " values (?, 'other', dateadd('MINUTE', 1, current_timestamp))", id);
+        }
+
+        NodeIdLease late = lease();
+
+        assertThrows(IllegalStateException.class, () -> late.acquire(id -> { }));
+    }
+
+    @Test
+    void testAcquire_AllIdsUsed_TakesOverExpiredLease() {
+        lease().acquire(id -> { });
+        for (int id = 1; id <= TransactionIdGenerator.MAX_NODE_ID; id++) {
+            jdbcTemplate.update("insert into node_id_lease (node_id, owner, expires_at) values (?, 'other', ?)",
+                id, id == 7 ? "2024-01-01 00:00:00+00" : "2999-01-01 00:00:00+00");
+        }
+
+        assertEquals(7, lease().acquire(id -> { }));
+    }
+
+    @Test
+    void testRenew_LostLease_ClaimsNewIdAndReportsIt() {
+        NodeIdLease lease = lease();
+        List<Integer> reassigned = new ArrayList<>();
+        lease.acquire(reassigned::add);
+        lease.renew();
+        assertEquals(List.of(), reassigned);
+
+        // Expired while this node was paused and taken over by another
+        jdbcTemplate.update("update node_id_lease set owner = 'other' where node_id = 0");
+        lease.renew();
+
+        assertEquals(List.of(1), reassigned);
+        assertEquals(1, lease.nodeId());
+    }
+
+    @Test
+    void testIsHeld_RenewalsFailing_RefusedBeforeLeaseExpires() {
+        NodeIdLease lease = lease();
+        TransactionIdGenerator generator = new TransactionIdGenerator(lease.acquire(id -> { }), lease::isHeld);
+        generator.nextId();
+
+        // The database is unreachable: renewals fail and the node keeps its id, but only for 50 of the 60 seconds
+        jdbcTemplate.execute("drop table node_id_lease");
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        lease.renew();
+        assertTrue(lease.isHeld(0));
+        nanos.addAndGet(Duration.ofSeconds(20).toNanos());
+        lease.renew();
+
+        assertFalse(lease.isHeld(0));
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void testIsHeld_RenewedAfterFailures_ConfirmedAgain() {
+        NodeIdLease lease = lease();
+        lease.acquire(id -> { });
+        nanos.addAndGet(Duration.ofSeconds(55).toNanos());
+        assertFalse(lease.isHeld(0));
+
+        // Nobody took the id over in the meantime
+        lease.renew();
+
+        assertTrue(lease.isHeld(0));
+        assertFalse(lease.isHeld(1));
+    }
+
+    private NodeIdLease lease() {
+        return new NodeIdLease(jdbcTemplate, Duration.ofSeconds(60), Duration.ofSeconds(10), nanos::get);
+    }
+}
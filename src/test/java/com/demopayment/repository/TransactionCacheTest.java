@@ -0,0 +1,108 @@
+package com.demopayment.repository;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void testPut_BeyondCapacity_EvictsAndStaysBounded() {
+        TransactionCache cache = new TransactionCache(registry, 100, 4, Duration.ofMinutes(30));
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(new Transaction("user" + i, Money.of("10.00", "USD")));
+        }
+
+        assertTrue(cache.size() <= cache.capacity());
+        assertEquals(1_000 - cache.size(), cache.evictionCount());
+        assertEquals((double) cache.evictionCount(),
+            registry.get("payment.transaction.cache.evictions").tag("cause", "size").functionCounter().count());
+    }
+
+    @Test
+    void testScan_DoesNotEvictHotEntries() {
+        TransactionCache cache = new TransactionCache(registry, 100, 1, Duration.ofMinutes(30));
+        Transaction[] hot = new Transaction[50];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = new Transaction("hot" + i, Money.of("10.00", "USD"));
+            cache.put(hot[i]);
+            cache.get(hot[i].getId());
+        }
+
+        for (int i = 0; i < 500; i++) {
+            cache.put(new Transaction("scan" + i, Money.of("10.00", "USD")));
+        }
+
+        for (Transaction transaction : hot) {
+            assertSame(transaction, cache.get(transaction.getId()));
+        }
+    }
+
+    @Test
+    void testGet_AfterTtl_Expires() {
+        MutableClock clock = new MutableClock();
+        TransactionCache cache = new TransactionCache(registry, 100, 4, Duration.ofMinutes(5), clock);
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+        cache.put(transaction);
+
+        clock.advance(Duration.ofMinutes(4));
+        assertSame(transaction, cache.get(transaction.getId()));
+        clock.advance(Duration.ofMinutes(2));
+        assertNull(cache.get(transaction.getId()));
+        assertEquals(1, cache.expirationCount());
+    }
+
+    @Test
+    void testGet_WithLoader_ReadsThroughOnceAndCountsHitsAndMisses() {
+        TransactionCache cache = new TransactionCache(registry, 100, 4, Duration.ofMinutes(30));
+        Transaction stored = new Transaction("user1", Money.of("10.00", "USD"));
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertSame(stored, cache.get(stored.getId(), id -> {
+                loads.incrementAndGet();
+                return stored;
+            }));
+        }
+        assertNull(cache.get("missing", id -> null));
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
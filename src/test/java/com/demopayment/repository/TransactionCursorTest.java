@@ -0,0 +1,25 @@
+package com.demopayment.repository;
+
+import org.junit.jupiter.api.Test;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionCursorTest {
+
+    @Test
+    void testEncode_RoundTripsThroughDecode() {
+        TransactionCursor cursor = new TransactionCursor(Instant.parse("2024-03-01T12:30:45.123456Z"), "TXN:42");
+
+        String token = cursor.encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertEquals(cursor, TransactionCursor.decode(token));
+    }
+
+    @Test
+    void testDecode_Garbage_ThrowsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> TransactionCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> TransactionCursor.decode("Zm9v"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.demopayment.repository;
+
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TransactionIndexLoaderTest {
+
+    private final TransactionRepository repository = mock(TransactionRepository.class);
+    private final TransactionIndex index = new TransactionIndex(new ExchangeRateService("", "USD"));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLoad_IndexesStoredTransactions() {
+        Transaction first = new Transaction("user1", Money.of("1500.00", "USD"));
+        Transaction second = new Transaction("user2", Money.of("50.00", "USD"));
+        when(repository.streamTransactions(any(), any())).thenAnswer(invocation -> {
+            Consumer<Transaction> sink = invocation.getArgument(1);
+            sink.accept(first);
+            sink.accept(second);
+            return 2L;
+        });
+
+        new TransactionIndexLoader(repository, index, true).load();
+
+        assertEquals(2, index.size());
+        assertEquals(List.of(first.getId()), index.findIds(1000.0, Set.of()));
+    }
+
+    @Test
+    void testLoad_DeletesDuringLoad_StayDeletedThroughCompaction() {
+        List<Transaction> saved = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Transaction transaction = new Transaction("user1", Money.of("1500.00", "USD"));
+            index.put(transaction);
+            saved.add(transaction);
+        }
+        int grownCapacity = index.capacity();
+        when(repository.streamTransactions(any(), any())).thenAnswer(invocation -> {
+            // Most rows are deleted while the load runs, enough to compact the index otherwise
+            for (int i = 1; i < saved.size(); i++) {
+                index.remove(saved.get(i).getId());
+            }
+            Consumer<Transaction> sink = invocation.getArgument(1);
+            sink.accept(saved.get(1));
+            return 1L;
+        });
+
+        new TransactionIndexLoader(repository, index, true).load();
+
+        assertEquals(List.of(saved.get(0).getId()), index.findIds(Double.NEGATIVE_INFINITY, Set.of()));
+        // Compacted once the load was over
+        assertTrue(index.capacity() < grownCapacity, "capacity " + index.capacity());
+    }
+
+    @Test
+    void testLoad_DatabaseFailure_LeavesIndexUsable() {
+        when(repository.streamTransactions(any(), any())).thenThrow(new RuntimeException("database down"));
+
+        new TransactionIndexLoader(repository, index, true).load();
+
+        assertEquals(0, index.size());
+    }
+}
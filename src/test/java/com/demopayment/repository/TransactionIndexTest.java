@@ -0,0 +1,157 @@
+package com.demopayment.repository;
+
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import com.demopayment.repository.TransactionIndex.Flag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionIndexTest {
+
+    private final ExchangeRateService exchangeRates = new ExchangeRateService("", "USD");
+    private final TransactionIndex index = new TransactionIndex(exchangeRates);
+
+    @Test
+    void testFindIds_CombinesAmountAndFlags() {
+        Transaction match = transaction(1500.0, true, true);
+        Transaction lowAmount = transaction(500.0, true, true);
+        Transaction notPremium = transaction(2500.0, false, true);
+        Transaction notProcessed = transaction(3500.0, true, false);
+
+        assertEquals(List.of(match.getId()), index.findIds(1000.0, EnumSet.of(Flag.PREMIUM, Flag.PROCESSED)));
+        assertEquals(List.of(match.getId(), notPremium.getId(), notProcessed.getId()), index.findIds(1000.0, Set.of()));
+        assertEquals(List.of(match.getId(), lowAmount.getId(), notProcessed.getId()),
+            index.findIds(Double.NEGATIVE_INFINITY, EnumSet.of(Flag.PREMIUM)));
+    }
+
+    @Test
+    void testFindIds_AmountsComparedInSettlementCurrency() {
+        exchangeRates.loadOnStartup();
+        Transaction euros = new Transaction("user1", Money.of("1000.00", "EUR"));
+        Transaction yen = new Transaction("user1", Money.of("100000", "JPY"));
+        index.put(euros);
+        index.put(yen);
+
+        // 1000 EUR is about 1087 USD at the bundled rate, 100000 JPY about 635 USD
+        assertEquals(List.of(euros.getId()), index.findIds(1000.0, Set.of()));
+    }
+
+    @Test
+    void testFindIds_CurrencyWithoutRate_NeverAboveAmount() {
+        // Nothing loaded: only the base currency can be valued
+        Transaction euros = new Transaction("user1", Money.of("5000.00", "EUR"));
+        index.put(euros);
+
+        assertTrue(index.findIds(0.0, Set.of()).isEmpty());
+        assertEquals(List.of(euros.getId()), index.findIds(Double.NEGATIVE_INFINITY, Set.of()));
+    }
+
+    @Test
+    void testPut_Again_UpdatesFlagsAndAmount() {
+        Transaction transaction = transaction(1500.0, false, true);
+        assertTrue(index.findIds(Double.NEGATIVE_INFINITY, EnumSet.of(Flag.REFUNDED)).isEmpty());
+
+        transaction.isRefunded = true;
+        transaction.setAmount(Money.of("200.00", "USD"));
+        index.put(transaction);
+
+        assertEquals(List.of(transaction.getId()), index.findIds(Double.NEGATIVE_INFINITY, EnumSet.of(Flag.REFUNDED)));
+        assertTrue(index.findIds(1000.0, Set.of()).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testRemove_ExcludesUntilSavedAgain() {
+        Transaction transaction = transaction(1500.0, true, true);
+
+        index.remove(transaction.getId());
+        assertTrue(index.findIds(1000.0, Set.of()).isEmpty());
+
+        index.put(transaction);
+        assertEquals(List.of(transaction.getId()), index.findIds(1000.0, Set.of()));
+    }
+
+    @Test
+    void testFindIds_AfterDeltaMerges_MatchesFullScan() {
+        List<Transaction> all = new ArrayList<>();
+        for (int i = 0; i < 150_000; i++) {
+            all.add(transaction((i * 7919L) % 3000, i % 4 == 0, i % 3 != 0));
+        }
+        // Move some amounts across the threshold and delete others after they were merged
+        for (int i = 0; i < 150_000; i += 97) {
+            all.get(i).setAmount(all.get(i).getAmount().plus(Money.of("1000.00", "USD")));
+            index.put(all.get(i));
+        }
+        for (int i = 1; i < 150_000; i += 101) {
+            index.remove(all.get(i).getId());
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            Transaction transaction = all.get(i);
+            if (i % 101 != 1 && transaction.getAmount().doubleValue() > 1000.0 && transaction.isPremiumUser() && transaction.isProcessed()) {
+                expected.add(transaction.getId());
+            }
+        }
+        assertEquals(expected, index.findIds(1000.0, EnumSet.of(Flag.PREMIUM, Flag.PROCESSED)));
+    }
+
+    @Test
+    void testRemove_MostTransactions_CompactsOrdinals() {
+        List<Transaction> all = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            all.add(transaction(i % 2000, i % 2 == 0, true));
+        }
+        int grownCapacity = index.capacity();
+        for (int i = 0; i < all.size(); i++) {
+            if (i % 10 != 0) {
+                index.remove(all.get(i).getId());
+            }
+        }
+
+        assertTrue(index.capacity() < grownCapacity / 4, "capacity " + index.capacity());
+        assertEquals(2_000, index.size());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += 10) {
+            if (all.get(i).getAmount().doubleValue() > 1000.0) {
+                expected.add(all.get(i).getId());
+            }
+        }
+        assertEquals(expected, index.findIds(1000.0, EnumSet.of(Flag.PREMIUM)));
+
+        // Removed ids are forgotten, and come back with a new ordinal when saved again
+        index.put(all.get(1));
+        assertEquals(2_001, index.size());
+        assertTrue(index.findIds(Double.NEGATIVE_INFINITY, Set.of()).contains(all.get(1).getId()));
+    }
+
+    @Test
+    void testLoad_KeepsNewerStateOfKnownIds() {
+        Transaction saved = transaction(1500.0, false, true);
+        Transaction deleted = transaction(1500.0, false, true);
+        index.remove(deleted.getId());
+        Transaction stored = new Transaction("user2", Money.of("2000.00", "USD"));
+
+        Transaction staleCopy = new Transaction("user1", Money.of("10.00", "USD"));
+        staleCopy.setId(saved.getId());
+        index.load(staleCopy);
+        index.load(deleted);
+        index.load(stored);
+
+        assertEquals(List.of(saved.getId(), stored.getId()), index.findIds(1000.0, Set.of()));
+    }
+
+    private Transaction transaction(double amount, boolean premium, boolean processed) {
+        Transaction transaction = new Transaction("user1", Money.ofMinor(Math.round(amount * 100), "USD"));
+        transaction.isPremiumUser = premium;
+        transaction.setProcessed(processed);
+        index.put(transaction);
+        return transaction;
+    }
+}
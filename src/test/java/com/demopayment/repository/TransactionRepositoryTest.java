@@ -0,0 +1,163 @@
+package com.demopayment.repository;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import com.demopayment.model.TransactionStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(TransactionRepository.class)
+public class TransactionRepositoryTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-01T10:00:00Z");
+
+    @Autowired
+    private TransactionRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private TransactionCache cache;
+
+    @MockBean
+    private TransactionIndex index;
+
+    @MockBean
+    private TransactionWriteBuffer writeBuffer;
+
+    @Test
+    void testSave_WriteFails_TakesRowOutOfCacheAndIndexAndThrows() {
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+        doThrow(new IllegalStateException("Write buffer is shut down")).when(writeBuffer).write(transaction);
+
+        assertThrows(IllegalStateException.class, () -> repository.save(transaction));
+
+        verify(cache).invalidate(transaction.getId());
+        verify(index).remove(transaction.getId());
+    }
+
+    @Test
+    void testFindPage_WalksEveryRowOnceInKeysetOrder() {
+        // Three rows share a creation time, so the page boundaries fall inside a tie
+        List<Transaction> stored = new ArrayList<>();
+        stored.add(store("user1", T0.plusSeconds(2), false));
+        stored.add(store("user2", T0, false));
+        stored.add(store("user1", T0.plusSeconds(1), false));
+        stored.add(store("user2", T0.plusSeconds(1), false));
+        stored.add(store("user1", T0.plusSeconds(1), false));
+        stored.add(store("user2", T0.plusSeconds(3), false));
+        stored.add(store("user1", T0.plusSeconds(4), false));
+
+        List<String> listed = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        TransactionCursor cursor = null;
+        do {
+            TransactionPage page = repository.findPage(all(), cursor, 2);
+            page.items().forEach(transaction -> listed.add(transaction.getId()));
+            pageSizes.add(page.items().size());
+            cursor = page.nextCursor() == null ? null : TransactionCursor.decode(page.nextCursor());
+        } while (cursor != null);
+
+        assertEquals(ids(inListingOrder(stored)), listed);
+        assertEquals(List.of(2, 2, 2, 1), pageSizes);
+    }
+
+    @Test
+    void testFindPage_LastFullPage_HasNoNextCursor() {
+        store("user1", T0, false);
+        store("user1", T0.plusSeconds(1), false);
+
+        TransactionPage page = repository.findPage(all(), null, 2);
+
+        assertEquals(2, page.items().size());
+        assertNull(page.nextCursor());
+        assertEquals(2, repository.findPage(all(), null, 5).items().size());
+    }
+
+    @Test
+    void testFindPage_FiltersByUser() {
+        Transaction match = store("user1", T0, false);
+        store("user2", T0, false);
+
+        assertEquals(List.of(match.getId()), ids(repository.findPage(new TransactionFilter("user1", null, null, null), null, 10).items()));
+    }
+
+    @Test
+    void testFindPage_FromIsInclusiveAndToExclusive() {
+        store("user1", T0.minusSeconds(1), false);
+        Transaction atFrom = store("user1", T0, false);
+        Transaction inside = store("user1", T0.plusSeconds(5), false);
+        store("user1", T0.plusSeconds(10), false);
+
+        TransactionFilter filter = new TransactionFilter(null, T0, T0.plusSeconds(10), null);
+
+        assertEquals(List.of(atFrom.getId(), inside.getId()), ids(repository.findPage(filter, null, 10).items()));
+    }
+
+    @Test
+    void testFindPage_FiltersByStatus() {
+        Transaction processed = store("user1", T0, true);
+        Transaction refunded = store("user1", T0.plusSeconds(1), false);
+        refunded.isRefunded = true;
+        entityManager.flush();
+
+        assertEquals(List.of(processed.getId()),
+            ids(repository.findPage(new TransactionFilter(null, null, null, TransactionStatus.PROCESSED), null, 10).items()));
+        assertEquals(List.of(refunded.getId()),
+            ids(repository.findPage(new TransactionFilter(null, null, null, TransactionStatus.REFUNDED), null, 10).items()));
+        assertTrue(repository.findPage(new TransactionFilter(null, null, null, TransactionStatus.FRAUDULENT), null, 10).items().isEmpty());
+    }
+
+    @Test
+    void testStreamTransactions_FeedsMatchingRowsInListingOrder() {
+        List<Transaction> user1 = new ArrayList<>();
+        user1.add(store("user1", T0.plusSeconds(1), true));
+        store("user2", T0, true);
+        user1.add(store("user1", T0, true));
+        user1.add(store("user1", T0, true));
+        store("user1", T0.plusSeconds(2), false);
+
+        List<String> streamed = new ArrayList<>();
+        long count = repository.streamTransactions(new TransactionFilter("user1", null, null, TransactionStatus.PROCESSED),
+            transaction -> streamed.add(transaction.getId()));
+
+        assertEquals(3, count);
+        assertEquals(ids(inListingOrder(user1)), streamed);
+    }
+
+    private Transaction store(String userId, Instant createdAt, boolean processed) {
+        Transaction transaction = new Transaction(userId, Money.of("10.00", "USD"));
+        transaction.setCreatedAt(createdAt);
+        transaction.setProcessed(processed);
+        entityManager.persist(transaction);
+        entityManager.flush();
+        return transaction;
+    }
+
+    private static TransactionFilter all() {
+        return new TransactionFilter(null, null, null, null);
+    }
+
+    private static List<Transaction> inListingOrder(List<Transaction> transactions) {
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(Transaction::getCreatedAt).thenComparing(Transaction::getId));
+        return sorted;
+    }
+
+    private static List<String> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).toList();
+    }
+}
@@ -0,0 +1,118 @@
+package com.demopayment.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TransactionSchemaMigrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropTable() {
+        jdbcTemplate.execute("drop table if exists transaction");
+    }
+
+    @Test
+    void testMigrate_LegacyAmount_FillsMinorUnitsAndRelaxesOldColumn() {
+        // As left by ddl-auto=update: the old double column, plus a nullable amount_minor
+        jdbcTemplate.execute("create table transaction (id varchar(255) primary key, amount float(53) not null,"
+            + " currency varchar(255), amount_minor bigint)");
+        jdbcTemplate.update("insert into transaction (id, amount, currency) values ('eur', 12.34, 'EUR')");
+        jdbcTemplate.update("insert into transaction (id, amount, currency) values ('jpy', 1500, 'JPY')");
+        jdbcTemplate.update("insert into transaction (id, amount, currency) values ('none', ?, null)", 0.1 + 0.2);
+        TransactionSchemaMigration migration = new TransactionSchemaMigration(jdbcTemplate, "USD");
+
+        migration.migrate();
+
+        assertEquals(1234L, minorUnits("eur"));
+        assertEquals(1500L, minorUnits("jpy"));
+        assertEquals(30L, minorUnits("none"));
+        assertEquals("USD", jdbcTemplate.queryForObject("select currency from transaction where id = 'none'", String.class));
+        assertTrue(migration.isNullable("amount"));
+        assertFalse(migration.isNullable("amount_minor"));
+        assertFalse(migration.isNullable("currency"));
+        // New rows no longer set the old column
+        jdbcTemplate.update("insert into transaction (id, amount_minor, currency, created_at) values ('new', 500, 'GBP', ?)", Timestamp.from(Instant.now()));
+        // Running again changes nothing
+        migration.migrate();
+        assertEquals(1234L, minorUnits("eur"));
+    }
+
+    @Test
+    void testMigrate_NoMinorUnitColumn_AddsIt() {
+        jdbcTemplate.execute("create table transaction (id varchar(255) primary key, amount float(53) not null, currency varchar(255))");
+        jdbcTemplate.update("insert into transaction (id, amount, currency) values ('gbp', 9.99, 'GBP')");
+
+        new TransactionSchemaMigration(jdbcTemplate, "USD").migrate();
+
+        assertEquals(999L, minorUnits("gbp"));
+    }
+
+    @Test
+    void testMigrate_UnknownCurrency_LeavesRowWithoutAmount() {
+        jdbcTemplate.execute("create table transaction (id varchar(255) primary key, amount float(53) not null,"
+            + " currency varchar(255), amount_minor bigint)");
+        jdbcTemplate.update("insert into transaction (id, amount, currency) values ('bad', 1, 'ZZZ')");
+        TransactionSchemaMigration migration = new TransactionSchemaMigration(jdbcTemplate, "USD");
+
+        migration.migrate();
+
+        assertNull(minorUnits("bad"));
+        assertTrue(migration.isNullable("amount_minor"));
+        assertTrue(migration.isNullable("amount"));
+    }
+
+    @Test
+    void testMigrate_NullCreatedAt_BackfillsEarliestAndMakesItNotNull() {
+        jdbcTemplate.execute("create table transaction (id varchar(255) primary key, created_at timestamp(6) with time zone)");
+        Instant earliest = Instant.parse("2024-03-01T10:00:00Z");
+        jdbcTemplate.update("insert into transaction (id, created_at) values ('a', ?)", Timestamp.from(earliest));
+        jdbcTemplate.update("insert into transaction (id, created_at) values ('b', ?)", Timestamp.from(earliest.plusSeconds(60)));
+        jdbcTemplate.update("insert into transaction (id) values ('legacy')");
+        TransactionSchemaMigration migration = new TransactionSchemaMigration(jdbcTemplate, "USD");
+
+        migration.migrate();
+
+        assertEquals(Timestamp.from(earliest),
+            jdbcTemplate.queryForObject("select created_at from transaction where id = 'legacy'", Timestamp.class));
+        assertFalse(migration.isNullable("created_at"));
+    }
+
+    @Test
+    void testMigrate_NoCreatedAtColumn_AddsAndFillsIt() {
+        jdbcTemplate.execute("create table transaction (id varchar(255) primary key)");
+        jdbcTemplate.update("insert into transaction (id) values ('legacy')");
+        TransactionSchemaMigration migration = new TransactionSchemaMigration(jdbcTemplate, "USD");
+
+        migration.migrate();
+
+        assertNotNull(jdbcTemplate.queryForObject("select created_at from transaction where id = 'legacy'", Timestamp.class));
+        assertFalse(migration.isNullable("created_at"));
+    }
+
+    @Test
+    void testMigrate_NoTable_DoesNothing() {
+        TransactionSchemaMigration migration = new TransactionSchemaMigration(jdbcTemplate, "USD");
+
+        migration.migrate();
+
+        assertNull(migration.isNullable("amount"));
+        assertNull(migration.isNullable("created_at"));
+    }
+
+    private Long minorUnits(String id) {
+        return jdbcTemplate.queryForObject("select amount_minor from transaction where id = ?", Long.class, id);
+    }
+}
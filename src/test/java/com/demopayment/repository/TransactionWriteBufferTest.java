@@ -0,0 +1,228 @@
+package com.demopayment.repository;
+
+import com.demopayment.model.Money;
+import com.demopayment.model.Transaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TransactionWriteBufferTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final JpaTransactionRepository jpaRepository = mock(JpaTransactionRepository.class);
+    private TransactionWriteBuffer buffer;
+
+    @TempDir
+    Path journalDir;
+
+    @AfterEach
+    void tearDown() {
+        buffer.shutdown();
+    }
+
+    private TransactionWriteBuffer buffer(JpaTransactionRepository repository, int batchSize, long flushIntervalMs, int maxAttempts) {
+        return started(new TransactionWriteBuffer(repository, new SimpleMeterRegistry(), true, 100, batchSize, flushIntervalMs, 100,
+            journalDir.toString(), maxAttempts, 10));
+    }
+
+    private static TransactionWriteBuffer started(TransactionWriteBuffer buffer) {
+        buffer.start();
+        return buffer;
+    }
+
+    @Test
+    void testWrite_FlushesFullBatchInOneSaveAll() {
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 3, 5_000, 100, journalDir.toString(), 5, 10));
+
+        Transaction last = null;
+        for (int i = 0; i < 3; i++) {
+            last = new Transaction("user" + i, Money.of("10.00", "USD"));
+            buffer.write(last);
+        }
+
+        verify(jpaRepository, timeout(2_000)).saveAll(argThat(batch -> ((List<?>) batch).size() == 3));
+        buffer.awaitWritten(last.getId());
+        assertEquals(3.0, registry.get("payment.persistence.flush.size").summary().totalAmount());
+    }
+
+    @Test
+    void testWriteAll_JournalsBatchThenFlushesItTogether() throws Exception {
+        buffer = buffer(jpaRepository, 3, 5_000, 5);
+        List<Transaction> batch = List.of(new Transaction("user1", Money.of("10.00", "USD")),
+            new Transaction("user2", Money.of("20.00", "USD")), new Transaction("user3", Money.of("30.00", "USD")));
+
+        buffer.writeAll(batch);
+
+        for (Transaction transaction : batch) {
+            assertSame(transaction, buffer.pending(transaction.getId()));
+        }
+        assertEquals(batch.stream().map(Transaction::getId).toList(),
+            TransactionJournal.read(journalDir.resolve("segment-0.log")).stream().map(Transaction::getId).toList());
+        buffer.awaitWritten(batch.get(2).getId());
+        verify(jpaRepository).saveAll(batch);
+    }
+
+    @Test
+    void testWriteAll_NoJournal_FailedBatchSavesNothing() {
+        when(jpaRepository.saveAll(anyList())).thenThrow(new RuntimeException("batch rejected"));
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 100, 60_000, 100, "", 5, 10));
+        List<Transaction> batch = List.of(new Transaction("user1", Money.of("10.00", "USD")),
+            new Transaction("user2", Money.of("20.00", "USD")));
+
+        assertThrows(RuntimeException.class, () -> buffer.writeAll(batch));
+
+        // No row by row fallback that could save part of the batch
+        verify(jpaRepository, never()).save(any(Transaction.class));
+        assertNull(buffer.pending(batch.get(0).getId()));
+        assertEquals(2.0, registry.get("payment.persistence.write.failures").counter().count());
+    }
+
+    @Test
+    void testPending_VisibleUntilFlushed() {
+        buffer = buffer(jpaRepository, 100, 5_000, 5);
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+
+        buffer.write(transaction);
+
+        assertSame(transaction, buffer.pending(transaction.getId()));
+        verify(jpaRepository, never()).saveAll(anyList());
+        buffer.awaitWritten(transaction.getId());
+        assertNull(buffer.pending(transaction.getId()));
+        verify(jpaRepository).saveAll(List.of(transaction));
+    }
+
+    @Test
+    void testShutdown_DrainsQueue() {
+        buffer = buffer(jpaRepository, 100, 5_000, 5);
+        buffer.write(new Transaction("user1", Money.of("10.00", "USD")));
+        buffer.write(new Transaction("user2", Money.of("20.00", "USD")));
+
+        buffer.shutdown();
+
+        verify(jpaRepository).saveAll(argThat(batch -> ((List<?>) batch).size() == 2));
+        assertEquals(0, buffer.queueDepth());
+    }
+
+    @Test
+    void testShutdown_WakesWriterAndRejectsLaterWrites() {
+        buffer = buffer(jpaRepository, 100, 60_000, 5);
+        buffer.write(new Transaction("user1", Money.of("10.00", "USD")));
+
+        long start = System.nanoTime();
+        buffer.shutdown();
+
+        assertTrue(System.nanoTime() - start < 2_000_000_000L, "shutdown waited for the flush interval");
+        Transaction late = new Transaction("user2", Money.of("20.00", "USD"));
+        assertThrows(IllegalStateException.class, () -> buffer.write(late));
+        assertNull(buffer.pending(late.getId()));
+    }
+
+    @Test
+    void testFlush_BatchFailure_RetriesRowByRow() {
+        when(jpaRepository.saveAll(anyList())).thenThrow(new RuntimeException("batch rejected"));
+        when(jpaRepository.save(any(Transaction.class))).thenThrow(new RuntimeException("row rejected")).thenReturn(null);
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 2, 5_000, 100, journalDir.toString(), 5, 10));
+
+        Transaction first = new Transaction("user1", Money.of("10.00", "USD"));
+        buffer.write(first);
+        buffer.write(new Transaction("user2", Money.of("20.00", "USD")));
+
+        // The row that failed is kept and retried after the backoff
+        verify(jpaRepository, timeout(2_000).times(3)).save(any(Transaction.class));
+        assertEquals(1.0, registry.get("payment.persistence.write.failures").counter().count());
+        buffer.awaitWritten(first.getId());
+        assertNull(buffer.pending(first.getId()));
+    }
+
+    @Test
+    void testFlush_KeepsFailing_MovesRowToDeadLetter() throws Exception {
+        when(jpaRepository.saveAll(anyList())).thenThrow(new RuntimeException("database down"));
+        when(jpaRepository.save(any(Transaction.class))).thenThrow(new RuntimeException("database down"));
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 1, 5_000, 100, journalDir.toString(), 3, 10));
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+
+        buffer.write(transaction);
+
+        verify(jpaRepository, timeout(2_000).times(3)).save(any(Transaction.class));
+        buffer.awaitWritten(transaction.getId());
+        assertEquals(1.0, registry.get("payment.persistence.dead.letters").counter().count());
+        List<Transaction> deadLetters = TransactionJournal.read(journalDir.resolve("dead-letter.log"));
+        assertEquals(List.of(transaction.getId()), deadLetters.stream().map(Transaction::getId).toList());
+    }
+
+    @Test
+    void testRestart_ReplaysJournaledRows() {
+        JpaTransactionRepository unavailable = mock(JpaTransactionRepository.class);
+        when(unavailable.saveAll(anyList())).thenThrow(new RuntimeException("database down"));
+        when(unavailable.save(any(Transaction.class))).thenThrow(new RuntimeException("database down"));
+        TransactionWriteBuffer crashed = buffer(unavailable, 100, 5_000, 100);
+        Transaction transaction = new Transaction("user1", Money.of("12.34", "EUR"));
+        transaction.isPremiumUser = true;
+        crashed.write(transaction);
+        crashed.shutdown();
+
+        buffer = buffer(jpaRepository, 100, 5_000, 5);
+
+        Transaction replayed = buffer.pending(transaction.getId());
+        assertNotNull(replayed);
+        assertEquals(Money.of("12.34", "EUR"), replayed.getAmount());
+        assertEquals(transaction.getCreatedAt(), replayed.getCreatedAt());
+        assertTrue(replayed.isPremiumUser);
+        assertFalse(replayed.isNew());
+        buffer.awaitWritten(transaction.getId());
+        verify(jpaRepository).saveAll(argThat(batch -> ((List<?>) batch).size() == 1));
+    }
+
+    @Test
+    void testMarkDeleted_DropsBufferedWriteAndReplay() {
+        buffer = buffer(jpaRepository, 100, 60_000, 5);
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+        buffer.write(transaction);
+
+        buffer.markDeleted(transaction.getId());
+        buffer.shutdown();
+        buffer = buffer(jpaRepository, 100, 5_000, 5);
+
+        assertNull(buffer.pending(transaction.getId()));
+        verify(jpaRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testWrite_NoJournal_WaitsForDatabase() {
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 100, 60_000, 100, "", 5, 10));
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+
+        buffer.write(transaction);
+
+        verify(jpaRepository).saveAll(List.of(transaction));
+        assertNull(buffer.pending(transaction.getId()));
+    }
+
+    @Test
+    void testWrite_NoJournal_ThrowsWhenNotSaved() {
+        when(jpaRepository.saveAll(anyList())).thenThrow(new RuntimeException("batch rejected"));
+        when(jpaRepository.save(any(Transaction.class))).thenThrow(new RuntimeException("row rejected"));
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, true, 100, 100, 60_000, 100, "", 5, 10));
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+
+        assertThrows(RuntimeException.class, () -> buffer.write(transaction));
+        assertNull(buffer.pending(transaction.getId()));
+    }
+
+    @Test
+    void testWrite_Disabled_WritesOnCallingThread() {
+        buffer = started(new TransactionWriteBuffer(jpaRepository, registry, false, 100, 100, 5_000, 100, journalDir.toString(), 5, 10));
+        Transaction transaction = new Transaction("user1", Money.of("10.00", "USD"));
+
+        buffer.write(transaction);
+
+        verify(jpaRepository).saveAll(List.of(transaction));
+        assertNull(buffer.pending(transaction.getId()));
+    }
+}
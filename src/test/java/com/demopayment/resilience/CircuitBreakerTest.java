@@ -0,0 +1,184 @@
+package com.demopayment.resilience;
+
+import com.demopayment.exception.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(5).toNanos();
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final CircuitBreaker breaker = new CircuitBreaker("test", new CircuitBreaker.Settings(
+        10, 5, 50, Duration.ofSeconds(1), 80, Duration.ofSeconds(30), 2, Duration.ofSeconds(10)), registry, clock);
+
+    @Test
+    void testFailureRate_OpensOnlyAfterMinimumCallsAndRejects() {
+        record(4, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        record(1, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertThrows(CallNotPermittedException.class, () -> breaker.execute(() -> "never"));
+        assertEquals(1.0, registry.get("payment.circuit.breaker.calls").tag("outcome", "not_permitted")
+            .functionCounter().count());
+        assertEquals(1.0, registry.get("payment.circuit.breaker.transitions").tag("to", "open")
+            .functionCounter().count());
+    }
+
+    @Test
+    void testSlidingWindow_OldFailuresAgeOut() {
+        record(5, false);
+        record(4, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        record(10, false);
+        assertEquals(0f, breaker.getFailureRate());
+
+        record(4, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(40f, breaker.getFailureRate());
+    }
+
+    @Test
+    void testSlowCalls_OpenTheBreaker() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onSuccess(breaker.tryAcquirePermit(), SLOW);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testHalfOpen_LimitedTrialCallsThenCloses() {
+        List<String> transitions = new ArrayList<>();
+        breaker.onStateTransition((from, to) -> transitions.add(from + "->" + to));
+        open();
+        clock.advance(Duration.ofSeconds(30));
+
+        long first = breaker.tryAcquirePermit();
+        long second = breaker.tryAcquirePermit();
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, first);
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, second);
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermit());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(first, FAST);
+        breaker.onSuccess(second, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+        assertEquals(-1f, breaker.getFailureRate());
+    }
+
+    @Test
+    void testHalfOpen_FailedTrialReopens() {
+        open();
+        clock.advance(Duration.ofSeconds(30));
+        long first = breaker.tryAcquirePermit();
+        long second = breaker.tryAcquirePermit();
+
+        breaker.onSuccess(first, FAST);
+        breaker.onError(second, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermit());
+    }
+
+    @Test
+    void testHalfOpen_StaleOutcomesFromClosedAreIgnored() {
+        long stale = breaker.tryAcquirePermit();
+        long staleToo = breaker.tryAcquirePermit();
+        open();
+        clock.advance(Duration.ofSeconds(30));
+        long trial = breaker.tryAcquirePermit();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // Calls permitted while CLOSED answer late; they are no trial of the recovered dependency
+        breaker.onSuccess(stale, FAST);
+        breaker.onSuccess(staleToo, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(trial, FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(breaker.tryAcquirePermit(), FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testHalfOpen_UnreportedTrialsReopenAfterTimeout() {
+        open();
+        clock.advance(Duration.ofSeconds(30));
+        long lost = breaker.tryAcquirePermit();
+        breaker.tryAcquirePermit();
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermit());
+
+        clock.advance(Duration.ofSeconds(10));
+
+        assertEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermit());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        breaker.onSuccess(lost, FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.advance(Duration.ofSeconds(30));
+        assertNotEquals(CircuitBreaker.NOT_PERMITTED, breaker.tryAcquirePermit());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void testSettings_RejectNonPositiveHalfOpenTimeout() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker.Settings(
+            10, 5, 50, Duration.ofSeconds(1), 80, Duration.ofSeconds(30), 2, Duration.ZERO));
+    }
+
+    private void record(int calls, boolean failed) {
+        for (int i = 0; i < calls; i++) {
+            long permit = breaker.tryAcquirePermit();
+            if (failed) {
+                breaker.onError(permit, FAST);
+            } else {
+                breaker.onSuccess(permit, FAST);
+            }
+        }
+    }
+
+    private void open() {
+        record(5, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
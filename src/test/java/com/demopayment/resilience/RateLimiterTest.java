@@ -0,0 +1,105 @@
+package com.demopayment.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void testBurstThenOnePermitPerInterval() {
+        RateLimiter limiter = new RateLimiter("test", 10, 3, registry, now::get);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        assertEquals(4.0, registry.get("payment.rate.limiter.permits").tag("result", "admitted").functionCounter().count());
+        assertEquals(2.0, registry.get("payment.rate.limiter.permits").tag("result", "throttled").functionCounter().count());
+    }
+
+    @Test
+    void testIdleTimeRefillsOnlyUpToBurst() {
+        RateLimiter limiter = new RateLimiter("test", 10, 2, registry, now::get);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void testSetRate_AppliesToNextCalls() {
+        RateLimiter limiter = new RateLimiter("test", 1, 1, registry, now::get);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.setRate(Integer.MAX_VALUE, 1);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+
+    @Test
+    void testTryAcquireUpTo_GrantsWhatFitsInBurst() {
+        RateLimiter limiter = new RateLimiter("test", 10, 5, registry, now::get);
+
+        assertEquals(3, limiter.tryAcquireUpTo(3, Duration.ZERO));
+        assertEquals(2, limiter.tryAcquireUpTo(4, Duration.ZERO));
+        assertEquals(0, limiter.tryAcquireUpTo(4, Duration.ZERO));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(3, limiter.tryAcquireUpTo(10, Duration.ZERO));
+        assertFalse(limiter.tryAcquire());
+
+        assertEquals(8.0, registry.get("payment.rate.limiter.permits").tag("result", "admitted").functionCounter().count());
+        assertEquals(14.0, registry.get("payment.rate.limiter.permits").tag("result", "throttled").functionCounter().count());
+    }
+
+    @Test
+    void testTryAcquireWithTimeout_WaitsForNearSlotOnly() {
+        RateLimiter limiter = new RateLimiter("test", 50, 1, registry);
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertTrue(limiter.tryAcquire(Duration.ofSeconds(1)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertFalse(limiter.tryAcquire(Duration.ofMillis(1)));
+    }
+
+    @Test
+    void testConcurrentCallers_NeverExceedBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter("test", 1, 100, registry, now::get);
+        AtomicInteger granted = new AtomicInteger();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        if (limiter.tryAcquire()) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+
+        assertEquals(100, granted.get());
+        assertEquals(7_900, limiter.throttledCount());
+    }
+}
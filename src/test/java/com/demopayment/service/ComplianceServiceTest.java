@@ -0,0 +1,118 @@
+package com.demopayment.service;
+
+import com.demopayment.exception.ComplianceRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ComplianceServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void testScreen_AllApprove_CostsSlowestCallNotSum() {
+        ComplianceService service = new ComplianceService(registry, 2_000) {
+            @Override
+            boolean callFraudCheckService(String userId, double amount) {
+                return sleepThenApprove(300);
+            }
+
+            @Override
+            boolean callKYCService(String userId) {
+                return sleepThenApprove(300);
+            }
+
+            @Override
+            boolean callComplianceService(String userId, double amount) {
+                return sleepThenApprove(300);
+            }
+        };
+
+        long start = System.nanoTime();
+        assertDoesNotThrow(() -> service.screen("user1", 100.0));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs < 800, "took " + elapsedMs + " ms");
+        assertEquals(1, registry.get("payment.compliance.call.duration").tag("call", "kyc").timer().count());
+        service.shutdown();
+    }
+
+    @Test
+    void testScreen_Veto_CancelsRemainingCalls() throws Exception {
+        CountDownLatch slowCallStarted = new CountDownLatch(1);
+        CountDownLatch slowCallInterrupted = new CountDownLatch(1);
+        ComplianceService service = new ComplianceService(registry, 5_000) {
+            @Override
+            boolean callKYCService(String userId) {
+                try {
+                    slowCallStarted.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+
+            @Override
+            boolean callComplianceService(String userId, double amount) {
+                slowCallStarted.countDown();
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    slowCallInterrupted.countDown();
+                }
+                return true;
+            }
+        };
+
+        ComplianceRejectedException rejected = assertThrows(ComplianceRejectedException.class, () -> service.screen("user1", 100.0));
+
+        assertTrue(rejected.getMessage().contains("kyc"));
+        assertTrue(slowCallInterrupted.await(2, TimeUnit.SECONDS));
+        assertEquals(1.0, registry.get("payment.compliance.vetoes").tag("call", "kyc").counter().count());
+        service.shutdown();
+    }
+
+    @Test
+    void testScreen_DeadlineExceeded_Rejected() {
+        ComplianceService service = new ComplianceService(registry, 100) {
+            @Override
+            boolean callFraudCheckService(String userId, double amount) {
+                return sleepThenApprove(2_000);
+            }
+        };
+
+        long start = System.nanoTime();
+        assertThrows(ComplianceRejectedException.class, () -> service.screen("user1", 100.0));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        assertEquals(1.0, registry.get("payment.compliance.timeouts").counter().count());
+        service.shutdown();
+    }
+
+    @Test
+    void testScreen_CallFails_Rejected() {
+        ComplianceService service = new ComplianceService(registry, 1_000) {
+            @Override
+            boolean callComplianceService(String userId, double amount) {
+                throw new IllegalStateException("compliance service unavailable");
+            }
+        };
+
+        ComplianceRejectedException rejected = assertThrows(ComplianceRejectedException.class, () -> service.screen("user1", 100.0));
+
+        assertInstanceOf(IllegalStateException.class, rejected.getCause());
+        service.shutdown();
+    }
+
+    private static boolean sleepThenApprove(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.demopayment.service;
+
+import com.demopayment.fraud.BlacklistIndex;
+import com.demopayment.fraud.FraudRuleEngine;
+import com.demopayment.fraud.FraudStateStore;
+import com.demopayment.fraud.UserFeatureStore;
+import com.demopayment.fraud.VelocityWindows;
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FraudPreventionServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserFeatureStore featureStore = new UserFeatureStore(4, 0.5, 8, meterRegistry);
+    private final ExchangeRateService exchangeRates = new ExchangeRateService("", "USD");
+    private final Clock clock = Clock.fixed(Instant.parse("2024-06-01T12:00:00Z"), ZoneOffset.UTC);
+
+    private FraudPreventionService service() {
+        return new FraudPreventionService(new FraudStateStore(1_000, 8, VelocityWindows.DEFAULT_SPEC),
+            new BlacklistIndex("", 0.01), new FraudRuleEngine("", meterRegistry), featureStore, exchangeRates,
+            clock);
+    }
+
+    @Test
+    void testCheckFraud_AverageKeptInSettlementCurrency() {
+        exchangeRates.loadOnStartup();
+        FraudPreventionService service = service();
+
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("100.00", "USD")));
+        // 92 EUR is 100 USD at the bundled rate, so the average does not move
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("92.00", "EUR")));
+
+        assertEquals(100.0, featureStore.read("1001", "10.0.0.1", "device-1").averageAmount(), 1e-9);
+    }
+
+    @Test
+    void testCheckFraud_DailyAmountSummedInSettlementCurrency() {
+        exchangeRates.loadOnStartup();
+        FraudStateStore stateStore = new FraudStateStore(1_000, 8, VelocityWindows.DEFAULT_SPEC);
+        FraudPreventionService service = new FraudPreventionService(stateStore, new BlacklistIndex("", 0.01),
+            new FraudRuleEngine("", meterRegistry), featureStore, exchangeRates, clock);
+
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("1575", "JPY")));
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("50.00", "USD")));
+
+        // 1575 JPY is 10 USD at the bundled rate, not the 15.75 its minor units would read as in USD
+        assertEquals(6_000L, stateStore.users().amountSum("1001", stateStore.windows().indexOf(Duration.ofDays(1)),
+            clock.millis()));
+    }
+
+    @Test
+    void testCheckFraud_CurrencyWithoutRate_LeavesAverageAlone() {
+        // Nothing loaded: only the base currency can be valued
+        FraudPreventionService service = service();
+
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("100.00", "USD")));
+        assertFalse(service.checkFraud("1001", "10.0.0.1", "device-1", Money.of("5.00", "EUR")));
+
+        assertEquals(100.0, featureStore.read("1001", "10.0.0.1", "device-1").averageAmount(), 1e-9);
+        assertEquals(2, featureStore.read("1001", "10.0.0.1", "device-1").deviceFrequency());
+    }
+}
@@ -0,0 +1,125 @@
+package com.demopayment.service;
+
+import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class PaymentProviderRouterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(400);
+
+    private final PaymentGatewayService gatewayService = mock(PaymentGatewayService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PaymentProviderRouter router;
+
+    @BeforeEach
+    void setUp() {
+        when(gatewayService.getCircuitState(anyString())).thenReturn(CircuitBreaker.State.CLOSED);
+        router = new PaymentProviderRouter(gatewayService, meterRegistry, "stripe,paypal,braintree",
+            "amount>=10000:stripe|braintree,currency=JPY:paypal,premium:stripe", 0.5);
+        router.registerCallListener();
+        verify(gatewayService).addCallListener(router);
+    }
+
+    @Test
+    void testRules_NarrowCandidates() {
+        for (int i = 0; i < 200; i++) {
+            assertTrue(Set.of("stripe", "braintree").contains(router.selectProvider("u", 25_000, "USD", false)));
+            assertEquals("stripe", router.selectProvider("u", 25_000, "USD", true));
+            assertEquals("paypal", router.selectProvider("u", 50, "JPY", false));
+        }
+    }
+
+    @Test
+    void testRules_RuleLeavingNoGatewayIsSkipped() {
+        for (int i = 0; i < 200; i++) {
+            assertEquals("stripe", router.selectProvider("u", 25_000, "JPY", true));
+        }
+    }
+
+    @Test
+    void testSlowGateway_GetsLittleTraffic() {
+        for (int i = 0; i < 50; i++) {
+            complete("stripe", FAST, true);
+            complete("paypal", SLOW, true);
+            complete("braintree", FAST, true);
+        }
+
+        Map<String, Integer> routed = route(3_000);
+
+        assertTrue(routed.getOrDefault("paypal", 0) < 100, routed.toString());
+    }
+
+    @Test
+    void testFailingGateway_DrainedAndOnlyProbed() {
+        for (int i = 0; i < 50; i++) {
+            complete("stripe", FAST, true);
+            complete("paypal", FAST, false);
+            complete("braintree", FAST, true);
+        }
+
+        assertTrue(router.isDrained("paypal"));
+        assertTrue(route(3_000).getOrDefault("paypal", 0) < 100);
+    }
+
+    @Test
+    void testOpenCircuit_Drained() {
+        when(gatewayService.getCircuitState("stripe")).thenReturn(CircuitBreaker.State.OPEN);
+
+        assertTrue(router.isDrained("stripe"));
+        assertFalse(router.isDrained("paypal"));
+    }
+
+    @Test
+    void testRejectedCalls_CountAsErrorsButNotAsLatency() {
+        for (int i = 0; i < 50; i++) {
+            complete("paypal", SLOW, true);
+        }
+        for (int i = 0; i < 50; i++) {
+            router.onCallStarted("paypal");
+            router.onCallRejected("paypal");
+        }
+
+        assertEquals(400.0, meterRegistry.get("payment.routing.latency").tag("gateway", "paypal").gauge().value(), 1.0);
+        assertTrue(router.isDrained("paypal"));
+        assertEquals(0.0, meterRegistry.get("payment.routing.in.flight").tag("gateway", "paypal").gauge().value());
+    }
+
+    @Test
+    void testInFlight_SpreadsLoadAwayFromBusyGateway() {
+        for (int i = 0; i < 50; i++) {
+            complete("stripe", FAST, true);
+            complete("paypal", FAST, true);
+            complete("braintree", FAST, true);
+        }
+        for (int i = 0; i < 20; i++) {
+            router.onCallStarted("braintree");
+        }
+
+        assertTrue(route(3_000).getOrDefault("braintree", 0) < 100);
+    }
+
+    private void complete(String gateway, long nanos, boolean success) {
+        router.onCallStarted(gateway);
+        router.onCallCompleted(gateway, nanos, success);
+    }
+
+    private Map<String, Integer> route(int payments) {
+        Map<String, Integer> routed = new HashMap<>();
+        for (int i = 0; i < payments; i++) {
+            routed.merge(router.selectProvider("u", 100, "USD", false), 1, Integer::sum);
+        }
+        return routed;
+    }
+}
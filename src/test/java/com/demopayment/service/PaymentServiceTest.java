@@ -1,15 +1,23 @@
 package com.demopayment.service;
 
+import com.demopayment.exception.ComplianceRejectedException;
 import com.demopayment.external.PaymentGatewayService;
+import com.demopayment.fx.ExchangeRateService;
+import com.demopayment.model.ExchangeRates;
+import com.demopayment.model.Money;
 import com.demopayment.model.Transaction;
+import com.demopayment.model.UserProfile;
+import com.demopayment.pipeline.PipelineStage;
+import com.demopayment.pipeline.PostPaymentPipeline;
+import com.demopayment.repository.TransactionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,84 +33,161 @@ public class PaymentServiceTest {
     private PaymentProviderRouter providerRouter;
     @Mock
     private PaymentGatewayService gatewayService;
+    @Mock
+    private PostPaymentPipeline postPaymentPipeline;
+    @Mock
+    private ComplianceService complianceService;
+    @Mock
+    private TransactionRepository transactionRepository;
+    @Mock
+    private ExchangeRateService exchangeRates;
 
     @InjectMocks
     private PaymentService paymentService;
 
     private final String userId = "user123";
-    private final double amount = 1200.0;
-    private final String currency = "USD";
+    private final Money amount = Money.of("1200.00", "USD");
 
     @BeforeEach
     void setup() {
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("ipAddress", "127.0.0.1");
-        userData.put("deviceId", "device1");
-        lenient().when(userService.getUserData(userId)).thenReturn(userData);
-        lenient().when(fraudService.checkFraud(anyString(), anyString(), anyString(), anyDouble(), anyString())).thenReturn(false);
+        lenient().when(userService.getUserData(userId)).thenReturn(profile("127.0.0.1", "device1"));
+        lenient().when(fraudService.checkFraud(anyString(), anyString(), anyString(), any(Money.class))).thenReturn(false);
         lenient().when(providerRouter.selectProvider(anyString(), anyDouble(), anyString(), anyBoolean())).thenReturn("stripe");
         lenient().when(gatewayService.processPayment(anyString(), anyDouble(), anyString(), anyString())).thenReturn(true);
+        lenient().when(exchangeRates.current()).thenReturn(ExchangeRates.of("USD", Map.of("EUR", new BigDecimal("0.8"))));
     }
 
     @Test
     void testProcess_CreditType_Success() {
-        assertDoesNotThrow(() -> paymentService.process(1, amount, currency, userId, true, false, false, false));
+        assertDoesNotThrow(() -> paymentService.process(1, amount, userId, true, false, false, false));
     }
 
     @Test
     void testProcess_DebitType_Success() {
-        assertDoesNotThrow(() -> paymentService.process(2, 100, currency, userId, false, false, false, false));
+        assertDoesNotThrow(() -> paymentService.process(2, Money.of("100.00", "USD"), userId, false, false, false, false));
     }
 
     @Test
     void testProcess_Fraudulent_ThrowsException() {
-        when(fraudService.checkFraud(anyString(), anyString(), anyString(), anyDouble(), anyString())).thenReturn(true);
-        assertThrows(RuntimeException.class, () -> paymentService.process(1, amount, currency, userId, true, false, false, false));
+        when(fraudService.checkFraud(anyString(), anyString(), anyString(), any(Money.class))).thenReturn(true);
+        assertThrows(RuntimeException.class, () -> paymentService.process(1, amount, userId, true, false, false, false));
+    }
+
+    @Test
+    void testProcess_ComplianceVeto_GatewayNotCalled() {
+        doThrow(new ComplianceRejectedException("Payment vetoed by kyc")).when(complianceService).screen(userId, 1200.0);
+        assertThrows(ComplianceRejectedException.class, () -> paymentService.process(1, amount, userId, true, false, false, false));
+        verifyNoInteractions(gatewayService);
+    }
+
+    @Test
+    void testProcess_SideEffects_SubmittedToPipeline() {
+        paymentService.process(1, amount, userId, true, true, true, true);
+
+        verify(postPaymentPipeline, times(3)).submit(eq(PipelineStage.NOTIFICATIONS), anyString(), any(Runnable.class));
+        verify(postPaymentPipeline, times(3)).submit(eq(PipelineStage.RECEIPTS), anyString(), any(Runnable.class));
+        verify(postPaymentPipeline, times(3)).submit(eq(PipelineStage.CACHE), anyString(), any(Runnable.class));
+        verify(postPaymentPipeline, times(3)).submit(eq(PipelineStage.REWARDS), anyString(), any(Runnable.class));
+    }
+
+    @Test
+    void testProcess_ForeignCurrencyCredit_SettledAtCurrentRate() {
+        // 1000 EUR at 0.8 EUR per USD settles as 1250 USD, over the high value threshold
+        paymentService.process(1, Money.of("1000", "EUR"), userId, false, false, false, false);
+        verify(postPaymentPipeline, times(3)).submit(eq(PipelineStage.REWARDS), anyString(), any(Runnable.class));
+
+        clearInvocations(postPaymentPipeline);
+        paymentService.process(1, Money.of("1000", "GBP"), userId, false, false, false, false);
+        verify(postPaymentPipeline, never()).submit(eq(PipelineStage.REWARDS), anyString(), any(Runnable.class));
+    }
+
+    @Test
+    void testProcess_OptionalSideEffectsDisabled_OnlyRedisWriteSubmitted() {
+        paymentService.process(2, Money.of("100.00", "USD"), userId, false, false, false, false);
+
+        verify(postPaymentPipeline).submit(eq(PipelineStage.CACHE), eq("saveToRedis"), any(Runnable.class));
+        verifyNoMoreInteractions(postPaymentPipeline);
+    }
+
+    @Test
+    void testProcessBatch_OneGatewayCallPerProvider() {
+        UserProfile user = profile("127.0.0.1", "device1");
+        UserProfile otherUser = profile("10.0.0.2", "device2");
+        when(userService.getUserData(anyCollection())).thenReturn(Map.of(userId, user, "user456", otherUser));
+        when(providerRouter.selectProvider(eq("user456"), anyDouble(), anyString(), anyBoolean())).thenReturn("adyen");
+        when(gatewayService.processBatch(eq("stripe"), anyList())).thenReturn(new boolean[] { true, false });
+        when(gatewayService.processBatch(eq("adyen"), anyList())).thenReturn(new boolean[] { true });
+
+        List<BatchPaymentResult> results = paymentService.processBatch(List.of(
+            new BatchPaymentItem(userId, amount),
+            new BatchPaymentItem("user456", Money.of("50.00", "USD")),
+            new BatchPaymentItem(userId, Money.of("75.00", "USD")),
+            new BatchPaymentItem("unknown", Money.of("10.00", "USD"))));
+
+        assertTrue(results.get(0).approved());
+        assertTrue(results.get(1).approved());
+        assertFalse(results.get(2).approved());
+        assertEquals("User not found", results.get(3).error());
+        verify(userService).getUserData(anyCollection());
+        verify(gatewayService).processBatch(eq("stripe"), argThat(payments -> payments.size() == 2));
+        verify(gatewayService).processBatch(eq("adyen"), argThat(payments -> payments.size() == 1));
+        verify(gatewayService, never()).processPayment(anyString(), anyDouble(), anyString(), anyString());
+    }
+
+    @Test
+    void testProcessBatch_SideEffectsFollowEachItem() {
+        when(userService.getUserData(anyCollection())).thenReturn(Map.of(userId, profile("127.0.0.1", "device1")));
+        when(gatewayService.processBatch(eq("stripe"), anyList())).thenReturn(new boolean[] { true });
+
+        List<BatchPaymentResult> results = paymentService.processBatch(List.of(
+            new BatchPaymentItem(userId, Money.of("50.00", "USD"), false, false, false)));
+
+        assertTrue(results.get(0).approved());
+        verify(postPaymentPipeline).submit(eq(PipelineStage.CACHE), eq("saveToRedis"), any(Runnable.class));
+        verifyNoMoreInteractions(postPaymentPipeline);
     }
 
     @Test
     void testRefundTransaction_Success() {
         Transaction tx = mock(Transaction.class);
         tx.isRefunded = false;
-        try (MockedStatic<Transaction> mocked = mockStatic(Transaction.class)) {
-            mocked.when(() -> Transaction.getTransaction("tx1")).thenReturn(tx);
-            assertDoesNotThrow(() -> paymentService.refundTransaction("tx1"));
-            verify(tx).setProcessed(false);
-        }
+        when(transactionRepository.findById("tx1")).thenReturn(tx);
+        assertDoesNotThrow(() -> paymentService.refundTransaction("tx1"));
+        verify(tx).setProcessed(false);
     }
 
     @Test
     void testRefundTransaction_AlreadyRefunded_ThrowsException() {
         Transaction tx = mock(Transaction.class);
         tx.isRefunded = true;
-        try (MockedStatic<Transaction> mocked = mockStatic(Transaction.class)) {
-            mocked.when(() -> Transaction.getTransaction("tx1")).thenReturn(tx);
-            assertThrows(RuntimeException.class, () -> paymentService.refundTransaction("tx1"));
-        }
+        when(transactionRepository.findById("tx1")).thenReturn(tx);
+        assertThrows(RuntimeException.class, () -> paymentService.refundTransaction("tx1"));
     }
 
     @Test
     void testRefundTransaction_NotFound_ThrowsException() {
-        try (MockedStatic<Transaction> mocked = mockStatic(Transaction.class)) {
-            mocked.when(() -> Transaction.getTransaction("tx1")).thenReturn(null);
-            assertThrows(RuntimeException.class, () -> paymentService.refundTransaction("tx1"));
-        }
+        when(transactionRepository.findById("tx1")).thenReturn(null);
+        assertThrows(RuntimeException.class, () -> paymentService.refundTransaction("tx1"));
     }
 
     @Test
     void testDeleteTransaction_Success() {
         Transaction tx = mock(Transaction.class);
-        try (MockedStatic<Transaction> mocked = mockStatic(Transaction.class)) {
-            mocked.when(() -> Transaction.getTransaction("tx1")).thenReturn(tx);
-            assertDoesNotThrow(() -> paymentService.deleteTransaction("tx1"));
-        }
+        when(tx.getId()).thenReturn("tx1");
+        when(transactionRepository.findById("tx1")).thenReturn(tx);
+        assertDoesNotThrow(() -> paymentService.deleteTransaction("tx1"));
+        verify(transactionRepository).deleteById("tx1");
     }
 
     @Test
     void testDeleteTransaction_NotFound_ThrowsException() {
-        try (MockedStatic<Transaction> mocked = mockStatic(Transaction.class)) {
-            mocked.when(() -> Transaction.getTransaction("tx1")).thenReturn(null);
-            assertThrows(RuntimeException.class, () -> paymentService.deleteTransaction("tx1"));
-        }
+        when(transactionRepository.findById("tx1")).thenReturn(null);
+        assertThrows(RuntimeException.class, () -> paymentService.deleteTransaction("tx1"));
+        verify(transactionRepository, never()).deleteById(anyString());
+    }
+
+    private static UserProfile profile(String ipAddress, String deviceId) {
+        return new UserProfile("1", "Test User", null, null, "payer", true, true, false,
+            0.0, "USD", null, ipAddress, deviceId, null, null);
     }
-} 
\ No newline at end of file
+}
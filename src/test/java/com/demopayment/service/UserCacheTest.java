@@ -0,0 +1,224 @@
+package com.demopayment.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import com.demopayment.model.UserProfile;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserCacheTest {
+
+    private static final UserProfile PREMIUM = new UserProfile("user1", "Premium", null, null, "merchant",
+        true, true, true, 100.0, "USD", null, null, null, null, null);
+    private static final UserProfile REGULAR = new UserProfile("user2", "Regular", null, null, "payer",
+        true, false, false, 5.0, "USD", null, null, null, null, null);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, byte[]> redisTemplate = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, byte[]> valueOperations = mock(ValueOperations.class);
+    @Captor
+    private ArgumentCaptor<RedisCallback<?>> callback;
+    private AutoCloseable mocks;
+    private UserCache cache;
+
+    @BeforeEach
+    void setUp() {
+        mocks = MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        cache = new UserCache(redisTemplate, registry, 100, 4, Duration.ofSeconds(60), 0, Duration.ofHours(1),
+            Clock.systemUTC());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        RequestContextHolder.resetRequestAttributes();
+        mocks.close();
+    }
+
+    @Test
+    void testGet_MissEverywhere_LoadsOnceAndWritesThrough() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            UserProfile userData = cache.get("user1", id -> {
+                loads.incrementAndGet();
+                return PREMIUM;
+            });
+            assertTrue(userData.premiumUser());
+        }
+
+        assertEquals(1, loads.get());
+        verify(valueOperations, times(1)).get("user:user1");
+        verify(valueOperations).set(eq("user:user1"), aryEq(UserProfileCodec.encode(PREMIUM)), eq(3600L), eq(TimeUnit.SECONDS));
+        verify(redisTemplate).execute(ArgumentMatchers.<RedisCallback<?>>any());
+        assertEquals(2.0, registry.get("payment.user.cache.requests").tags("tier", "l1", "result", "hit")
+            .functionCounter().count());
+    }
+
+    @Test
+    void testGet_RedisHit_FillsLocalTier() {
+        when(valueOperations.get("user:user1")).thenReturn(UserProfileCodec.encode(REGULAR));
+
+        assertEquals(REGULAR, cache.get("user1"));
+        assertEquals(REGULAR, cache.get("user1"));
+
+        verify(valueOperations, times(1)).get("user:user1");
+        assertEquals(1.0, registry.get("payment.user.cache.requests").tags("tier", "l2", "result", "hit")
+            .functionCounter().count());
+        assertEquals(1, cache.localSize());
+    }
+
+    @Test
+    void testGetAll_OneRedisRoundTripForLocalMisses() {
+        cache.put("user1", PREMIUM);
+        when(valueOperations.multiGet(List.of("user:user2", "user:user3")))
+            .thenReturn(Arrays.asList(UserProfileCodec.encode(REGULAR), null));
+
+        Map<String, UserProfile> users = cache.getAll(List.of("user1", "user2", "user3", "user2"));
+
+        assertEquals(2, users.size());
+        assertEquals(PREMIUM, users.get("user1"));
+        assertEquals(REGULAR, users.get("user2"));
+        verify(valueOperations, times(1)).multiGet(anyCollection());
+    }
+
+    @Test
+    void testPutAll_OnePipelineAndOneInvalidationMessage() {
+        cache.putAll(Map.of("user1", PREMIUM, "user2", REGULAR));
+
+        verify(redisTemplate).executePipelined(callback.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        callback.getValue().doInRedis(connection);
+        verify(stringCommands, times(2)).set(any(byte[].class), any(byte[].class), any(), any());
+        verify(connection, times(1)).publish(any(byte[].class), any(byte[].class));
+        assertEquals(2, cache.localSize());
+
+        cache.onMessage(message("other-node|user1\nuser2\n"), null);
+        assertEquals(0, cache.localSize());
+    }
+
+    @Test
+    void testOnMessage_OtherNodeEvictsLocalCopy_OwnMessageIgnored() {
+        cache.put("user1", PREMIUM);
+
+        cache.onMessage(message(ownNodeId() + "|user1"), null);
+        assertEquals(1, cache.localSize());
+
+        cache.onMessage(message("other-node|user1"), null);
+        assertEquals(0, cache.localSize());
+    }
+
+    @Test
+    void testGet_WithinRequest_SecondLookupSkipsLocalAndRedis() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        when(valueOperations.get("user:user1")).thenReturn(UserProfileCodec.encode(PREMIUM));
+        cache.get("user1");
+
+        cache.onMessage(message("other-node|user1"), null);
+        assertNotNull(cache.get("user1"));
+
+        verify(valueOperations, times(1)).get("user:user1");
+        assertEquals(1.0, registry.get("payment.user.cache.requests").tags("tier", "request", "result", "hit")
+            .functionCounter().count());
+    }
+
+    @Test
+    void testGet_PastRefreshAhead_ServesCachedAndReloadsInBackground() {
+        MutableClock clock = new MutableClock();
+        UserCache refreshing = new UserCache(redisTemplate, new SimpleMeterRegistry(), 100, 4,
+            Duration.ofSeconds(60), 0.8, Duration.ofHours(1), clock);
+        UserProfile updated = new UserProfile("user1", "Renamed", null, null, "merchant",
+            true, true, true, 100.0, "USD", null, null, null, null, null);
+        AtomicInteger loads = new AtomicInteger();
+        refreshing.put("user1", PREMIUM);
+
+        clock.advance(Duration.ofSeconds(30));
+        assertSame(PREMIUM, refreshing.get("user1", id -> {
+            loads.incrementAndGet();
+            return updated;
+        }));
+        assertEquals(0, loads.get());
+
+        clock.advance(Duration.ofSeconds(20));
+        assertSame(PREMIUM, refreshing.get("user1", id -> {
+            loads.incrementAndGet();
+            return updated;
+        }));
+        verify(valueOperations, timeout(2_000).times(2)).set(eq("user:user1"), any(byte[].class), anyLong(), any());
+        assertEquals(1, loads.get());
+        assertEquals(updated, refreshing.get("user1"));
+    }
+
+    // The node id is the prefix of what this cache publishes
+    private String ownNodeId() {
+        cache.invalidate("probe");
+        verify(redisTemplate, atLeastOnce()).execute(callback.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).publish(any(byte[].class), payload.capture());
+        String body = new String(payload.getValue(), StandardCharsets.UTF_8);
+        return body.substring(0, body.indexOf('|'));
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("user-cache:invalidate".getBytes(StandardCharsets.UTF_8),
+            body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
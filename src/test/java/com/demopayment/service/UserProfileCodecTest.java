@@ -0,0 +1,64 @@
+package com.demopayment.service;
+
+import com.demopayment.client.UserClient;
+import com.demopayment.model.UserProfile;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserProfileCodecTest {
+
+    private static final UserProfile MERCHANT = new UserProfile("1001", "Tech Store Inc", "payments@techstore.com",
+        "+1-555-0123", "merchant", true, true, true, 25000.0, "USD", "2023-01-15T10:00:00Z",
+        "10.0.0.1", "device-1001",
+        new UserProfile.Address("456 Business Ave", "San Francisco", "CA", "94105", "USA"),
+        Map.of("language", "en", "timezone", "UTC"));
+
+    @Test
+    void testRoundTrip_FullProfile() {
+        assertEquals(MERCHANT, UserProfileCodec.decode(UserProfileCodec.encode(MERCHANT)));
+    }
+
+    @Test
+    void testRoundTrip_NullsAndNonAscii() {
+        UserProfile profile = new UserProfile("2001", "Jörg Müller ✓", null, null, null,
+            false, true, false, -0.5, null, null, null, null, null, null);
+
+        UserProfile decoded = UserProfileCodec.decode(UserProfileCodec.encode(profile));
+
+        assertEquals(profile, decoded);
+        assertNull(decoded.address());
+        assertTrue(decoded.preferences().isEmpty());
+    }
+
+    @Test
+    void testDecode_OtherVersionOrTruncated_Rejected() {
+        byte[] encoded = UserProfileCodec.encode(MERCHANT);
+        byte[] future = encoded.clone();
+        future[0] = UserProfileCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> UserProfileCodec.decode(future));
+        assertThrows(IllegalArgumentException.class,
+            () -> UserProfileCodec.decode(Arrays.copyOf(encoded, encoded.length - 3)));
+    }
+
+    @Test
+    void testJson_UserServiceResponse_MapsToProfile() throws Exception {
+        String json = "{\"id\":\"1001\",\"name\":\"Tech Store Inc\",\"isActive\":true,\"isVerified\":true,"
+            + "\"isPremiumUser\":true,\"balance\":25000.0,\"currency\":\"USD\",\"unknownField\":1,"
+            + "\"address\":{\"street\":\"456 Business Ave\",\"city\":\"San Francisco\",\"state\":\"CA\","
+            + "\"zip\":\"94105\",\"country\":\"USA\"},"
+            + "\"preferences\":{\"language\":\"en\",\"notifications\":true}}";
+
+        UserProfile profile = UserClient.mapper.readValue(json, UserProfile.class);
+
+        assertTrue(profile.premiumUser());
+        assertTrue(profile.active());
+        assertEquals(25000.0, profile.balance());
+        assertEquals("San Francisco", profile.address().city());
+        assertEquals("true", profile.preferences().get("notifications"));
+        assertTrue(UserProfileCodec.encode(profile).length < json.length() / 2);
+    }
+}
@@ -0,0 +1,137 @@
+package com.demopayment.service;
+
+import com.demopayment.client.UserClient;
+import com.demopayment.model.UserProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UserServiceTest {
+
+    private static final UserProfile MERCHANT = new UserProfile("1001", "Tech Store Inc", null, null, "merchant",
+        true, true, true, 25000.0, "USD", null, null, null, null, null);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SlowUserClient userClient = new SlowUserClient();
+    private UserService userService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, byte[]> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+        UserCache userCache = new UserCache(redisTemplate, registry, 1_000, 16, Duration.ofSeconds(60), 0,
+            Duration.ofHours(1), Clock.systemUTC());
+        userService = new UserService(userClient);
+        ReflectionTestUtils.setField(userService, "userCache", userCache);
+    }
+
+    @Test
+    void testGetUserData_ConcurrentMisses_OneBackendCall() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserProfile>> lookups = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1_000; i++) {
+                lookups.add(executor.submit(() -> {
+                    start.await();
+                    return userService.getUserData("1001");
+                }));
+            }
+            start.countDown();
+            for (Future<UserProfile> lookup : lookups) {
+                assertEquals(MERCHANT, lookup.get());
+            }
+        }
+
+        assertEquals(1, userClient.calls.get());
+        assertTrue(registry.get("payment.user.cache.coalesced").functionCounter().count() > 0);
+    }
+
+    @Test
+    void testGetUserData_SharedLoadFails_EveryWaiterSeesFailure() throws Exception {
+        userClient.failing = true;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserProfile>> lookups = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                lookups.add(executor.submit(() -> {
+                    start.await();
+                    return userService.getUserData("1001");
+                }));
+            }
+            start.countDown();
+            for (Future<UserProfile> lookup : lookups) {
+                Exception e = assertThrows(Exception.class, lookup::get);
+                assertEquals("User service unavailable", e.getCause().getMessage());
+            }
+        }
+
+        assertTrue(userClient.calls.get() < 100);
+    }
+
+    @Test
+    void testGetUserData_Batch_OneBulkRequestForMisses() {
+        userService.getUserData("1001");
+
+        Map<String, UserProfile> users = userService.getUserData(List.of("1001", "2001", "unknown", "2001"));
+
+        assertEquals(Set.of("1001", "2001"), users.keySet());
+        assertEquals(List.of(Set.of("2001", "unknown")), userClient.batches);
+        assertEquals(1, userClient.calls.get());
+        assertEquals(users.get("2001"), userService.getUserData("2001"));
+    }
+
+    private static final class SlowUserClient extends UserClient {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+
+        @Override
+        public Map<String, UserProfile> getUsers(Collection<String> userIds) {
+            batches.add(new HashSet<>(userIds));
+            Map<String, UserProfile> users = new HashMap<>();
+            for (String userId : userIds) {
+                if (!userId.equals("unknown")) {
+                    users.put(userId, new UserProfile(userId, "User " + userId, null, null, "payer",
+                        true, true, false, 10.0, "USD", null, null, null, null, null));
+                }
+            }
+            return users;
+        }
+
+        @Override
+        public UserProfile getUserData(String userId) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new RuntimeException("User service unavailable");
+            }
+            return MERCHANT;
+        }
+    }
+}